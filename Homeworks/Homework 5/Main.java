@@ -4,7 +4,11 @@ import javalib.worldimages.*;
 import tester.Tester;
 
 import java.awt.*;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.random.RandomGenerator;
 
 // represents world constants for the game
 interface IWorldConstants {
@@ -17,6 +21,12 @@ interface IWorldConstants {
   int MF_COUNT = 10;
   int LF_COUNT = 4;
   int BOOST_COUNT = 3;
+  int GRID_CELL_SIZE = 60;
+  int SMALL_FISH = 0;
+  int MEDIUM_FISH = 1;
+  int LARGE_FISH = 2;
+  int PARALLEL_MOVE_THRESHOLD = 2048;
+  int MOVE_BATCH = 512;
 
   double BASE_MASS = 10.0;
   double MASS_PER_VALUE = 2.0;
@@ -26,7 +36,11 @@ interface IWorldConstants {
   double TARGET_THRESHOLD = 10.0;
   double TICK_RATE = 1.0 / 144;
 
-  Random R = new Random(123);
+  long DEFAULT_SEED = 123;
+  int RNG_SPAWNS = 0;
+  int RNG_BOOSTS = 1;
+  int RNG_MOTION = 2;
+  int RNG_STREAMS = 3;
   String f1 = "src/f1.png";
   String f2 = "src/f2.png";
   String f3 = "src/f3.png";
@@ -37,6 +51,33 @@ interface IWorldConstants {
   WorldImage F4 = new FromFileImage(f4);
 }
 
+// represents a seeded source of independent random streams, one per game subsystem
+class RandomService implements IWorldConstants {
+  long seed;
+  SplittableRandom[] streams;
+
+  // creates a service whose streams all derive from the given master seed
+  RandomService(long seed) {
+    this.seed = seed;
+    this.streams = new SplittableRandom[RNG_STREAMS];
+    for (int i = 0; i < RNG_STREAMS; i++) {
+      this.streams[i] = new SplittableRandom(this.mix(seed + i * 0x9E3779B97F4A7C15L));
+    }
+  }
+
+  // returns the stream reserved for the given subsystem
+  RandomGenerator stream(int subsystem) {
+    return this.streams[subsystem];
+  }
+
+  // scrambles a seed so that nearby seeds give unrelated streams
+  long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
+
 // represents a vector in 2D space
 class Vector<T> {
   T x;
@@ -48,8 +89,10 @@ class Vector<T> {
   }
 }
 
-// represents a list of fish
-interface IListFish {
+// represents a list of fish; a list may be a FishSchool, whose moveAll, moveAllParallel,
+// checkCollisions, withoutEaten and spawn change the school in place and return it, so a
+// list handed to any of these (or to the next world) must not be used again as the old fish
+interface IListFish extends IWorldConstants {
 
   // draws the fish in the scene
   WorldScene drawFish(WorldScene scene);
@@ -57,6 +100,13 @@ interface IListFish {
   // moves all fish in the list
   IListFish moveAll();
 
+  // moves all fish in the list, in chunks on the fork-join pool once there are at least
+  // PARALLEL_MOVE_THRESHOLD of them and the pool has more than one worker
+  IListFish moveAllParallel();
+
+  // EFFECT: stores the fish of this list in out, starting at the given index
+  void fill(IFish[] out, int index);
+
   // returns the number of fish in the list
   int count();
 
@@ -66,6 +116,23 @@ interface IListFish {
   // checks for collisions between the player and the fish
   CollisionResult checkCollisions(PlayerFish player, int smallEaten, int mediumEaten,
       boolean playerEaten);
+
+  // adds every fish in the list to the grid, in list order
+  void addTo(FishGrid grid);
+
+  // returns this list without the fish the grid marked as eaten, where index is the
+  // grid index of this list's first fish and no fish after lastEaten is marked
+  IListFish withoutEaten(FishGrid grid, int index, int lastEaten);
+
+  // returns this list with the given fish added at the front
+  IListFish spawn(ISchoolFish fish);
+
+  // appends every fish in the list to the school, in list order
+  void enrollAll(FishSchool school);
+
+  // returns this list as its first node, or null if it is not a ConsListFish, so a list can
+  // be walked with a loop over rest instead of one call per fish
+  ConsListFish asCons();
 }
 
 // represents a list of boost
@@ -94,6 +161,15 @@ class MtListFish implements IListFish {
     return this;
   }
 
+  // Returns an empty list of fish
+  public IListFish moveAllParallel() {
+    return this;
+  }
+
+  // stores nothing
+  public void fill(IFish[] out, int index) {
+  }
+
   // Returns 0 as there are no fish in the list
   public int count() {
     return 0;
@@ -109,6 +185,29 @@ class MtListFish implements IListFish {
       boolean playerEaten) {
     return new CollisionResult(player, this, smallEaten, mediumEaten, playerEaten);
   }
+
+  // adds nothing to the grid
+  public void addTo(FishGrid grid) {
+  }
+
+  // returns this empty list
+  public IListFish withoutEaten(FishGrid grid, int index, int lastEaten) {
+    return this;
+  }
+
+  // returns a list holding only the given fish
+  public IListFish spawn(ISchoolFish fish) {
+    return new ConsListFish(fish, this);
+  }
+
+  // appends nothing to the school
+  public void enrollAll(FishSchool school) {
+  }
+
+  // an empty list has no first node
+  public ConsListFish asCons() {
+    return null;
+  }
 }
 
 // represents a non-empty list of fish
@@ -133,16 +232,78 @@ class ConsListFish implements IListFish {
     return new ConsListFish(this.first.move(), this.rest.moveAll());
   }
 
+  // Moves all fish in the list, in parallel chunks when the list is long enough
+  public IListFish moveAllParallel() {
+    IFish[] fish = this.toArray();
+    int n = fish.length;
+    if (n < PARALLEL_MOVE_THRESHOLD || ForkJoinPool.getCommonPoolParallelism() < 2) {
+      for (int i = 0; i < n; i++) {
+        fish[i] = fish[i].move();
+      }
+    } else {
+      ForkJoinPool.commonPool().invoke(new FishMoveTask(fish, 0, n));
+    }
+    IListFish moved = new MtListFish();
+    for (int i = n - 1; i >= 0; i--) {
+      moved = new ConsListFish(fish[i], moved);
+    }
+    return moved;
+  }
+
+  // returns the fish of this list in order, counting and collecting them in one loop over rest
+  IFish[] toArray() {
+    IFish[] out = new IFish[16];
+    int n = 0;
+    IListFish tail = this;
+    for (ConsListFish node = this; node != null; node = tail.asCons()) {
+      if (n == out.length) {
+        out = Arrays.copyOf(out, n * 2);
+      }
+      out[n] = node.first;
+      n += 1;
+      tail = node.rest;
+    }
+    out = Arrays.copyOf(out, n + tail.count());
+    tail.fill(out, n);
+    return out;
+  }
+
+  // EFFECT: stores the first fish at index and the rest after it
+  public void fill(IFish[] out, int index) {
+    IListFish tail = this;
+    for (ConsListFish node = this; node != null; node = tail.asCons()) {
+      out[index] = node.first;
+      index += 1;
+      tail = node.rest;
+    }
+    tail.fill(out, index);
+  }
+
   // Returns the number of fish in the list
   public int count() {
-    return 1 + this.rest.count();
+    int n = 0;
+    IListFish tail = this;
+    for (ConsListFish node = this; node != null; node = tail.asCons()) {
+      n += 1;
+      tail = node.rest;
+    }
+    return n + tail.count();
   }
 
   // returns the count of each type of fish
   public FishCount countTypes() {
-    FishCount r = this.rest.countTypes();
-    return new FishCount(r.smallCount + this.first.countAsSmall(),
-        r.mediumCount + this.first.countAsMedium(), r.largeCount + this.first.countAsLarge());
+    int small = 0;
+    int medium = 0;
+    int large = 0;
+    IListFish tail = this;
+    for (ConsListFish node = this; node != null; node = tail.asCons()) {
+      small += node.first.countAsSmall();
+      medium += node.first.countAsMedium();
+      large += node.first.countAsLarge();
+      tail = node.rest;
+    }
+    FishCount r = tail.countTypes();
+    return new FishCount(r.smallCount + small, r.mediumCount + medium, r.largeCount + large);
   }
 
   // returns the result of a collision
@@ -166,6 +327,64 @@ class ConsListFish implements IListFish {
     return new CollisionResult(r.player, new ConsListFish(this.first, r.fishList), r.smallEaten,
         r.mediumEaten, r.playerEaten);
   }
+
+  // adds the first fish and then the rest to the grid
+  public void addTo(FishGrid grid) {
+    IListFish tail = this;
+    for (ConsListFish node = this; node != null; node = tail.asCons()) {
+      Fish f = (Fish) node.first;
+      grid.add(node.first, f.position.x, f.position.y, f.size);
+      tail = node.rest;
+    }
+    tail.addTo(grid);
+  }
+
+  // returns this list without the eaten fish, sharing every node after the last one eaten
+  public IListFish withoutEaten(FishGrid grid, int index, int lastEaten) {
+    if (index > lastEaten) {
+      return this;
+    }
+    ConsListFish[] nodes = new ConsListFish[lastEaten - index + 1];
+    int n = 0;
+    IListFish tail = this;
+    for (ConsListFish node = this; node != null && index + n <= lastEaten;
+        node = tail.asCons()) {
+      nodes[n] = node;
+      n += 1;
+      tail = node.rest;
+    }
+    IListFish kept = tail.withoutEaten(grid, index + n, lastEaten);
+    for (int i = n - 1; i >= 0; i--) {
+      if (!grid.eaten[index + i]) {
+        if (kept == nodes[i].rest) {
+          kept = nodes[i];
+        } else {
+          kept = new ConsListFish(nodes[i].first, kept);
+        }
+      }
+    }
+    return kept;
+  }
+
+  // returns this list with the given fish in front
+  public IListFish spawn(ISchoolFish fish) {
+    return new ConsListFish(fish, this);
+  }
+
+  // appends the first fish and then the rest to the school
+  public void enrollAll(FishSchool school) {
+    IListFish tail = this;
+    for (ConsListFish node = this; node != null; node = tail.asCons()) {
+      school.append(node.first);
+      tail = node.rest;
+    }
+    tail.enrollAll(school);
+  }
+
+  // this list is its own first node
+  public ConsListFish asCons() {
+    return this;
+  }
 }
 
 // represents an empty list
@@ -251,6 +470,13 @@ interface IFish extends IWorldConstants {
   int countAsLarge();
 }
 
+// represents a fish that can swim in a school, which is any fish but the player
+interface ISchoolFish extends IFish {
+
+  // EFFECT: writes this fish's state into the given slot of the school
+  void enroll(FishSchool school, int slot);
+}
+
 // represents a fish in the game
 abstract class Fish implements IFish {
   Vector<Double> velocity;
@@ -270,34 +496,36 @@ abstract class Fish implements IFish {
 
   // returns the Image of the fish
   public WorldImage draw() {
-    WorldImage baseImage;
+    WorldImage baseImage = this.baseImage();
+    double scale = this.size / 500.0;
+    if (this.direction) {
+      return new ScaleImageXY(baseImage, -scale, scale);
+    }
+    return new ScaleImage(baseImage, scale);
+  }
 
+  // returns the unscaled image of the fish
+  WorldImage baseImage() {
     // Select the appropriate image based on imagePath
     if (this.imagePath.equals(f1)) {
-      baseImage = F1;
+      return F1;
     } else if (this.imagePath.equals(f2)) {
-      baseImage = F2;
+      return F2;
     } else if (this.imagePath.equals(f3)) {
-      baseImage = F3;
+      return F3;
     } else if (this.imagePath.equals(f4)) {
-      baseImage = F4;
-    } else {
-      // Fallback to loading from file if path doesn't match
-      baseImage = new FromFileImage(this.imagePath);
-    }
-
-    double scale = this.size / 500.0;
-    if (this.direction) {
-      return new ScaleImageXY(baseImage, -scale, scale);
+      return F4;
     }
-    return new ScaleImage(baseImage, scale);
+    // Fallback to loading from file if path doesn't match
+    return new FromFileImage(this.imagePath);
   }
 
   // returns if the fish is colliding with the player fish
   public boolean collidesWith(PlayerFish player) {
     double dx = this.position.x - player.position.x;
     double dy = this.position.y - player.position.y;
-    return Math.sqrt(dx * dx + dy * dy) < (this.size * 0.25 + player.size * 0.25);
+    double reach = this.size * 0.25 + player.size * 0.25;
+    return dx * dx + dy * dy < reach * reach;
   }
 
   // returns if the fish can be eaten by the player fish
@@ -344,43 +572,65 @@ abstract class Fish implements IFish {
 }
 
 // represents a fish that moves in the background
-class BackgroundFish extends Fish {
+class BackgroundFish extends Fish implements ISchoolFish {
   Vector<Integer> target;
   double speed;
   double actualX;
   double actualY;
+  long seed;
 
   // constructor for the background fish
   BackgroundFish(int x, int y, int size, String imagePath, double speed) {
+    this(x, y, size, imagePath, speed, new SplittableRandom(DEFAULT_SEED));
+  }
+
+  // constructor for the background fish drawing its target and wander seed from rand
+  BackgroundFish(int x, int y, int size, String imagePath, double speed, RandomGenerator rand) {
     super(x, y, size, false, imagePath, speed, speed);
     this.speed = speed;
     this.actualX = x;
     this.actualY = y;
-    this.target = new Vector<>(R.nextInt(WORLD_WIDTH), R.nextInt(WORLD_HEIGHT));
+    this.target = new Vector<>(rand.nextInt(WORLD_WIDTH), rand.nextInt(WORLD_HEIGHT));
+    this.seed = rand.nextLong();
   }
 
   // constructor for the background fish with velocity and direction
   BackgroundFish(double actualX, double actualY, int size, String imagePath, double speed,
-      Vector<Integer> target, boolean direction) {
+      Vector<Integer> target, boolean direction, long seed) {
     super((int) actualX, (int) actualY, size, direction, imagePath, speed, speed);
     this.speed = speed;
     this.actualX = actualX;
     this.actualY = actualY;
     this.target = target;
+    this.seed = seed;
   }
 
   // moves the background fish towards its target and returns a new fish instance
   public BackgroundFish move() {
     Vector<Integer> currentTarget;
-    if (Math.hypot(this.target.x - this.actualX, this.target.y - this.actualY) < TARGET_THRESHOLD) {
-      currentTarget = new Vector<>(R.nextInt(WORLD_WIDTH), R.nextInt(WORLD_HEIGHT));
+    long nextSeed;
+    double dx = this.target.x - this.actualX;
+    double dy = this.target.y - this.actualY;
+    if (dx * dx + dy * dy < TARGET_THRESHOLD * TARGET_THRESHOLD) {
+      SplittableRandom wander = new SplittableRandom(this.seed);
+      currentTarget = new Vector<>(wander.nextInt(WORLD_WIDTH), wander.nextInt(WORLD_HEIGHT));
+      nextSeed = wander.nextLong();
+      dx = currentTarget.x - this.actualX;
+      dy = currentTarget.y - this.actualY;
     } else {
       currentTarget = this.target;
+      nextSeed = this.seed;
     }
 
-    double angle = Math.atan2(currentTarget.y - this.actualY, currentTarget.x - this.actualX);
-    double newActualX = this.actualX + this.speed * Math.cos(angle);
-    double newActualY = this.actualY + this.speed * Math.sin(angle);
+    double distance = Math.sqrt(dx * dx + dy * dy);
+    double cos = 1.0;
+    double sin = 0.0;
+    if (distance > 0) {
+      cos = dx / distance;
+      sin = dy / distance;
+    }
+    double newActualX = this.actualX + this.speed * cos;
+    double newActualY = this.actualY + this.speed * sin;
 
     if (newActualX < -this.size) {
       newActualX = WORLD_WIDTH + this.size;
@@ -391,17 +641,23 @@ class BackgroundFish extends Fish {
     newActualY = Math.max(this.size / 2, Math.min(WORLD_HEIGHT - this.size / 2, newActualY));
 
     return new BackgroundFish(newActualX, newActualY, this.size, this.imagePath, this.speed,
-        currentTarget, Math.cos(angle) > 0);
+        currentTarget, cos > 0, nextSeed);
   }
 
   // returns the number of background fish
   public int countAsSmall() {
     return 1;
   }
+
+  // EFFECT: writes this wandering fish into the given slot of the school
+  public void enroll(FishSchool school, int slot) {
+    school.placeWanderer(slot, this.actualX, this.actualY, this.size, this.imagePath,
+        this.baseImage(), this.speed, this.direction, this.target.x, this.target.y, this.seed);
+  }
 }
 
 // represents a fish that moves in a wave pattern
-abstract class WaveFish extends Fish {
+abstract class WaveFish extends Fish implements ISchoolFish {
   double baseSpeed;
   double waveAmplitude;
   double waveFrequency;
@@ -409,16 +665,16 @@ abstract class WaveFish extends Fish {
   double periodOffset;
   int baseY;
 
-  // constructor for the wave fish
+  // constructor for the wave fish drawing its starting phase from rand
   WaveFish(int x, int y, int size, String imagePath, double speed, boolean direction,
-      double waveAmplitude, double waveFrequency) {
+      double waveAmplitude, double waveFrequency, RandomGenerator rand) {
     super(x, y, size, direction, imagePath, direction ? speed : -speed, 0.0);
     this.baseSpeed = speed;
     this.waveAmplitude = waveAmplitude;
     this.waveFrequency = waveFrequency;
-    this.time = R.nextDouble() * Math.PI * 2;
+    this.time = rand.nextDouble() * Math.PI * 2;
     this.baseY = y;
-    this.periodOffset = R.nextDouble() * Math.PI * 2;
+    this.periodOffset = rand.nextDouble() * Math.PI * 2;
   }
 
   // constructor for the wave fish with velocity and direction
@@ -439,7 +695,13 @@ class MediumFish extends WaveFish {
 
   // the constructor
   MediumFish(int x, int y, int size, String imagePath, double speed, boolean direction) {
-    super(x, y, size, imagePath, speed, direction, 20.0, 0.4);
+    this(x, y, size, imagePath, speed, direction, new SplittableRandom(DEFAULT_SEED));
+  }
+
+  // constructor drawing the starting phase from rand
+  MediumFish(int x, int y, int size, String imagePath, double speed, boolean direction,
+      RandomGenerator rand) {
+    super(x, y, size, imagePath, speed, direction, 20.0, 0.4, rand);
   }
 
   // convenience constructor
@@ -463,6 +725,13 @@ class MediumFish extends WaveFish {
   public int countAsMedium() {
     return 1;
   }
+
+  // EFFECT: writes this medium fish into the given slot of the school
+  public void enroll(FishSchool school, int slot) {
+    school.placeSwimmer(slot, MEDIUM_FISH, this.position.x, this.position.y, this.size,
+        this.imagePath, this.baseImage(), this.baseSpeed, this.direction, this.waveAmplitude,
+        this.waveFrequency, this.time, this.baseY, this.periodOffset);
+  }
 }
 
 // represents a large fish that moves in a wave pattern
@@ -470,7 +739,13 @@ class LargeFish extends WaveFish {
 
   // constructor
   LargeFish(int x, int y, int size, String imagePath, double speed, boolean direction) {
-    super(x, y, size, imagePath, speed, direction, 30.0, 0.1);
+    this(x, y, size, imagePath, speed, direction, new SplittableRandom(DEFAULT_SEED));
+  }
+
+  // constructor drawing the starting phase from rand
+  LargeFish(int x, int y, int size, String imagePath, double speed, boolean direction,
+      RandomGenerator rand) {
+    super(x, y, size, imagePath, speed, direction, 30.0, 0.1, rand);
   }
 
   // convenience constructor
@@ -494,6 +769,13 @@ class LargeFish extends WaveFish {
   public int countAsLarge() {
     return 1;
   }
+
+  // EFFECT: writes this large fish into the given slot of the school
+  public void enroll(FishSchool school, int slot) {
+    school.placeSwimmer(slot, LARGE_FISH, this.position.x, this.position.y, this.size,
+        this.imagePath, this.baseImage(), this.baseSpeed, this.direction, this.waveAmplitude,
+        this.waveFrequency, this.time, this.baseY, this.periodOffset);
+  }
 }
 
 // represents a player fish that can be controlled by the user
@@ -638,12 +920,33 @@ class FeedingFrenzy extends World implements IWorldConstants {
   double speedBoostTimer;
   boolean gameWon;
   boolean gameLost;
+  RandomService rng;
+  FishGrid grid;
 
-  // creates a new game with default starting values
+  // creates a new game seeded from the clock, so that every game differs, whose fish swim
+  // in a school that moves in place
   FeedingFrenzy() {
+    this(System.nanoTime(), true);
+  }
+
+  // creates a new game whose spawns and motion are reproducible from the given seed, with
+  // its fish in a list of fish objects
+  FeedingFrenzy(long seed) {
+    this(seed, false);
+  }
+
+  // creates a new game whose spawns and motion are reproducible from the given seed, with
+  // its fish in a school that moves in place if schooled (each world then hands the school
+  // on to the next one, and is not used again itself) or in a list of fish objects if not
+  FeedingFrenzy(long seed, boolean schooled) {
+    this.rng = new RandomService(seed);
+    this.grid = new FishGrid();
     this.player = new PlayerFish(WORLD_WIDTH / 2, WORLD_HEIGHT / 2, 50, 5.0, BASE_MASS, f1);
     this.allFish = createLF(0, LF_COUNT,
         createMF(0, MF_COUNT, createSF(0, SF_COUNT, new MtListFish())));
+    if (schooled) {
+      this.allFish = new FishSchool(this.allFish);
+    }
     this.allBoosts = createBoostsHelper(0, BOOST_COUNT, new MtListBoost());
     this.score = 0;
     this.lives = 3;
@@ -663,6 +966,19 @@ class FeedingFrenzy extends World implements IWorldConstants {
       int smallFishEaten, int mediumFishEaten, double totalFishValue, boolean gameWon,
       boolean gameLost, int mediumRespawnTimer, int largeRespawnTimer, int boostRespawnTimer,
       double speedBoostTimer) {
+    this(player, allFish, allBoosts, score, lives, smallFishEaten, mediumFishEaten, totalFishValue,
+        gameWon, gameLost, mediumRespawnTimer, largeRespawnTimer, boostRespawnTimer,
+        speedBoostTimer, new RandomService(DEFAULT_SEED), new FishGrid());
+  }
+
+  // creates a game with specified state values that keeps drawing from the given random streams
+  // and keeps rebuilding the given collision grid
+  FeedingFrenzy(PlayerFish player, IListFish allFish, IListBoost allBoosts, int score, int lives,
+      int smallFishEaten, int mediumFishEaten, double totalFishValue, boolean gameWon,
+      boolean gameLost, int mediumRespawnTimer, int largeRespawnTimer, int boostRespawnTimer,
+      double speedBoostTimer, RandomService rng, FishGrid grid) {
+    this.rng = rng;
+    this.grid = grid;
     this.player = player;
     this.allFish = allFish;
     this.allBoosts = allBoosts;
@@ -684,8 +1000,9 @@ class FeedingFrenzy extends World implements IWorldConstants {
     if (current >= total) {
       return acc;
     }
-    SpeedBoost boost = new SpeedBoost(100 + R.nextInt(WORLD_WIDTH - 200),
-        100 + R.nextInt(WORLD_HEIGHT - 200));
+    RandomGenerator rand = this.rng.stream(RNG_BOOSTS);
+    SpeedBoost boost = new SpeedBoost(100 + rand.nextInt(WORLD_WIDTH - 200),
+        100 + rand.nextInt(WORLD_HEIGHT - 200), rand);
     return createBoostsHelper(current + 1, total, new ConsListBoost(boost, acc));
   } // tested
 
@@ -694,8 +1011,9 @@ class FeedingFrenzy extends World implements IWorldConstants {
     if (current >= total) {
       return acc;
     }
-    BackgroundFish small = new BackgroundFish(R.nextInt(WORLD_WIDTH), R.nextInt(WORLD_HEIGHT), 30,
-        f4, 2.0 + R.nextDouble());
+    RandomGenerator rand = this.rng.stream(RNG_SPAWNS);
+    BackgroundFish small = new BackgroundFish(rand.nextInt(WORLD_WIDTH), rand.nextInt(WORLD_HEIGHT),
+        30, f4, 2.0 + rand.nextDouble(), this.rng.stream(RNG_MOTION));
     return createSF(current + 1, total, new ConsListFish(small, acc));
   } // tested
 
@@ -704,8 +1022,9 @@ class FeedingFrenzy extends World implements IWorldConstants {
     if (current >= total) {
       return acc;
     }
-    MediumFish medium = new MediumFish(R.nextInt(WORLD_WIDTH), R.nextInt(WORLD_HEIGHT), 70, f2,
-        3.0 + R.nextDouble(), R.nextBoolean());
+    RandomGenerator rand = this.rng.stream(RNG_SPAWNS);
+    MediumFish medium = new MediumFish(rand.nextInt(WORLD_WIDTH), rand.nextInt(WORLD_HEIGHT), 70,
+        f2, 3.0 + rand.nextDouble(), rand.nextBoolean(), this.rng.stream(RNG_MOTION));
     return createMF(current + 1, total, new ConsListFish(medium, acc));
   } // tested
 
@@ -714,8 +1033,10 @@ class FeedingFrenzy extends World implements IWorldConstants {
     if (current >= total) {
       return acc;
     }
-    LargeFish large = new LargeFish(R.nextInt(WORLD_WIDTH), 50 + R.nextInt(WORLD_HEIGHT - 100),
-        LARGE_FISH_SIZE, f3, 1.5 + R.nextDouble() * 0.5, R.nextBoolean());
+    RandomGenerator rand = this.rng.stream(RNG_SPAWNS);
+    LargeFish large = new LargeFish(rand.nextInt(WORLD_WIDTH),
+        50 + rand.nextInt(WORLD_HEIGHT - 100), LARGE_FISH_SIZE, f3, 1.5 + rand.nextDouble() * 0.5, rand.nextBoolean(),
+        this.rng.stream(RNG_MOTION));
     return createLF(current + 1, total, new ConsListFish(large, acc));
   } // tested
 
@@ -806,7 +1127,7 @@ class FeedingFrenzy extends World implements IWorldConstants {
       return this;
     }
 
-    IListFish newFish = this.allFish.moveAll();
+    IListFish newFish = this.allFish.moveAllParallel();
 
     PlayerFish newPlayer;
     if (this.speedBoostTimer > 0) {
@@ -877,53 +1198,57 @@ class FeedingFrenzy extends World implements IWorldConstants {
     }
 
     IListFish updatedFishList = result.fishList;
+    RandomGenerator spawns = this.rng.stream(RNG_SPAWNS);
 
     if (counts.mediumCount < MF_COUNT && newMediumTimer == 0) {
-      boolean fromLeft = R.nextBoolean();
+      boolean fromLeft = spawns.nextBoolean();
       int xPosition = WORLD_WIDTH + 60;
       if (fromLeft) {
         xPosition = -60;
       }
 
-      MediumFish newMedium = new MediumFish(xPosition, 50 + R.nextInt(WORLD_HEIGHT - 100), 70, f2,
-          3.0 + R.nextDouble(), fromLeft);
-      updatedFishList = new ConsListFish(newMedium, updatedFishList);
+      MediumFish newMedium = new MediumFish(xPosition, 50 + spawns.nextInt(WORLD_HEIGHT - 100), 70,
+          f2, 3.0 + spawns.nextDouble(), fromLeft, this.rng.stream(RNG_MOTION));
+      updatedFishList = updatedFishList.spawn(newMedium);
       newMediumTimer = this.boostDelay;
     }
 
     if (counts.largeCount < LF_COUNT && newLargeTimer == 0) {
-      boolean fromLeft = R.nextBoolean();
+      boolean fromLeft = spawns.nextBoolean();
       int xPosition;
       if (fromLeft) {
         xPosition = -100;
       } else {
         xPosition = WORLD_WIDTH + 100;
       }
-      int yPosition = 50 + R.nextInt(WORLD_HEIGHT - 100);
+      int yPosition = 50 + spawns.nextInt(WORLD_HEIGHT - 100);
 
       LargeFish newLarge = new LargeFish(xPosition, yPosition, LARGE_FISH_SIZE, f3,
-          1.5 + R.nextDouble() * 0.5, fromLeft);
-      updatedFishList = new ConsListFish(newLarge, updatedFishList);
+          1.5 + spawns.nextDouble() * 0.5, fromLeft, this.rng.stream(RNG_MOTION));
+      updatedFishList = updatedFishList.spawn(newLarge);
       newLargeTimer = this.boostDelay;
     }
 
     IListBoost updatedBoostList = boostResult.boostList;
     int boostCount = boostResult.boostList.count();
     if (boostCount < BOOST_COUNT && newBoostTimer == 0) {
-      SpeedBoost newBoost = new SpeedBoost(100 + R.nextInt(WORLD_WIDTH - 200),
-          100 + R.nextInt(WORLD_HEIGHT - 200));
+      RandomGenerator boosts = this.rng.stream(RNG_BOOSTS);
+      SpeedBoost newBoost = new SpeedBoost(100 + boosts.nextInt(WORLD_WIDTH - 200),
+          100 + boosts.nextInt(WORLD_HEIGHT - 200), boosts);
       updatedBoostList = new ConsListBoost(newBoost, updatedBoostList);
       newBoostTimer = this.boostRespawnDelay;
     }
 
     return new FeedingFrenzy(respawnedPlayer, updatedFishList, updatedBoostList, newScore, newLives,
         respawnedSmallEaten, respawnedMediumEaten, respawnedTotalValue, won, lost, newMediumTimer,
-        newLargeTimer, newBoostTimer, newSpeedBoostTimer);
+        newLargeTimer, newBoostTimer, newSpeedBoostTimer, this.rng, this.grid);
   }
 
-  // handles collision with fish
+  // handles collision with fish, looking only at the fish in the player's grid neighborhood
+  // EFFECT: rebuilds the collision grid over the moved fish
   CollisionResult checkCollisions(PlayerFish newPlayer, IListFish newFish) {
-    return newFish.checkCollisions(newPlayer, 0, 0, false);
+    this.grid.rebuild(newFish);
+    return this.grid.checkCollisions(newPlayer);
   }
 
   // handles key events
@@ -941,7 +1266,7 @@ class FeedingFrenzy extends World implements IWorldConstants {
     return new FeedingFrenzy(newPlayer, this.allFish, this.allBoosts, this.score, this.lives,
         this.smallFishEaten, this.mediumFishEaten, this.totalFishValue, this.gameWon, this.gameLost,
         this.mediumRespawnTimer, this.largeRespawnTimer, this.boostRespawnTimer,
-        this.speedBoostTimer);
+        this.speedBoostTimer, this.rng, this.grid);
   }
 
   // handles key releases
@@ -959,7 +1284,613 @@ class FeedingFrenzy extends World implements IWorldConstants {
     return new FeedingFrenzy(newPlayer, this.allFish, this.allBoosts, this.score, this.lives,
         this.smallFishEaten, this.mediumFishEaten, this.totalFishValue, this.gameWon, this.gameLost,
         this.mediumRespawnTimer, this.largeRespawnTimer, this.boostRespawnTimer,
-        this.speedBoostTimer);
+        this.speedBoostTimer, this.rng, this.grid);
+  }
+}
+
+// represents a uniform spatial hash over one tick's fish, bucketing each fish by the grid
+// cell under its center so that a collision query only visits the player's neighborhood
+class FishGrid implements IWorldConstants {
+  IListFish list;
+  int cols;
+  int rows;
+  int count;
+  int maxSize;
+  IFish[] fish;
+  int[] cellOf;
+  int[] starts;
+  int[] next;
+  int[] order;
+  boolean[] eaten;
+  int[] hits;
+  int checked;
+
+  // creates an empty grid covering the world
+  FishGrid() {
+    this.list = new MtListFish();
+    this.cols = WORLD_WIDTH / GRID_CELL_SIZE + 1;
+    this.rows = WORLD_HEIGHT / GRID_CELL_SIZE + 1;
+    this.starts = new int[this.cols * this.rows + 1];
+    this.next = new int[this.cols * this.rows + 1];
+    this.fish = new IFish[0];
+    this.cellOf = new int[0];
+    this.order = new int[0];
+    this.eaten = new boolean[0];
+    this.hits = new int[0];
+  }
+
+  // creates a grid over the given fish
+  FishGrid(IListFish list) {
+    this();
+    this.rebuild(list);
+  }
+
+  // EFFECT: refills the grid with the given fish, keeping each bucket in list order and
+  // reusing the arrays of earlier ticks
+  void rebuild(IListFish list) {
+    this.list = list;
+    this.count = 0;
+    this.maxSize = 0;
+    this.checked = 0;
+    Arrays.fill(this.starts, 0);
+    list.addTo(this);
+    for (int c = 0; c < this.cols * this.rows; c++) {
+      this.starts[c + 1] += this.starts[c];
+    }
+    System.arraycopy(this.starts, 0, this.next, 0, this.starts.length);
+    for (int i = 0; i < this.count; i++) {
+      this.order[this.next[this.cellOf[i]]] = i;
+      this.next[this.cellOf[i]] += 1;
+    }
+    Arrays.fill(this.eaten, 0, this.count, false);
+  }
+
+  // EFFECT: appends a fish centered at (x, y) to the grid and counts it in its bucket
+  void add(IFish f, int x, int y, int size) {
+    if (this.count == this.fish.length) {
+      this.grow();
+    }
+    int cell = this.row(y) * this.cols + this.column(x);
+    this.fish[this.count] = f;
+    this.cellOf[this.count] = cell;
+    this.starts[cell + 1] += 1;
+    this.maxSize = Math.max(this.maxSize, size);
+    this.count += 1;
+  }
+
+  // EFFECT: doubles the room for fish
+  void grow() {
+    int room = Math.max(64, this.fish.length * 2);
+    this.fish = Arrays.copyOf(this.fish, room);
+    this.cellOf = Arrays.copyOf(this.cellOf, room);
+    this.order = new int[room];
+    this.eaten = new boolean[room];
+    this.hits = new int[room];
+  }
+
+  // returns the grid column holding x, clamping fish that swim past the edges
+  int column(double x) {
+    return Math.max(0, Math.min(this.cols - 1, (int) Math.floor(x / GRID_CELL_SIZE)));
+  }
+
+  // returns the grid row holding y, clamping fish that swim past the edges
+  int row(double y) {
+    return Math.max(0, Math.min(this.rows - 1, (int) Math.floor(y / GRID_CELL_SIZE)));
+  }
+
+  // returns the result of the player meeting the fish, with the same outcome as walking the
+  // whole list: edible fish are eaten in list order until one that can eat the player is met
+  // EFFECT: marks the eaten fish and counts the fish tested in checked
+  CollisionResult checkCollisions(PlayerFish player) {
+    double reach = this.maxSize * 0.25 + player.size * 0.25;
+    int firstCol = this.column(player.position.x - reach);
+    int lastCol = this.column(player.position.x + reach);
+    int firstRow = this.row(player.position.y - reach);
+    int lastRow = this.row(player.position.y + reach);
+    int found = 0;
+    for (int r = firstRow; r <= lastRow; r++) {
+      for (int c = firstCol; c <= lastCol; c++) {
+        int cell = r * this.cols + c;
+        for (int k = this.starts[cell]; k < this.starts[cell + 1]; k++) {
+          int i = this.order[k];
+          this.checked += 1;
+          if (this.fish[i].collidesWith(player)) {
+            this.hits[found] = i;
+            found += 1;
+          }
+        }
+      }
+    }
+    Arrays.sort(this.hits, 0, found);
+
+    int smallEaten = 0;
+    int mediumEaten = 0;
+    int lastEaten = -1;
+    for (int h = 0; h < found; h++) {
+      IFish f = this.fish[this.hits[h]];
+      if (f.canBeEatenBy(player)) {
+        this.eaten[this.hits[h]] = true;
+        smallEaten += f.countAsSmall();
+        mediumEaten += f.countAsMedium();
+        lastEaten = this.hits[h];
+      } else if (f.canEat(player)) {
+        return new CollisionResult(player, this.remaining(lastEaten), smallEaten, mediumEaten,
+            true);
+      }
+    }
+    return new CollisionResult(player, this.remaining(lastEaten), smallEaten, mediumEaten, false);
+  }
+
+  // returns the fish left after the marked ones are eaten, where lastEaten is the index of
+  // the last one marked, or -1 to return the same list
+  IListFish remaining(int lastEaten) {
+    if (lastEaten < 0) {
+      return this.list;
+    }
+    return this.list.withoutEaten(this, 0, lastEaten);
+  }
+}
+
+// represents the fish of a world stored as parallel primitive arrays, one slot per fish in
+// list order, which move in place each tick instead of being rebuilt as new objects
+class FishSchool implements IListFish {
+  int count;
+  int[] type;
+  double[] x;
+  double[] y;
+  double[] vx;
+  double[] vy;
+  int[] size;
+  double[] phase;
+  double[] speed;
+  int[] baseY;
+  double[] amplitude;
+  double[] frequency;
+  double[] offset;
+  int[] targetX;
+  int[] targetY;
+  long[] seed;
+  String[] imagePath;
+  WorldImage[] image;
+  SchoolFish[] views;
+
+  // creates an empty school
+  FishSchool() {
+    this.count = 0;
+    this.type = new int[0];
+    this.x = new double[0];
+    this.y = new double[0];
+    this.vx = new double[0];
+    this.vy = new double[0];
+    this.size = new int[0];
+    this.phase = new double[0];
+    this.speed = new double[0];
+    this.baseY = new int[0];
+    this.amplitude = new double[0];
+    this.frequency = new double[0];
+    this.offset = new double[0];
+    this.targetX = new int[0];
+    this.targetY = new int[0];
+    this.seed = new long[0];
+    this.imagePath = new String[0];
+    this.image = new WorldImage[0];
+    this.views = new SchoolFish[0];
+  }
+
+  // creates a school holding the given fish in list order
+  FishSchool(IListFish fish) {
+    this();
+    fish.enrollAll(this);
+  }
+
+  // EFFECT: grows every array to the given number of slots, keeping the current fish
+  void resize(int room) {
+    int built = this.views.length;
+    this.type = Arrays.copyOf(this.type, room);
+    this.x = Arrays.copyOf(this.x, room);
+    this.y = Arrays.copyOf(this.y, room);
+    this.vx = Arrays.copyOf(this.vx, room);
+    this.vy = Arrays.copyOf(this.vy, room);
+    this.size = Arrays.copyOf(this.size, room);
+    this.phase = Arrays.copyOf(this.phase, room);
+    this.speed = Arrays.copyOf(this.speed, room);
+    this.baseY = Arrays.copyOf(this.baseY, room);
+    this.amplitude = Arrays.copyOf(this.amplitude, room);
+    this.frequency = Arrays.copyOf(this.frequency, room);
+    this.offset = Arrays.copyOf(this.offset, room);
+    this.targetX = Arrays.copyOf(this.targetX, room);
+    this.targetY = Arrays.copyOf(this.targetY, room);
+    this.seed = Arrays.copyOf(this.seed, room);
+    this.imagePath = Arrays.copyOf(this.imagePath, room);
+    this.image = Arrays.copyOf(this.image, room);
+    this.views = Arrays.copyOf(this.views, room);
+    for (int i = built; i < room; i++) {
+      this.views[i] = new SchoolFish(this, i);
+    }
+  }
+
+  // EFFECT: makes sure there is a slot for one more fish
+  void makeRoom() {
+    if (this.count == this.views.length) {
+      this.resize(Math.max(64, this.views.length * 2));
+    }
+  }
+
+  // EFFECT: adds the given fish after the last one, if it is a fish that can swim in a
+  // school
+  void append(IFish fish) {
+    if (!(fish instanceof ISchoolFish)) {
+      throw new IllegalArgumentException("Only background and wave fish can join a school");
+    }
+    this.makeRoom();
+    ((ISchoolFish) fish).enroll(this, this.count);
+    this.count += 1;
+  }
+
+  // EFFECT: writes a wandering small fish into the given slot
+  void placeWanderer(int slot, double x, double y, int size, String imagePath, WorldImage image,
+      double speed, boolean direction, int targetX, int targetY, long seed) {
+    this.type[slot] = SMALL_FISH;
+    this.x[slot] = x;
+    this.y[slot] = y;
+    this.vx[slot] = direction ? speed : -speed;
+    this.vy[slot] = 0.0;
+    this.size[slot] = size;
+    this.speed[slot] = speed;
+    this.targetX[slot] = targetX;
+    this.targetY[slot] = targetY;
+    this.seed[slot] = seed;
+    this.imagePath[slot] = imagePath;
+    this.image[slot] = image;
+  }
+
+  // EFFECT: writes a wave-swimming fish of the given type into the given slot
+  void placeSwimmer(int slot, int type, int x, int y, int size, String imagePath,
+      WorldImage image, double speed, boolean direction, double amplitude, double frequency,
+      double phase, int baseY, double offset) {
+    this.type[slot] = type;
+    this.x[slot] = x;
+    this.y[slot] = y;
+    this.vx[slot] = direction ? speed : -speed;
+    this.vy[slot] = 0.0;
+    this.size[slot] = size;
+    this.speed[slot] = speed;
+    this.amplitude[slot] = amplitude;
+    this.frequency[slot] = frequency;
+    this.phase[slot] = phase;
+    this.baseY[slot] = baseY;
+    this.offset[slot] = offset;
+    this.imagePath[slot] = imagePath;
+    this.image[slot] = image;
+  }
+
+  // EFFECT: copies the fish in slot from over the fish in slot to
+  void copySlot(int from, int to) {
+    this.type[to] = this.type[from];
+    this.x[to] = this.x[from];
+    this.y[to] = this.y[from];
+    this.vx[to] = this.vx[from];
+    this.vy[to] = this.vy[from];
+    this.size[to] = this.size[from];
+    this.phase[to] = this.phase[from];
+    this.speed[to] = this.speed[from];
+    this.baseY[to] = this.baseY[from];
+    this.amplitude[to] = this.amplitude[from];
+    this.frequency[to] = this.frequency[from];
+    this.offset[to] = this.offset[from];
+    this.targetX[to] = this.targetX[from];
+    this.targetY[to] = this.targetY[from];
+    this.seed[to] = this.seed[from];
+    this.imagePath[to] = this.imagePath[from];
+    this.image[to] = this.image[from];
+  }
+
+  // draws every fish in the school onto the scene
+  public WorldScene drawFish(WorldScene scene) {
+    WorldScene drawn = scene;
+    for (int i = 0; i < this.count; i++) {
+      drawn = drawn.placeImageXY(this.draw(i), (int) this.x[i], (int) this.y[i]);
+    }
+    return drawn;
+  }
+
+  // returns the image of the fish in the given slot
+  WorldImage draw(int i) {
+    double scale = this.size[i] / 500.0;
+    if (this.vx[i] > 0) {
+      return new ScaleImageXY(this.image[i], -scale, scale);
+    }
+    return new ScaleImage(this.image[i], scale);
+  }
+
+  // moves every fish one tick and returns this school
+  // EFFECT: updates every slot in place
+  public IListFish moveAll() {
+    for (int i = 0; i < this.count; i++) {
+      this.move(i);
+    }
+    return this;
+  }
+
+  // moves every fish one tick, in parallel chunks once the school is big enough, and returns
+  // this school
+  // EFFECT: updates every slot in place
+  public IListFish moveAllParallel() {
+    if (this.count < PARALLEL_MOVE_THRESHOLD || ForkJoinPool.getCommonPoolParallelism() < 2) {
+      return this.moveAll();
+    }
+    ForkJoinPool.commonPool().invoke(new FishMoveTask(this.views, 0, this.count));
+    return this;
+  }
+
+  // EFFECT: stores the view of every slot in out, starting at the given index
+  public void fill(IFish[] out, int index) {
+    System.arraycopy(this.views, 0, out, index, this.count);
+  }
+
+  // EFFECT: moves the fish in the given slot one tick, the same way its fish object would
+  void move(int i) {
+    if (this.type[i] == SMALL_FISH) {
+      this.wander(i);
+    } else {
+      this.swim(i);
+    }
+  }
+
+  // EFFECT: moves a small fish one step toward its target, picking a new one on arrival
+  void wander(int i) {
+    double dx = this.targetX[i] - this.x[i];
+    double dy = this.targetY[i] - this.y[i];
+    if (dx * dx + dy * dy < TARGET_THRESHOLD * TARGET_THRESHOLD) {
+      SplittableRandom wander = new SplittableRandom(this.seed[i]);
+      this.targetX[i] = wander.nextInt(WORLD_WIDTH);
+      this.targetY[i] = wander.nextInt(WORLD_HEIGHT);
+      this.seed[i] = wander.nextLong();
+      dx = this.targetX[i] - this.x[i];
+      dy = this.targetY[i] - this.y[i];
+    }
+
+    double distance = Math.sqrt(dx * dx + dy * dy);
+    double cos = 1.0;
+    double sin = 0.0;
+    if (distance > 0) {
+      cos = dx / distance;
+      sin = dy / distance;
+    }
+    this.vx[i] = this.speed[i] * cos;
+    this.vy[i] = this.speed[i] * sin;
+
+    int s = this.size[i];
+    double newX = this.x[i] + this.vx[i];
+    if (newX < -s) {
+      newX = WORLD_WIDTH + s;
+    } else if (newX > WORLD_WIDTH + s) {
+      newX = -s;
+    }
+    this.x[i] = newX;
+    this.y[i] = Math.max(s / 2, Math.min(WORLD_HEIGHT - s / 2, this.y[i] + this.vy[i]));
+  }
+
+  // EFFECT: moves a medium or large fish one step along its wave
+  void swim(int i) {
+    int s = this.size[i];
+    int newX = (int) this.x[i] + (int) this.vx[i];
+    if (newX < -s) {
+      newX = WORLD_WIDTH + s;
+    } else if (newX > WORLD_WIDTH + s) {
+      newX = -s;
+    }
+    this.phase[i] += 0.12;
+    int newY = this.baseY[i]
+        + (int) (this.amplitude[i] * Math.sin(this.phase[i] * this.frequency[i] + this.offset[i]));
+    this.x[i] = newX;
+    this.y[i] = Math.max(s / 2, Math.min(WORLD_HEIGHT - s / 2, newY));
+  }
+
+  // returns the number of fish in the school
+  public int count() {
+    return this.count;
+  }
+
+  // counts the number of each type of fish in the school
+  public FishCount countTypes() {
+    int[] counts = new int[3];
+    for (int i = 0; i < this.count; i++) {
+      counts[this.type[i]] += 1;
+    }
+    return new FishCount(counts[SMALL_FISH], counts[MEDIUM_FISH], counts[LARGE_FISH]);
+  }
+
+  // checks every fish for a collision with the player, in slot order
+  // EFFECT: removes the eaten fish from the school
+  public CollisionResult checkCollisions(PlayerFish player, int smallEaten, int mediumEaten,
+      boolean playerEaten) {
+    int small = smallEaten;
+    int medium = mediumEaten;
+    boolean eaten = playerEaten;
+    int kept = 0;
+    for (int i = 0; i < this.count; i++) {
+      SchoolFish f = this.views[i];
+      boolean hit = !eaten && f.collidesWith(player);
+      if (hit && f.canBeEatenBy(player)) {
+        small += f.countAsSmall();
+        medium += f.countAsMedium();
+      } else {
+        if (hit && f.canEat(player)) {
+          eaten = true;
+        }
+        this.copySlot(i, kept);
+        kept += 1;
+      }
+    }
+    this.count = kept;
+    return new CollisionResult(player, this, small, medium, eaten);
+  }
+
+  // adds every fish's view to the grid, in slot order
+  public void addTo(FishGrid grid) {
+    for (int i = 0; i < this.count; i++) {
+      grid.add(this.views[i], (int) this.x[i], (int) this.y[i], this.size[i]);
+    }
+  }
+
+  // returns this school without the fish the grid marked as eaten
+  // EFFECT: closes the gaps the eaten fish leave, keeping slot order
+  public IListFish withoutEaten(FishGrid grid, int index, int lastEaten) {
+    int kept = 0;
+    for (int i = 0; i < this.count; i++) {
+      if (index + i > lastEaten || !grid.eaten[index + i]) {
+        this.copySlot(i, kept);
+        kept += 1;
+      }
+    }
+    this.count = kept;
+    return this;
+  }
+
+  // returns this school with the given fish in front
+  // EFFECT: shifts every fish back one slot
+  public IListFish spawn(ISchoolFish fish) {
+    this.makeRoom();
+    for (int i = this.count; i > 0; i--) {
+      this.copySlot(i - 1, i);
+    }
+    fish.enroll(this, 0);
+    this.count += 1;
+    return this;
+  }
+
+  // appends every fish in this school to the other school
+  public void enrollAll(FishSchool school) {
+    for (int i = 0; i < this.count; i++) {
+      school.append(this.fishAt(i));
+    }
+  }
+
+  // a school is not made of list nodes
+  public ConsListFish asCons() {
+    return null;
+  }
+
+  // returns a fish object holding the state of the given slot
+  ISchoolFish fishAt(int i) {
+    boolean direction = this.vx[i] > 0;
+    if (this.type[i] == SMALL_FISH) {
+      return new BackgroundFish(this.x[i], this.y[i], this.size[i], this.imagePath[i],
+          this.speed[i], new Vector<>(this.targetX[i], this.targetY[i]), direction, this.seed[i]);
+    } else if (this.type[i] == MEDIUM_FISH) {
+      return new MediumFish((int) this.x[i], (int) this.y[i], this.size[i], this.imagePath[i],
+          this.speed[i], direction, this.amplitude[i], this.frequency[i], this.phase[i],
+          this.baseY[i], this.offset[i]);
+    }
+    return new LargeFish((int) this.x[i], (int) this.y[i], this.size[i], this.imagePath[i],
+        this.speed[i], direction, this.amplitude[i], this.frequency[i], this.phase[i],
+        this.baseY[i], this.offset[i]);
+  }
+
+  // returns the fish of this school as a list of fish objects, in slot order
+  IListFish toList() {
+    IListFish list = new MtListFish();
+    for (int i = this.count - 1; i >= 0; i--) {
+      list = new ConsListFish(this.fishAt(i), list);
+    }
+    return list;
+  }
+}
+
+// represents one slot of a school as a fish, so the school's fish answer the same questions
+// as fish objects; a view always reads its slot, whichever fish is in it now
+class SchoolFish implements ISchoolFish {
+  FishSchool school;
+  int slot;
+
+  // creates the view of the given slot
+  SchoolFish(FishSchool school, int slot) {
+    this.school = school;
+    this.slot = slot;
+  }
+
+  // returns the image of the fish in the slot
+  public WorldImage draw() {
+    return this.school.draw(this.slot);
+  }
+
+  // moves the fish in the slot one tick and returns this view
+  // EFFECT: updates the slot in place
+  public IFish move() {
+    this.school.move(this.slot);
+    return this;
+  }
+
+  // returns if the fish in the slot is colliding with the player fish
+  public boolean collidesWith(PlayerFish player) {
+    double dx = (int) this.school.x[this.slot] - player.position.x;
+    double dy = (int) this.school.y[this.slot] - player.position.y;
+    double reach = this.school.size[this.slot] * 0.25 + player.size * 0.25;
+    return dx * dx + dy * dy < reach * reach;
+  }
+
+  // returns if the fish in the slot can be eaten by the player fish
+  public boolean canBeEatenBy(PlayerFish player) {
+    return player.size > this.school.size[this.slot];
+  }
+
+  // returns if the fish in the slot can eat the player fish
+  public boolean canEat(PlayerFish player) {
+    return this.school.size[this.slot] > player.size;
+  }
+
+  // returns 1 if the fish in the slot is a small fish
+  public int countAsSmall() {
+    return this.school.type[this.slot] == SMALL_FISH ? 1 : 0;
+  }
+
+  // returns 1 if the fish in the slot is a medium fish
+  public int countAsMedium() {
+    return this.school.type[this.slot] == MEDIUM_FISH ? 1 : 0;
+  }
+
+  // returns 1 if the fish in the slot is a large fish
+  public int countAsLarge() {
+    return this.school.type[this.slot] == LARGE_FISH ? 1 : 0;
+  }
+
+  // EFFECT: writes the fish in this slot into the given slot of the other school
+  public void enroll(FishSchool school, int slot) {
+    this.school.fishAt(this.slot).enroll(school, slot);
+  }
+}
+
+// represents a fork-join task that moves the fish from (inclusive) to (exclusive) one tick,
+// storing each moved fish back in its place; every fish draws only from its own wander seed,
+// so the result does not depend on how the work is split
+class FishMoveTask extends RecursiveAction implements IWorldConstants {
+  static final long serialVersionUID = 1L;
+  transient IFish[] fish;
+  int from;
+  int to;
+
+  // the constructor
+  FishMoveTask(IFish[] fish, int from, int to) {
+    this.fish = fish;
+    this.from = from;
+    this.to = to;
+  }
+
+  // moves this task's fish, splitting in half while there are too many
+  // EFFECT: replaces each fish in the range with its moved self
+  protected void compute() {
+    if (this.to - this.from <= MOVE_BATCH) {
+      for (int i = this.from; i < this.to; i++) {
+        this.fish[i] = this.fish[i].move();
+      }
+      return;
+    }
+    int middle = (this.from + this.to) / 2;
+    FishMoveTask left = new FishMoveTask(this.fish, this.from, middle);
+    left.fork();
+    new FishMoveTask(this.fish, middle, this.to).compute();
+    left.join();
   }
 }
 
@@ -1014,10 +1945,14 @@ class SpeedBoost implements IWorldConstants {
   Vector<Integer> position;
   double pulseTime;
 
-  // creates a speed boost at the given position with random pulse time
+  // creates a speed boost at the given position with a default pulse time
   SpeedBoost(int x, int y) {
-    this.position = new Vector<>(x, y);
-    this.pulseTime = R.nextDouble() * Math.PI * 2;
+    this(x, y, new SplittableRandom(DEFAULT_SEED));
+  }
+
+  // creates a speed boost at the given position with a pulse time drawn from rand
+  SpeedBoost(int x, int y, RandomGenerator rand) {
+    this(x, y, rand.nextDouble() * Math.PI * 2);
   }
 
   // creates a speed boost at the given position with specified pulse time
@@ -1049,10 +1984,10 @@ class SpeedBoost implements IWorldConstants {
 
   // checks if this boost collides with the given player
   boolean collidesWith(PlayerFish player) {
-    double distance = Math.sqrt(Math.pow(this.position.x - player.position.x, 2)
-        + Math.pow(this.position.y - player.position.y, 2));
-
-    return distance < (SPEED_BOOST_SIZE + player.size * 0.25);
+    double dx = this.position.x - player.position.x;
+    double dy = this.position.y - player.position.y;
+    double reach = SPEED_BOOST_SIZE + player.size * 0.25;
+    return dx * dx + dy * dy < reach * reach;
   } // tested
 }
 
@@ -1152,6 +2087,17 @@ class Main implements IWorldConstants {
         && t.checkExpect(fish3.countAsLarge(), 0);
   }
 
+  boolean testBackgroundFishWander(Tester t) {
+    BackgroundFish arrived = new BackgroundFish(100.0, 100.0, 30, f4, 2.0,
+        new Vector<>(100, 100), true, 42L);
+    BackgroundFish travelling = new BackgroundFish(100.0, 100.0, 30, f4, 2.0,
+        new Vector<>(500, 100), true, 42L);
+    BackgroundFish moved = arrived.move();
+    return t.checkExpect(moved.target, arrived.move().target)
+        && t.checkExpect(moved.seed == 42L, false)
+        && t.checkExpect(travelling.move().seed, 42L);
+  }
+
   // MediumFish tests
   boolean testMediumFishCountAsMedium(Tester t) {
     MediumFish fish1 = new MediumFish(100, 100, 60, f2, 3.0, true);
@@ -1361,6 +2307,193 @@ class Main implements IWorldConstants {
         && t.checkExpect(result3.playerEaten, true);
   }
 
+  boolean testFishGridBuckets(Tester t) {
+    BackgroundFish offLeft = new BackgroundFish(-100, 400, 30, f4, 2.0);
+    BackgroundFish corner = new BackgroundFish(10, 10, 30, f4, 2.0);
+    FishGrid grid = new FishGrid(new ConsListFish(this.large,
+        new ConsListFish(offLeft, new ConsListFish(corner, new MtListFish()))));
+    return t.checkExpect(grid.count, 3) && t.checkExpect(grid.maxSize, 100)
+        && t.checkExpect(grid.cellOf[0], 3 * grid.cols + 3)
+        && t.checkExpect(grid.cellOf[1], 6 * grid.cols)
+        && t.checkExpect(grid.cellOf[2], 0)
+        && t.checkExpect(grid.column(WORLD_WIDTH + 200), grid.cols - 1)
+        && t.checkExpect(grid.starts[grid.cols * grid.rows], 3);
+  }
+
+  boolean testFishGridCheckCollisions(Tester t) {
+    PlayerFish player = new PlayerFish(100, 100, 50, 5.0, 10.0, f1);
+    BackgroundFish near = new BackgroundFish(105, 100, 30, f4, 2.0);
+    BackgroundFish far = new BackgroundFish(900, 600, 30, f4, 2.0);
+    LargeFish eater = new LargeFish(100, 110, 100, f3, 2.0, true);
+    IListFish eatsFirst = new ConsListFish(this.small2, new ConsListFish(near,
+        new ConsListFish(eater, new ConsListFish(far, new MtListFish()))));
+    IListFish eaterFirst = new ConsListFish(eater, new ConsListFish(near, new MtListFish()));
+    IListFish untouched = new ConsListFish(far, new MtListFish());
+    FishGrid grid = new FishGrid(eatsFirst);
+    CollisionResult result = grid.checkCollisions(player);
+    return t.checkExpect(result, eatsFirst.checkCollisions(player, 0, 0, false))
+        && t.checkExpect(result.smallEaten, 2) && t.checkExpect(result.playerEaten, true)
+        && t.checkExpect(grid.checked, 3)
+        && t.checkExpect(new FishGrid(eaterFirst).checkCollisions(player),
+            eaterFirst.checkCollisions(player, 0, 0, false))
+        && t.checkExpect(new FishGrid(untouched).checkCollisions(player).fishList == untouched,
+            true);
+  }
+
+  boolean testFishGridMatchesList(Tester t) {
+    FeedingFrenzy game = new FeedingFrenzy(5);
+    IListFish crowd = game.createSF(0, 2000, game.allFish);
+    boolean same = true;
+    int checked = 0;
+    for (int i = 0; i < 40; i++) {
+      PlayerFish player = new PlayerFish(i * 37 % WORLD_WIDTH, i * 53 % WORLD_HEIGHT,
+          40 + i * 2, 5.0, 10.0, f1);
+      FishGrid grid = new FishGrid(crowd);
+      same = same && t.checkExpect(grid.checkCollisions(player),
+          crowd.checkCollisions(player, 0, 0, false));
+      checked += grid.checked;
+    }
+    return same && t.checkExpect(checked < 40 * crowd.count() / 10, true);
+  }
+
+  boolean testFishSchoolMove(Tester t) {
+    BackgroundFish arrived = new BackgroundFish(100.0, 100.0, 30, f4, 2.0,
+        new Vector<>(100, 100), true, 42L);
+    MediumFish leaving = new MediumFish(WORLD_WIDTH + 60, 400, 70, f2, 3.5, true);
+    LargeFish drifting = new LargeFish(-100, 60, 110, f3, 1.7, false);
+    IListFish fish = new ConsListFish(arrived, new ConsListFish(leaving,
+        new ConsListFish(drifting, new FeedingFrenzy(5).allFish)));
+    FishSchool school = new FishSchool(fish);
+    IListFish moved = fish;
+    for (int i = 0; i < 300; i++) {
+      moved = moved.moveAll();
+      school.moveAll();
+    }
+    return t.checkExpect(new FishSchool(fish).toList(), fish)
+        && t.checkExpect(school.count(), fish.count())
+        && t.checkExpect(school.toList(), moved)
+        && t.checkExpect(school.fishAt(0), ((ConsListFish) moved).first)
+        && t.checkExpect(school.views[1].move(), school.views[1]);
+  }
+
+  boolean testFishSchoolCollisions(Tester t) {
+    PlayerFish player = new PlayerFish(100, 100, 50, 5.0, 10.0, f1);
+    BackgroundFish near = new BackgroundFish(105, 100, 30, f4, 2.0);
+    LargeFish eater = new LargeFish(100, 110, 100, f3, 2.0, true);
+    IListFish fish = new ConsListFish(this.small2, new ConsListFish(near,
+        new ConsListFish(eater, new ConsListFish(this.medium, new MtListFish()))));
+    CollisionResult expected = fish.checkCollisions(player, 0, 0, false);
+    FishSchool walked = new FishSchool(fish);
+    CollisionResult walkedResult = walked.checkCollisions(player, 0, 0, false);
+    FishSchool gridded = new FishSchool(fish);
+    CollisionResult griddedResult = new FishGrid(gridded).checkCollisions(player);
+    return t.checkExpect(walked.toList(), expected.fishList)
+        && t.checkExpect(walkedResult.smallEaten, 2)
+        && t.checkExpect(walkedResult.playerEaten, true)
+        && t.checkExpect(gridded.toList(), expected.fishList)
+        && t.checkExpect(griddedResult.fishList == gridded, true)
+        && t.checkExpect(griddedResult.smallEaten, 2)
+        && t.checkExpect(gridded.views[0].canEat(player), true)
+        && t.checkExpect(gridded.views[0].countAsLarge(), 1);
+  }
+
+  boolean testFishSchoolSpawn(Tester t) {
+    WorldScene emptyScene = new WorldScene(1200, 800);
+    FishSchool school = new FishSchool(this.list3);
+    IListFish spawned = school.spawn(this.large);
+    return t.checkExpect(spawned == school, true)
+        && t.checkExpect(school.toList(), this.list3.spawn(this.large))
+        && t.checkExpect(school.countTypes(), new FishCount(2, 1, 1))
+        && t.checkExpect(school.drawFish(emptyScene),
+            this.list3.spawn(this.large).drawFish(emptyScene))
+        && t.checkExpect(new FishSchool(school).toList(), school.toList())
+        && t.checkException(
+            new IllegalArgumentException("Only background and wave fish can join a school"),
+            school, "append", new PlayerFish(100, 100, 50, 5.0, BASE_MASS, f1));
+  }
+
+  boolean testFeedingFrenzySchooled(Tester t) {
+    FeedingFrenzy listed = new FeedingFrenzy(17, false);
+    FeedingFrenzy schooled = new FeedingFrenzy(17, true);
+    boolean backends = t.checkExpect(listed.allFish instanceof FishSchool, false)
+        && t.checkExpect(schooled.allFish instanceof FishSchool, true)
+        && t.checkExpect(((FishSchool) schooled.allFish).toList(), listed.allFish)
+        && t.checkExpect(new FeedingFrenzy(17).allFish, listed.allFish)
+        && t.checkExpect(new FeedingFrenzy().allFish instanceof FishSchool, true);
+    for (int i = 0; i < 600; i++) {
+      listed = (FeedingFrenzy) listed.onTick();
+      schooled = (FeedingFrenzy) schooled.onTick();
+    }
+    return backends
+        && t.checkExpect(((FishSchool) schooled.allFish).toList(), listed.allFish)
+        && t.checkExpect(schooled.score, listed.score)
+        && t.checkExpect(schooled.lives, listed.lives)
+        && t.checkExpect(new FeedingFrenzy().allFish.count(), SF_COUNT + MF_COUNT + LF_COUNT);
+  }
+
+  boolean testFishMoveTask(Tester t) {
+    IFish[] fish = new IFish[] { this.small1, this.medium, this.large, this.small2 };
+    ForkJoinPool.commonPool().invoke(new FishMoveTask(fish, 1, 3));
+    return t.checkExpect(fish[0], this.small1) && t.checkExpect(fish[1], this.medium.move())
+        && t.checkExpect(fish[2], this.large.move()) && t.checkExpect(fish[3], this.small2);
+  }
+
+  boolean testLongFishList(Tester t) {
+    IListFish crowd = new MtListFish();
+    for (int i = 0; i < 200000; i++) {
+      crowd = new ConsListFish(this.small1, crowd);
+    }
+    FishGrid grid = new FishGrid(crowd);
+    grid.eaten[5] = true;
+    grid.eaten[150000] = true;
+    IListFish kept = crowd.withoutEaten(grid, 0, 150000);
+    return t.checkExpect(crowd.count(), 200000)
+        && t.checkExpect(crowd.countTypes(), new FishCount(200000, 0, 0))
+        && t.checkExpect(kept.count(), 199998)
+        && t.checkExpect(crowd.moveAllParallel().count(), 200000)
+        && t.checkExpect(new FishSchool(crowd).count, 200000);
+  }
+
+  boolean testMoveAllParallel(Tester t) {
+    FeedingFrenzy game = new FeedingFrenzy(11);
+    IListFish crowd = game.createMF(0, 200, game.createSF(0, PARALLEL_MOVE_THRESHOLD,
+        game.allFish));
+    FishSchool school = new FishSchool(crowd);
+    FishSchool split = new FishSchool(crowd);
+    FishSchool small = new FishSchool(this.list3);
+    IListFish moved = crowd;
+    for (int i = 0; i < 50; i++) {
+      moved = moved.moveAll();
+      school.moveAllParallel();
+      ForkJoinPool.commonPool().invoke(new FishMoveTask(split.views, 0, split.count));
+    }
+    return t.checkExpect(this.list3.moveAllParallel(), this.list3.moveAll())
+        && t.checkExpect(split.toList(), moved)
+        && t.checkExpect(new MtListFish().moveAllParallel(), new MtListFish())
+        && t.checkExpect(small.moveAllParallel() == small, true)
+        && t.checkExpect(crowd.moveAllParallel(), crowd.moveAll())
+        && t.checkExpect(school.toList(), moved);
+  }
+
+  boolean testRandomService(Tester t) {
+    RandomService first = new RandomService(7);
+    RandomService second = new RandomService(7);
+    RandomService other = new RandomService(8);
+    long spawn = first.stream(RNG_SPAWNS).nextLong();
+    return t.checkExpect(second.stream(RNG_SPAWNS).nextLong(), spawn)
+        && t.checkExpect(first.stream(RNG_MOTION).nextLong() == spawn, false)
+        && t.checkExpect(other.stream(RNG_SPAWNS).nextLong() == spawn, false);
+  }
+
+  boolean testFeedingFrenzySeeded(Tester t) {
+    FeedingFrenzy game1 = new FeedingFrenzy(99);
+    FeedingFrenzy game2 = new FeedingFrenzy(99);
+    FeedingFrenzy game3 = new FeedingFrenzy(100);
+    return t.checkExpect(game1.allFish, game2.allFish)
+        && t.checkExpect(game1.allBoosts, game2.allBoosts)
+        && t.checkFail(game1.allFish, game3.allFish);
+  }
+
   // Fish draw() tests
   boolean testFishDraw(Tester t) {
     BackgroundFish fish1 = new BackgroundFish(100, 100, 30, f4, 2.0);
@@ -1,6 +1,23 @@
 import tester.Tester;
 import java.awt.Color;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.random.RandomGenerator;
 import javalib.impworld.*;
 import javalib.worldimages.*;
 
@@ -9,6 +26,8 @@ interface IWorldConstants {
   // Cell sizes
   int DEFAULT_CELL_SIZE = 30;
   int MIN_CELL_SIZE = 15;
+  int MAX_CELL_SIZE = 60;
+  int ZOOM_STEP = 5;
 
   // Board dimensions
   int BOARD_PADDING = 50;
@@ -50,6 +69,7 @@ interface IWorldConstants {
   // UI colors
   Color BUTTON_COLOR = new Color(70, 130, 180);
   Color BUTTON_TEXT = Color.WHITE;
+  Color BUTTON_HOVER = new Color(100, 160, 210);
   Color SLIDER_TRACK = new Color(200, 200, 200);
   Color SLIDER_THUMB = new Color(70, 130, 180);
   Color BACKGROUND = new Color(240, 240, 240);
@@ -67,17 +87,132 @@ interface IWorldConstants {
   int HARD_HEIGHT = 16;
   int HARD_MINES = 99;
 
-  Random R = new Random(123);
+  // Boards with at least this many cells use the packed FlatBoard layout
+  int FLAT_BOARD_THRESHOLD = 10000;
+
+  // Packed cell layout used by FlatBoard
+  int ADJACENT_MASK = 0x0F;
+  int MINE_BIT = 0x10;
+  int REVEALED_BIT = 0x20;
+  int FLAGGED_BIT = 0x40;
+
+  // Sprite keys used by SpriteAtlas (numbers use SPRITE_NUMBER + count)
+  int SPRITE_HIDDEN = 0;
+  int SPRITE_FLAGGED = 1;
+  int SPRITE_MINE = 2;
+  int SPRITE_EXPLODED = 3;
+  int SPRITE_NUMBER = 4;
+  int SPRITE_COUNT = 13;
+
+  // Solver limits: larger frontier components fall back to local estimates
+  int SOLVER_MAX_COMPONENT = 64;
+  int SOLVER_NODE_BUDGET = 200000;
+
+  // What the solver knows about each cell
+  int SOLVER_UNKNOWN = 0;
+  int SOLVER_REVEALED = 1;
+  int SOLVER_SAFE = 2;
+  int SOLVER_MINE = 3;
+
+  // Endless mode: the world is cut into CHUNK_SIZE x CHUNK_SIZE chunks
+  // (CHUNK_SIZE = 1 << CHUNK_SHIFT), of which at least CHUNK_CACHE_SIZE stay
+  // in memory
+  int CHUNK_SHIFT = 6;
+  int CHUNK_SIZE = 64;
+  int CHUNK_CACHE_SIZE = 16;
+  int ENDLESS_WIDTH = 40;
+  int ENDLESS_HEIGHT = 22;
+  double ENDLESS_DENSITY = 0.16;
+  int ENDLESS_FLOOD_RADIUS = 128;
+  int PAN_STEP = 8;
+
+  // Save files: a REPLAY_HEADER byte header, one bit per cell for the mines,
+  // then one int per event (cell index << 2 | event code)
+  int REPLAY_MAGIC = 0x4D535731;
+  int REPLAY_HEADER = 32;
+  int EVENT_LEFT = 0;
+  int EVENT_RIGHT = 1;
+  int EVENT_MIDDLE = 2;
+  int EVENT_HINT = 3;
+  String SAVE_FILE = "minesweeper-save.bin";
+
+  // Games each simulation task plays before it stops splitting
+  int SIMULATION_BATCH = 16;
+
+  // Seed used where no game-specific seed is given, and the independent
+  // random streams each RandomService hands out
+  long DEFAULT_SEED = 123;
+  int RNG_BOARD = 0;
+  int RNG_HINTS = 1;
+  int RNG_PLAYER = 2;
+  int RNG_GAMES = 3;
+  int RNG_STREAMS = 4;
+
+  // Boards each no-guess generator keeps ready
+  int PUZZLE_QUEUE = 8;
+
+  // Frames FrameStats remembers, and where it writes them as CSV
+  int FRAME_HISTORY = 1024;
+  String STATS_FILE = "minesweeper-frames.csv";
+
+  // Probability heatmap: how many shades it has between safe (green) and
+  // mine (red), and how opaque they are
+  int HEATMAP_SHADES = 21;
+  int HEATMAP_ALPHA = 120;
+
+  // Largest boards the benchmarks build out of Cell objects
+  int BENCH_MAX_CELL_OBJECTS = 1000000;
+
+  // Shared-board server: how a cell looks to players (0 to 8 are open cells
+  // with that many mines around them), the headers of messages that carry
+  // no cells, and the starting size of each player's buffers
+  int VIEW_HIDDEN = 9;
+  int VIEW_FLAGGED = 10;
+  int VIEW_MINE = 11;
+  int MESSAGE_SYNC = -1;
+  int MESSAGE_RESET = -2;
+  int SERVER_BUFFER = 16 * 1024;
+
+  // Side of the square buckets WidgetLayer sorts widgets into
+  int WIDGET_GRID = 64;
+
+  // Game states, used as indices into MineSweeper's table of state handlers
+  int MENU = 0;
+  int CUSTOM_SETUP = 1;
+  int PLAYING = 2;
+  int GAME_OVER = 3;
+  int STATE_COUNT = 4;
+}
+
+// represents something that is told when the game on a board ends
+interface IGameListener {
+  // EFFECT: Reacts to the game on a board being won or lost
+  void endGame(boolean won);
+}
+
+// represents a game played without the javalib world, which only remembers
+// how it ended
+class HeadlessGame implements IGameListener {
+  boolean ended;
+  boolean won;
 
-  // Game states
-  String MENU = "MENU";
-  String CUSTOM_SETUP = "CUSTOM_SETUP";
-  String PLAYING = "PLAYING";
-  String GAME_OVER = "GAME_OVER";
+  // the constructor
+  HeadlessGame() {
+    this.ended = false;
+    this.won = false;
+  }
+
+  // records the end of the game
+  // EFFECT: Sets ended and won
+  public void endGame(boolean won) {
+    this.ended = true;
+    this.won = won;
+  }
 }
 
-// represents the game board
-class Board implements IWorldConstants {
+// represents a game board of any storage layout, addressed by cell index
+// (index = row * width + col)
+abstract class ABoard implements IWorldConstants {
   int width;
   int height;
   int mineCount;
@@ -86,12 +221,22 @@ class Board implements IWorldConstants {
   int cellSize;
   int offsetX;
   int offsetY;
-  ArrayList<ArrayList<Cell>> cells;
-  MineSweeper game;
-
-  // the constructor initializes the board with given dimensions and mine count
-  Board(int width, int height, int mineCount,
-      MineSweeper game, int cellSize, int offsetX, int offsetY) {
+  IGameListener game;
+  RandomGenerator rand;
+  RandomGenerator hintRand;
+  boolean exploded;
+  boolean minesPlaced;
+  CellSet hiddenMines;
+  GameRecorder recorder;
+  CellSet changedCells;
+  IndexQueue floodQueue;
+  Camera camera;
+  BoardRenderer renderer;
+  long changes;
+
+  // the constructor shows the whole board until fitView is given a window
+  ABoard(int width, int height, int mineCount,
+      IGameListener game, int cellSize, int offsetX, int offsetY, RandomService rng) {
     this.width = width;
     this.height = height;
     this.mineCount = mineCount;
@@ -100,250 +245,343 @@ class Board implements IWorldConstants {
     this.cellSize = cellSize;
     this.offsetX = offsetX;
     this.offsetY = offsetY;
-    this.cells = new ArrayList<>();
     this.game = game;
-    initializeBoard();
+    this.rand = rng.stream(RNG_BOARD);
+    this.hintRand = rng.stream(RNG_HINTS);
+    this.exploded = false;
+    this.minesPlaced = false;
+    this.hiddenMines = new CellSet(width * height);
+    this.recorder = null;
+    this.changedCells = null;
+    this.floodQueue = new IndexQueue(2 * (width + height) + 8);
+    this.camera = new Camera(width, height, cellSize, width * cellSize, height * cellSize);
+    this.changes = 0;
   }
 
-  // initializes the board with cells and mines
-  // EFFECT: Creates cells, links neighbors, places mines, and counts adjacent
-  // mines
-  void initializeBoard() {
-    // Create cells
-    for (int row = 0; row < height; row++) {
-      ArrayList<Cell> rowCells = new ArrayList<>();
-      for (int col = 0; col < width; col++) {
-        rowCells.add(new Cell(col, row, this, cellSize, offsetX, offsetY));
-      }
-      cells.add(rowCells);
+  // is the cell at the given index a mine?
+  abstract boolean isMineAt(int index);
+
+  // is the cell at the given index revealed?
+  abstract boolean isRevealedAt(int index);
+
+  // is the cell at the given index flagged?
+  abstract boolean isFlaggedAt(int index);
+
+  // counts the mines next to the cell at the given index
+  abstract int adjacentMinesAt(int index);
+
+  // marks the cell at the given index as revealed, unless it is already
+  // revealed or flagged
+  // EFFECT: Sets the cell's revealed state; returns whether it changed
+  abstract boolean markRevealed(int index);
+
+  // toggles the flag on the cell at the given index
+  // EFFECT: Flags or unflags the cell if it is not revealed
+  abstract void toggleFlagAt(int index);
+
+  // finds the REVEALED_BIT and FLAGGED_BIT of the cell at the given index
+  int lookAt(int index) {
+    int bits = 0;
+    if (isRevealedAt(index)) {
+      bits |= REVEALED_BIT;
+    }
+    if (isFlaggedAt(index)) {
+      bits |= FLAGGED_BIT;
     }
+    return bits;
+  }
 
-    // Link neighbors
-    for (int row = 0; row < height; row++) {
-      for (int col = 0; col < width; col++) {
-        Cell cell = cells.get(row).get(col);
-        linkNeighbors(cell, row, col);
+  // reveals all cells (for game over)
+  // EFFECT: Reveals all cells, forcing mines to show
+  abstract void revealAll();
+
+  // flags a random unflagged mine
+  // EFFECT: Flags a random mine that is not already flagged
+  abstract void flagRandomMine();
+
+  // keeps hiddenMines in step with the cell at the given index, after the
+  // cell has changed
+  // EFFECT: Adds the cell to hiddenMines if it is a mine that is neither
+  // revealed nor flagged, and removes it otherwise
+  void updateMineIndex(int index) {
+    if (hiddenMines != null) {
+      if (isMineAt(index) && !isRevealedAt(index) && !isFlaggedAt(index)) {
+        hiddenMines.add(index);
+      } else {
+        hiddenMines.remove(index);
       }
     }
+  }
 
-    // Place mines
-    ArrayList<Cell> allCells = new ArrayList<>();
-    for (ArrayList<Cell> row : cells) {
-      allCells.addAll(row);
+  // does the player know how many mines this board holds? (the solver needs
+  // the count to turn what it sees into probabilities)
+  boolean knowsMineCount() {
+    return true;
+  }
+
+  // moves the visible part of the board by the given number of cells,
+  // stopping at its edges
+  // EFFECT: Moves the camera and repaints the whole view
+  void pan(int dx, int dy) {
+    camera.pan(dx, dy);
+    if (renderer != null) {
+      renderer.markAllDirty();
     }
+  }
 
-    Collections.shuffle(allCells, R);
-    for (int i = 0; i < mineCount && i < allCells.size(); i++) {
-      allCells.get(i).placeMine();
+  // makes the cells bigger or smaller by the given number of pixels, keeping
+  // the middle of the view in place
+  // EFFECT: Changes the cell size and drops the renderer, whose sprites and
+  // canvas were drawn at the old size
+  void zoom(int step) {
+    if (camera.zoom(cellSize + step, camera.width() / 2, camera.height() / 2)) {
+      cellSize = camera.cellSize;
+      renderer = null;
     }
+  }
 
-    // Count adjacent mines
-    for (ArrayList<Cell> row : cells) {
-      for (Cell cell : row) {
-        cell.countAdjacentMines();
-      }
+  // limits the view to the given number of pixels
+  // EFFECT: Refits the camera and drops the renderer
+  void fitView(int maxWidth, int maxHeight) {
+    camera.maxWidth = maxWidth;
+    camera.maxHeight = maxHeight;
+    camera.fit();
+    renderer = null;
+  }
+
+  // frees anything this board holds outside the heap once it is done with
+  // EFFECT: None for boards that live only in memory
+  void release() {
+  }
+
+  // records that the cell at the given index is about to change how it looks
+  // EFFECT: Marks the cell dirty so the renderer repaints it next frame, counts
+  // the change, and adds it to changedCells if something is collecting changes
+  void touch(int index) {
+    changes++;
+    if (renderer != null) {
+      renderer.markDirty(index);
+    }
+    if (changedCells != null) {
+      changedCells.add(index);
     }
   }
 
-  // links a cell to its neighbors
-  // EFFECT: Adds neighboring cells to the cell's neighbor list
-  void linkNeighbors(Cell cell, int row, int col) {
-    for (int dr = -1; dr <= 1; dr++) {
-      for (int dc = -1; dc <= 1; dc++) {
-        if (dr == 0 && dc == 0) {
-          continue;
-        }
-        int newRow = row + dr;
-        int newCol = col + dc;
-        if (newRow >= 0 && newRow < height && newCol >= 0 && newCol < width) {
-          cell.addNeighbor(cells.get(newRow).get(newCol));
-        }
-      }
+  // returns how the cell at the given index looks to a player: its count
+  // once open, VIEW_MINE for an open mine, VIEW_FLAGGED or VIEW_HIDDEN
+  int viewAt(int index) {
+    if (isRevealedAt(index)) {
+      return isMineAt(index) ? VIEW_MINE : adjacentMinesAt(index);
+    } else if (isFlaggedAt(index)) {
+      return VIEW_FLAGGED;
+    } else {
+      return VIEW_HIDDEN;
     }
   }
 
+  // finds the index of the cell under the given position, or -1 if the
+  // position is outside the board
+  int indexAt(Posn pos) {
+    return camera.indexAt(pos.x - offsetX, pos.y - offsetY);
+  }
+
   // handles click on board
   // EFFECT: Reveals a cell or toggles flag based on mouse click
   void handleClick(Posn pos, String button) {
-    int col = (pos.x - offsetX) / cellSize;
-    int row = (pos.y - offsetY) / cellSize;
+    int index = indexAt(pos);
 
-    if (row >= 0 && row < height && col >= 0 && col < width) {
+    if (index >= 0) {
       if (button.equals("LeftButton")) {
-        cells.get(row).get(col).reveal();
+        record(index, EVENT_LEFT);
+        revealAt(index);
       } else if (button.equals("RightButton")) {
-        cells.get(row).get(col).toggleFlag();
+        record(index, EVENT_RIGHT);
+        toggleFlagAt(index);
+      } else if (button.equals("MiddleButton")) {
+        record(index, EVENT_MIDDLE);
+        chordAt(index);
       }
     }
   }
 
-  // reveals all cells (for game over)
-  // EFFECT: Reveals all cells, forcing mines to show
-  void revealAll() {
-    for (ArrayList<Cell> row : cells) {
-      for (Cell cell : row) {
-        cell.forceReveal();
-      }
+  // records a player action, if this board is being recorded
+  // EFFECT: Appends the event to the recorder's log
+  void record(int index, int code) {
+    if (recorder != null) {
+      recorder.record(index, code);
     }
   }
 
-  // called when a cell is revealed
-  // EFFECT: Updates game state based on revealed cell
-  void onCellRevealed(boolean wasMine) {
-    if (wasMine) {
-      game.endGame(false);
-    } else {
-      cellsRevealed++;
-      if (cellsRevealed >= totalSafeCells) {
-        game.endGame(true);
-      }
+  // applies a recorded player action
+  // EFFECT: Reveals, flags or hints as the event says
+  void apply(int index, int code) {
+    if (code == EVENT_LEFT) {
+      revealAt(index);
+    } else if (code == EVENT_RIGHT) {
+      toggleFlagAt(index);
+    } else if (code == EVENT_MIDDLE) {
+      chordAt(index);
+    } else if (code == EVENT_HINT) {
+      flagRandomMine();
     }
   }
 
-  // draws the board onto the scene
-  // EFFECT: Draws the board background and all cells
-  void drawOnto(WorldScene scene) {
-    int boardWidth = width * cellSize;
-    int boardHeight = height * cellSize;
-    WorldImage boardBorder = new RectangleImage(boardWidth + 4, boardHeight + 4,
-        OutlineMode.SOLID, Color.DARK_GRAY);
-    WorldImage boardBg = new RectangleImage(boardWidth, boardHeight,
-        OutlineMode.SOLID, Color.WHITE);
-    scene.placeImageXY(boardBorder, offsetX + boardWidth / 2, offsetY + boardHeight / 2);
-    scene.placeImageXY(boardBg, offsetX + boardWidth / 2, offsetY + boardHeight / 2);
+  // reveals the cell at the given index
+  // EFFECT: Reveals the cell and, if it has no adjacent mines, flood fills the
+  // whole empty region breadth-first through floodQueue, then reports every
+  // revealed cell to the game at once
+  void revealAt(int index) {
+    if (!markRevealed(index)) {
+      return;
+    }
+    if (isMineAt(index)) {
+      onCellRevealed(true);
+      return;
+    }
 
-    // Draw cells
-    for (ArrayList<Cell> row : cells) {
-      for (Cell cell : row) {
-        cell.drawOnto(scene);
-      }
+    floodQueue.clear();
+    if (adjacentMinesAt(index) == 0) {
+      floodQueue.add(index);
     }
+    onCellsRevealed(1 + flood());
   }
 
-  // flags a random unflagged mine
-  // EFFECT: Flags a random mine that is not already flagged
-  void flagRandomMine() {
-    ArrayList<Cell> unflaggedMines = new ArrayList<>();
-
-    // Collect all unflagged mines
-    for (ArrayList<Cell> row : cells) {
-      for (Cell cell : row) {
-        cell.addToListIfUnflaggedMine(unflaggedMines);
+  // opens the hidden neighbors of an open number once as many of them are
+  // flagged as the number says (a chord). All the neighbors seed one flood
+  // fill, and the game hears about the whole batch once
+  // EFFECT: Reveals the unflagged neighbors and the empty regions behind
+  // them, ending the game if one of them was a mine
+  void chordAt(int index) {
+    if (!isRevealedAt(index) || isMineAt(index)
+        || flagsAround(index) != adjacentMinesAt(index)) {
+      return;
+    }
+    int row = index / width;
+    int col = index % width;
+    int revealed = 0;
+    boolean hitMine = false;
+    floodQueue.clear();
+    for (int dr = -1; dr <= 1; dr++) {
+      for (int dc = -1; dc <= 1; dc++) {
+        int newRow = row + dr;
+        int newCol = col + dc;
+        if (newRow >= 0 && newRow < height && newCol >= 0 && newCol < width) {
+          int neighbor = newRow * width + newCol;
+          if (markRevealed(neighbor)) {
+            if (isMineAt(neighbor)) {
+              hitMine = true;
+            } else {
+              revealed++;
+              if (adjacentMinesAt(neighbor) == 0) {
+                floodQueue.add(neighbor);
+              }
+            }
+          }
+        }
       }
     }
-
-    // Flag a random one if any exist
-    if (!unflaggedMines.isEmpty()) {
-      int randomIndex = R.nextInt(unflaggedMines.size());
-      unflaggedMines.get(randomIndex).setFlag();
+    revealed += flood();
+    if (hitMine) {
+      onCellRevealed(true);
+    } else if (revealed > 0) {
+      onCellsRevealed(revealed);
     }
   }
 
-}
-
-// represents a single cell in the game
-class Cell implements IWorldConstants {
-  int x;
-  int y;
-  boolean isMine;
-  boolean isRevealed;
-  boolean isFlagged;
-  int adjacentMines;
-  ArrayList<Cell> neighbors;
-  Board board;
-  int cellSize;
-  int offsetX;
-  int offsetY;
-
-  // the constructor
-  Cell(int x, int y, Board board, int cellSize, int offsetX, int offsetY) {
-    this.x = x;
-    this.y = y;
-    this.board = board;
-    this.cellSize = cellSize;
-    this.offsetX = offsetX;
-    this.offsetY = offsetY;
-    this.isMine = false;
-    this.isRevealed = false;
-    this.isFlagged = false;
-    this.adjacentMines = 0;
-    this.neighbors = new ArrayList<>();
-  }
-
-  // adds a neighbor to this cell
-  // EFFECT: Adds a neighboring cell to this cell's neighbor list
-  void addNeighbor(Cell neighbor) {
-    this.neighbors.add(neighbor);
-  }
-
-  // places a mine in this cell
-  // EFFECT: Marks this cell as a mine
-  void placeMine() {
-    this.isMine = true;
-  }
-
-  // counts adjacent mines
-  // EFFECT: Increments adjacent mine count for each neighboring mine
-  void countAdjacentMines() {
-    if (!isMine) {
-      for (Cell neighbor : neighbors) {
-        neighbor.addToCountIfMine(this);
+  // counts the flagged cells around the cell at the given index
+  int flagsAround(int index) {
+    int row = index / width;
+    int col = index % width;
+    int flags = 0;
+    for (int dr = -1; dr <= 1; dr++) {
+      for (int dc = -1; dc <= 1; dc++) {
+        int newRow = row + dr;
+        int newCol = col + dc;
+        if ((dr != 0 || dc != 0) && newRow >= 0 && newRow < height
+            && newCol >= 0 && newCol < width && isFlaggedAt(newRow * width + newCol)) {
+          flags++;
+        }
       }
     }
+    return flags;
   }
 
-  // helper for double dispatch pattern
-  // EFFECT: Increments the adjacent mine count of the asking cell if this cell is
-  // a mine
-  void addToCountIfMine(Cell asking) {
-    if (this.isMine) {
-      asking.incrementAdjacentMines();
+  // opens the empty regions around every cell in floodQueue breadth-first
+  // and returns how many cells it opened
+  // EFFECT: Reveals cells and empties floodQueue
+  int flood() {
+    int revealed = 0;
+    while (!floodQueue.isEmpty()) {
+      int current = floodQueue.remove();
+      int row = current / width;
+      int col = current % width;
+      for (int dr = -1; dr <= 1; dr++) {
+        for (int dc = -1; dc <= 1; dc++) {
+          int newRow = row + dr;
+          int newCol = col + dc;
+          if (newRow >= 0 && newRow < height && newCol >= 0 && newCol < width) {
+            int neighbor = newRow * width + newCol;
+            if (markRevealed(neighbor)) {
+              revealed++;
+              if (adjacentMinesAt(neighbor) == 0) {
+                floodQueue.add(neighbor);
+              }
+            }
+          }
+        }
+      }
     }
+    return revealed;
   }
 
-  // increments adjacent mine count
-  // EFFECT: Increments the count of adjacent mines for this cell
-  void incrementAdjacentMines() {
-    this.adjacentMines++;
+  // called when a cell is revealed
+  // EFFECT: Updates game state based on revealed cell
+  void onCellRevealed(boolean wasMine) {
+    if (wasMine) {
+      exploded = true;
+      game.endGame(false);
+    } else {
+      onCellsRevealed(1);
+    }
   }
 
-  // reveals this cell
-  // EFFECT: Reveals the cell, updates game state, and performs flood fill if
-  // necessary
-  void reveal() {
-    if (!isRevealed && !isFlagged) {
-      isRevealed = true;
-      board.onCellRevealed(isMine);
-
-      if (!isMine && adjacentMines == 0) {
-        // Flood fill
-        for (Cell neighbor : neighbors) {
-          neighbor.reveal();
-        }
-      }
+  // called when a batch of safe cells has been revealed
+  // EFFECT: Adds to the revealed count and ends the game once every safe cell
+  // is showing
+  void onCellsRevealed(int count) {
+    cellsRevealed += count;
+    if (cellsRevealed >= totalSafeCells) {
+      game.endGame(true);
     }
   }
 
-  // force reveals (for game over)
-  // EFFECT: Forces this cell to be revealed regardless of its current state
-  void forceReveal() {
-    isRevealed = true;
-  }
+  // draws the board onto the scene
+  // EFFECT: Draws the board background and the cells in the camera's view
+  void drawOnto(WorldScene scene) {
+    int boardWidth = camera.width();
+    int boardHeight = camera.height();
+    WorldImage boardBorder = new RectangleImage(boardWidth + 4, boardHeight + 4,
+        OutlineMode.SOLID, Color.DARK_GRAY);
+    WorldImage boardBg = new RectangleImage(boardWidth, boardHeight,
+        OutlineMode.SOLID, Color.WHITE);
+    scene.placeImageXY(boardBorder, offsetX + boardWidth / 2, offsetY + boardHeight / 2);
+    scene.placeImageXY(boardBg, offsetX + boardWidth / 2, offsetY + boardHeight / 2);
 
-  // toggles flag on this cell
-  // EFFECT: Toggles the flagged state of this cell if it is not revealed
-  void toggleFlag() {
-    if (!isRevealed) {
-      isFlagged = !isFlagged;
+    // Only the cells touched since the last frame are recomposed
+    if (renderer == null) {
+      renderer = new BoardRenderer(this);
     }
+    scene.placeImageXY(renderer.render(), offsetX + boardWidth / 2, offsetY + boardHeight / 2);
   }
 
-  // draws this cell onto the scene
-  // EFFECT: Draws the cell with appropriate graphics based on its state
-  void drawOnto(WorldScene scene) {
-    int centerX = offsetX + x * cellSize + cellSize / 2;
-    int centerY = offsetY + y * cellSize + cellSize / 2;
+  // should revealed mines be drawn on the red background of a lost game?
+  boolean showExploded() {
+    return exploded;
+  }
 
+  // builds the image of a single cell in the given state
+  WorldImage cellImage(boolean isRevealed, boolean isFlagged, boolean isMine,
+      int adjacentMines, boolean exploded) {
     WorldImage cellImage;
     int innerSize = cellSize - 2;
 
@@ -405,7 +643,7 @@ class Cell implements IWorldConstants {
                     new OverlayImage(spike4, mineBody))));
 
         // Red background for triggered mine
-        if (board.game.state.equals(GAME_OVER) && !board.game.wonGame) {
+        if (exploded) {
           cellImage = new RectangleImage(innerSize, innerSize,
               OutlineMode.SOLID, MINE_RED);
         }
@@ -429,1368 +667,8438 @@ class Cell implements IWorldConstants {
     // Add consistent border for all cells
     WorldImage border = new RectangleImage(innerSize, innerSize,
         OutlineMode.OUTLINE, Color.DARK_GRAY);
-    cellImage = new OverlayImage(border, cellImage);
+    return new OverlayImage(border, cellImage);
+  }
+}
 
-    scene.placeImageXY(cellImage, centerX, centerY);
+// represents a board whose width x height cells are the whole game, so the
+// board itself decides where its mines go, and any cell can be put back the
+// way it looked before (which is what undo needs)
+abstract class AFixedBoard extends ABoard {
+  UndoJournal journal;
+
+  // the constructor
+  AFixedBoard(int width, int height, int mineCount,
+      IGameListener game, int cellSize, int offsetX, int offsetY, RandomService rng) {
+    super(width, height, mineCount, game, cellSize, offsetX, offsetY, rng);
+    this.journal = null;
   }
 
-  void addToListIfUnflaggedMine(ArrayList<Cell> list) {
-    if (isMine && !isFlagged && !isRevealed) {
-      list.add(this);
+  // puts the cell at the given index back to the given REVEALED_BIT and
+  // FLAGGED_BIT, without any of the game rules that opening or flagging runs
+  // EFFECT: Sets the cell's revealed and flagged state and repaints it
+  abstract void restoreAt(int index, int bits);
+
+  // records that the cell at the given index is about to change how it looks
+  // EFFECT: Also notes the cell's old look in the undo journal if there is one
+  void touch(int index) {
+    if (journal != null) {
+      journal.note(index);
     }
+    super.touch(index);
   }
 
-  // sets flag on this cell (for hint system)
-  void setFlag() {
-    if (!isRevealed) {
-      isFlagged = true;
+  // records a player action
+  // EFFECT: Also starts a new move in the undo journal if there is one
+  void record(int index, int code) {
+    if (journal != null) {
+      journal.begin();
     }
+    super.record(index, code);
   }
 
-}
-
-// represents the minesweeper game world
-class MineSweeper extends World implements IWorldConstants {
-  String state;
-  Board board;
-  int worldWidth;
-  int worldHeight;
-  int cellSize;
-  int boardOffsetX;
-  int boardOffsetY;
+  // puts a mine in the cell at the given index
+  // EFFECT: Marks the cell as a mine and adds one to each neighbor's count
+  abstract void placeMineAt(int index);
+
+  // puts a mine in every cell set in the given bitboard and gives every other
+  // cell the count the bitboard works out, in one pass over the board (which
+  // must not have any mines yet)
+  // EFFECT: Sets the mine state and count of every cell and fills hiddenMines
+  abstract void placeMines(MineBitboard mines);
+
+  // flags a random unflagged mine, picked from hiddenMines so a hint costs
+  // the same on any size of board
+  // EFFECT: Flags a random mine that is not already flagged, placing the
+  // mines first if no cell has been opened yet; drops any entries that went
+  // stale because a cell was changed without going through the board
+  void flagRandomMine() {
+    if (!minesPlaced) {
+      placeMinesAround(hintRand.nextInt(width * height));
+    }
+    while (!hiddenMines.isEmpty()) {
+      int cell = hiddenMines.pick(hintRand);
+      if (isMineAt(cell) && !isRevealedAt(cell) && !isFlaggedAt(cell)) {
+        toggleFlagAt(cell);
+        return;
+      }
+      hiddenMines.remove(cell);
+    }
+  }
 
-  // Custom game settings
-  Slider widthSlider;
-  Slider heightSlider;
-  Slider mineSlider;
+  // places the mines for a board built in lazy mode, keeping the first opened
+  // cell and its neighbors clear (or just the first cell, if the board is too
+  // crowded for that)
+  // EFFECT: Picks mineCount cells with Floyd's sampling over the indices that
+  // are not kept clear, which takes one random draw per mine and no scratch
+  // list, and lowers mineCount if there is not enough room for all of them
+  void placeMinesAround(int first) {
+    minesPlaced = true;
+    int size = width * height;
+    int[] clear = clearZone(first);
+    if (size - clear.length < mineCount) {
+      clear = new int[] { first };
+    }
+    int available = size - clear.length;
+    int count = Math.min(mineCount, available);
+    MineBitboard mines = new MineBitboard(width, height);
+    for (int j = available - count; j < available; j++) {
+      int pick = cellOfRank(rand.nextInt(j + 1), clear);
+      if (mines.isSet(pick)) {
+        pick = cellOfRank(j, clear);
+      }
+      mines.set(pick);
+    }
+    placeMines(mines);
+    mineCount = count;
+    totalSafeCells = size - count;
+    if (recorder != null) {
+      recorder.writeMines(this);
+    }
+  }
 
-  // Button positions for menu
-  Button easyButton;
-  Button mediumButton;
-  Button hardButton;
-  Button customButton;
-  Button playButton;
-  Button backButton;
-  Button menuButton;
-  Button hintButton; // NEW: hint button
-
-  // Game over message
-  boolean wonGame;
-
-  // the constructor
-  MineSweeper() {
-    this.state = MENU;
-    this.worldWidth = MENU_WIDTH;
-    this.worldHeight = MENU_HEIGHT;
-    this.cellSize = DEFAULT_CELL_SIZE;
-    initializeMenu();
+  // finds the given cell and its neighbors, in increasing index order
+  int[] clearZone(int index) {
+    int[] found = new int[9];
+    int count = 0;
+    int row = index / width;
+    int col = index % width;
+    for (int dr = -1; dr <= 1; dr++) {
+      for (int dc = -1; dc <= 1; dc++) {
+        int newRow = row + dr;
+        int newCol = col + dc;
+        if (newRow >= 0 && newRow < height && newCol >= 0 && newCol < width) {
+          found[count] = newRow * width + newCol;
+          count++;
+        }
+      }
+    }
+    return Arrays.copyOf(found, count);
   }
 
-  // calculates appropriate dimensions for the board
-  // EFFECT: Sets cell size, world dimensions, and offsets based on board size
-  void calculateDimensions(int cols, int rows) {
-    // Start with default cell size
-    cellSize = DEFAULT_CELL_SIZE;
+  // finds the cell that is at the given position among the cells not in
+  // skipped (which must be in increasing order)
+  int cellOfRank(int rank, int[] skipped) {
+    int index = rank;
+    for (int cell : skipped) {
+      if (cell <= index) {
+        index++;
+      }
+    }
+    return index;
+  }
 
-    // Calculate board dimensions with default cell size
-    int boardWidth = cols * cellSize;
-    int boardHeight = rows * cellSize;
+  // reveals the cell at the given index
+  // EFFECT: Places the mines first if the board was built in lazy mode and
+  // this is the first cell opened, then reveals the cell as usual
+  void revealAt(int index) {
+    if (!minesPlaced && !isFlaggedAt(index)) {
+      placeMinesAround(index);
+    }
+    super.revealAt(index);
+  }
+}
 
-    // If board is too large, scale down the cell size
-    if (boardWidth > MAX_BOARD_WIDTH || boardHeight > MAX_BOARD_HEIGHT) {
-      double widthRatio = MAX_BOARD_WIDTH / (double) boardWidth;
-      double heightRatio = MAX_BOARD_HEIGHT / (double) boardHeight;
-      double ratio = Math.min(widthRatio, heightRatio);
-      cellSize = Math.max(MIN_CELL_SIZE, (int) (cellSize * ratio));
+// represents the game board as a grid of linked Cell objects
+class Board extends AFixedBoard {
+  ArrayList<ArrayList<Cell>> cells;
 
-      // Recalculate board dimensions
-      boardWidth = cols * cellSize;
-      boardHeight = rows * cellSize;
-    }
+  // the constructor initializes the board with given dimensions and mine count
+  Board(int width, int height, int mineCount,
+      IGameListener game, int cellSize, int offsetX, int offsetY) {
+    this(width, height, mineCount, game, cellSize, offsetX, offsetY,
+        new RandomService(DEFAULT_SEED));
+  }
 
-    // Set world dimensions with padding
-    worldWidth = boardWidth + 2 * BOARD_PADDING;
-    worldHeight = boardHeight + 2 * BOARD_PADDING + 100; // Extra space for UI
+  // the constructor for a board whose mines and hints come from the given
+  // service's own random streams
+  Board(int width, int height, int mineCount,
+      IGameListener game, int cellSize, int offsetX, int offsetY, RandomService rng) {
+    this(width, height, mineCount, game, cellSize, offsetX, offsetY, rng, false);
+  }
 
-    // Calculate offsets to center the board
-    boardOffsetX = BOARD_PADDING;
-    boardOffsetY = BOARD_PADDING;
+  // the constructor for a board that, when lazy, waits for the first reveal
+  // to place its mines so that the first click is always safe
+  Board(int width, int height, int mineCount, IGameListener game,
+      int cellSize, int offsetX, int offsetY, RandomService rng, boolean lazy) {
+    super(width, height, mineCount, game, cellSize, offsetX, offsetY, rng);
+    this.cells = new ArrayList<>();
+    initializeBoard(lazy);
   }
 
-  // creates the world scene
-  public WorldScene makeScene() {
-    WorldScene scene = new WorldScene(worldWidth, worldHeight);
+  // initializes the board with cells and mines
+  // EFFECT: Creates cells, links neighbors, places mines, and counts adjacent
+  // mines (unless lazy, which leaves the mines for placeMinesAround)
+  void initializeBoard(boolean lazy) {
+    // Create cells
+    for (int row = 0; row < height; row++) {
+      ArrayList<Cell> rowCells = new ArrayList<>();
+      for (int col = 0; col < width; col++) {
+        rowCells.add(new Cell(col, row, this, cellSize, offsetX, offsetY));
+      }
+      cells.add(rowCells);
+    }
+
+    // Link neighbors
+    for (int row = 0; row < height; row++) {
+      for (int col = 0; col < width; col++) {
+        Cell cell = cells.get(row).get(col);
+        linkNeighbors(cell, row, col);
+      }
+    }
 
-    if (state.equals(MENU)) {
-      drawMenu(scene);
-    } else if (state.equals(CUSTOM_SETUP)) {
-      drawCustomSetup(scene);
-    } else if (state.equals(PLAYING) || state.equals(GAME_OVER)) {
-      // Draw background
-      WorldImage bg = new RectangleImage(worldWidth, worldHeight,
-          OutlineMode.SOLID, BACKGROUND);
-      scene.placeImageXY(bg, worldWidth / 2, worldHeight / 2);
+    if (lazy) {
+      return;
+    }
+    minesPlaced = true;
 
-      board.drawOnto(scene);
+    // Place mines
+    ArrayList<Cell> allCells = new ArrayList<>();
+    for (ArrayList<Cell> row : cells) {
+      allCells.addAll(row);
+    }
 
-      // Draw game info
-      drawGameInfo(scene);
+    Collections.shuffle(allCells, rand);
+    MineBitboard mines = new MineBitboard(width, height);
+    for (int i = 0; i < mineCount && i < allCells.size(); i++) {
+      mines.set(allCells.get(i).index());
+    }
 
-      // Draw hint button during play
-      if (state.equals(PLAYING)) {
-        drawHintButton(scene);
-      }
+    // Count adjacent mines a row of 64 cells at a time
+    placeMines(mines);
+  }
 
-      if (state.equals(GAME_OVER)) {
-        drawGameOverOverlay(scene);
+  // links a cell to its neighbors
+  // EFFECT: Adds neighboring cells to the cell's neighbor list
+  void linkNeighbors(Cell cell, int row, int col) {
+    for (int dr = -1; dr <= 1; dr++) {
+      for (int dc = -1; dc <= 1; dc++) {
+        if (dr == 0 && dc == 0) {
+          continue;
+        }
+        int newRow = row + dr;
+        int newCol = col + dc;
+        if (newRow >= 0 && newRow < height && newCol >= 0 && newCol < width) {
+          cell.addNeighbor(cells.get(newRow).get(newCol));
+        }
       }
     }
-
-    return scene;
   }
 
-  // initializes menu buttons
-  // EFFECT: Creates buttons for easy, medium, hard, and custom game modes
-  void initializeMenu() {
-    int centerX = MENU_WIDTH / 2;
-    int startY = 200;
+  // gets the cell at the given index
+  Cell cellAt(int index) {
+    return cells.get(index / width).get(index % width);
+  }
 
-    easyButton = new Button(centerX,
-        startY, BUTTON_WIDTH, BUTTON_HEIGHT, "Easy (9x9, 10 mines)");
-    mediumButton = new Button(centerX,
-        startY + UI_SPACING, BUTTON_WIDTH, BUTTON_HEIGHT, "Medium (16x16, 40 mines)");
-    hardButton = new Button(centerX,
-        startY + UI_SPACING * 2, BUTTON_WIDTH, BUTTON_HEIGHT, "Hard (30x16, 99 mines)");
-    customButton = new Button(centerX,
-        startY + UI_SPACING * 3, BUTTON_WIDTH, BUTTON_HEIGHT, "Custom");
+  // is the cell at the given index a mine?
+  boolean isMineAt(int index) {
+    return cellAt(index).isMine;
   }
 
-  // initializes custom setup screen
-  // EFFECT: Creates sliders and buttons for custom game setup
-  void initializeCustomSetup() {
-    int centerX = MENU_WIDTH / 2;
+  // is the cell at the given index revealed?
+  boolean isRevealedAt(int index) {
+    return cellAt(index).isRevealed;
+  }
 
-    widthSlider = new Slider(centerX, 200, SLIDER_WIDTH, 0, 50, 15, "Width");
-    heightSlider = new Slider(centerX, 280, SLIDER_WIDTH, 5, 40, 15, "Height");
-    mineSlider = new Slider(centerX, 360, SLIDER_WIDTH, 10, 500, 50, "Mines");
-    playButton = new Button(centerX, 450, 150, BUTTON_HEIGHT, "Play");
-    backButton = new Button(centerX, 520, 150, BUTTON_HEIGHT, "Back");
+  // is the cell at the given index flagged?
+  boolean isFlaggedAt(int index) {
+    return cellAt(index).isFlagged;
   }
 
-  // draws game info panel
-  // EFFECT: Draws the game info panel with mine count and board dimensions
-  void drawGameInfo(WorldScene scene) {
-    String info = "Mines: " + board.mineCount + " | Cells: " + board.width + "x" + board.height;
-    WorldImage infoText = new TextImage(info, 16, FontStyle.BOLD, Color.BLACK);
-    WorldImage infoBg = new RectangleImage(200, 30,
-        OutlineMode.SOLID, new Color(255, 255, 255, 200));
-    WorldImage infoPanel = new OverlayImage(infoText, infoBg);
-    scene.placeImageXY(infoPanel, worldWidth / 2, worldHeight - 60);
+  // counts the mines next to the cell at the given index
+  int adjacentMinesAt(int index) {
+    return cellAt(index).adjacentMines;
   }
 
-  // draws hint button
-  // EFFECT: Creates a hint button that flags a random mine when clicked
-  void drawHintButton(WorldScene scene) {
-    hintButton = new Button(worldWidth / 2, worldHeight - 25, 100, 30, "Hint");
-    hintButton.drawOnto(scene);
+  // marks the cell at the given index as revealed, unless it is already
+  // revealed or flagged
+  // EFFECT: Sets the cell's revealed state; returns whether it changed
+  boolean markRevealed(int index) {
+    Cell cell = cellAt(index);
+    if (!cell.isRevealed && !cell.isFlagged) {
+      touch(index);
+      cell.isRevealed = true;
+      updateMineIndex(index);
+      return true;
+    }
+    return false;
   }
 
-  // draws menu screen
-  // EFFECT: Draws the main menu with title and difficulty buttons
-  void drawMenu(WorldScene scene) {
-    // Background
-    WorldImage bg = new RectangleImage(worldWidth, worldHeight, OutlineMode.SOLID, BACKGROUND);
-    scene.placeImageXY(bg, worldWidth / 2, worldHeight / 2);
+  // toggles the flag on the cell at the given index
+  // EFFECT: Flags or unflags the cell if it is not revealed
+  void toggleFlagAt(int index) {
+    cellAt(index).toggleFlag();
+  }
 
-    // Title with shadow effect
-    WorldImage titleShadow = new TextImage("MINESWEEPER",
-        48, FontStyle.BOLD, new Color(100, 100, 100));
-    WorldImage title = new TextImage("MINESWEEPER", 48, FontStyle.BOLD, Color.BLACK);
-    scene.placeImageXY(titleShadow, MENU_WIDTH / 2 + 3, TITLE_Y + 3);
-    scene.placeImageXY(title, MENU_WIDTH / 2, TITLE_Y);
+  // puts the cell at the given index back to the given look
+  // EFFECT: Sets the cell's revealed and flagged fields
+  void restoreAt(int index, int bits) {
+    Cell cell = cellAt(index);
+    touch(index);
+    cell.isRevealed = (bits & REVEALED_BIT) != 0;
+    cell.isFlagged = (bits & FLAGGED_BIT) != 0;
+    updateMineIndex(index);
+  }
 
-    easyButton.drawOnto(scene);
-    mediumButton.drawOnto(scene);
-    hardButton.drawOnto(scene);
-    customButton.drawOnto(scene);
+  // reveals all cells (for game over)
+  // EFFECT: Reveals all cells, forcing mines to show
+  void revealAll() {
+    for (ArrayList<Cell> row : cells) {
+      for (Cell cell : row) {
+        cell.forceReveal();
+      }
+    }
   }
 
-  // draws custom setup screen
-  // EFFECT: Draws the custom game setup screen with sliders and buttons
-  void drawCustomSetup(WorldScene scene) {
-    // Background
-    WorldImage bg = new RectangleImage(worldWidth, worldHeight, OutlineMode.SOLID, BACKGROUND);
-    scene.placeImageXY(bg, worldWidth / 2, worldHeight / 2);
+  // puts a mine in the cell at the given index
+  // EFFECT: Marks the cell as a mine and adds one to each neighbor's count
+  void placeMineAt(int index) {
+    Cell cell = cellAt(index);
+    cell.placeMine();
+    cell.adjacentMines = 0;
+    for (Cell neighbor : cell.neighbors) {
+      if (!neighbor.isMine) {
+        neighbor.adjacentMines++;
+      }
+    }
+  }
 
-    WorldImage title = new TextImage("Custom Game Setup", 36, FontStyle.BOLD, Color.BLACK);
-    scene.placeImageXY(title, MENU_WIDTH / 2, TITLE_Y);
+  // puts a mine in every cell set in the bitboard and counts the rest
+  // EFFECT: Sets isMine and adjacentMines of every Cell
+  void placeMines(MineBitboard mines) {
+    byte[] counts = mines.counts();
+    for (int row = 0; row < height; row++) {
+      ArrayList<Cell> rowCells = cells.get(row);
+      for (int col = 0; col < width; col++) {
+        Cell cell = rowCells.get(col);
+        if (mines.isSet(row, col)) {
+          cell.placeMine();
+          cell.adjacentMines = 0;
+        } else {
+          cell.adjacentMines = counts[row * width + col];
+        }
+      }
+    }
+  }
 
-    widthSlider.drawOnto(scene);
-    heightSlider.drawOnto(scene);
+}
 
-    // Update mine slider max based on current dimensions
-    int maxMines = widthSlider.getValue() * heightSlider.getValue() - 1;
-    mineSlider.setMax(maxMines);
-    mineSlider.drawOnto(scene);
+// represents the game board as one packed byte per cell, so that very large
+// boards do not need a Cell object (and neighbor list) for every square
+// each byte holds the adjacent mine count in its low bits plus the
+// MINE_BIT, REVEALED_BIT and FLAGGED_BIT flags from IWorldConstants
+class FlatBoard extends AFixedBoard {
+  byte[] cells;
 
-    playButton.drawOnto(scene);
-    backButton.drawOnto(scene);
+  // the constructor initializes the board with given dimensions and mine count
+  FlatBoard(int width, int height, int mineCount,
+      IGameListener game, int cellSize, int offsetX, int offsetY) {
+    this(width, height, mineCount, game, cellSize, offsetX, offsetY,
+        new RandomService(DEFAULT_SEED));
   }
 
-  // draws game over overlay
-  // EFFECT: Draws a semi-transparent overlay with a message and button
-  void drawGameOverOverlay(WorldScene scene) {
-    // Semi-transparent overlay
-    WorldImage overlay = new RectangleImage(worldWidth, worldHeight,
-        OutlineMode.SOLID, new Color(0, 0, 0, 150));
-    scene.placeImageXY(overlay, worldWidth / 2, worldHeight / 2);
+  // the constructor for a board whose mines and hints come from the given
+  // service's own random streams
+  FlatBoard(int width, int height, int mineCount,
+      IGameListener game, int cellSize, int offsetX, int offsetY, RandomService rng) {
+    this(width, height, mineCount, game, cellSize, offsetX, offsetY, rng, false);
+  }
 
-    // Message with glow effect
-    String message;
-    Color msgColor;
-    Color glowColor;
+  // the constructor for a board that, when lazy, waits for the first reveal
+  // to place its mines so that the first click is always safe
+  FlatBoard(int width, int height, int mineCount, IGameListener game,
+      int cellSize, int offsetX, int offsetY, RandomService rng, boolean lazy) {
+    super(width, height, mineCount, game, cellSize, offsetX, offsetY, rng);
+    initializeBoard(lazy);
+  }
 
-    if (wonGame) {
-      message = "You Win!";
-      msgColor = Color.GREEN;
-      glowColor = new Color(0, 255, 0, 100);
-    } else {
-      message = "Game Over!";
-      msgColor = Color.RED;
-      glowColor = new Color(255, 0, 0, 100);
+  // initializes the packed cells and mines
+  // EFFECT: Allocates the cell bytes, places mines, and counts adjacent mines
+  // (unless lazy, which leaves the mines for placeMinesAround)
+  void initializeBoard(boolean lazy) {
+    int size = width * height;
+    this.cells = new byte[size];
+    if (lazy) {
+      return;
     }
+    minesPlaced = true;
 
-    WorldImage textGlow = new TextImage(message, 66, FontStyle.BOLD, glowColor);
-    WorldImage text = new TextImage(message, 64, FontStyle.BOLD, msgColor);
-    scene.placeImageXY(textGlow, worldWidth / 2, worldHeight / 2 - 50);
-    scene.placeImageXY(text, worldWidth / 2, worldHeight / 2 - 50);
+    // Place mines with a partial shuffle of the cell indices
+    int[] order = new int[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    int placed = Math.min(mineCount, size);
+    MineBitboard mines = new MineBitboard(width, height);
+    for (int i = 0; i < placed; i++) {
+      int j = i + rand.nextInt(size - i);
+      int swap = order[i];
+      order[i] = order[j];
+      order[j] = swap;
+      mines.set(order[i]);
+    }
 
-    menuButton = new Button(worldWidth / 2, worldHeight / 2 + 50,
-        BUTTON_WIDTH, BUTTON_HEIGHT, "Back to Menu");
-    menuButton.drawOnto(scene);
+    // Count adjacent mines a row of 64 cells at a time
+    placeMines(mines);
   }
 
-  // handles mouse clicks
-  // EFFECT: Handles clicks based on the current game state
-  public void onMouseClicked(Posn pos, String button) {
-    if (state.equals(MENU)) {
-      handleMenuClick(pos);
-    } else if (state.equals(CUSTOM_SETUP)) {
-      handleCustomClick(pos);
-    } else if (state.equals(PLAYING)) {
-      handleGameClick(pos, button);
-    } else if (state.equals(GAME_OVER)) {
-      handleGameOverClick(pos);
-    }
+  // is the cell at the given index a mine?
+  boolean isMineAt(int index) {
+    return (cells[index] & MINE_BIT) != 0;
   }
 
-  // handles menu clicks
-  // EFFECT: Starts a new game based on the selected difficulty or opens custom
-  // setup
-  void handleMenuClick(Posn pos) {
-    if (easyButton.contains(pos)) {
-      startGame(EASY_WIDTH, EASY_HEIGHT, EASY_MINES);
-    } else if (mediumButton.contains(pos)) {
-      startGame(MEDIUM_WIDTH, MEDIUM_HEIGHT, MEDIUM_MINES);
-    } else if (hardButton.contains(pos)) {
-      startGame(HARD_WIDTH, HARD_HEIGHT, HARD_MINES);
-    } else if (customButton.contains(pos)) {
-      state = CUSTOM_SETUP;
-      initializeCustomSetup();
-    }
+  // is the cell at the given index revealed?
+  boolean isRevealedAt(int index) {
+    return (cells[index] & REVEALED_BIT) != 0;
   }
 
-  // handles custom setup clicks
-  // EFFECT: Updates sliders and starts game when play button is clicked
-  void handleCustomClick(Posn pos) {
-    widthSlider.handleClick(pos);
-    heightSlider.handleClick(pos);
-    mineSlider.handleClick(pos);
+  // is the cell at the given index flagged?
+  boolean isFlaggedAt(int index) {
+    return (cells[index] & FLAGGED_BIT) != 0;
+  }
 
-    if (playButton.contains(pos)) {
-      int w = widthSlider.getValue();
-      int h = heightSlider.getValue();
-      int m = Math.min(mineSlider.getValue(), w * h - 1);
-      startGame(w, h, m);
-    } else if (backButton.contains(pos)) {
-      state = MENU;
-      worldWidth = MENU_WIDTH;
-      worldHeight = MENU_HEIGHT;
-    }
+  // counts the mines next to the cell at the given index
+  int adjacentMinesAt(int index) {
+    return cells[index] & ADJACENT_MASK;
   }
 
-  // handles game clicks
-  // EFFECT: Reveals a cell or flags a mine based on mouse click
-  void handleGameClick(Posn pos, String button) {
-    // Check if hint button was clicked
-    if (hintButton != null && hintButton.contains(pos) && button.equals("LeftButton")) {
-      board.flagRandomMine();
-    } else {
-      board.handleClick(pos, button);
+  // marks the cell at the given index as revealed, unless it is already
+  // revealed or flagged
+  // EFFECT: Sets the cell's revealed bit; returns whether it changed
+  boolean markRevealed(int index) {
+    if ((cells[index] & (REVEALED_BIT | FLAGGED_BIT)) == 0) {
+      touch(index);
+      cells[index] |= REVEALED_BIT;
+      updateMineIndex(index);
+      return true;
     }
+    return false;
   }
 
-  // handles game over clicks
-  // EFFECT: Returns to menu when the game over button is clicked
-  void handleGameOverClick(Posn pos) {
-    if (menuButton.contains(pos)) {
-      state = MENU;
-      worldWidth = MENU_WIDTH;
-      worldHeight = MENU_HEIGHT;
+  // toggles the flag on the cell at the given index
+  // EFFECT: Flags or unflags the cell if it is not revealed
+  void toggleFlagAt(int index) {
+    if (!isRevealedAt(index)) {
+      touch(index);
+      cells[index] ^= FLAGGED_BIT;
+      updateMineIndex(index);
     }
   }
 
-  // starts a new game
-  // EFFECT: Initializes the board and sets game state to playing
-  void startGame(int cols, int rows, int mines) {
-    state = PLAYING;
-    calculateDimensions(cols, rows);
-    board = new Board(cols, rows, mines, this, cellSize, boardOffsetX, boardOffsetY);
-    wonGame = false;
+  // puts the cell at the given index back to the given look
+  // EFFECT: Replaces the cell's revealed and flagged bits
+  void restoreAt(int index, int bits) {
+    touch(index);
+    cells[index] = (byte) ((cells[index] & ~(REVEALED_BIT | FLAGGED_BIT)) | bits);
+    updateMineIndex(index);
   }
 
-  // called when game ends
-  // EFFECT: Sets game state to GAME_OVER and reveals all cells
-  void endGame(boolean won) {
-    state = GAME_OVER;
-    wonGame = won;
-    board.revealAll();
+  // reveals all cells (for game over)
+  // EFFECT: Sets the revealed bit of every cell
+  void revealAll() {
+    for (int i = 0; i < cells.length; i++) {
+      touch(i);
+      cells[i] |= REVEALED_BIT;
+    }
+    hiddenMines.clear();
+  }
+
+  // puts a mine in the cell at the given index
+  // EFFECT: Sets the cell's mine bit, clears its count, and adds one to the
+  // count of each neighbor that is not a mine
+  void placeMineAt(int index) {
+    cells[index] = (byte) ((cells[index] & ~ADJACENT_MASK) | MINE_BIT);
+    updateMineIndex(index);
+    int row = index / width;
+    int col = index % width;
+    for (int dr = -1; dr <= 1; dr++) {
+      for (int dc = -1; dc <= 1; dc++) {
+        int newRow = row + dr;
+        int newCol = col + dc;
+        if ((dr != 0 || dc != 0) && newRow >= 0 && newRow < height
+            && newCol >= 0 && newCol < width) {
+          int neighbor = newRow * width + newCol;
+          if ((cells[neighbor] & MINE_BIT) == 0) {
+            cells[neighbor]++;
+          }
+        }
+      }
+    }
   }
 
+  // puts a mine in every cell set in the bitboard and counts the rest
+  // EFFECT: Replaces the mine bit and count of every cell
+  void placeMines(MineBitboard mines) {
+    byte[] counts = mines.counts();
+    for (int row = 0; row < height; row++) {
+      for (int col = 0; col < width; col++) {
+        int index = row * width + col;
+        int kept = cells[index] & ~(ADJACENT_MASK | MINE_BIT);
+        if (mines.isSet(row, col)) {
+          cells[index] = (byte) (kept | MINE_BIT);
+          updateMineIndex(index);
+        } else {
+          cells[index] = (byte) (kept | counts[index]);
+        }
+      }
+    }
+  }
 }
 
-// represents a clickable button
-class Button implements IWorldConstants {
-  int x;
-  int y;
-  int width;
-  int height;
-  String label;
+// represents one CHUNK_SIZE x CHUNK_SIZE square of an endless board, packed
+// the same way as FlatBoard cells
+class Chunk implements IWorldConstants {
+  long key;
+  byte[] cells;
+  boolean changed;
 
   // the constructor
-  Button(int x, int y, int width, int height, String label) {
-    this.x = x;
-    this.y = y;
-    this.width = width;
-    this.height = height;
-    this.label = label;
+  Chunk(long key) {
+    this.key = key;
+    this.cells = new byte[CHUNK_SIZE * CHUNK_SIZE];
+    this.changed = false;
   }
+}
 
-  // checks if point is inside button
-  boolean contains(Posn pos) {
-    return pos.x >= x - width / 2 && pos.x <= x + width / 2 &&
-        pos.y >= y - height / 2 && pos.y <= y + height / 2;
+// represents an on-disk file holding the revealed and flagged bits of chunks
+// that fell out of memory, two bits per cell (mines and counts are not
+// stored because they can be generated again from the seed)
+class ChunkStore implements IWorldConstants {
+  RandomAccessFile file;
+  HashMap<Long, Long> offsets;
+  byte[] buffer;
+  int chunksWritten;
+  int chunksRead;
+
+  // the constructor opens a temporary file that is deleted on exit
+  ChunkStore() {
+    try {
+      File path = File.createTempFile("minesweeper-chunks", ".bin");
+      path.deleteOnExit();
+      this.file = new RandomAccessFile(path, "rw");
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    this.offsets = new HashMap<>();
+    this.buffer = new byte[CHUNK_SIZE * CHUNK_SIZE / 4];
+    this.chunksWritten = 0;
+    this.chunksRead = 0;
   }
 
-  // draws button with 3D effect
-  // EFFECT: Draws the button with a shadow, gradient effect, and text
-  void drawOnto(WorldScene scene) {
-    // Shadow
-    WorldImage shadow = new RectangleImage(width, height,
-        OutlineMode.SOLID, new Color(50, 50, 50, 50));
-    scene.placeImageXY(shadow, x + 2, y + 2);
+  // writes the state bits of the given chunk, over its old copy if it has one
+  // EFFECT: Writes to the file and records where the chunk went
+  void save(Chunk chunk) {
+    Arrays.fill(buffer, (byte) 0);
+    for (int i = 0; i < chunk.cells.length; i++) {
+      int bits = 0;
+      if ((chunk.cells[i] & REVEALED_BIT) != 0) {
+        bits |= 1;
+      }
+      if ((chunk.cells[i] & FLAGGED_BIT) != 0) {
+        bits |= 2;
+      }
+      buffer[i >> 2] |= (byte) (bits << ((i & 3) * 2));
+    }
+    try {
+      Long offset = offsets.get(chunk.key);
+      if (offset == null) {
+        offset = file.length();
+        offsets.put(chunk.key, offset);
+      }
+      file.seek(offset);
+      file.write(buffer);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    chunksWritten++;
+  }
 
-    // Button gradient effect
-    WorldImage buttonBase = new RectangleImage(width, height, OutlineMode.SOLID, BUTTON_COLOR);
+  // reads back the state bits of the given chunk, if it was ever saved
+  // EFFECT: Sets the revealed and flagged bits of the chunk's cells; returns
+  // whether the chunk was found
+  boolean load(Chunk chunk) {
+    Long offset = offsets.get(chunk.key);
+    if (offset == null) {
+      return false;
+    }
+    try {
+      file.seek(offset);
+      file.readFully(buffer);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    for (int i = 0; i < chunk.cells.length; i++) {
+      int bits = (buffer[i >> 2] >> ((i & 3) * 2)) & 3;
+      if ((bits & 1) != 0) {
+        chunk.cells[i] |= REVEALED_BIT;
+      }
+      if ((bits & 2) != 0) {
+        chunk.cells[i] |= FLAGGED_BIT;
+      }
+    }
+    chunksRead++;
+    return true;
+  }
 
-    // Only add gradient for larger buttons
-    if (height > 30) {
-      WorldImage buttonTop = new RectangleImage(width, height / 2, OutlineMode.SOLID,
-          new Color(BUTTON_COLOR.getRed() + 20,
-              BUTTON_COLOR.getGreen() + 20, BUTTON_COLOR.getBlue() + 20));
-      scene.placeImageXY(buttonTop, x, y - height / 4);
+  // closes the file
+  // EFFECT: Releases the file handle
+  void close() {
+    try {
+      file.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
     }
+  }
+}
 
-    WorldImage border = new RectangleImage(width, height, OutlineMode.OUTLINE, Color.DARK_GRAY);
+// represents the chunks of an endless board that are kept in memory, least
+// recently used first, writing changed chunks to the store as they fall out
+class ChunkCache extends LinkedHashMap<Long, Chunk> {
+  static final long serialVersionUID = 1L;
+  int capacity;
+  transient ChunkStore store;
 
-    // Adjust font size for smaller buttons
-    int fontSize;
-    if (height > 30) {
-      fontSize = 16;
-    } else {
-      fontSize = 14;
+  // the constructor
+  ChunkCache(int capacity, ChunkStore store) {
+    super(16, 0.75f, true);
+    this.capacity = capacity;
+    this.store = store;
+  }
+
+  // drops the least recently used chunk once there are too many
+  // EFFECT: Saves the dropped chunk to the store if it changed
+  protected boolean removeEldestEntry(Map.Entry<Long, Chunk> eldest) {
+    if (size() > capacity) {
+      if (eldest.getValue().changed) {
+        store.save(eldest.getValue());
+        eldest.getValue().changed = false;
+      }
+      return true;
     }
-    WorldImage text = new TextImage(label, fontSize, FontStyle.BOLD, BUTTON_TEXT);
+    return false;
+  }
+}
 
-    scene.placeImageXY(buttonBase, x, y);
-    scene.placeImageXY(border, x, y);
-    scene.placeImageXY(text, x, y);
+// represents an endless board: the board's width x height cells are a window
+// (whose top-left corner is at originX, originY) onto an unbounded world
+// mines come from a hash of the seed and a cell's world position, so chunks
+// can be generated on demand and thrown away; only the ones near the window
+// stay in memory, and the player's changes to the rest go to a ChunkStore
+class ChunkedBoard extends ABoard {
+  long seed;
+  double density;
+  long originX;
+  long originY;
+  ChunkStore store;
+  ChunkCache chunks;
+  Chunk lastChunk;
+  int chunksGenerated;
+
+  // the constructor centers the window on the start cell (world position
+  // 0, 0), which is always clear along with its neighbors, and opens it
+  ChunkedBoard(int width, int height, long seed, double density,
+      IGameListener game, int cellSize, int offsetX, int offsetY) {
+    super(width, height, 0, game, cellSize, offsetX, offsetY, new RandomService(seed));
+    this.seed = seed;
+    this.density = density;
+    this.originX = -(width / 2);
+    this.originY = -(height / 2);
+    this.totalSafeCells = Integer.MAX_VALUE;
+    this.minesPlaced = true;
+    this.hiddenMines = null;
+    this.store = new ChunkStore();
+    int across = (width + CHUNK_SIZE - 1) / CHUNK_SIZE + 1;
+    int down = (height + CHUNK_SIZE - 1) / CHUNK_SIZE + 1;
+    this.chunks = new ChunkCache(Math.max(CHUNK_CACHE_SIZE, 2 * across * down), store);
+    this.lastChunk = null;
+    this.chunksGenerated = 0;
+    revealWorld(0, 0);
+  }
+
+  // does the seed put a mine at the given world position?
+  boolean generatesMine(long wx, long wy) {
+    if (Math.abs(wx) <= 1 && Math.abs(wy) <= 1) {
+      return false;
+    }
+    long hash = seed + wx * 0x9E3779B97F4A7C15L + wy * 0xC2B2AE3D27D4EB4FL;
+    hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+    hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+    hash = hash ^ (hash >>> 31);
+    return (hash >>> 11) * 0x1.0p-53 < density;
+  }
+
+  // computes the key of the chunk at the given chunk position
+  long chunkKey(long cx, long cy) {
+    return (cx << 32) | (cy & 0xFFFFFFFFL);
+  }
+
+  // generates the mines and counts of the chunk with the given key
+  Chunk generate(long key) {
+    Chunk chunk = new Chunk(key);
+    long baseX = (key >> 32) << CHUNK_SHIFT;
+    long baseY = ((long) (int) key) << CHUNK_SHIFT;
+    for (int ly = 0; ly < CHUNK_SIZE; ly++) {
+      for (int lx = 0; lx < CHUNK_SIZE; lx++) {
+        long wx = baseX + lx;
+        long wy = baseY + ly;
+        int cell = 0;
+        if (generatesMine(wx, wy)) {
+          cell = MINE_BIT;
+        } else {
+          for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+              if ((dx != 0 || dy != 0) && generatesMine(wx + dx, wy + dy)) {
+                cell++;
+              }
+            }
+          }
+        }
+        chunk.cells[(ly << CHUNK_SHIFT) | lx] = (byte) cell;
+      }
+    }
+    chunksGenerated++;
+    return chunk;
+  }
+
+  // finds the chunk holding the given world position, generating it (and
+  // restoring its saved state) if it is not in memory
+  // EFFECT: May generate a chunk and push the least recently used one out
+  Chunk chunkAt(long wx, long wy) {
+    long key = chunkKey(wx >> CHUNK_SHIFT, wy >> CHUNK_SHIFT);
+    if (lastChunk != null && lastChunk.key == key) {
+      return lastChunk;
+    }
+    Chunk chunk = chunks.get(key);
+    if (chunk == null) {
+      chunk = generate(key);
+      store.load(chunk);
+      chunks.put(key, chunk);
+    }
+    lastChunk = chunk;
+    return chunk;
+  }
+
+  // finds where the given world position is inside its chunk
+  int localIndex(long wx, long wy) {
+    return (int) (((wy & (CHUNK_SIZE - 1)) << CHUNK_SHIFT) | (wx & (CHUNK_SIZE - 1)));
+  }
+
+  // gets the packed cell at the given world position
+  int cellAtWorld(long wx, long wy) {
+    return chunkAt(wx, wy).cells[localIndex(wx, wy)];
+  }
+
+  // computes the world x position of the cell at the given window index
+  long worldX(int index) {
+    return originX + index % width;
+  }
+
+  // computes the world y position of the cell at the given window index
+  long worldY(int index) {
+    return originY + index / width;
+  }
+
+  // records that the cell at the given world position is about to change
+  // EFFECT: Marks the cell dirty if it is inside the window
+  void touchWorld(long wx, long wy) {
+    long col = wx - originX;
+    long row = wy - originY;
+    if (col >= 0 && col < width && row >= 0 && row < height) {
+      touch((int) (row * width + col));
+    }
+  }
+
+  // is the cell at the given index a mine?
+  boolean isMineAt(int index) {
+    return (cellAtWorld(worldX(index), worldY(index)) & MINE_BIT) != 0;
+  }
+
+  // is the cell at the given index revealed?
+  boolean isRevealedAt(int index) {
+    return (cellAtWorld(worldX(index), worldY(index)) & REVEALED_BIT) != 0;
+  }
+
+  // is the cell at the given index flagged?
+  boolean isFlaggedAt(int index) {
+    return (cellAtWorld(worldX(index), worldY(index)) & FLAGGED_BIT) != 0;
+  }
+
+  // counts the mines next to the cell at the given index
+  int adjacentMinesAt(int index) {
+    return cellAtWorld(worldX(index), worldY(index)) & ADJACENT_MASK;
+  }
+
+  // marks the cell at the given index as revealed, unless it is already
+  // revealed or flagged
+  // EFFECT: Sets the cell's revealed bit; returns whether it changed
+  boolean markRevealed(int index) {
+    return markRevealedWorld(worldX(index), worldY(index));
+  }
+
+  // marks the cell at the given world position as revealed, unless it is
+  // already revealed or flagged
+  // EFFECT: Sets the cell's revealed bit; returns whether it changed
+  boolean markRevealedWorld(long wx, long wy) {
+    Chunk chunk = chunkAt(wx, wy);
+    int local = localIndex(wx, wy);
+    if ((chunk.cells[local] & (REVEALED_BIT | FLAGGED_BIT)) == 0) {
+      touchWorld(wx, wy);
+      chunk.cells[local] |= REVEALED_BIT;
+      chunk.changed = true;
+      return true;
+    }
+    return false;
+  }
+
+  // reveals the cell at the given index
+  // EFFECT: Reveals the cell and flood fills in world positions
+  void revealAt(int index) {
+    revealWorld(worldX(index), worldY(index));
+  }
+
+  // reveals the cell at the given world position and, if it has no adjacent
+  // mines, the empty region around it up to ENDLESS_FLOOD_RADIUS cells away
+  // (an endless board can have empty regions of any size; the edge of a cut
+  // off region simply stays hidden until the player opens it)
+  // EFFECT: Reveals cells, queuing offsets from the start packed into one int
+  void revealWorld(long wx, long wy) {
+    int revealed = openWorld(wx, wy);
+    if (revealed < 0) {
+      onCellRevealed(true);
+    } else if (revealed > 0) {
+      onCellsRevealed(revealed);
+    }
+  }
+
+  // opens the cell at the given world position and the empty region around
+  // it like revealWorld, but leaves telling the game to the caller: returns
+  // how many cells opened, or -1 if the cell was a mine
+  // EFFECT: Reveals cells, queuing offsets from the start packed into one int
+  int openWorld(long wx, long wy) {
+    if (!markRevealedWorld(wx, wy)) {
+      return 0;
+    }
+    if ((cellAtWorld(wx, wy) & MINE_BIT) != 0) {
+      return -1;
+    }
+
+    int revealed = 1;
+    if ((cellAtWorld(wx, wy) & ADJACENT_MASK) == 0) {
+      int center = ENDLESS_FLOOD_RADIUS;
+      floodQueue.clear();
+      floodQueue.add((center << 16) | center);
+      while (!floodQueue.isEmpty()) {
+        int current = floodQueue.remove();
+        int dx = (current & 0xFFFF) - center;
+        int dy = (current >>> 16) - center;
+        for (int ddy = -1; ddy <= 1; ddy++) {
+          for (int ddx = -1; ddx <= 1; ddx++) {
+            int newDx = dx + ddx;
+            int newDy = dy + ddy;
+            if (Math.abs(newDx) <= ENDLESS_FLOOD_RADIUS
+                && Math.abs(newDy) <= ENDLESS_FLOOD_RADIUS
+                && markRevealedWorld(wx + newDx, wy + newDy)) {
+              revealed++;
+              if ((cellAtWorld(wx + newDx, wy + newDy) & ADJACENT_MASK) == 0) {
+                floodQueue.add(((newDy + center) << 16) | (newDx + center));
+              }
+            }
+          }
+        }
+      }
+    }
+    return revealed;
+  }
+
+  // opens the hidden neighbors of an open number whose flags match it, each
+  // flooding in world positions, and tells the game about the batch once
+  // EFFECT: Reveals the unflagged neighbors and the empty regions behind
+  // them, ending the game if one of them was a mine
+  void chordAt(int index) {
+    if (!isRevealedAt(index) || isMineAt(index)
+        || flagsAround(index) != adjacentMinesAt(index)) {
+      return;
+    }
+    long wx = worldX(index);
+    long wy = worldY(index);
+    int revealed = 0;
+    boolean hitMine = false;
+    for (int dy = -1; dy <= 1; dy++) {
+      for (int dx = -1; dx <= 1; dx++) {
+        int opened = openWorld(wx + dx, wy + dy);
+        if (opened < 0) {
+          hitMine = true;
+        } else {
+          revealed += opened;
+        }
+      }
+    }
+    if (hitMine) {
+      onCellRevealed(true);
+    } else if (revealed > 0) {
+      onCellsRevealed(revealed);
+    }
+  }
+
+  // toggles the flag on the cell at the given index
+  // EFFECT: Flags or unflags the cell if it is not revealed
+  void toggleFlagAt(int index) {
+    long wx = worldX(index);
+    long wy = worldY(index);
+    Chunk chunk = chunkAt(wx, wy);
+    int local = localIndex(wx, wy);
+    if ((chunk.cells[local] & REVEALED_BIT) == 0) {
+      touch(index);
+      chunk.cells[local] ^= FLAGGED_BIT;
+      chunk.changed = true;
+    }
+  }
+
+  // reveals every cell in the window (for game over)
+  // EFFECT: Sets the revealed bit of every visible cell
+  void revealAll() {
+    for (int i = 0; i < width * height; i++) {
+      long wx = worldX(i);
+      long wy = worldY(i);
+      Chunk chunk = chunkAt(wx, wy);
+      touch(i);
+      chunk.cells[localIndex(wx, wy)] |= REVEALED_BIT;
+      chunk.changed = true;
+    }
+  }
+
+  // flags a random unflagged mine in the window
+  // EFFECT: Flags a random visible mine that is not already flagged
+  void flagRandomMine() {
+    int size = width * height;
+    int unflaggedMines = 0;
+    for (int i = 0; i < size; i++) {
+      if (isMineAt(i) && !isRevealedAt(i) && !isFlaggedAt(i)) {
+        unflaggedMines++;
+      }
+    }
+    if (unflaggedMines > 0) {
+      int remaining = hintRand.nextInt(unflaggedMines);
+      for (int i = 0; i < size; i++) {
+        if (isMineAt(i) && !isRevealedAt(i) && !isFlaggedAt(i)) {
+          if (remaining == 0) {
+            toggleFlagAt(i);
+            return;
+          }
+          remaining--;
+        }
+      }
+    }
+  }
+
+  // moves the window over the world
+  // EFFECT: Shifts the origin and repaints the whole window
+  void pan(int dx, int dy) {
+    originX += dx;
+    originY += dy;
+    if (renderer != null) {
+      renderer.markAllDirty();
+    }
+  }
+
+  // an endless board has no mine count
+  boolean knowsMineCount() {
+    return false;
+  }
+
+  // the window of an endless board is a fixed number of cells, so it keeps
+  // its cell size
+  void zoom(int step) {
+  }
+
+  // closes the chunk file
+  // EFFECT: Releases the store's file handle
+  void release() {
+    store.close();
   }
 }
 
-// represents a slider control
-class Slider implements IWorldConstants {
-  int x;
-  int y;
+// represents an append-only recording of one game in a memory-mapped file:
+// the header holds the board size, requested mine count, seed and number of
+// events, followed by a bitset of the mines (filled in once they are placed)
+// and then the log of player events
+class GameRecorder implements IWorldConstants {
+  File file;
+  FileChannel channel;
+  MappedByteBuffer buffer;
+  int eventsStart;
+  int eventCount;
+
+  // the constructor starts a recording of the given board, which must have
+  // been built with new RandomService(seed)
+  GameRecorder(File file, ABoard board, long seed) {
+    this.file = file;
+    this.eventsStart = REPLAY_HEADER + ((board.width * board.height + 31) / 32) * 4;
+    this.eventCount = 0;
+    try {
+      this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+          StandardOpenOption.READ, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING);
+      this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, eventsStart + 4096);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    buffer.putInt(0, REPLAY_MAGIC);
+    buffer.putInt(4, board.width);
+    buffer.putInt(8, board.height);
+    buffer.putInt(12, board.mineCount);
+    buffer.putLong(16, seed);
+    buffer.putInt(24, 0);
+    buffer.putInt(28, 0);
+    if (board.minesPlaced) {
+      writeMines(board);
+    }
+  }
+
+  // writes the mine bitset of the given board
+  // EFFECT: Sets one bit per mine and marks the mines as written
+  void writeMines(ABoard board) {
+    int size = board.width * board.height;
+    for (int word = 0; word * 32 < size; word++) {
+      int bits = 0;
+      for (int bit = 0; bit < 32 && word * 32 + bit < size; bit++) {
+        if (board.isMineAt(word * 32 + bit)) {
+          bits |= 1 << bit;
+        }
+      }
+      buffer.putInt(REPLAY_HEADER + word * 4, bits);
+    }
+    buffer.putInt(28, 1);
+  }
+
+  // appends a player event to the log
+  // EFFECT: Writes the event, doubling the mapped region when it is full,
+  // and updates the event count in the header
+  void record(int index, int code) {
+    int position = eventsStart + eventCount * 4;
+    if (position + 4 > buffer.capacity()) {
+      try {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, buffer.capacity() * 2L);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    buffer.putInt(position, (index << 2) | code);
+    eventCount++;
+    buffer.putInt(24, eventCount);
+  }
+
+  // moves the end of the log to the given number of events, so undone moves
+  // drop out of a save and redone ones (still in the file) come back
+  // EFFECT: Sets the event count and the header
+  void rewind(int count) {
+    eventCount = count;
+    buffer.putInt(24, eventCount);
+  }
+
+  // computes how many bytes of the file are in use
+  int usedBytes() {
+    return eventsStart + eventCount * 4;
+  }
+
+  // copies the used part of the recording to the given file
+  // EFFECT: Flushes the mapping and writes the target file
+  void saveTo(File target) {
+    buffer.force();
+    ByteBuffer used = buffer.duplicate();
+    used.position(0);
+    used.limit(usedBytes());
+    try (FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (used.hasRemaining()) {
+        out.write(used);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // closes the recording
+  // EFFECT: Flushes the mapping and closes the file
+  void close() {
+    buffer.force();
+    try {
+      channel.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
+
+// represents a saved game read back from a GameRecorder file, which can
+// rebuild the board as it was after any number of events
+class GameReplay implements IWorldConstants {
   int width;
-  int min;
-  int max;
-  int value;
-  String label;
+  int height;
+  int mineCount;
+  long seed;
+  boolean minesWritten;
+  int[] mines;
+  int[] events;
+
+  // the constructor reads the whole file through a read-only mapping
+  GameReplay(File file) {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    if (buffer.capacity() < REPLAY_HEADER || buffer.getInt(0) != REPLAY_MAGIC) {
+      throw new IllegalArgumentException("Not a saved Minesweeper game: " + file);
+    }
+    this.width = buffer.getInt(4);
+    this.height = buffer.getInt(8);
+    this.mineCount = buffer.getInt(12);
+    this.seed = buffer.getLong(16);
+    this.minesWritten = buffer.getInt(28) != 0;
+    this.mines = new int[(width * height + 31) / 32];
+    for (int i = 0; i < mines.length; i++) {
+      mines[i] = buffer.getInt(REPLAY_HEADER + i * 4);
+    }
+    this.events = new int[buffer.getInt(24)];
+    int eventsStart = REPLAY_HEADER + mines.length * 4;
+    for (int i = 0; i < events.length; i++) {
+      events[i] = buffer.getInt(eventsStart + i * 4);
+    }
+  }
 
-  // the constructor
-  Slider(int x, int y, int width, int min, int max, int initial, String label) {
-    this.x = x;
-    this.y = y;
-    this.width = width;
-    this.min = min;
-    this.max = max;
-    this.value = initial;
-    this.label = label;
+  // is there a saved mine at the given index?
+  boolean isSavedMine(int index) {
+    return (mines[index / 32] & (1 << (index % 32))) != 0;
   }
 
-  // gets current value
-  int getValue() {
-    return value;
+  // builds the board the recording started from
+  AFixedBoard newBoard(IGameListener game, int cellSize, int offsetX, int offsetY) {
+    if (width * height >= FLAT_BOARD_THRESHOLD) {
+      return new FlatBoard(width, height, mineCount, game, cellSize, offsetX, offsetY,
+          new RandomService(seed), true);
+    } else {
+      return new Board(width, height, mineCount, game, cellSize, offsetX, offsetY,
+          new RandomService(seed), true);
+    }
   }
 
-  // sets max value
-  // EFFECT: Updates the maximum value and adjusts current value if necessary
-  void setMax(int newMax) {
-    this.max = newMax;
-    if (value > max) {
-      value = max;
+  // replays the first frames events onto the given board
+  // EFFECT: Applies the events and checks that the mines came out the same
+  // as the saved ones
+  void play(ABoard board, int frames) {
+    for (int i = 0; i < Math.min(frames, events.length); i++) {
+      board.apply(events[i] >>> 2, events[i] & 3);
+    }
+    if (minesWritten && board.minesPlaced) {
+      for (int i = 0; i < width * height; i++) {
+        if (board.isMineAt(i) != isSavedMine(i)) {
+          throw new IllegalStateException("Replay does not match the saved mines");
+        }
+      }
     }
   }
 
-  // handles clicks on slider
-  // EFFECT: Updates the slider value based on mouse position
-  void handleClick(Posn pos) {
-    if (pos.y >= y - 20 && pos.y <= y + 20 &&
-        pos.x >= x - width / 2 && pos.x <= x + width / 2) {
-      double ratio = (pos.x - (x - (double) width / 2)) / (double) width;
-      value = (int) (min + ratio * (max - min));
+  // builds the board as it was after the first frames events
+  ABoard replay(int frames, IGameListener game) {
+    ABoard board = newBoard(game, 1, 0, 0);
+    play(board, frames);
+    return board;
+  }
+}
+
+// represents unlimited undo and redo of the moves made on a board
+// a move keeps only the cells it changed: the index of each one with its
+// REVEALED_BIT and FLAGGED_BIT before and after the move, plus the board's
+// counters after it. Once the moves since the last checkpoint have changed as
+// many cells as the board holds, the look of every cell is copied into a new
+// checkpoint, so a jump to any move replays about one board's worth of cells
+// at most, however long the game has run
+// moves count from 0 (the board when the journal was attached), and only the
+// actions that go through ABoard.record open one
+class UndoJournal implements IWorldConstants {
+  AFixedBoard board;
+  int[] cells;
+  byte[] before;
+  byte[] after;
+  int entryCount;
+  int[] ends;
+  int[] revealed;
+  boolean[] exploded;
+  int[] events;
+  int current;
+  int last;
+  boolean open;
+  int[] seen;
+  int stamp;
+  ArrayList<Integer> checkpointMoves;
+  ArrayList<byte[]> checkpoints;
+  int cellsVisited;
+
+  // the constructor starts the journal at the board as it is now, which is
+  // also its first checkpoint
+  UndoJournal(AFixedBoard board) {
+    this.board = board;
+    this.cells = new int[64];
+    this.before = new byte[64];
+    this.after = new byte[64];
+    this.entryCount = 0;
+    this.ends = new int[16];
+    this.revealed = new int[16];
+    this.exploded = new boolean[16];
+    this.events = new int[16];
+    this.current = 0;
+    this.last = 0;
+    this.open = false;
+    this.seen = new int[board.width * board.height];
+    this.stamp = 0;
+    this.checkpointMoves = new ArrayList<>();
+    this.checkpoints = new ArrayList<>();
+    this.cellsVisited = 0;
+    saveCounters();
+    checkpoint();
+  }
+
+  // starts a new move after the current one, dropping any undone moves
+  // EFFECT: Closes the open move, forgets the moves after the current one
+  // and their checkpoints, and opens a move
+  void begin() {
+    close();
+    last = current;
+    entryCount = ends[current];
+    while (checkpointMoves.get(checkpointMoves.size() - 1) > current) {
+      checkpointMoves.remove(checkpointMoves.size() - 1);
+      checkpoints.remove(checkpoints.size() - 1);
+    }
+    stamp++;
+    open = true;
+  }
+
+  // notes the look of a cell that is about to change, the first time the open
+  // move changes it
+  // EFFECT: Appends the cell and its current look to the open move
+  void note(int index) {
+    if (open && seen[index] != stamp) {
+      seen[index] = stamp;
+      if (entryCount == cells.length) {
+        cells = Arrays.copyOf(cells, cells.length * 2);
+        before = Arrays.copyOf(before, cells.length);
+        after = Arrays.copyOf(after, cells.length);
+      }
+      cells[entryCount] = index;
+      before[entryCount] = (byte) board.lookAt(index);
+      entryCount++;
+    }
+  }
+
+  // finishes the open move, if there is one
+  // EFFECT: Stores the new look of every cell the move changed and the
+  // board's counters, and takes a checkpoint once enough cells have changed
+  // since the last one; a move that changed nothing is dropped
+  void close() {
+    if (!open) {
+      return;
+    }
+    open = false;
+    if (entryCount == ends[current] && board.cellsRevealed == revealed[current]
+        && board.exploded == exploded[current]) {
+      saveCounters();
+      return;
+    }
+    for (int i = ends[current]; i < entryCount; i++) {
+      after[i] = (byte) board.lookAt(cells[i]);
+    }
+    current++;
+    last = current;
+    saveCounters();
+    int sinceCheckpoint = entryCount - ends[checkpointMoves.get(checkpointMoves.size() - 1)];
+    if (sinceCheckpoint >= seen.length) {
+      checkpoint();
+    }
+  }
+
+  // remembers the board's counters after the current move
+  // EFFECT: Sets the entries of the current move in ends, revealed,
+  // exploded and events, growing them if needed
+  void saveCounters() {
+    if (current == ends.length) {
+      ends = Arrays.copyOf(ends, ends.length * 2);
+      revealed = Arrays.copyOf(revealed, ends.length);
+      exploded = Arrays.copyOf(exploded, ends.length);
+      events = Arrays.copyOf(events, ends.length);
     }
+    ends[current] = entryCount;
+    revealed[current] = board.cellsRevealed;
+    exploded[current] = board.exploded;
+    if (board.recorder != null) {
+      events[current] = board.recorder.eventCount;
+    } else {
+      events[current] = 0;
+    }
+  }
+
+  // copies the look of every cell as the checkpoint of the current move
+  // EFFECT: Adds a checkpoint
+  void checkpoint() {
+    byte[] looks = new byte[seen.length];
+    for (int i = 0; i < looks.length; i++) {
+      looks[i] = (byte) board.lookAt(i);
+    }
+    checkpointMoves.add(current);
+    checkpoints.add(looks);
+  }
+
+  // takes back the current move, and says whether there was one
+  // EFFECT: Puts the board back as it was one move earlier
+  boolean undo() {
+    close();
+    if (current == 0) {
+      return false;
+    }
+    jumpTo(current - 1);
+    return true;
+  }
+
+  // makes the next undone move again, and says whether there was one
+  // EFFECT: Puts the board as it was one move later
+  boolean redo() {
+    close();
+    if (current == last) {
+      return false;
+    }
+    jumpTo(current + 1);
+    return true;
+  }
+
+  // puts the board as it was after the given move (from 0 to last), starting
+  // from the current move or from the nearest checkpoint before the target,
+  // whichever visits fewer cells
+  // EFFECT: Restores the cells and counters of the board and rewinds its
+  // recorder to the events of that move
+  void jumpTo(int move) {
+    close();
+    int checkpoint = checkpointMoves.size() - 1;
+    while (checkpointMoves.get(checkpoint) > move) {
+      checkpoint--;
+    }
+    int checkpointMove = checkpointMoves.get(checkpoint);
+    cellsVisited = 0;
+    if (seen.length + ends[move] - ends[checkpointMove] < Math.abs(ends[move] - ends[current])) {
+      byte[] looks = checkpoints.get(checkpoint);
+      for (int i = 0; i < looks.length; i++) {
+        if (board.lookAt(i) != looks[i]) {
+          board.restoreAt(i, looks[i]);
+        }
+      }
+      cellsVisited += looks.length;
+      current = checkpointMove;
+    }
+    while (current > move) {
+      for (int i = ends[current] - 1; i >= ends[current - 1]; i--) {
+        board.restoreAt(cells[i], before[i]);
+      }
+      cellsVisited += ends[current] - ends[current - 1];
+      current--;
+    }
+    while (current < move) {
+      current++;
+      for (int i = ends[current - 1]; i < ends[current]; i++) {
+        board.restoreAt(cells[i], after[i]);
+      }
+      cellsVisited += ends[current] - ends[current - 1];
+    }
+    board.cellsRevealed = revealed[move];
+    board.exploded = exploded[move];
+    if (board.recorder != null) {
+      board.recorder.rewind(events[move]);
+    }
+  }
+}
+
+// represents the part of a board shown in the window: cols x rows cells
+// whose top-left cell is at (col, row), each drawn cellSize pixels square
+// the view never grows past maxWidth x maxHeight pixels, so a frame costs the
+// same on every board that fills the window, however big the board is
+class Camera implements IWorldConstants {
+  int boardWidth;
+  int boardHeight;
+  int maxWidth;
+  int maxHeight;
+  int cellSize;
+  int col;
+  int row;
+  int cols;
+  int rows;
+
+  // the constructor starts at the top-left corner of the board
+  Camera(int boardWidth, int boardHeight, int cellSize, int maxWidth, int maxHeight) {
+    this.boardWidth = boardWidth;
+    this.boardHeight = boardHeight;
+    this.cellSize = cellSize;
+    this.maxWidth = maxWidth;
+    this.maxHeight = maxHeight;
+    this.col = 0;
+    this.row = 0;
+    fit();
+  }
+
+  // sizes the view to as many whole cells as fit, and keeps it on the board
+  // EFFECT: Sets cols and rows, and clamps col and row
+  void fit() {
+    cols = Math.max(1, Math.min(boardWidth, maxWidth / cellSize));
+    rows = Math.max(1, Math.min(boardHeight, maxHeight / cellSize));
+    col = Math.max(0, Math.min(col, boardWidth - cols));
+    row = Math.max(0, Math.min(row, boardHeight - rows));
+  }
+
+  // moves the view by the given number of cells, stopping at the edges
+  // EFFECT: Shifts col and row
+  void pan(int dx, int dy) {
+    col += dx;
+    row += dy;
+    fit();
+  }
+
+  // changes the cell size (kept between MIN_CELL_SIZE and MAX_CELL_SIZE) so
+  // that the cell under the given view position stays under it, and says
+  // whether the size changed
+  // EFFECT: Sets cellSize and refits the view around the anchor cell
+  boolean zoom(int size, int x, int y) {
+    int newSize = Math.max(MIN_CELL_SIZE, Math.min(MAX_CELL_SIZE, size));
+    if (newSize == cellSize) {
+      return false;
+    }
+    int anchorCol = col + x / cellSize;
+    int anchorRow = row + y / cellSize;
+    cellSize = newSize;
+    col = anchorCol - x / cellSize;
+    row = anchorRow - y / cellSize;
+    fit();
+    return true;
+  }
+
+  // the width of the view in pixels
+  int width() {
+    return cols * cellSize;
+  }
+
+  // the height of the view in pixels
+  int height() {
+    return rows * cellSize;
+  }
+
+  // is the cell at the given index in the view?
+  boolean shows(int index) {
+    int c = index % boardWidth - col;
+    int r = index / boardWidth - row;
+    return c >= 0 && c < cols && r >= 0 && r < rows;
+  }
+
+  // finds the index of the cell at the given pixel of the view, or -1 if the
+  // pixel is outside the view
+  int indexAt(int x, int y) {
+    int c = x / cellSize;
+    int r = y / cellSize;
+    if (c < 0 || c >= cols || r < 0 || r >= rows) {
+      return -1;
+    }
+    return (row + r) * boardWidth + col + c;
+  }
+}
+
+// represents a retained image of the board's view that only repaints the
+// cells whose look changed since the previous frame
+class BoardRenderer implements IWorldConstants {
+  ABoard board;
+  ComputedPixelImage canvas;
+  boolean[] dirty;
+  int[] dirtyCells;
+  int dirtyCount;
+  boolean allDirty;
+  int paintedLastFrame;
+  SpriteAtlas atlas;
+  AllocationCounter allocations;
+  long bytesAllocatedLastFrame;
+
+  // the constructor
+  BoardRenderer(ABoard board) {
+    this.board = board;
+    this.atlas = new SpriteAtlas(board);
+    this.allocations = new AllocationCounter();
+    this.bytesAllocatedLastFrame = 0;
+    this.canvas = new ComputedPixelImage(board.camera.width(), board.camera.height());
+    this.dirty = new boolean[board.width * board.height];
+    this.dirtyCells = new int[board.width * board.height];
+    this.dirtyCount = 0;
+    this.allDirty = true;
+    this.paintedLastFrame = 0;
+  }
+
+  // marks one cell as needing a repaint
+  // EFFECT: Adds the cell to the dirty list unless it is already on it or
+  // out of view
+  void markDirty(int index) {
+    if (!allDirty && !dirty[index] && board.camera.shows(index)) {
+      dirty[index] = true;
+      dirtyCells[dirtyCount] = index;
+      dirtyCount++;
+    }
+  }
+
+  // marks every cell as needing a repaint
+  // EFFECT: Forces the next render to repaint the whole board
+  void markAllDirty() {
+    allDirty = true;
+  }
+
+  // brings the retained image up to date
+  // EFFECT: Repaints the dirty cells (or every cell in view) into the canvas
+  // and clears the dirty list
+  WorldImage render() {
+    allocations.start();
+    paintedLastFrame = 0;
+    for (int i = 0; i < dirtyCount; i++) {
+      if (!allDirty) {
+        paint(dirtyCells[i]);
+      }
+      dirty[dirtyCells[i]] = false;
+    }
+    if (allDirty) {
+      Camera camera = board.camera;
+      for (int r = camera.row; r < camera.row + camera.rows; r++) {
+        for (int c = camera.col; c < camera.col + camera.cols; c++) {
+          paint(r * board.width + c);
+        }
+      }
+      allDirty = false;
+    }
+    dirtyCount = 0;
+    bytesAllocatedLastFrame = allocations.bytesSinceStart();
+    return canvas;
+  }
+
+  // repaints a single cell into the canvas
+  // EFFECT: Fills the solid-color rectangles of the cell's sprite into its
+  // square
+  void paint(int index) {
+    int key = atlas.keyFor(index);
+    int[] rects = atlas.rects(key);
+    Color[] colors = atlas.rectColors[key];
+    int left = (index % board.width - board.camera.col) * board.cellSize
+        + (board.cellSize - atlas.widths[key]) / 2;
+    int top = (index / board.width - board.camera.row) * board.cellSize
+        + (board.cellSize - atlas.heights[key]) / 2;
+
+    for (int i = 0; i < colors.length; i++) {
+      int x = Math.max(left + rects[i * 4], 0);
+      int y = Math.max(top + rects[i * 4 + 1], 0);
+      int right = Math.min(left + rects[i * 4] + rects[i * 4 + 2], canvas.width);
+      int bottom = Math.min(top + rects[i * 4 + 1] + rects[i * 4 + 3], canvas.height);
+      if (right > x && bottom > y) {
+        canvas.setPixels(x, y, right - x, bottom - y, colors[i]);
+      }
+    }
+    paintedLastFrame++;
+  }
+}
+
+// represents the handful of distinct cell pictures on one board, each built
+// and rasterized the first time it is needed and then shared by every cell
+// in that state
+// a rasterized sprite is stored as solid-color rectangles (x, y, width,
+// height) because the canvas fills a rectangle for the cost of one pixel
+class SpriteAtlas implements IWorldConstants {
+  ABoard board;
+  WorldImage[] images;
+  int[][] rects;
+  Color[][] rectColors;
+  int[] widths;
+  int[] heights;
+  int spritesBuilt;
+
+  // the constructor
+  SpriteAtlas(ABoard board) {
+    this.board = board;
+    this.images = new WorldImage[SPRITE_COUNT];
+    this.rects = new int[SPRITE_COUNT][];
+    this.rectColors = new Color[SPRITE_COUNT][];
+    this.widths = new int[SPRITE_COUNT];
+    this.heights = new int[SPRITE_COUNT];
+    this.spritesBuilt = 0;
+  }
+
+  // finds the sprite key for the current state of the cell at the given index
+  int keyFor(int index) {
+    if (!board.isRevealedAt(index)) {
+      if (board.isFlaggedAt(index)) {
+        return SPRITE_FLAGGED;
+      }
+      return SPRITE_HIDDEN;
+    } else if (board.isMineAt(index)) {
+      if (board.showExploded()) {
+        return SPRITE_EXPLODED;
+      }
+      return SPRITE_MINE;
+    }
+    return SPRITE_NUMBER + board.adjacentMinesAt(index);
+  }
+
+  // gets the image for the given sprite key
+  // EFFECT: Builds and rasterizes the sprite the first time it is asked for
+  WorldImage image(int key) {
+    if (images[key] == null) {
+      build(key);
+    }
+    return images[key];
+  }
+
+  // gets the rectangles for the given sprite key, four ints per rectangle
+  // EFFECT: Builds and rasterizes the sprite the first time it is asked for
+  int[] rects(int key) {
+    if (rects[key] == null) {
+      build(key);
+    }
+    return rects[key];
+  }
+
+  // builds the sprite for the given key
+  // EFFECT: Stores the sprite's image, size and rectangles in this atlas
+  void build(int key) {
+    boolean revealed = key != SPRITE_HIDDEN && key != SPRITE_FLAGGED;
+    boolean mine = key == SPRITE_MINE || key == SPRITE_EXPLODED;
+    int adjacent = Math.max(key - SPRITE_NUMBER, 0);
+    WorldImage image = board.cellImage(revealed, key == SPRITE_FLAGGED, mine, adjacent,
+        key == SPRITE_EXPLODED);
+    FrozenImage frozen = new FrozenImage(image);
+    int width = (int) frozen.getWidth();
+    int height = (int) frozen.getHeight();
+
+    // Cut every row into runs of one color, then stack each run onto an
+    // identical run directly above it
+    ArrayList<Integer> found = new ArrayList<>();
+    ArrayList<Color> foundColors = new ArrayList<>();
+    ArrayList<Integer> openAbove = new ArrayList<>();
+    for (int py = 0; py < height; py++) {
+      ArrayList<Integer> openHere = new ArrayList<>();
+      int px = 0;
+      while (px < width) {
+        Color color = frozen.getColorAt(px, py);
+        int start = px;
+        while (px < width && frozen.getColorAt(px, py).equals(color)) {
+          px++;
+        }
+        int rect = -1;
+        for (int open : openAbove) {
+          if (found.get(open * 4) == start && found.get(open * 4 + 2) == px - start
+              && foundColors.get(open).equals(color)) {
+            rect = open;
+          }
+        }
+        if (rect >= 0) {
+          found.set(rect * 4 + 3, found.get(rect * 4 + 3) + 1);
+        } else {
+          rect = foundColors.size();
+          found.addAll(Arrays.asList(start, py, px - start, 1));
+          foundColors.add(color);
+        }
+        openHere.add(rect);
+      }
+      openAbove = openHere;
+    }
+
+    int[] packed = new int[found.size()];
+    for (int i = 0; i < packed.length; i++) {
+      packed[i] = found.get(i);
+    }
+
+    images[key] = image;
+    rects[key] = packed;
+    rectColors[key] = foundColors.toArray(new Color[0]);
+    widths[key] = width;
+    heights[key] = height;
+    spritesBuilt++;
+  }
+}
+
+// represents a counter of the bytes the current thread has allocated, used to
+// show how much garbage a frame produces
+class AllocationCounter {
+  com.sun.management.ThreadMXBean threads; // null when the JVM does not provide one
+  long startBytes;
+
+  // the constructor
+  AllocationCounter() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      this.threads = (com.sun.management.ThreadMXBean) bean;
+    } else {
+      this.threads = null;
+    }
+    this.startBytes = 0;
+  }
+
+  // can this JVM count the bytes each thread allocates?
+  boolean isSupported() {
+    return threads != null && threads.isThreadAllocatedMemorySupported()
+        && threads.isThreadAllocatedMemoryEnabled();
+  }
+
+  // reads how many bytes the current thread has allocated so far, or 0 when
+  // the JVM cannot tell
+  long allocatedBytes() {
+    if (isSupported()) {
+      return threads.getThreadAllocatedBytes(Thread.currentThread().threadId());
+    }
+    return 0;
+  }
+
+  // starts a new measurement
+  // EFFECT: Remembers the current allocation total
+  void start() {
+    startBytes = allocatedBytes();
+  }
+
+  // counts the bytes allocated since the last start
+  long bytesSinceStart() {
+    return allocatedBytes() - startBytes;
+  }
+}
+
+// represents the last FRAME_HISTORY frames the game drew: how long each
+// makeScene took, how many bytes it allocated, how long the click before it
+// waited to be drawn (-1 when there was none) and how many cells that click
+// opened. Frames are kept in a ring, so slot frames % capacity is the next
+class FrameStats {
+  long[] frameNanos;
+  long[] frameBytes;
+  long[] latencyNanos;
+  int[] floodCells;
+  long[] sorted; // scratch space that percentile sorts in, reused by every call
+  int capacity;
+  int frames;
+  AllocationCounter allocations;
+  long frameStart;
+  long inputTime;
+  int pendingCells;
+
+  // the constructor
+  FrameStats(int capacity) {
+    this.capacity = capacity;
+    this.frameNanos = new long[capacity];
+    this.frameBytes = new long[capacity];
+    this.latencyNanos = new long[capacity];
+    this.floodCells = new int[capacity];
+    this.sorted = new long[capacity];
+    this.frames = 0;
+    this.allocations = new AllocationCounter();
+    this.inputTime = -1;
+    this.pendingCells = 0;
+  }
+
+  // starts timing a frame
+  // EFFECT: Remembers the current time and allocation total
+  void beginFrame() {
+    frameStart = System.nanoTime();
+    allocations.start();
+  }
+
+  // finishes timing the frame started by beginFrame
+  // EFFECT: Stores the frame in the next slot and clears the pending click
+  void endFrame() {
+    long now = System.nanoTime();
+    int slot = frames % capacity;
+    frameNanos[slot] = now - frameStart;
+    frameBytes[slot] = allocations.bytesSinceStart();
+    latencyNanos[slot] = inputTime < 0 ? -1 : now - inputTime;
+    floodCells[slot] = pendingCells;
+    inputTime = -1;
+    pendingCells = 0;
+    frames++;
+  }
+
+  // notes that a click arrived; the next frame drawn measures its latency
+  // EFFECT: Remembers the time of the first click since the last frame
+  void inputReceived() {
+    if (inputTime < 0) {
+      inputTime = System.nanoTime();
+    }
+  }
+
+  // notes that a click opened the given number of cells
+  // EFFECT: Adds them to the next frame's flood size
+  void cellsOpened(int cells) {
+    pendingCells += cells;
+  }
+
+  // how many frames are currently stored?
+  int stored() {
+    return Math.min(frames, capacity);
+  }
+
+  // returns the given percentile (0 to 100) of the stored values, skipping
+  // negative ones, or -1 when there are none
+  long percentile(long[] values, double p) {
+    int count = 0;
+    for (int i = 0; i < stored(); i++) {
+      if (values[i] >= 0) {
+        sorted[count] = values[i];
+        count++;
+      }
+    }
+    if (count == 0) {
+      return -1;
+    }
+    Arrays.sort(sorted, 0, count);
+    int rank = (int) Math.ceil(p / 100 * count) - 1;
+    return sorted[Math.max(0, Math.min(count - 1, rank))];
+  }
+
+  // returns the largest flood among the stored frames
+  int maxFlood() {
+    int max = 0;
+    for (int i = 0; i < stored(); i++) {
+      max = Math.max(max, floodCells[i]);
+    }
+    return max;
+  }
+
+  // formats nanoseconds as milliseconds, or "-" for a missing value
+  String millis(long nanos) {
+    if (nanos < 0) {
+      return "-";
+    }
+    return String.format("%.2f ms", nanos / 1e6);
+  }
+
+  // draws the live numbers as a small panel in the top left corner
+  // EFFECT: Places the panel and its lines onto the given scene
+  void drawOnto(WorldScene scene) {
+    String[] lines = {
+        "frames: " + frames,
+        "scene p50 " + millis(percentile(frameNanos, 50))
+            + "  p99 " + millis(percentile(frameNanos, 99)),
+        "alloc p50 " + percentile(frameBytes, 50) / 1024 + " KB/frame",
+        "click->draw p50 " + millis(percentile(latencyNanos, 50))
+            + "  p99 " + millis(percentile(latencyNanos, 99)),
+        "largest flood: " + maxFlood() + " cells" };
+    int panelWidth = 300;
+    int lineHeight = 18;
+    int panelHeight = lines.length * lineHeight + 10;
+    scene.placeImageXY(new RectangleImage(panelWidth, panelHeight, OutlineMode.SOLID,
+        new Color(0, 0, 0, 170)), 5 + panelWidth / 2, 5 + panelHeight / 2);
+    for (int i = 0; i < lines.length; i++) {
+      WorldImage text = new TextImage(lines[i], 13, FontStyle.REGULAR, Color.WHITE);
+      scene.placeImageXY(text, 13 + (int) text.getWidth() / 2, 19 + i * lineHeight);
+    }
+  }
+
+  // writes the stored frames, oldest first, as CSV
+  // EFFECT: Creates or replaces the given file
+  void writeCsv(File file) {
+    int first = frames - stored();
+    try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+      out.println("frame,scene_us,allocated_bytes,click_latency_us,flood_cells");
+      for (int f = first; f < frames; f++) {
+        int slot = f % capacity;
+        long latency = latencyNanos[slot] < 0 ? -1 : latencyNanos[slot] / 1000;
+        out.println(f + "," + frameNanos[slot] / 1000 + "," + frameBytes[slot] + ","
+            + latency + "," + floodCells[slot]);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
+
+// represents a first-in first-out ring buffer of cell indices, reused
+// between flood fills so that revealing a region allocates nothing
+class IndexQueue {
+  int[] items;
+  int head;
+  int size;
+
+  // the constructor
+  IndexQueue(int capacity) {
+    this.items = new int[Math.max(capacity, 1)];
+    this.head = 0;
+    this.size = 0;
+  }
+
+  // is this queue empty?
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  // adds an index to the back of this queue
+  // EFFECT: Stores the index, doubling the buffer when it is full
+  void add(int index) {
+    if (size == items.length) {
+      int[] bigger = new int[items.length * 2];
+      for (int i = 0; i < size; i++) {
+        bigger[i] = items[(head + i) % items.length];
+      }
+      items = bigger;
+      head = 0;
+    }
+    items[(head + size) % items.length] = index;
+    size++;
+  }
+
+  // removes and returns the index at the front of this queue
+  // EFFECT: Advances the front of the queue
+  int remove() {
+    if (size == 0) {
+      throw new NoSuchElementException("Cannot remove from an empty queue");
+    }
+    int index = items[head];
+    head = (head + 1) % items.length;
+    size--;
+    return index;
+  }
+
+  // empties this queue while keeping its buffer
+  // EFFECT: Resets the front and size of the queue
+  void clear() {
+    head = 0;
+    size = 0;
+  }
+}
+
+// represents the mines of a board as one bit per cell, each row packed into
+// its own run of longs (column c is bit c % 64 of the row's word c / 64)
+// the mine counts of 64 cells are found at once: the neighbor rows are
+// shifted into line and summed by a bit-sliced adder into four bit planes,
+// which hold the binary digits of every cell's count
+class MineBitboard {
+  int width;
+  int height;
+  int words;
+  long[] bits;
+
+  // the constructor starts with no mines
+  MineBitboard(int width, int height) {
+    this.width = width;
+    this.height = height;
+    this.words = (width + 63) >>> 6;
+    this.bits = new long[words * height];
+  }
+
+  // puts a mine in the cell at the given index
+  // EFFECT: Sets the cell's bit
+  void set(int index) {
+    int row = index / width;
+    int col = index % width;
+    bits[row * words + (col >>> 6)] |= 1L << col;
+  }
+
+  // is there a mine in the cell at the given index?
+  boolean isSet(int index) {
+    return isSet(index / width, index % width);
+  }
+
+  // is there a mine in the cell at the given row and column?
+  boolean isSet(int row, int col) {
+    return (bits[row * words + (col >>> 6)] & (1L << col)) != 0;
+  }
+
+  // counts the mines
+  int count() {
+    int count = 0;
+    for (long word : bits) {
+      count += Long.bitCount(word);
+    }
+    return count;
+  }
+
+  // counts the mines next to every cell, in index order (a mine's own count
+  // is left at zero)
+  byte[] counts() {
+    byte[] counts = new byte[width * height];
+    long[] planes = new long[4];
+    long lastMask = -1L;
+    if ((width & 63) != 0) {
+      lastMask = (1L << width) - 1;
+    }
+    for (int row = 0; row < height; row++) {
+      for (int w = 0; w < words; w++) {
+        planes[0] = 0;
+        planes[1] = 0;
+        planes[2] = 0;
+        planes[3] = 0;
+        for (int r = Math.max(row - 1, 0); r <= Math.min(row + 1, height - 1); r++) {
+          addNeighbors(planes, r, w, r != row);
+        }
+
+        // Only cells that are not mines and have a mine nearby need a count
+        long pending = (planes[0] | planes[1] | planes[2] | planes[3]) & ~bits[row * words + w];
+        if (w == words - 1) {
+          pending &= lastMask;
+        }
+        int start = row * width + (w << 6);
+        while (pending != 0) {
+          int bit = Long.numberOfTrailingZeros(pending);
+          pending &= pending - 1;
+          counts[start + bit] = (byte) ((planes[0] >>> bit & 1)
+              | (planes[1] >>> bit & 1) << 1
+              | (planes[2] >>> bit & 1) << 2
+              | (planes[3] >>> bit & 1) << 3);
+        }
+      }
+    }
+    return counts;
+  }
+
+  // adds the mines of one row next to word w of a cell row to the bit
+  // planes: the mines to the left and right of each column, and the mine in
+  // the column itself if the row is above or below
+  // EFFECT: Adds up to three one-bit-per-cell rows into planes
+  void addNeighbors(long[] planes, int row, int w, boolean withCenter) {
+    int base = row * words;
+    long middle = bits[base + w];
+    long before = 0;
+    long after = 0;
+    if (w > 0) {
+      before = bits[base + w - 1];
+    }
+    if (w < words - 1) {
+      after = bits[base + w + 1];
+    }
+    add(planes, (middle << 1) | (before >>> 63));
+    add(planes, (middle >>> 1) | (after << 63));
+    if (withCenter) {
+      add(planes, middle);
+    }
+  }
+
+  // adds a one-bit-per-cell row to the four bit planes of the counts, 64
+  // cells at a time, carrying from each plane into the next
+  // EFFECT: Updates planes
+  void add(long[] planes, long row) {
+    long carry = planes[0] & row;
+    planes[0] ^= row;
+    long carry2 = planes[1] & carry;
+    planes[1] ^= carry;
+    long carry3 = planes[2] & carry2;
+    planes[2] ^= carry2;
+    planes[3] |= carry3;
+  }
+}
+
+// represents a seeded source of independent random streams: the board's
+// mines, the hints, a simulated player and the seeds of new games each draw
+// from their own SplittableRandom, so one subsystem's draws never shift
+// another's and two services built from the same seed replay identically
+class RandomService implements IWorldConstants {
+  long seed;
+  SplittableRandom[] streams;
+
+  // the constructor derives every stream from the given master seed
+  RandomService(long seed) {
+    this.seed = seed;
+    this.streams = new SplittableRandom[RNG_STREAMS];
+    for (int i = 0; i < RNG_STREAMS; i++) {
+      this.streams[i] = new SplittableRandom(mix(seed + i * 0x9E3779B97F4A7C15L));
+    }
+  }
+
+  // returns the stream reserved for the given subsystem
+  RandomGenerator stream(int subsystem) {
+    return streams[subsystem];
+  }
+
+  // scrambles a seed so that nearby seeds give unrelated streams
+  long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
+
+// represents a set of cell indices that can add, remove and pick a random
+// member in constant time: members sit unordered at the front of items, and
+// positions maps each cell to its slot in items (or -1), so removing a member
+// moves the last one into its slot
+class CellSet {
+  int[] items;
+  int[] positions;
+  int size;
+
+  // the constructor for a set of cells from a board with the given number
+  // of cells
+  CellSet(int cells) {
+    this.items = new int[16];
+    this.positions = new int[cells];
+    Arrays.fill(this.positions, -1);
+    this.size = 0;
+  }
+
+  // is this set empty?
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  // is the given cell in this set?
+  boolean contains(int cell) {
+    return positions[cell] != -1;
+  }
+
+  // adds the given cell to this set
+  // EFFECT: Appends the cell, doubling items if it is full
+  void add(int cell) {
+    if (positions[cell] == -1) {
+      if (size == items.length) {
+        items = Arrays.copyOf(items, items.length * 2);
+      }
+      items[size] = cell;
+      positions[cell] = size;
+      size++;
+    }
+  }
+
+  // removes the given cell from this set
+  // EFFECT: Moves the last member into the removed cell's slot
+  void remove(int cell) {
+    int slot = positions[cell];
+    if (slot != -1) {
+      int last = items[size - 1];
+      items[slot] = last;
+      positions[last] = slot;
+      positions[cell] = -1;
+      size--;
+    }
+  }
+
+  // picks a random member of this set
+  int pick(RandomGenerator rand) {
+    if (size == 0) {
+      throw new NoSuchElementException("Cannot pick from an empty set");
+    }
+    return items[rand.nextInt(size)];
+  }
+
+  // removes every member
+  // EFFECT: Resets the positions of the members and empties the set
+  void clear() {
+    for (int i = 0; i < size; i++) {
+      positions[items[i]] = -1;
+    }
+    size = 0;
+  }
+}
+
+// represents a single cell in the game
+class Cell implements IWorldConstants {
+  int x;
+  int y;
+  boolean isMine;
+  boolean isRevealed;
+  boolean isFlagged;
+  int adjacentMines;
+  ArrayList<Cell> neighbors;
+  Board board;
+  int cellSize;
+  int offsetX;
+  int offsetY;
+
+  // the constructor
+  Cell(int x, int y, Board board, int cellSize, int offsetX, int offsetY) {
+    this.x = x;
+    this.y = y;
+    this.board = board;
+    this.cellSize = cellSize;
+    this.offsetX = offsetX;
+    this.offsetY = offsetY;
+    this.isMine = false;
+    this.isRevealed = false;
+    this.isFlagged = false;
+    this.adjacentMines = 0;
+    this.neighbors = new ArrayList<>();
+  }
+
+  // computes this cell's index on its board
+  int index() {
+    return y * board.width + x;
+  }
+
+  // adds a neighbor to this cell
+  // EFFECT: Adds a neighboring cell to this cell's neighbor list
+  void addNeighbor(Cell neighbor) {
+    this.neighbors.add(neighbor);
+  }
+
+  // places a mine in this cell
+  // EFFECT: Marks this cell as a mine
+  void placeMine() {
+    this.isMine = true;
+    board.updateMineIndex(index());
+  }
+
+  // counts adjacent mines
+  // EFFECT: Increments adjacent mine count for each neighboring mine
+  void countAdjacentMines() {
+    if (!isMine) {
+      for (Cell neighbor : neighbors) {
+        neighbor.addToCountIfMine(this);
+      }
+    }
+  }
+
+  // helper for double dispatch pattern
+  // EFFECT: Increments the adjacent mine count of the asking cell if this cell is
+  // a mine
+  void addToCountIfMine(Cell asking) {
+    if (this.isMine) {
+      asking.incrementAdjacentMines();
+    }
+  }
+
+  // increments adjacent mine count
+  // EFFECT: Increments the count of adjacent mines for this cell
+  void incrementAdjacentMines() {
+    this.adjacentMines++;
+  }
+
+  // reveals this cell
+  // EFFECT: Reveals the cell, updates game state, and performs flood fill if
+  // necessary
+  void reveal() {
+    if (!isRevealed && !isFlagged) {
+      board.revealAt(index());
+    }
+  }
+
+  // force reveals (for game over)
+  // EFFECT: Forces this cell to be revealed regardless of its current state
+  void forceReveal() {
+    board.touch(index());
+    isRevealed = true;
+    board.updateMineIndex(index());
+  }
+
+  // toggles flag on this cell
+  // EFFECT: Toggles the flagged state of this cell if it is not revealed
+  void toggleFlag() {
+    if (!isRevealed) {
+      board.touch(index());
+      isFlagged = !isFlagged;
+      board.updateMineIndex(index());
+    }
+  }
+
+  void addToListIfUnflaggedMine(ArrayList<Cell> list) {
+    if (isMine && !isFlagged && !isRevealed) {
+      list.add(this);
+    }
+  }
+
+  // sets flag on this cell (for hint system)
+  void setFlag() {
+    if (!isRevealed && !isFlagged) {
+      board.touch(index());
+      isFlagged = true;
+      board.updateMineIndex(index());
+    }
+  }
+
+}
+
+// represents the minesweeper game world
+class MineSweeper extends World implements IWorldConstants, IGameListener {
+  int state;
+  IGameState[] states;
+  ABoard board;
+  GameRecorder recorder;
+  int worldWidth;
+  int worldHeight;
+  int cellSize;
+  int boardOffsetX;
+  int boardOffsetY;
+  int viewWidth;
+  int viewHeight;
+
+  // Custom game settings
+  Slider widthSlider;
+  Slider heightSlider;
+  Slider mineSlider;
+
+  // Button positions for menu
+  Button easyButton;
+  Button mediumButton;
+  Button hardButton;
+  Button customButton;
+  Button endlessButton;
+  Button noGuessButton;
+  Button playButton;
+  Button backButton;
+  Button menuButton;
+  Button hintButton; // NEW: hint button
+
+  // Hit-test indices for the widgets of each screen
+  WidgetLayer menuWidgets;
+  WidgetLayer setupWidgets;
+  WidgetLayer hudWidgets;
+  WidgetLayer overWidgets;
+
+  // Game over message
+  boolean wonGame;
+
+  // Source of the seeds for each new game
+  RandomService rng;
+
+  // Deals boards that need no guesses, while no-guess mode is on
+  NoGuessDealer dealer;
+
+  // Frame timings, and whether they are drawn over the game
+  FrameStats stats;
+  boolean showStats;
+
+  // Mine probabilities of the current board, and whether they are drawn
+  Heatmap heatmap;
+  boolean showHeatmap;
+
+  // Undo history of the current board, or null for an endless board
+  UndoJournal journal;
+
+  // the constructor seeds the games from the clock, so that every played game
+  // differs (tests pass a seed instead)
+  MineSweeper() {
+    this(System.nanoTime());
+  }
+
+  // the constructor for a session whose games are reproducible from the
+  // given seed
+  MineSweeper(long seed) {
+    this.rng = new RandomService(seed);
+    this.stats = new FrameStats(FRAME_HISTORY);
+    this.showStats = false;
+    this.heatmap = null;
+    this.showHeatmap = false;
+    this.journal = null;
+    this.dealer = null;
+    this.states = new IGameState[STATE_COUNT];
+    this.states[MENU] = new MenuState();
+    this.states[CUSTOM_SETUP] = new CustomSetupState();
+    this.states[PLAYING] = new PlayingState();
+    this.states[GAME_OVER] = new GameOverState();
+    this.state = MENU;
+    this.worldWidth = MENU_WIDTH;
+    this.worldHeight = MENU_HEIGHT;
+    this.cellSize = DEFAULT_CELL_SIZE;
+    this.hintButton = new Button(0, 0, 100, 30, "Hint");
+    this.menuButton = new Button(0, 0, BUTTON_WIDTH, BUTTON_HEIGHT, "Back to Menu");
+    this.hudWidgets = new WidgetLayer(MENU_WIDTH, MENU_HEIGHT);
+    this.hudWidgets.add(hintButton);
+    this.overWidgets = new WidgetLayer(MENU_WIDTH, MENU_HEIGHT);
+    this.overWidgets.add(menuButton);
+    layoutHud();
+    initializeMenu();
+  }
+
+  // moves the in-game buttons to fit the current world size
+  // EFFECT: Repositions the hint and back to menu buttons and their indices
+  void layoutHud() {
+    hudWidgets.move(hintButton, worldWidth / 2, worldHeight - 25);
+    overWidgets.move(menuButton, worldWidth / 2, worldHeight / 2 + 50);
+  }
+
+  // calculates appropriate dimensions for the board
+  // EFFECT: Sets cell size, view size, world dimensions, and offsets based on
+  // board size; a board too big to fit at MIN_CELL_SIZE is shown through a
+  // view of the largest size instead of growing the window
+  void calculateDimensions(int cols, int rows) {
+    // Start with default cell size
+    cellSize = DEFAULT_CELL_SIZE;
+
+    // Calculate board dimensions with default cell size
+    int boardWidth = cols * cellSize;
+    int boardHeight = rows * cellSize;
+
+    // If board is too large, scale down the cell size
+    if (boardWidth > MAX_BOARD_WIDTH || boardHeight > MAX_BOARD_HEIGHT) {
+      double widthRatio = MAX_BOARD_WIDTH / (double) boardWidth;
+      double heightRatio = MAX_BOARD_HEIGHT / (double) boardHeight;
+      double ratio = Math.min(widthRatio, heightRatio);
+      cellSize = Math.max(MIN_CELL_SIZE, (int) (cellSize * ratio));
+
+      // Recalculate board dimensions
+      boardWidth = Math.min(cols, MAX_BOARD_WIDTH / cellSize) * cellSize;
+      boardHeight = Math.min(rows, MAX_BOARD_HEIGHT / cellSize) * cellSize;
+    }
+    viewWidth = boardWidth;
+    viewHeight = boardHeight;
+
+    // Set world dimensions with padding
+    worldWidth = boardWidth + 2 * BOARD_PADDING;
+    worldHeight = boardHeight + 2 * BOARD_PADDING + 100; // Extra space for UI
+
+    // Calculate offsets to center the board
+    boardOffsetX = BOARD_PADDING;
+    boardOffsetY = BOARD_PADDING;
+    layoutHud();
+  }
+
+  // creates the world scene
+  public WorldScene makeScene() {
+    stats.beginFrame();
+    WorldScene scene = new WorldScene(worldWidth, worldHeight);
+    states[state].draw(this, scene);
+    stats.endFrame();
+    if (showStats) {
+      stats.drawOnto(scene);
+    }
+    return scene;
+  }
+
+  // moves the game to the given state
+  // EFFECT: Sets the current state
+  void enter(int next) {
+    state = next;
+  }
+
+  // draws the board with its background and info panel
+  // EFFECT: Draws the background, the board, the heatmap if it is on, and
+  // the game info
+  void drawBoardScene(WorldScene scene) {
+    // Draw background
+    WorldImage bg = new RectangleImage(worldWidth, worldHeight,
+        OutlineMode.SOLID, BACKGROUND);
+    scene.placeImageXY(bg, worldWidth / 2, worldHeight / 2);
+
+    board.drawOnto(scene);
+    if (showHeatmap && board.knowsMineCount()) {
+      if (heatmap == null || heatmap.board != board) {
+        heatmap = new Heatmap(board);
+      }
+      heatmap.drawOnto(scene);
+    }
+
+    // Draw game info
+    drawGameInfo(scene);
+  }
+
+  // initializes menu buttons
+  // EFFECT: Creates buttons for easy, medium, hard, and custom game modes
+  void initializeMenu() {
+    int centerX = MENU_WIDTH / 2;
+    int startY = 200;
+
+    easyButton = new Button(centerX,
+        startY, BUTTON_WIDTH, BUTTON_HEIGHT, "Easy (9x9, 10 mines)");
+    mediumButton = new Button(centerX,
+        startY + UI_SPACING, BUTTON_WIDTH, BUTTON_HEIGHT, "Medium (16x16, 40 mines)");
+    hardButton = new Button(centerX,
+        startY + UI_SPACING * 2, BUTTON_WIDTH, BUTTON_HEIGHT, "Hard (30x16, 99 mines)");
+    customButton = new Button(centerX,
+        startY + UI_SPACING * 3, BUTTON_WIDTH, BUTTON_HEIGHT, "Custom");
+    endlessButton = new Button(centerX,
+        startY + UI_SPACING * 4, BUTTON_WIDTH, BUTTON_HEIGHT, "Endless");
+    noGuessButton = new Button(centerX,
+        startY + UI_SPACING * 5, BUTTON_WIDTH, BUTTON_HEIGHT, "No-guess: Off");
+
+    menuWidgets = new WidgetLayer(MENU_WIDTH, MENU_HEIGHT);
+    menuWidgets.add(easyButton);
+    menuWidgets.add(mediumButton);
+    menuWidgets.add(hardButton);
+    menuWidgets.add(customButton);
+    menuWidgets.add(endlessButton);
+    menuWidgets.add(noGuessButton);
+  }
+
+  // initializes custom setup screen
+  // EFFECT: Creates sliders and buttons for custom game setup
+  void initializeCustomSetup() {
+    int centerX = MENU_WIDTH / 2;
+
+    widthSlider = new Slider(centerX, 200, SLIDER_WIDTH, 0, 50, 15, "Width");
+    heightSlider = new Slider(centerX, 280, SLIDER_WIDTH, 5, 40, 15, "Height");
+    mineSlider = new Slider(centerX, 360, SLIDER_WIDTH, 10, 500, 50, "Mines");
+    playButton = new Button(centerX, 450, 150, BUTTON_HEIGHT, "Play");
+    backButton = new Button(centerX, 520, 150, BUTTON_HEIGHT, "Back");
+
+    setupWidgets = new WidgetLayer(MENU_WIDTH, MENU_HEIGHT);
+    setupWidgets.add(widthSlider);
+    setupWidgets.add(heightSlider);
+    setupWidgets.add(mineSlider);
+    setupWidgets.add(playButton);
+    setupWidgets.add(backButton);
+  }
+
+  // draws game info panel
+  // EFFECT: Draws the game info panel with mine count and board dimensions
+  void drawGameInfo(WorldScene scene) {
+    String info = "Mines: " + board.mineCount + " | Cells: " + board.width + "x" + board.height;
+    WorldImage infoText = new TextImage(info, 16, FontStyle.BOLD, Color.BLACK);
+    WorldImage infoBg = new RectangleImage(200, 30,
+        OutlineMode.SOLID, new Color(255, 255, 255, 200));
+    WorldImage infoPanel = new OverlayImage(infoText, infoBg);
+    scene.placeImageXY(infoPanel, worldWidth / 2, worldHeight - 60);
+  }
+
+  // draws hint button
+  // EFFECT: Places the game screen's widgets, which hold the hint button, on the scene
+  void drawHintButton(WorldScene scene) {
+    hudWidgets.drawOnto(scene);
+  }
+
+  // draws menu screen
+  // EFFECT: Draws the main menu with title and difficulty buttons
+  void drawMenu(WorldScene scene) {
+    // Background
+    WorldImage bg = new RectangleImage(worldWidth, worldHeight, OutlineMode.SOLID, BACKGROUND);
+    scene.placeImageXY(bg, worldWidth / 2, worldHeight / 2);
+
+    // Title with shadow effect
+    WorldImage titleShadow = new TextImage("MINESWEEPER",
+        48, FontStyle.BOLD, new Color(100, 100, 100));
+    WorldImage title = new TextImage("MINESWEEPER", 48, FontStyle.BOLD, Color.BLACK);
+    scene.placeImageXY(titleShadow, MENU_WIDTH / 2 + 3, TITLE_Y + 3);
+    scene.placeImageXY(title, MENU_WIDTH / 2, TITLE_Y);
+
+    menuWidgets.drawOnto(scene);
+  }
+
+  // draws custom setup screen
+  // EFFECT: Draws the custom game setup screen with sliders and buttons
+  void drawCustomSetup(WorldScene scene) {
+    // Background
+    WorldImage bg = new RectangleImage(worldWidth, worldHeight, OutlineMode.SOLID, BACKGROUND);
+    scene.placeImageXY(bg, worldWidth / 2, worldHeight / 2);
+
+    WorldImage title = new TextImage("Custom Game Setup", 36, FontStyle.BOLD, Color.BLACK);
+    scene.placeImageXY(title, MENU_WIDTH / 2, TITLE_Y);
+
+    // Update mine slider max based on current dimensions
+    int maxMines = widthSlider.getValue() * heightSlider.getValue() - 1;
+    mineSlider.setMax(maxMines);
+
+    setupWidgets.drawOnto(scene);
+  }
+
+  // draws game over overlay
+  // EFFECT: Draws a semi-transparent overlay with a message and button
+  void drawGameOverOverlay(WorldScene scene) {
+    // Semi-transparent overlay
+    WorldImage overlay = new RectangleImage(worldWidth, worldHeight,
+        OutlineMode.SOLID, new Color(0, 0, 0, 150));
+    scene.placeImageXY(overlay, worldWidth / 2, worldHeight / 2);
+
+    // Message with glow effect
+    String message;
+    Color msgColor;
+    Color glowColor;
+
+    if (wonGame) {
+      message = "You Win!";
+      msgColor = Color.GREEN;
+      glowColor = new Color(0, 255, 0, 100);
+    } else {
+      message = "Game Over!";
+      msgColor = Color.RED;
+      glowColor = new Color(255, 0, 0, 100);
+    }
+
+    WorldImage textGlow = new TextImage(message, 66, FontStyle.BOLD, glowColor);
+    WorldImage text = new TextImage(message, 64, FontStyle.BOLD, msgColor);
+    scene.placeImageXY(textGlow, worldWidth / 2, worldHeight / 2 - 50);
+    scene.placeImageXY(text, worldWidth / 2, worldHeight / 2 - 50);
+
+    overWidgets.drawOnto(scene);
+  }
+
+  // handles mouse clicks
+  // EFFECT: Handles clicks based on the current game state
+  public void onMouseClicked(Posn pos, String button) {
+    stats.inputReceived();
+    ABoard before = board;
+    int revealed = board == null ? 0 : board.cellsRevealed;
+    states[state].onClick(this, pos, button);
+    if (board != null && board == before) {
+      stats.cellsOpened(Math.max(0, board.cellsRevealed - revealed));
+    }
+  }
+
+  // handles the mouse going down
+  // EFFECT: Lets the widget under the mouse capture it
+  public void onMousePressed(Posn pos) {
+    states[state].widgets(this).press(pos);
+  }
+
+  // handles the mouse moving
+  // EFFECT: Updates which widget is hovered
+  public void onMouseMoved(Posn pos) {
+    states[state].widgets(this).moveMouse(pos);
+  }
+
+  // handles the mouse coming up, which finishes a drag (javalib does not
+  // report the moves in between, so a slider jumps to where it was let go)
+  // EFFECT: Drags the captured widget to the release point
+  public void onMouseReleased(Posn pos) {
+    states[state].widgets(this).release(pos);
+  }
+
+  // handles menu clicks
+  // EFFECT: Starts a new game based on the selected difficulty or opens custom
+  // setup
+  void handleMenuClick(Posn pos) {
+    IWidget hit = menuWidgets.widgetAt(pos);
+    if (hit == easyButton) {
+      startGame(EASY_WIDTH, EASY_HEIGHT, EASY_MINES);
+    } else if (hit == mediumButton) {
+      startGame(MEDIUM_WIDTH, MEDIUM_HEIGHT, MEDIUM_MINES);
+    } else if (hit == hardButton) {
+      startGame(HARD_WIDTH, HARD_HEIGHT, HARD_MINES);
+    } else if (hit == customButton) {
+      enter(CUSTOM_SETUP);
+      initializeCustomSetup();
+    } else if (hit == endlessButton) {
+      startEndless(rng.stream(RNG_GAMES).nextLong());
+    } else if (hit == noGuessButton) {
+      toggleNoGuess();
+    }
+  }
+
+  // handles custom setup clicks
+  // EFFECT: Updates sliders and starts game when play button is clicked
+  void handleCustomClick(Posn pos) {
+    IWidget hit = setupWidgets.widgetAt(pos);
+    if (hit == widthSlider || hit == heightSlider || hit == mineSlider) {
+      ((Slider) hit).handleClick(pos);
+    } else if (hit == playButton) {
+      int w = widthSlider.getValue();
+      int h = heightSlider.getValue();
+      int m = Math.min(mineSlider.getValue(), w * h - 1);
+      startGame(w, h, m);
+    } else if (hit == backButton) {
+      enter(MENU);
+      worldWidth = MENU_WIDTH;
+      worldHeight = MENU_HEIGHT;
+    }
+  }
+
+  // handles game clicks
+  // EFFECT: Reveals a cell or flags a mine based on mouse click
+  void handleGameClick(Posn pos, String button) {
+    // Check if hint button was clicked
+    if (hudWidgets.widgetAt(pos) == hintButton && button.equals("LeftButton")) {
+      board.record(0, EVENT_HINT);
+      board.flagRandomMine();
+    } else {
+      board.handleClick(pos, button);
+    }
+  }
+
+  // handles game over clicks
+  // EFFECT: Returns to menu when the game over button is clicked
+  void handleGameOverClick(Posn pos) {
+    if (overWidgets.widgetAt(pos) == menuButton) {
+      if (board != null) {
+        board.release();
+      }
+      enter(MENU);
+      worldWidth = MENU_WIDTH;
+      worldHeight = MENU_HEIGHT;
+    }
+  }
+
+  // starts a new game
+  // EFFECT: Initializes the board and sets game state to playing; in
+  // no-guess mode, takes a ready no-guess board and opens its first click
+  // (or deals an ordinary board if none is ready yet)
+  void startGame(int cols, int rows, int mines) {
+    enter(PLAYING);
+    calculateDimensions(cols, rows);
+    NoGuessPuzzle puzzle = null;
+    if (dealer != null) {
+      puzzle = dealer.poll(cols, rows, mines);
+    }
+    long seed;
+    if (puzzle != null) {
+      seed = puzzle.seed;
+    } else {
+      seed = rng.stream(RNG_GAMES).nextLong();
+    }
+    AFixedBoard fixed;
+    if (cols * rows >= FLAT_BOARD_THRESHOLD) {
+      fixed = new FlatBoard(cols, rows, mines, this, cellSize, boardOffsetX, boardOffsetY,
+          new RandomService(seed), true);
+    } else {
+      fixed = new Board(cols, rows, mines, this, cellSize, boardOffsetX, boardOffsetY,
+          new RandomService(seed), true);
+    }
+    board = fixed;
+    board.fitView(viewWidth, viewHeight);
+    startRecording(seed);
+    wonGame = false;
+    if (puzzle != null) {
+      board.record(puzzle.firstClick, EVENT_LEFT);
+      board.revealAt(puzzle.firstClick);
+    }
+    journal = new UndoJournal(fixed);
+    fixed.journal = journal;
+  }
+
+  // takes back the last move, reopening the game if it had ended
+  // EFFECT: Steps the board back one move and enters the state that fits it
+  void undo() {
+    if (journal != null && journal.undo()) {
+      resume();
+    }
+  }
+
+  // makes the last undone move again
+  // EFFECT: Steps the board forward one move and enters the state that fits it
+  void redo() {
+    if (journal != null && journal.redo()) {
+      resume();
+    }
+  }
+
+  // moves the game to the state that fits its board after an undo or redo
+  // EFFECT: Enters GAME_OVER (setting wonGame) if the board is lost or won,
+  // and PLAYING otherwise
+  void resume() {
+    if (board.exploded) {
+      enter(GAME_OVER);
+      wonGame = false;
+    } else if (board.cellsRevealed >= board.totalSafeCells) {
+      enter(GAME_OVER);
+      wonGame = true;
+    } else {
+      enter(PLAYING);
+    }
+  }
+
+  // turns no-guess mode on or off
+  // EFFECT: Starts or stops the dealer and relabels the menu button
+  void toggleNoGuess() {
+    if (dealer == null) {
+      dealer = new NoGuessDealer(rng.stream(RNG_GAMES).nextLong());
+      noGuessButton.label = "No-guess: On";
+    } else {
+      dealer.stop();
+      dealer = null;
+      noGuessButton.label = "No-guess: Off";
+    }
+  }
+
+  // starts recording the current board into a temporary file
+  // EFFECT: Closes the previous recording and attaches a new one to board
+  void startRecording(long seed) {
+    if (recorder != null) {
+      recorder.close();
+    }
+    try {
+      File file = File.createTempFile("minesweeper-game", ".bin");
+      file.deleteOnExit();
+      recorder = new GameRecorder(file, board, seed);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    board.recorder = recorder;
+  }
+
+  // saves the current game's recording to the given path
+  // EFFECT: Writes the save file
+  void saveGame(String path) {
+    if (recorder != null) {
+      recorder.saveTo(new File(path));
+    }
+  }
+
+  // loads a saved game as it was after the given number of events, and
+  // keeps recording from there
+  // EFFECT: Replaces the board and recording with the replayed ones
+  void loadGame(String path, int frames) {
+    GameReplay replay = new GameReplay(new File(path));
+    enter(PLAYING);
+    wonGame = false;
+    calculateDimensions(replay.width, replay.height);
+    AFixedBoard fixed = replay.newBoard(this, cellSize, boardOffsetX, boardOffsetY);
+    board = fixed;
+    board.fitView(viewWidth, viewHeight);
+    replay.play(board, frames);
+    ABoard replayed = board;
+    startRecording(replay.seed);
+    for (int i = 0; i < Math.min(frames, replay.events.length); i++) {
+      recorder.record(replay.events[i] >>> 2, replay.events[i] & 3);
+    }
+    if (replayed.minesPlaced) {
+      recorder.writeMines(replayed);
+    }
+    journal = new UndoJournal(fixed);
+    fixed.journal = journal;
+  }
+
+  // starts a new endless game
+  // EFFECT: Initializes an endless board and sets game state to playing
+  void startEndless(long seed) {
+    if (recorder != null) {
+      recorder.close();
+      recorder = null;
+    }
+    enter(PLAYING);
+    calculateDimensions(ENDLESS_WIDTH, ENDLESS_HEIGHT);
+    wonGame = false;
+    journal = null;
+    board = new ChunkedBoard(ENDLESS_WIDTH, ENDLESS_HEIGHT, seed, ENDLESS_DENSITY,
+        this, cellSize, boardOffsetX, boardOffsetY);
+  }
+
+  // handles key presses
+  // EFFECT: Saves the game with s, loads the saved game with l, toggles the
+  // frame stats with f, exports them with e, toggles the heatmap with h, and
+  // passes any other key to the current state
+  public void onKeyEvent(String key) {
+    if (key.equals("s")) {
+      saveGame(SAVE_FILE);
+    } else if (key.equals("l") && new File(SAVE_FILE).exists()) {
+      loadGame(SAVE_FILE, Integer.MAX_VALUE);
+    } else if (key.equals("f")) {
+      showStats = !showStats;
+    } else if (key.equals("e")) {
+      stats.writeCsv(new File(STATS_FILE));
+    } else if (key.equals("h")) {
+      showHeatmap = !showHeatmap;
+    } else {
+      states[state].onKey(this, key);
+    }
+  }
+
+  // called when game ends
+  // EFFECT: Sets game state to GAME_OVER and reveals all cells
+  public void endGame(boolean won) {
+    enter(GAME_OVER);
+    wonGame = won;
+    board.revealAll();
+  }
+
+}
+
+// represents how the game draws and handles input in one of its states
+// MineSweeper keeps one handler per state in a table indexed by the state
+interface IGameState {
+  // draws the game in this state
+  void draw(MineSweeper game, WorldScene scene);
+
+  // handles a mouse click in this state
+  void onClick(MineSweeper game, Posn pos, String button);
+
+  // handles a key press in this state
+  void onKey(MineSweeper game, String key);
+
+  // finds the widgets on screen in this state
+  WidgetLayer widgets(MineSweeper game);
+}
+
+// represents the main menu
+class MenuState implements IGameState {
+
+  // draws the menu
+  public void draw(MineSweeper game, WorldScene scene) {
+    game.drawMenu(scene);
+  }
+
+  // starts a game or opens the custom setup
+  public void onClick(MineSweeper game, Posn pos, String button) {
+    game.handleMenuClick(pos);
+  }
+
+  // the menu ignores keys
+  public void onKey(MineSweeper game, String key) {
+  }
+
+  // finds the menu buttons
+  public WidgetLayer widgets(MineSweeper game) {
+    return game.menuWidgets;
+  }
+}
+
+// represents the custom game setup screen
+class CustomSetupState implements IGameState {
+
+  // draws the sliders and buttons
+  public void draw(MineSweeper game, WorldScene scene) {
+    game.drawCustomSetup(scene);
+  }
+
+  // moves sliders, starts the game, or goes back
+  public void onClick(MineSweeper game, Posn pos, String button) {
+    game.handleCustomClick(pos);
+  }
+
+  // the setup screen ignores keys
+  public void onKey(MineSweeper game, String key) {
+  }
+
+  // finds the sliders and buttons
+  public WidgetLayer widgets(MineSweeper game) {
+    return game.setupWidgets;
+  }
+}
+
+// represents a game in progress
+class PlayingState implements IGameState, IWorldConstants {
+
+  // draws the board and the hint button
+  public void draw(MineSweeper game, WorldScene scene) {
+    game.drawBoardScene(scene);
+    game.drawHintButton(scene);
+  }
+
+  // reveals, flags or hints
+  public void onClick(MineSweeper game, Posn pos, String button) {
+    game.handleGameClick(pos, button);
+  }
+
+  // pans the board with the arrow keys, zooms it with + and -, and undoes
+  // and redoes moves with z and y
+  public void onKey(MineSweeper game, String key) {
+    if (key.equals("z")) {
+      game.undo();
+    } else if (key.equals("y")) {
+      game.redo();
+    } else if (key.equals("+") || key.equals("=")) {
+      game.board.zoom(ZOOM_STEP);
+    } else if (key.equals("-")) {
+      game.board.zoom(-ZOOM_STEP);
+    } else if (key.equals("left")) {
+      game.board.pan(-PAN_STEP, 0);
+    } else if (key.equals("right")) {
+      game.board.pan(PAN_STEP, 0);
+    } else if (key.equals("up")) {
+      game.board.pan(0, -PAN_STEP);
+    } else if (key.equals("down")) {
+      game.board.pan(0, PAN_STEP);
+    }
+  }
+
+  // finds the hint button
+  public WidgetLayer widgets(MineSweeper game) {
+    return game.hudWidgets;
+  }
+}
+
+// represents a finished game
+class GameOverState implements IGameState {
+
+  // draws the revealed board under the game over message
+  public void draw(MineSweeper game, WorldScene scene) {
+    game.drawBoardScene(scene);
+    game.drawGameOverOverlay(scene);
+  }
+
+  // goes back to the menu
+  public void onClick(MineSweeper game, Posn pos, String button) {
+    game.handleGameOverClick(pos);
+  }
+
+  // takes back the move that ended the game with z, or brings it back with y
+  public void onKey(MineSweeper game, String key) {
+    if (key.equals("z")) {
+      game.undo();
+    } else if (key.equals("y")) {
+      game.redo();
+    }
+  }
+
+  // finds the back to menu button
+  public WidgetLayer widgets(MineSweeper game) {
+    return game.overWidgets;
+  }
+}
+
+// represents a control that can be drawn, hit-tested and dragged
+interface IWidget {
+  // finds the left edge of this widget
+  int left();
+
+  // finds the top edge of this widget
+  int top();
+
+  // finds the right edge of this widget
+  int right();
+
+  // finds the bottom edge of this widget
+  int bottom();
+
+  // checks if point is inside this widget
+  boolean contains(Posn pos);
+
+  // draws this widget
+  void drawOnto(WorldScene scene);
+
+  // moves this widget's center
+  void moveTo(int x, int y);
+
+  // handles the mouse going down on this widget
+  void press(Posn pos);
+
+  // handles the mouse moving while this widget holds it
+  void drag(Posn pos);
+
+  // handles the mouse moving onto (over is true) or off of this widget
+  void hover(boolean over);
+}
+
+// represents the widgets of one screen along with a hit-test index: the
+// screen is cut into WIDGET_GRID-sized squares and each square lists the
+// widgets that overlap it, so finding the widget under the mouse looks at
+// one short list no matter how many widgets there are
+// positions off the grid are clamped to its edge squares
+class WidgetLayer implements IWorldConstants {
+  ArrayList<IWidget> widgets;
+  ArrayList<ArrayList<IWidget>> buckets;
+  int columns;
+  int rows;
+  IWidget hovered;
+  IWidget captured;
+
+  // the constructor for a screen of the given size
+  WidgetLayer(int width, int height) {
+    this.widgets = new ArrayList<>();
+    this.buckets = new ArrayList<>();
+    this.columns = width / WIDGET_GRID + 1;
+    this.rows = height / WIDGET_GRID + 1;
+    for (int i = 0; i < columns * rows; i++) {
+      this.buckets.add(new ArrayList<>());
+    }
+    this.hovered = null;
+    this.captured = null;
+  }
+
+  // finds the grid column of the given x position
+  int column(int x) {
+    return Math.max(0, Math.min(columns - 1, Math.floorDiv(x, WIDGET_GRID)));
+  }
+
+  // finds the grid row of the given y position
+  int row(int y) {
+    return Math.max(0, Math.min(rows - 1, Math.floorDiv(y, WIDGET_GRID)));
+  }
+
+  // adds a widget on top of the others
+  // EFFECT: Adds the widget and indexes it
+  void add(IWidget widget) {
+    widgets.add(widget);
+    index(widget);
+  }
+
+  // lists the widget in every square it overlaps
+  // EFFECT: Adds the widget to those buckets
+  void index(IWidget widget) {
+    for (int r = row(widget.top()); r <= row(widget.bottom()); r++) {
+      for (int c = column(widget.left()); c <= column(widget.right()); c++) {
+        buckets.get(r * columns + c).add(widget);
+      }
+    }
+  }
+
+  // moves a widget and indexes it again
+  // EFFECT: Moves the widget and rebuilds the buckets
+  void move(IWidget widget, int x, int y) {
+    widget.moveTo(x, y);
+    for (ArrayList<IWidget> bucket : buckets) {
+      bucket.clear();
+    }
+    for (IWidget w : widgets) {
+      index(w);
+    }
+  }
+
+  // finds the topmost widget under the given position, or null
+  IWidget widgetAt(Posn pos) {
+    ArrayList<IWidget> bucket = buckets.get(row(pos.y) * columns + column(pos.x));
+    for (int i = bucket.size() - 1; i >= 0; i--) {
+      if (bucket.get(i).contains(pos)) {
+        return bucket.get(i);
+      }
+    }
+    return null;
+  }
+
+  // draws every widget, bottom first
+  // EFFECT: Draws the widgets onto the scene
+  void drawOnto(WorldScene scene) {
+    for (IWidget widget : widgets) {
+      widget.drawOnto(scene);
+    }
+  }
+
+  // handles the mouse going down
+  // EFFECT: Captures the mouse for the widget under it, if any
+  void press(Posn pos) {
+    captured = widgetAt(pos);
+    if (captured != null) {
+      captured.press(pos);
+    }
+  }
+
+  // handles the mouse moving
+  // EFFECT: Drags the captured widget, or updates which widget is hovered
+  void moveMouse(Posn pos) {
+    if (captured != null) {
+      captured.drag(pos);
+    } else {
+      IWidget over = widgetAt(pos);
+      if (over != hovered) {
+        if (hovered != null) {
+          hovered.hover(false);
+        }
+        if (over != null) {
+          over.hover(true);
+        }
+        hovered = over;
+      }
+    }
+  }
+
+  // handles the mouse coming up
+  // EFFECT: Finishes the drag of the captured widget and lets go of it
+  void release(Posn pos) {
+    if (captured != null) {
+      captured.drag(pos);
+      captured = null;
+    }
+  }
+}
+
+// represents a clickable button
+class Button implements IWidget, IWorldConstants {
+  int x;
+  int y;
+  int width;
+  int height;
+  String label;
+  boolean hovered;
+
+  // the constructor
+  Button(int x, int y, int width, int height, String label) {
+    this.x = x;
+    this.y = y;
+    this.width = width;
+    this.height = height;
+    this.label = label;
+    this.hovered = false;
+  }
+
+  // finds the left edge of this button
+  public int left() {
+    return x - width / 2;
+  }
+
+  // finds the top edge of this button
+  public int top() {
+    return y - height / 2;
+  }
+
+  // finds the right edge of this button
+  public int right() {
+    return x + width / 2;
+  }
+
+  // finds the bottom edge of this button
+  public int bottom() {
+    return y + height / 2;
+  }
+
+  // moves this button's center
+  // EFFECT: Sets x and y
+  public void moveTo(int x, int y) {
+    this.x = x;
+    this.y = y;
+  }
+
+  // buttons act on click, not on press
+  public void press(Posn pos) {
+  }
+
+  // buttons cannot be dragged
+  public void drag(Posn pos) {
+  }
+
+  // remembers whether the mouse is over this button
+  // EFFECT: Sets hovered
+  public void hover(boolean over) {
+    this.hovered = over;
+  }
+
+  // checks if point is inside button
+  public boolean contains(Posn pos) {
+    return pos.x >= x - width / 2 && pos.x <= x + width / 2 &&
+        pos.y >= y - height / 2 && pos.y <= y + height / 2;
+  }
+
+  // draws button with 3D effect
+  // EFFECT: Draws the button with a shadow, gradient effect, and text
+  public void drawOnto(WorldScene scene) {
+    // Shadow
+    WorldImage shadow = new RectangleImage(width, height,
+        OutlineMode.SOLID, new Color(50, 50, 50, 50));
+    scene.placeImageXY(shadow, x + 2, y + 2);
+
+    // Button gradient effect, lighter under the mouse
+    Color baseColor;
+    if (hovered) {
+      baseColor = BUTTON_HOVER;
+    } else {
+      baseColor = BUTTON_COLOR;
+    }
+    WorldImage buttonBase = new RectangleImage(width, height, OutlineMode.SOLID, baseColor);
+
+    // Only add gradient for larger buttons
+    if (height > 30) {
+      WorldImage buttonTop = new RectangleImage(width, height / 2, OutlineMode.SOLID,
+          new Color(BUTTON_COLOR.getRed() + 20,
+              BUTTON_COLOR.getGreen() + 20, BUTTON_COLOR.getBlue() + 20));
+      scene.placeImageXY(buttonTop, x, y - height / 4);
+    }
+
+    WorldImage border = new RectangleImage(width, height, OutlineMode.OUTLINE, Color.DARK_GRAY);
+
+    // Adjust font size for smaller buttons
+    int fontSize;
+    if (height > 30) {
+      fontSize = 16;
+    } else {
+      fontSize = 14;
+    }
+    WorldImage text = new TextImage(label, fontSize, FontStyle.BOLD, BUTTON_TEXT);
+
+    scene.placeImageXY(buttonBase, x, y);
+    scene.placeImageXY(border, x, y);
+    scene.placeImageXY(text, x, y);
+  }
+}
+
+// represents a slider control
+class Slider implements IWidget, IWorldConstants {
+  int x;
+  int y;
+  int width;
+  int min;
+  int max;
+  int value;
+  String label;
+
+  // the constructor
+  Slider(int x, int y, int width, int min, int max, int initial, String label) {
+    this.x = x;
+    this.y = y;
+    this.width = width;
+    this.min = min;
+    this.max = max;
+    this.value = initial;
+    this.label = label;
+  }
+
+  // gets current value
+  int getValue() {
+    return value;
+  }
+
+  // sets max value
+  // EFFECT: Updates the maximum value and adjusts current value if necessary
+  void setMax(int newMax) {
+    this.max = newMax;
+    if (value > max) {
+      value = max;
+    }
+  }
+
+  // finds the left edge of this slider's clickable band
+  public int left() {
+    return x - width / 2;
+  }
+
+  // finds the top edge of this slider's clickable band
+  public int top() {
+    return y - 20;
+  }
+
+  // finds the right edge of this slider's clickable band
+  public int right() {
+    return x + width / 2;
+  }
+
+  // finds the bottom edge of this slider's clickable band
+  public int bottom() {
+    return y + 20;
+  }
+
+  // checks if point is inside the slider's clickable band
+  public boolean contains(Posn pos) {
+    return pos.x >= left() && pos.x <= right() && pos.y >= top() && pos.y <= bottom();
+  }
+
+  // moves this slider's center
+  // EFFECT: Sets x and y
+  public void moveTo(int x, int y) {
+    this.x = x;
+    this.y = y;
+  }
+
+  // starts a drag where the mouse went down
+  // EFFECT: Updates the slider value based on mouse position
+  public void press(Posn pos) {
+    handleClick(pos);
+  }
+
+  // follows a drag anywhere on screen, pinning the value at the ends
+  // EFFECT: Updates the slider value based on the mouse's x position
+  public void drag(Posn pos) {
+    double ratio = (pos.x - (x - (double) width / 2)) / (double) width;
+    ratio = Math.max(0, Math.min(1, ratio));
+    value = (int) (min + ratio * (max - min));
+  }
+
+  // sliders do not change under the mouse
+  public void hover(boolean over) {
+  }
+
+  // handles clicks on slider
+  // EFFECT: Updates the slider value based on mouse position
+  void handleClick(Posn pos) {
+    if (pos.y >= y - 20 && pos.y <= y + 20 &&
+        pos.x >= x - width / 2 && pos.x <= x + width / 2) {
+      double ratio = (pos.x - (x - (double) width / 2)) / (double) width;
+      value = (int) (min + ratio * (max - min));
+    }
+  }
+
+  // draws slider with enhanced graphics
+  // EFFECT: Draws the slider track, thumb, and label onto the scene
+  public void drawOnto(WorldScene scene) {
+    // Label
+    WorldImage labelImg = new TextImage(label + ": " + value, 18, FontStyle.BOLD, Color.BLACK);
+    scene.placeImageXY(labelImg, x, y - 40);
+
+    // Track with groove effect
+    WorldImage trackBg = new RectangleImage(width,
+        SLIDER_HEIGHT + 4, OutlineMode.SOLID, Color.DARK_GRAY);
+    WorldImage track = new RectangleImage(width,
+        SLIDER_HEIGHT, OutlineMode.SOLID, SLIDER_TRACK);
+    scene.placeImageXY(trackBg, x, y);
+    scene.placeImageXY(track, x, y);
+
+    // Thumb with 3D effect
+    int thumbX = x - width / 2 + (int) ((value - min) / (double) (max - min) * width);
+    WorldImage thumbShadow = new CircleImage(14, OutlineMode.SOLID, new Color(0, 0, 0, 50));
+    WorldImage thumbOuter = new CircleImage(12, OutlineMode.SOLID, SLIDER_THUMB);
+    WorldImage thumbInner = new CircleImage(8, OutlineMode.SOLID,
+        new Color(SLIDER_THUMB.getRed() + 30,
+            SLIDER_THUMB.getGreen() + 30, SLIDER_THUMB.getBlue() + 30));
+
+    scene.placeImageXY(thumbShadow, thumbX + 1, y + 1);
+    scene.placeImageXY(thumbOuter, thumbX, y);
+    scene.placeImageXY(thumbInner, thumbX, y);
+  }
+}
+
+// represents what the solver could deduce about a board
+class SolverResult {
+  ArrayList<Integer> safeCells;
+  ArrayList<Integer> mines;
+  double[] probabilities;
+  boolean exact;
+
+  // the constructor
+  SolverResult(int size) {
+    this.safeCells = new ArrayList<>();
+    this.mines = new ArrayList<>();
+    this.probabilities = new double[size];
+    this.exact = true;
+  }
+}
+
+// represents one revealed number: exactly value of its hidden neighbors
+// (cells) are mines
+class Constraint {
+  int center;
+  int[] cells;
+  int value;
+
+  // the constructor
+  Constraint(int center, int[] cells, int value) {
+    this.center = center;
+    this.cells = cells;
+    this.value = value;
+  }
+}
+
+// represents a group of undecided frontier cells tied together by shared
+// constraints, along with how many ways each number of mines can be placed
+// in it (weights) and how many of those ways put a mine in each cell
+// (cellCounts, indexed by mine count and then by local cell)
+class Component {
+  int[] cells;
+  double[] weights;
+  double[][] cellCounts;
+
+  // the constructor
+  Component(int[] cells) {
+    this.cells = cells;
+    this.weights = new double[cells.length + 1];
+    this.cellCounts = new double[cells.length + 1][cells.length];
+  }
+}
+
+// represents a constraint-propagation solver that only uses what a player can
+// see: revealed numbers, hidden cells and the total mine count (flags are
+// ignored because players place them by hand and can be wrong)
+// it applies single-cell rules and subset rules until nothing changes, then
+// enumerates every frontier component exactly to get mine probabilities
+// a solver made to keep its components remembers each one's counts (keyed by
+// its cells and the numbers around it) until the next solve, so a solve after
+// a click only enumerates the components the click changed
+class Solver implements IWorldConstants {
+  ABoard board;
+  byte[] status;
+  int[] constraintAt;
+  ArrayList<Constraint> constraints;
+  int singleRuleHits;
+  int subsetRuleHits;
+  int nodes;
+  HashMap<String, Component> cache;
+  int componentsEnumerated;
+  int componentsReused;
+
+  // the constructor
+  Solver() {
+    this(false);
+  }
+
+  // the constructor for a solver that keeps the components it enumerates
+  // between solves if asked to
+  Solver(boolean keepComponents) {
+    this.status = new byte[0];
+    this.constraintAt = new int[0];
+    this.constraints = new ArrayList<>();
+    if (keepComponents) {
+      this.cache = new HashMap<>();
+    } else {
+      this.cache = null;
+    }
+  }
+
+  // solves the visible state of the given board
+  SolverResult solve(ABoard board) {
+    load(board);
+    propagate();
+    SolverResult result = new SolverResult(status.length);
+    enumerate(result);
+    return result;
+  }
+
+  // finds only what the single-cell and subset rules prove about the given
+  // board, skipping the search and the probabilities, which stay at zero
+  SolverResult deduce(ABoard board) {
+    load(board);
+    propagate();
+    SolverResult result = new SolverResult(status.length);
+    result.exact = false;
+    for (int i = 0; i < status.length; i++) {
+      if (status[i] == SOLVER_SAFE) {
+        result.safeCells.add(i);
+      } else if (status[i] == SOLVER_MINE) {
+        result.mines.add(i);
+      }
+    }
+    return result;
+  }
+
+  // reads the visible state of the given board into status and builds a
+  // constraint for every open number with hidden neighbors
+  // EFFECT: Resets status, constraintAt, constraints and the rule counters
+  void load(ABoard board) {
+    this.board = board;
+    int size = board.width * board.height;
+    if (status.length != size) {
+      status = new byte[size];
+      constraintAt = new int[size];
+    }
+    constraints.clear();
+    singleRuleHits = 0;
+    subsetRuleHits = 0;
+
+    for (int i = 0; i < size; i++) {
+      if (board.isRevealedAt(i)) {
+        status[i] = (byte) SOLVER_REVEALED;
+      } else {
+        status[i] = (byte) SOLVER_UNKNOWN;
+      }
+      constraintAt[i] = -1;
+    }
+    for (int i = 0; i < size; i++) {
+      if (status[i] == SOLVER_REVEALED && !board.isMineAt(i)) {
+        int[] hidden = hiddenNeighbors(i);
+        if (hidden.length > 0) {
+          constraintAt[i] = constraints.size();
+          constraints.add(new Constraint(i, hidden, board.adjacentMinesAt(i)));
+        }
+      }
+    }
+  }
+
+  // finds the hidden neighbors of the cell at the given index
+  int[] hiddenNeighbors(int index) {
+    int[] found = new int[8];
+    int count = 0;
+    int row = index / board.width;
+    int col = index % board.width;
+    for (int dr = -1; dr <= 1; dr++) {
+      for (int dc = -1; dc <= 1; dc++) {
+        int newRow = row + dr;
+        int newCol = col + dc;
+        if ((dr != 0 || dc != 0) && newRow >= 0 && newRow < board.height
+            && newCol >= 0 && newCol < board.width) {
+          int neighbor = newRow * board.width + newCol;
+          if (status[neighbor] != SOLVER_REVEALED) {
+            found[count] = neighbor;
+            count++;
+          }
+        }
+      }
+    }
+    return Arrays.copyOf(found, count);
+  }
+
+  // applies the single-cell and subset rules until neither finds anything new
+  // EFFECT: Marks deduced cells as SOLVER_SAFE or SOLVER_MINE
+  void propagate() {
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (Constraint c : constraints) {
+        if (applySingleRule(c)) {
+          changed = true;
+        }
+      }
+      if (!changed) {
+        for (Constraint c : constraints) {
+          if (applySubsetRules(c)) {
+            changed = true;
+          }
+        }
+      }
+    }
+  }
+
+  // counts the cells of a constraint with the given status
+  int countWithStatus(int[] cells, int wanted) {
+    int count = 0;
+    for (int cell : cells) {
+      if (status[cell] == wanted) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  // marks every undecided cell in the list with the given status
+  // EFFECT: Updates status; returns whether any cell changed
+  boolean markUnknown(int[] cells, int newStatus) {
+    boolean changed = false;
+    for (int cell : cells) {
+      if (status[cell] == SOLVER_UNKNOWN) {
+        status[cell] = (byte) newStatus;
+        changed = true;
+      }
+    }
+    return changed;
+  }
+
+  // applies the single-cell rule: a number whose mines are all found makes
+  // the rest of its neighbors safe, and a number with exactly as many
+  // undecided neighbors as missing mines makes them all mines
+  // EFFECT: Marks deduced cells; returns whether any cell changed
+  boolean applySingleRule(Constraint c) {
+    int unknown = countWithStatus(c.cells, SOLVER_UNKNOWN);
+    if (unknown == 0) {
+      return false;
+    }
+    int need = c.value - countWithStatus(c.cells, SOLVER_MINE);
+    if (need == 0) {
+      singleRuleHits++;
+      return markUnknown(c.cells, SOLVER_SAFE);
+    } else if (need == unknown) {
+      singleRuleHits++;
+      return markUnknown(c.cells, SOLVER_MINE);
+    }
+    return false;
+  }
+
+  // applies the subset rule against every nearby number: when the undecided
+  // cells of c all belong to another number, the other number's extra cells
+  // hold exactly the difference of the two missing mine counts
+  // EFFECT: Marks deduced cells; returns whether any cell changed
+  boolean applySubsetRules(Constraint c) {
+    int[] inner = undecided(c);
+    if (inner.length == 0) {
+      return false;
+    }
+    int innerNeed = c.value - countWithStatus(c.cells, SOLVER_MINE);
+    int row = c.center / board.width;
+    int col = c.center % board.width;
+    boolean changed = false;
+
+    for (int dr = -2; dr <= 2; dr++) {
+      for (int dc = -2; dc <= 2; dc++) {
+        int newRow = row + dr;
+        int newCol = col + dc;
+        if ((dr != 0 || dc != 0) && newRow >= 0 && newRow < board.height
+            && newCol >= 0 && newCol < board.width
+            && constraintAt[newRow * board.width + newCol] >= 0) {
+          Constraint other = constraints.get(constraintAt[newRow * board.width + newCol]);
+          int[] outer = undecided(other);
+          if (outer.length > inner.length && containsAll(outer, inner)) {
+            int extraNeed = other.value - countWithStatus(other.cells, SOLVER_MINE) - innerNeed;
+            int[] extra = without(outer, inner);
+            if (extraNeed == 0) {
+              subsetRuleHits++;
+              changed = markUnknown(extra, SOLVER_SAFE) || changed;
+            } else if (extraNeed == extra.length) {
+              subsetRuleHits++;
+              changed = markUnknown(extra, SOLVER_MINE) || changed;
+            }
+          }
+        }
+      }
+    }
+    return changed;
+  }
+
+  // finds the undecided cells of a constraint
+  int[] undecided(Constraint c) {
+    int[] found = new int[c.cells.length];
+    int count = 0;
+    for (int cell : c.cells) {
+      if (status[cell] == SOLVER_UNKNOWN) {
+        found[count] = cell;
+        count++;
+      }
+    }
+    return Arrays.copyOf(found, count);
+  }
+
+  // does the first list contain every cell of the second?
+  boolean containsAll(int[] outer, int[] inner) {
+    for (int cell : inner) {
+      boolean found = false;
+      for (int other : outer) {
+        if (other == cell) {
+          found = true;
+        }
+      }
+      if (!found) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // finds the cells of the first list that are not in the second
+  int[] without(int[] outer, int[] inner) {
+    int[] found = new int[outer.length];
+    int count = 0;
+    for (int cell : outer) {
+      if (!containsAll(inner, new int[] { cell })) {
+        found[count] = cell;
+        count++;
+      }
+    }
+    return Arrays.copyOf(found, count);
+  }
+
+  // splits the undecided frontier into components, enumerates each one, and
+  // combines them with the unconstrained cells and the remaining mine count
+  // EFFECT: Fills in the result's safe cells, mines and probabilities
+  void enumerate(SolverResult result) {
+    int size = status.length;
+    int knownMines = 0;
+    for (int i = 0; i < size; i++) {
+      if (status[i] == SOLVER_MINE) {
+        knownMines++;
+      }
+    }
+    int remaining = board.mineCount - knownMines;
+
+    // Group the undecided frontier cells with a union-find over constraints
+    int[] parent = new int[size];
+    for (int i = 0; i < size; i++) {
+      parent[i] = -1;
+    }
+    for (Constraint c : constraints) {
+      int[] cells = undecided(c);
+      for (int cell : cells) {
+        if (parent[cell] == -1) {
+          parent[cell] = cell;
+        }
+      }
+      for (int i = 1; i < cells.length; i++) {
+        parent[find(parent, cells[i])] = find(parent, cells[0]);
+      }
+    }
+
+    ArrayList<Component> components = new ArrayList<>();
+    int[] componentOf = new int[size];
+    int[] localIndex = new int[size];
+    ArrayList<ArrayList<Integer>> members = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      componentOf[i] = -1;
+    }
+    for (int i = 0; i < size; i++) {
+      if (parent[i] != -1) {
+        int root = find(parent, i);
+        if (componentOf[root] == -1) {
+          componentOf[root] = members.size();
+          members.add(new ArrayList<>());
+        }
+        componentOf[i] = componentOf[root];
+        localIndex[i] = members.get(componentOf[i]).size();
+        members.get(componentOf[i]).add(i);
+      }
+    }
+
+    // Enumerate each component; ones that are too big are treated like the
+    // unconstrained cells instead
+    boolean[] outside = new boolean[size];
+    int outsideCount = 0;
+    for (int i = 0; i < size; i++) {
+      if (status[i] == SOLVER_UNKNOWN && parent[i] == -1) {
+        outside[i] = true;
+        outsideCount++;
+      }
+    }
+    String[] keys = componentKeys(members, componentOf);
+    HashMap<String, Component> kept = new HashMap<>();
+    componentsEnumerated = 0;
+    componentsReused = 0;
+    for (int g = 0; g < members.size(); g++) {
+      ArrayList<Integer> group = members.get(g);
+      int[] cells = new int[group.size()];
+      for (int i = 0; i < cells.length; i++) {
+        cells[i] = group.get(i);
+      }
+      Component component;
+      if (cache != null && cache.containsKey(keys[g])) {
+        component = cache.get(keys[g]);
+        componentsReused++;
+      } else {
+        component = new Component(cells);
+        if (cells.length > SOLVER_MAX_COMPONENT || !enumerateComponent(component, localIndex)) {
+          component = null;
+        }
+        componentsEnumerated++;
+      }
+      if (cache != null) {
+        kept.put(keys[g], component);
+      }
+      if (component != null) {
+        components.add(component);
+      } else {
+        result.exact = false;
+        for (int cell : cells) {
+          outside[cell] = true;
+          outsideCount++;
+        }
+      }
+    }
+    if (cache != null) {
+      cache = kept;
+    }
+
+    combine(result, components, outside, outsideCount, remaining);
+  }
+
+  // builds the cache key of every component: its cells, then the center and
+  // missing mine count of every number around it, which together decide
+  // every placement the search can find (or null keys if nothing is cached)
+  String[] componentKeys(ArrayList<ArrayList<Integer>> members, int[] componentOf) {
+    String[] keys = new String[members.size()];
+    if (cache == null) {
+      return keys;
+    }
+    StringBuilder[] builders = new StringBuilder[members.size()];
+    for (int g = 0; g < builders.length; g++) {
+      builders[g] = new StringBuilder();
+      for (int cell : members.get(g)) {
+        builders[g].append(cell).append(',');
+      }
+      builders[g].append('|');
+    }
+    for (Constraint c : constraints) {
+      int[] cells = undecided(c);
+      if (cells.length > 0) {
+        builders[componentOf[cells[0]]].append(c.center).append(':')
+            .append(c.value - countWithStatus(c.cells, SOLVER_MINE)).append(',');
+      }
+    }
+    for (int g = 0; g < keys.length; g++) {
+      keys[g] = builders[g].toString();
+    }
+    return keys;
+  }
+
+  // finds the representative of a union-find set
+  // EFFECT: Compresses the path to the representative
+  int find(int[] parent, int cell) {
+    int root = cell;
+    while (parent[root] != root) {
+      root = parent[root];
+    }
+    while (parent[cell] != root) {
+      int next = parent[cell];
+      parent[cell] = root;
+      cell = next;
+    }
+    return root;
+  }
+
+  // counts every mine placement in a component that satisfies its numbers
+  // EFFECT: Fills in the component's weights and cellCounts; returns false if
+  // the search ran past SOLVER_NODE_BUDGET
+  boolean enumerateComponent(Component component, int[] localIndex) {
+    int length = component.cells.length;
+    ArrayList<Constraint> touching = new ArrayList<>();
+    ArrayList<ArrayList<Integer>> cellConstraints = new ArrayList<>();
+    for (int i = 0; i < length; i++) {
+      cellConstraints.add(new ArrayList<>());
+    }
+    for (Constraint c : constraints) {
+      int[] cells = undecided(c);
+      if (cells.length > 0 && containsAll(component.cells, new int[] { cells[0] })) {
+        for (int cell : cells) {
+          cellConstraints.get(localIndex[cell]).add(touching.size());
+        }
+        touching.add(c);
+      }
+    }
+
+    int[] need = new int[touching.size()];
+    int[] open = new int[touching.size()];
+    for (int i = 0; i < need.length; i++) {
+      need[i] = touching.get(i).value - countWithStatus(touching.get(i).cells, SOLVER_MINE);
+      open[i] = undecided(touching.get(i)).length;
+    }
+    int[][] links = new int[length][];
+    for (int i = 0; i < length; i++) {
+      links[i] = new int[cellConstraints.get(i).size()];
+      for (int j = 0; j < links[i].length; j++) {
+        links[i][j] = cellConstraints.get(i).get(j);
+      }
+    }
+
+    nodes = 0;
+    return search(component, links, need, open, new boolean[length], 0, 0);
+  }
+
+  // tries both choices for the cell at position next, counting every full
+  // placement that meets all of the numbers
+  // EFFECT: Updates the component's counts and the scratch arrays; returns
+  // false if the search ran past SOLVER_NODE_BUDGET
+  boolean search(Component component, int[][] links, int[] need, int[] open,
+      boolean[] mined, int next, int placed) {
+    nodes++;
+    if (nodes > SOLVER_NODE_BUDGET) {
+      return false;
+    }
+    if (next == component.cells.length) {
+      component.weights[placed]++;
+      for (int i = 0; i < mined.length; i++) {
+        if (mined[i]) {
+          component.cellCounts[placed][i]++;
+        }
+      }
+      return true;
+    }
+
+    boolean ok = true;
+    for (int choice = 0; choice <= 1 && ok; choice++) {
+      boolean fits = true;
+      for (int c : links[next]) {
+        open[c]--;
+        need[c] -= choice;
+        if (need[c] < 0 || need[c] > open[c]) {
+          fits = false;
+        }
+      }
+      mined[next] = choice == 1;
+      if (fits) {
+        ok = search(component, links, need, open, mined, next + 1, placed + choice);
+      }
+      for (int c : links[next]) {
+        open[c]++;
+        need[c] += choice;
+      }
+      mined[next] = false;
+    }
+    return ok;
+  }
+
+  // combines the component counts with the ways to place the remaining mines
+  // among the unconstrained cells
+  // EFFECT: Fills in the result's safe cells, mines and probabilities
+  void combine(SolverResult result, ArrayList<Component> components,
+      boolean[] outside, int outsideCount, int remaining) {
+    int count = components.size();
+
+    // Mine-count distributions of the components before and after each one
+    ArrayList<double[]> before = new ArrayList<>();
+    ArrayList<double[]> after = new ArrayList<>();
+    before.add(new double[] { 1 });
+    for (int j = 0; j < count; j++) {
+      before.add(convolve(before.get(j), components.get(j).weights));
+    }
+    for (int j = 0; j <= count; j++) {
+      after.add(null);
+    }
+    after.set(count, new double[] { 1 });
+    for (int j = count - 1; j >= 0; j--) {
+      after.set(j, convolve(components.get(j).weights, after.get(j + 1)));
+    }
+
+    // Relative number of ways to put the rest of the mines outside, indexed
+    // by how many mines the components use
+    double[] logFactorial = new double[outsideCount + 1];
+    for (int i = 1; i <= outsideCount; i++) {
+      logFactorial[i] = logFactorial[i - 1] + Math.log(i);
+    }
+    int frontier = before.get(count).length - 1;
+    double[] ways = new double[frontier + 1];
+    double best = Double.NEGATIVE_INFINITY;
+    for (int t = 0; t <= frontier; t++) {
+      int rest = remaining - t;
+      if (rest >= 0 && rest <= outsideCount) {
+        best = Math.max(best, logFactorial[outsideCount] - logFactorial[rest]
+            - logFactorial[outsideCount - rest]);
+      }
+    }
+    for (int t = 0; t <= frontier; t++) {
+      int rest = remaining - t;
+      if (rest >= 0 && rest <= outsideCount) {
+        ways[t] = Math.exp(logFactorial[outsideCount] - logFactorial[rest]
+            - logFactorial[outsideCount - rest] - best);
+      }
+    }
+
+    // Frontier cells
+    for (int j = 0; j < count; j++) {
+      Component component = components.get(j);
+      double[] others = convolve(before.get(j), after.get(j + 1));
+      double[] given = new double[component.weights.length];
+      double total = 0;
+      for (int k = 0; k < given.length; k++) {
+        for (int s = 0; s < others.length; s++) {
+          given[k] += others[s] * ways[k + s];
+        }
+        total += component.weights[k] * given[k];
+      }
+      for (int i = 0; i < component.cells.length; i++) {
+        double hits = 0;
+        boolean always = true;
+        for (int k = 0; k < given.length; k++) {
+          hits += component.cellCounts[k][i] * given[k];
+          if (given[k] > 0 && component.weights[k] > 0
+              && component.cellCounts[k][i] != component.weights[k]) {
+            always = false;
+          }
+        }
+        int cell = component.cells[i];
+        if (total > 0) {
+          result.probabilities[cell] = hits / total;
+        } else {
+          result.exact = false;
+          result.probabilities[cell] = remaining / (double) Math.max(outsideCount + frontier, 1);
+        }
+        if (total > 0 && hits == 0) {
+          result.safeCells.add(cell);
+        } else if (total > 0 && always) {
+          result.mines.add(cell);
+        }
+      }
+    }
+
+    // Unconstrained cells
+    double[] all = before.get(count);
+    double outsideTotal = 0;
+    double outsideMines = 0;
+    for (int s = 0; s < all.length; s++) {
+      outsideTotal += all[s] * ways[s];
+      outsideMines += all[s] * ways[s] * (remaining - s);
+    }
+    double outsideChance;
+    if (outsideTotal > 0 && outsideCount > 0) {
+      outsideChance = outsideMines / outsideTotal / outsideCount;
+    } else {
+      outsideChance = 0;
+    }
+    for (int i = 0; i < outside.length; i++) {
+      if (status[i] == SOLVER_SAFE) {
+        result.safeCells.add(i);
+      } else if (status[i] == SOLVER_MINE) {
+        result.probabilities[i] = 1;
+        result.mines.add(i);
+      } else if (outside[i]) {
+        result.probabilities[i] = outsideChance;
+        if (outsideTotal > 0 && outsideMines == 0) {
+          result.safeCells.add(i);
+        } else if (outsideTotal > 0 && outsideChance >= 1) {
+          result.mines.add(i);
+        }
+      }
+    }
+  }
+
+  // convolves two mine-count distributions, rescaled so the largest entry is
+  // one to keep long products of counts from overflowing
+  double[] convolve(double[] first, double[] second) {
+    double[] sum = new double[first.length + second.length - 1];
+    double largest = 0;
+    for (int i = 0; i < first.length; i++) {
+      for (int j = 0; j < second.length; j++) {
+        sum[i + j] += first[i] * second[j];
+      }
+    }
+    for (double value : sum) {
+      largest = Math.max(largest, value);
+    }
+    if (largest > 0) {
+      for (int i = 0; i < sum.length; i++) {
+        sum[i] /= largest;
+      }
+    }
+    return sum;
+  }
+}
+
+// represents the mine-probability overlay: every hidden cell in the camera's
+// view is shaded from green to red by its exact chance of being a mine
+// the board is only solved again after it changes, and the solver keeps its
+// components between solves, so a click only re-enumerates the components it
+// touched; the shading is retained in a canvas like the board's own image
+class Heatmap implements IWorldConstants {
+  ABoard board;
+  Solver solver;
+  SolverResult result;
+  ComputedPixelImage canvas;
+  Color[] shades;
+  Color clear;
+  long solvedChanges;
+  int paintedCol;
+  int paintedRow;
+
+  // the constructor
+  Heatmap(ABoard board) {
+    this.board = board;
+    this.solver = new Solver(true);
+    this.result = null;
+    this.canvas = null;
+    this.shades = new Color[HEATMAP_SHADES];
+    for (int i = 0; i < HEATMAP_SHADES; i++) {
+      int red = 255 * i / (HEATMAP_SHADES - 1);
+      this.shades[i] = new Color(red, 255 - red, 0, HEATMAP_ALPHA);
+    }
+    this.clear = new Color(0, 0, 0, 0);
+    this.solvedChanges = -1;
+    this.paintedCol = -1;
+    this.paintedRow = -1;
+  }
+
+  // brings the probabilities and the shading up to date
+  // EFFECT: Solves the board again if it changed since the last solve, and
+  // repaints the canvas if the probabilities or the camera changed
+  WorldImage render() {
+    Camera camera = board.camera;
+    boolean repaint = false;
+    if (board.changes != solvedChanges) {
+      result = solver.solve(board);
+      solvedChanges = board.changes;
+      repaint = true;
+    }
+    if (canvas == null || canvas.width != camera.width() || canvas.height != camera.height()) {
+      canvas = new ComputedPixelImage(camera.width(), camera.height());
+      repaint = true;
+    }
+    if (repaint || paintedCol != camera.col || paintedRow != camera.row) {
+      paint();
+    }
+    return canvas;
+  }
+
+  // finds the shade for the given mine probability
+  Color shadeFor(double probability) {
+    return shades[(int) Math.round(probability * (HEATMAP_SHADES - 1))];
+  }
+
+  // shades every cell in view
+  // EFFECT: Fills the inside of each hidden cell with its shade and clears
+  // the open ones
+  void paint() {
+    Camera camera = board.camera;
+    int size = camera.cellSize;
+    for (int r = 0; r < camera.rows; r++) {
+      for (int c = 0; c < camera.cols; c++) {
+        int index = (camera.row + r) * board.width + camera.col + c;
+        Color color;
+        if (board.isRevealedAt(index)) {
+          color = clear;
+        } else {
+          color = shadeFor(result.probabilities[index]);
+        }
+        canvas.setPixels(c * size + 1, r * size + 1, size - 2, size - 2, color);
+      }
+    }
+    paintedCol = camera.col;
+    paintedRow = camera.row;
+  }
+
+  // draws the shading over the board
+  // EFFECT: Places the canvas on the scene over the camera's view
+  void drawOnto(WorldScene scene) {
+    WorldImage image = render();
+    scene.placeImageXY(image, board.offsetX + canvas.width / 2,
+        board.offsetY + canvas.height / 2);
+  }
+}
+
+// represents a benchmark that plays seeded games with the solver, always
+// opening the safe cells it finds and otherwise guessing the least likely
+// mine, and reports how fast it goes
+class SolverBenchmark implements IWorldConstants {
+  int width;
+  int height;
+  int mines;
+  Solver solver;
+  int gamesPlayed;
+  int gamesWon;
+  int solveCalls;
+  int guesses;
+  long elapsedNanos;
+
+  // the constructor
+  SolverBenchmark(int width, int height, int mines) {
+    this.width = width;
+    this.height = height;
+    this.mines = mines;
+    this.solver = new Solver();
+    this.gamesPlayed = 0;
+    this.gamesWon = 0;
+    this.solveCalls = 0;
+    this.guesses = 0;
+    this.elapsedNanos = 0;
+  }
+
+  // plays the given number of games, seeding game i with seed + i
+  // EFFECT: Adds the games to this benchmark's totals
+  void run(int games, long seed) {
+    long start = System.nanoTime();
+    for (int i = 0; i < games; i++) {
+      HeadlessGame game = new HeadlessGame();
+      FlatBoard board = new FlatBoard(width, height, mines, game, 1, 0, 0,
+          new RandomService(seed + i));
+      if (play(board, game)) {
+        gamesWon++;
+      }
+      gamesPlayed++;
+    }
+    elapsedNanos += System.nanoTime() - start;
+  }
+
+  // plays one game to the end, starting in the middle of the board
+  // EFFECT: Reveals cells on the board; returns whether the game was won
+  boolean play(ABoard board, HeadlessGame game) {
+    board.revealAt((board.height / 2) * board.width + board.width / 2);
+    while (!game.ended) {
+      SolverResult result = solver.solve(board);
+      solveCalls++;
+      if (result.safeCells.isEmpty()) {
+        board.revealAt(leastLikelyMine(board, result));
+        guesses++;
+      } else {
+        for (int i = 0; i < result.safeCells.size() && !game.ended; i++) {
+          board.revealAt(result.safeCells.get(i));
+        }
+      }
+    }
+    return game.won;
+  }
+
+  // finds the hidden cell that is least likely to be a mine
+  int leastLikelyMine(ABoard board, SolverResult result) {
+    int best = -1;
+    for (int i = 0; i < result.probabilities.length; i++) {
+      if (!board.isRevealedAt(i)
+          && (best == -1 || result.probabilities[i] < result.probabilities[best])) {
+        best = i;
+      }
+    }
+    return best;
+  }
+
+  // computes the fraction of games won
+  double winRate() {
+    return gamesWon / (double) Math.max(gamesPlayed, 1);
+  }
+
+  // computes how many games were played per second
+  double gamesPerSecond() {
+    return gamesPlayed / Math.max(elapsedNanos / 1e9, 1e-9);
+  }
+
+  // computes how many times the solver ran per second
+  double solvesPerSecond() {
+    return solveCalls / Math.max(elapsedNanos / 1e9, 1e-9);
+  }
+
+  // describes the results of this benchmark
+  String report() {
+    return String.format("%dx%d/%d mines: %d games, %.1f%% won, %d guesses, "
+        + "%.0f games/s, %.0f solves/s", width, height, mines, gamesPlayed,
+        winRate() * 100, guesses, gamesPerSecond(), solvesPerSecond());
+  }
+}
+
+// represents one operation a BoardBenchmark times. setUp runs before every
+// invocation outside the timing, so each run starts from the same state
+interface IBenchmarkOp {
+  // names this operation in reports
+  String name();
+
+  // can this operation run at the given benchmark's board size?
+  boolean supports(BoardBenchmark bench);
+
+  // prepares the state the next run works on
+  // EFFECT: May replace the benchmark's board or game
+  void setUp(BoardBenchmark bench);
+
+  // performs the operation once, returning a value that depends on its work
+  // so that the JIT cannot drop it
+  long run(BoardBenchmark bench);
+}
+
+// represents building a whole board, mines and counts included, the way
+// startGame picks Board or FlatBoard
+class ConstructBoardOp implements IBenchmarkOp {
+  // names this operation in reports
+  public String name() {
+    return "construct";
+  }
+
+  // can this operation run at the given benchmark's board size?
+  public boolean supports(BoardBenchmark bench) {
+    return true;
+  }
+
+  // prepares the state the next run works on
+  // EFFECT: Nothing; each run builds its own board
+  public void setUp(BoardBenchmark bench) {
+  }
+
+  // builds one board
+  // EFFECT: Stores the board in the benchmark
+  public long run(BoardBenchmark bench) {
+    bench.board = bench.newBoard(bench.mines, false);
+    return bench.board.hiddenMines.size;
+  }
+}
+
+// represents linking every Cell of a Board to its neighbors
+class LinkNeighborsOp implements IBenchmarkOp, IWorldConstants {
+  // names this operation in reports
+  public String name() {
+    return "linkNeighbors";
+  }
+
+  // can this operation run at the given benchmark's board size?
+  public boolean supports(BoardBenchmark bench) {
+    return bench.width * bench.height <= BENCH_MAX_CELL_OBJECTS;
+  }
+
+  // prepares the state the next run works on
+  // EFFECT: Builds a Board if needed and empties every neighbor list
+  public void setUp(BoardBenchmark bench) {
+    Board board = bench.cellBoard();
+    for (ArrayList<Cell> row : board.cells) {
+      for (Cell cell : row) {
+        cell.neighbors.clear();
+      }
+    }
+  }
+
+  // links every cell again
+  // EFFECT: Refills the neighbor lists
+  public long run(BoardBenchmark bench) {
+    Board board = (Board) bench.board;
+    for (int row = 0; row < board.height; row++) {
+      for (int col = 0; col < board.width; col++) {
+        board.linkNeighbors(board.cells.get(row).get(col), row, col);
+      }
+    }
+    return board.cells.get(0).get(0).neighbors.size();
+  }
+}
+
+// represents counting the adjacent mines of every Cell of a Board
+class CountAdjacentOp implements IBenchmarkOp, IWorldConstants {
+  // names this operation in reports
+  public String name() {
+    return "countAdjacentMines";
+  }
+
+  // can this operation run at the given benchmark's board size?
+  public boolean supports(BoardBenchmark bench) {
+    return bench.width * bench.height <= BENCH_MAX_CELL_OBJECTS;
+  }
+
+  // prepares the state the next run works on
+  // EFFECT: Builds a Board if needed and zeroes every count
+  public void setUp(BoardBenchmark bench) {
+    Board board = bench.cellBoard();
+    for (ArrayList<Cell> row : board.cells) {
+      for (Cell cell : row) {
+        cell.adjacentMines = 0;
+      }
+    }
+  }
+
+  // counts every cell again
+  // EFFECT: Refills the adjacent mine counts
+  public long run(BoardBenchmark bench) {
+    Board board = (Board) bench.board;
+    long total = 0;
+    for (ArrayList<Cell> row : board.cells) {
+      for (Cell cell : row) {
+        cell.countAdjacentMines();
+        total += cell.adjacentMines;
+      }
+    }
+    return total;
+  }
+}
+
+// represents counting the adjacent mines of every cell with a MineBitboard,
+// which works at any size since it needs no Cell objects
+class CountBitboardOp implements IBenchmarkOp {
+  MineBitboard mines;
+  ABoard source;
+
+  // the constructor
+  CountBitboardOp() {
+    this.mines = null;
+    this.source = null;
+  }
+
+  // names this operation in reports
+  public String name() {
+    return "countBitboard";
+  }
+
+  // can this operation run at the given benchmark's board size?
+  public boolean supports(BoardBenchmark bench) {
+    return true;
+  }
+
+  // prepares the state the next run works on
+  // EFFECT: Builds a board if needed and copies its mines into a bitboard
+  public void setUp(BoardBenchmark bench) {
+    if (bench.board == null) {
+      bench.board = bench.newBoard(bench.mines, false);
+    }
+    if (source != bench.board) {
+      source = bench.board;
+      mines = new MineBitboard(source.width, source.height);
+      for (int i = 0; i < source.width * source.height; i++) {
+        if (source.isMineAt(i)) {
+          mines.set(i);
+        }
+      }
+    }
+  }
+
+  // counts every cell again
+  public long run(BoardBenchmark bench) {
+    return mines.counts().length;
+  }
+}
+
+// represents the worst flood fill: one click on a board with no mines,
+// which opens every cell
+class RevealFloodOp implements IBenchmarkOp {
+  // names this operation in reports
+  public String name() {
+    return "revealFlood";
+  }
+
+  // can this operation run at the given benchmark's board size?
+  public boolean supports(BoardBenchmark bench) {
+    return true;
+  }
+
+  // prepares the state the next run works on
+  // EFFECT: Builds a fresh board without mines
+  public void setUp(BoardBenchmark bench) {
+    bench.board = bench.newBoard(0, false);
+  }
+
+  // opens the first cell
+  // EFFECT: Reveals the whole board
+  public long run(BoardBenchmark bench) {
+    bench.board.revealAt(0);
+    return bench.board.cellsRevealed;
+  }
+}
+
+// represents one press of the hint button
+class FlagRandomMineOp implements IBenchmarkOp {
+  // names this operation in reports
+  public String name() {
+    return "flagRandomMine";
+  }
+
+  // can this operation run at the given benchmark's board size?
+  public boolean supports(BoardBenchmark bench) {
+    return bench.mines > 0;
+  }
+
+  // prepares the state the next run works on
+  // EFFECT: Builds a board with mines unless the current one still has
+  // unflagged mines
+  public void setUp(BoardBenchmark bench) {
+    if (bench.board == null || bench.board.hiddenMines == null
+        || bench.board.hiddenMines.isEmpty()) {
+      bench.board = bench.newBoard(bench.mines, false);
+    }
+  }
+
+  // flags one mine
+  // EFFECT: Flags a hidden mine on the board
+  public long run(BoardBenchmark bench) {
+    bench.board.flagRandomMine();
+    return bench.board.hiddenMines.size;
+  }
+}
+
+// represents drawing a whole frame of a game in progress with every cell in
+// view repainted
+class MakeSceneOp implements IBenchmarkOp, IWorldConstants {
+  // names this operation in reports
+  public String name() {
+    return "makeScene";
+  }
+
+  // can this operation run at the given benchmark's board size? (the camera
+  // keeps a frame the size of the window on every board)
+  public boolean supports(BoardBenchmark bench) {
+    return true;
+  }
+
+  // prepares the state the next run works on
+  // EFFECT: Starts a game with its first cell opened if there is none yet,
+  // and makes the next frame repaint every cell
+  public void setUp(BoardBenchmark bench) {
+    if (bench.game == null) {
+      bench.game = new MineSweeper(DEFAULT_SEED);
+      bench.game.startGame(bench.width, bench.height, bench.mines);
+      bench.game.board.revealAt((bench.height / 2) * bench.width + bench.width / 2);
+      bench.game.makeScene();
+    }
+    bench.game.board.renderer.markAllDirty();
+  }
+
+  // draws one frame
+  public long run(BoardBenchmark bench) {
+    return bench.game.makeScene().width;
+  }
+}
+
+// represents the timings of one operation at one board size
+class BenchmarkResult {
+  String op;
+  String size;
+  int runs;
+  long totalNanos;
+  long minNanos;
+
+  // the constructor
+  BenchmarkResult(String op, String size) {
+    this.op = op;
+    this.size = size;
+    this.runs = 0;
+    this.totalNanos = 0;
+    this.minNanos = Long.MAX_VALUE;
+  }
+
+  // adds one timed run
+  // EFFECT: Updates the run count, total and fastest time
+  void add(long nanos) {
+    runs++;
+    totalNanos += nanos;
+    minNanos = Math.min(minNanos, nanos);
+  }
+
+  // computes the mean time of a run
+  double meanNanos() {
+    return totalNanos / (double) Math.max(runs, 1);
+  }
+
+  // describes this result in microseconds
+  String report() {
+    return String.format("%-22s %-18s mean %12.1f us  min %12.1f us  (%d runs)",
+        size, op, meanNanos() / 1e3, minNanos / 1e3, runs);
+  }
+}
+
+// represents a hand-rolled microbenchmark of the board's hot paths at one
+// size: every operation is warmed up, then timed one invocation at a time
+// with its setUp left out of the timing
+class BoardBenchmark implements IWorldConstants {
+  String label;
+  int width;
+  int height;
+  int mines;
+  ABoard board;
+  MineSweeper game;
+  HeadlessGame listener;
+  int boardsBuilt;
+  long sink;
+
+  // the constructor
+  BoardBenchmark(String label, int width, int height, int mines) {
+    this.label = label;
+    this.width = width;
+    this.height = height;
+    this.mines = mines;
+    this.board = null;
+    this.game = null;
+    this.listener = new HeadlessGame();
+    this.boardsBuilt = 0;
+    this.sink = 0;
+  }
+
+  // builds a board of this size with the given mines, choosing Board or
+  // FlatBoard the way startGame does, and a new seed each time
+  ABoard newBoard(int mineCount, boolean lazy) {
+    boardsBuilt++;
+    RandomService rng = new RandomService(DEFAULT_SEED + boardsBuilt);
+    if (width * height >= FLAT_BOARD_THRESHOLD) {
+      return new FlatBoard(width, height, mineCount, listener, 1, 0, 0, rng, lazy);
+    } else {
+      return new Board(width, height, mineCount, listener, 1, 0, 0, rng, lazy);
+    }
+  }
+
+  // returns this benchmark's Board of Cell objects, building it if the
+  // current board is not one
+  // EFFECT: May replace the board
+  Board cellBoard() {
+    if (!(board instanceof Board)) {
+      boardsBuilt++;
+      board = new Board(width, height, mines, listener, 1, 0, 0,
+          new RandomService(DEFAULT_SEED + boardsBuilt), false);
+    }
+    return (Board) board;
+  }
+
+  // warms up and then times the given operation, or returns null when it
+  // does not run at this size
+  // EFFECT: Runs the operation warmups + iterations times
+  BenchmarkResult measure(IBenchmarkOp op, int warmups, int iterations) {
+    if (!op.supports(this)) {
+      return null;
+    }
+    BenchmarkResult result = new BenchmarkResult(op.name(), size());
+    for (int i = 0; i < warmups + iterations; i++) {
+      op.setUp(this);
+      long start = System.nanoTime();
+      sink += op.run(this);
+      long elapsed = System.nanoTime() - start;
+      if (i >= warmups) {
+        result.add(elapsed);
+      }
+    }
+    return result;
+  }
+
+  // times every given operation in turn
+  // EFFECT: Runs each operation; the board and game are dropped afterwards
+  ArrayList<BenchmarkResult> measureAll(ArrayList<IBenchmarkOp> ops, int warmups,
+      int iterations) {
+    ArrayList<BenchmarkResult> results = new ArrayList<>();
+    for (IBenchmarkOp op : ops) {
+      board = null;
+      BenchmarkResult result = measure(op, warmups, iterations);
+      if (result != null) {
+        results.add(result);
+      }
+    }
+    board = null;
+    if (game != null) {
+      game.board.release();
+      game.recorder.close();
+      game = null;
+    }
+    return results;
+  }
+
+  // describes this benchmark's size
+  String size() {
+    return label + " " + width + "x" + height + "/" + mines;
+  }
+}
+
+// represents the full benchmark matrix: every operation on the three presets
+// and on custom boards up to 2000x2000 at the Hard preset's mine density
+class BoardBenchmarkSuite implements IWorldConstants {
+  ArrayList<BoardBenchmark> sizes;
+  ArrayList<IBenchmarkOp> ops;
+
+  // the constructor, with the presets and the custom sizes
+  BoardBenchmarkSuite() {
+    this(new ArrayList<>());
+    this.sizes.add(new BoardBenchmark("Easy", EASY_WIDTH, EASY_HEIGHT, EASY_MINES));
+    this.sizes.add(new BoardBenchmark("Medium", MEDIUM_WIDTH, MEDIUM_HEIGHT, MEDIUM_MINES));
+    this.sizes.add(new BoardBenchmark("Hard", HARD_WIDTH, HARD_HEIGHT, HARD_MINES));
+    int[] customSides = {200, 1000, 2000};
+    for (int side : customSides) {
+      int mines = (int) ((long) side * side * HARD_MINES / (HARD_WIDTH * HARD_HEIGHT));
+      this.sizes.add(new BoardBenchmark("Custom", side, side, mines));
+    }
+  }
+
+  // the constructor, with only the given sizes
+  BoardBenchmarkSuite(ArrayList<BoardBenchmark> sizes) {
+    this.sizes = sizes;
+    this.ops = new ArrayList<>();
+    this.ops.add(new ConstructBoardOp());
+    this.ops.add(new LinkNeighborsOp());
+    this.ops.add(new CountAdjacentOp());
+    this.ops.add(new CountBitboardOp());
+    this.ops.add(new RevealFloodOp());
+    this.ops.add(new FlagRandomMineOp());
+    this.ops.add(new MakeSceneOp());
+  }
+
+  // runs every operation at every size
+  ArrayList<BenchmarkResult> run(int warmups, int iterations) {
+    ArrayList<BenchmarkResult> results = new ArrayList<>();
+    for (BoardBenchmark bench : sizes) {
+      results.addAll(bench.measureAll(ops, warmups, iterations));
+    }
+    return results;
+  }
+
+  // describes the given results, one line each
+  String report(ArrayList<BenchmarkResult> results) {
+    StringBuilder out = new StringBuilder();
+    for (BenchmarkResult result : results) {
+      out.append(result.report()).append('\n');
+    }
+    return out.toString();
+  }
+
+  // runs the full matrix and prints its report (java BoardBenchmarkSuite)
+  public static void main(String[] args) {
+    BoardBenchmarkSuite suite = new BoardBenchmarkSuite();
+    System.out.print(suite.report(suite.run(3, 10)));
+  }
+}
+
+// represents a way of choosing the next cell to open in a headless game
+interface IStrategy {
+  // chooses a hidden cell to open next, or -1 if there is none
+  int chooseCell(ABoard board, RandomGenerator rand);
+
+  // makes a fresh copy of this strategy for another worker thread
+  IStrategy copy();
+
+  // forgets anything left over from the last game before a new one starts
+  // EFFECT: Clears whatever this strategy remembers about the last board
+  void reset();
+
+  // names this strategy for reports
+  String name();
+}
+
+// represents a strategy that opens hidden cells at random
+class RandomStrategy implements IStrategy {
+
+  // chooses a random hidden cell
+  public int chooseCell(ABoard board, RandomGenerator rand) {
+    int size = board.width * board.height;
+    int hidden = size - board.cellsRevealed;
+    if (hidden <= 0) {
+      return -1;
+    }
+    int skip = rand.nextInt(hidden);
+    for (int i = 0; i < size; i++) {
+      if (!board.isRevealedAt(i)) {
+        if (skip == 0) {
+          return i;
+        }
+        skip--;
+      }
+    }
+    return -1;
+  }
+
+  // random play has no state to copy
+  public IStrategy copy() {
+    return this;
+  }
+
+  // random play remembers nothing between games
+  // EFFECT: None
+  public void reset() {
+  }
+
+  // names this strategy for reports
+  public String name() {
+    return "random";
+  }
+}
+
+// represents a strategy that opens every cell the solver proves safe, and
+// otherwise the cell least likely to be a mine
+class SolverStrategy implements IStrategy {
+  Solver solver;
+  IndexQueue pending;
+
+  // the constructor
+  SolverStrategy() {
+    this.solver = new Solver();
+    this.pending = new IndexQueue(16);
+  }
+
+  // chooses a proven safe cell if there is one, or the best guess otherwise
+  // EFFECT: Queues up the safe cells from each solve for the next calls
+  public int chooseCell(ABoard board, RandomGenerator rand) {
+    while (!pending.isEmpty()) {
+      int next = pending.remove();
+      if (!board.isRevealedAt(next)) {
+        return next;
+      }
+    }
+    SolverResult result = solver.solve(board);
+    for (int cell : result.safeCells) {
+      pending.add(cell);
+    }
+    if (!pending.isEmpty()) {
+      return pending.remove();
+    }
+    int best = -1;
+    for (int i = 0; i < result.probabilities.length; i++) {
+      if (!board.isRevealedAt(i)
+          && (best == -1 || result.probabilities[i] < result.probabilities[best])) {
+        best = i;
+      }
+    }
+    return best;
+  }
+
+  // makes a copy with its own solver scratch space
+  public IStrategy copy() {
+    return new SolverStrategy();
+  }
+
+  // drops the safe cells still queued from the last board
+  // EFFECT: Empties pending
+  public void reset() {
+    pending.clear();
+  }
+
+  // names this strategy for reports
+  public String name() {
+    return "solver";
+  }
+}
+
+// represents the totals from a batch of simulated games
+class SimulationStats {
+  int games;
+  int wins;
+  long clicks;
+  long elapsedNanos;
+
+  // the constructor
+  SimulationStats() {
+    this.games = 0;
+    this.wins = 0;
+    this.clicks = 0;
+    this.elapsedNanos = 0;
+  }
+
+  // adds another batch's totals into this one
+  // EFFECT: Updates games, wins and clicks
+  void add(SimulationStats other) {
+    games += other.games;
+    wins += other.wins;
+    clicks += other.clicks;
+  }
+
+  // computes the fraction of games won
+  double winRate() {
+    return wins / (double) Math.max(games, 1);
+  }
+
+  // computes the average number of clicks per game
+  double clicksPerGame() {
+    return clicks / (double) Math.max(games, 1);
+  }
+
+  // computes how many games were played per second
+  double gamesPerSecond() {
+    return games / Math.max(elapsedNanos / 1e9, 1e-9);
+  }
+}
+
+// represents a fork-join task that plays games from (inclusive) to (exclusive)
+// each game gets its own board and its own RandomService seeded from the batch seed
+// and its game number, so results do not depend on how the work is split
+class SimulationTask extends RecursiveTask<SimulationStats> implements IWorldConstants {
+  static final long serialVersionUID = 1L;
+  int width;
+  int height;
+  int mines;
+  transient IStrategy strategy;
+  long seed;
+  int from;
+  int to;
+
+  // the constructor
+  SimulationTask(int width, int height, int mines, IStrategy strategy,
+      long seed, int from, int to) {
+    this.width = width;
+    this.height = height;
+    this.mines = mines;
+    this.strategy = strategy;
+    this.seed = seed;
+    this.from = from;
+    this.to = to;
+  }
+
+  // plays this task's games, splitting in half while there are too many
+  protected SimulationStats compute() {
+    if (to - from <= SIMULATION_BATCH) {
+      SimulationStats stats = new SimulationStats();
+      IStrategy player = strategy.copy();
+      for (int i = from; i < to; i++) {
+        playGame(player, i, stats);
+      }
+      return stats;
+    }
+    int middle = (from + to) / 2;
+    SimulationTask left = new SimulationTask(width, height, mines, strategy, seed, from, middle);
+    SimulationTask right = new SimulationTask(width, height, mines, strategy, seed, middle, to);
+    left.fork();
+    SimulationStats stats = right.compute();
+    stats.add(left.join());
+    return stats;
+  }
+
+  // plays the given game to the end
+  // EFFECT: Adds the game's result and clicks to stats
+  void playGame(IStrategy player, int game, SimulationStats stats) {
+    RandomService rng = new RandomService(seedFor(game));
+    HeadlessGame listener = new HeadlessGame();
+    ABoard board;
+    if (width * height >= FLAT_BOARD_THRESHOLD) {
+      board = new FlatBoard(width, height, mines, listener, 1, 0, 0, rng);
+    } else {
+      board = new Board(width, height, mines, listener, 1, 0, 0, rng);
+    }
+    RandomGenerator rand = rng.stream(RNG_PLAYER);
+    player.reset();
+    while (!listener.ended) {
+      int cell = player.chooseCell(board, rand);
+      if (cell == -1) {
+        break;
+      }
+      board.revealAt(cell);
+      stats.clicks++;
+    }
+    stats.games++;
+    if (listener.won) {
+      stats.wins++;
+    }
+  }
+
+  // computes the seed for the given game, spreading neighboring game numbers
+  // far apart so their streams do not overlap
+  long seedFor(int game) {
+    return seed ^ (game * 0x9E3779B97F4A7C15L);
+  }
+}
+
+// represents a headless runner that plays many games across all cores
+class BatchSimulator implements IWorldConstants {
+  ForkJoinPool pool;
+
+  // the constructor uses one worker per core
+  BatchSimulator() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  // the constructor for a runner with the given number of workers
+  BatchSimulator(int workers) {
+    this.pool = new ForkJoinPool(workers);
+  }
+
+  // plays the given number of games of the given size with the strategy
+  SimulationStats simulate(int width, int height, int mines, IStrategy strategy,
+      int games, long seed) {
+    long start = System.nanoTime();
+    SimulationStats stats = pool.invoke(
+        new SimulationTask(width, height, mines, strategy, seed, 0, games));
+    stats.elapsedNanos = System.nanoTime() - start;
+    return stats;
+  }
+
+  // plays the EASY, MEDIUM and HARD presets and describes the results
+  String reportPresets(IStrategy strategy, int games, long seed) {
+    return describe("Easy", simulate(EASY_WIDTH, EASY_HEIGHT, EASY_MINES, strategy, games, seed),
+        strategy)
+        + describe("Medium", simulate(MEDIUM_WIDTH, MEDIUM_HEIGHT, MEDIUM_MINES, strategy,
+            games, seed), strategy)
+        + describe("Hard", simulate(HARD_WIDTH, HARD_HEIGHT, HARD_MINES, strategy, games, seed),
+            strategy);
+  }
+
+  // describes one preset's results on a line
+  String describe(String preset, SimulationStats stats, IStrategy strategy) {
+    return String.format("%s (%s, %d workers): %d games, %.1f%% won, "
+        + "%.1f clicks/game, %.0f games/s%n", preset, strategy.name(),
+        pool.getParallelism(), stats.games, stats.winRate() * 100,
+        stats.clicksPerGame(), stats.gamesPerSecond());
+  }
+
+  // stops the worker threads
+  // EFFECT: Shuts down the pool
+  void shutdown() {
+    pool.shutdown();
+  }
+}
+
+// represents a board that can be played without guessing: the lazy board
+// built from seed places its mines around firstClick, and from there the
+// solver's rules open every safe cell
+class NoGuessPuzzle implements IWorldConstants {
+  int width;
+  int height;
+  int mines;
+  long seed;
+  int firstClick;
+
+  // the constructor
+  NoGuessPuzzle(int width, int height, int mines, long seed, int firstClick) {
+    this.width = width;
+    this.height = height;
+    this.mines = mines;
+    this.seed = seed;
+    this.firstClick = firstClick;
+  }
+
+  // builds the puzzle's board, still waiting for its first click
+  ABoard newBoard(IGameListener game, int cellSize, int offsetX, int offsetY) {
+    if (width * height >= FLAT_BOARD_THRESHOLD) {
+      return new FlatBoard(width, height, mines, game, cellSize, offsetX, offsetY,
+          new RandomService(seed), true);
+    } else {
+      return new Board(width, height, mines, game, cellSize, offsetX, offsetY,
+          new RandomService(seed), true);
+    }
+  }
+
+  // plays the puzzle with the given solver, opening only cells the solver
+  // proves safe: the cheap rules first, the full search when they stall
+  // EFFECT: Reveals cells on a fresh board; returns whether every safe cell
+  // opened without a guess
+  boolean solvable(Solver solver) {
+    HeadlessGame game = new HeadlessGame();
+    ABoard board = newBoard(game, 1, 0, 0);
+    board.revealAt(firstClick);
+    while (!game.ended) {
+      SolverResult result = solver.deduce(board);
+      if (result.safeCells.isEmpty()) {
+        result = solver.solve(board);
+        if (result.safeCells.isEmpty()) {
+          return false;
+        }
+      }
+      for (int i = 0; i < result.safeCells.size() && !game.ended; i++) {
+        board.revealAt(result.safeCells.get(i));
+      }
+    }
+    return game.won;
+  }
+}
+
+// represents a pipeline that deals no-guess boards of one size: worker
+// threads try consecutive seeds in parallel, keep the boards the solver
+// clears from the middle cell without guessing, and hand them over through
+// a bounded queue. Workers block while the queue is full, so a full queue
+// costs nothing, and the game takes boards without ever waiting
+class PuzzleGenerator implements IWorldConstants {
+  int width;
+  int height;
+  int mines;
+  long seed;
+  int workers;
+  ArrayBlockingQueue<NoGuessPuzzle> ready;
+  ExecutorService pool;
+  AtomicLong nextCandidate;
+  AtomicLong candidatesTried;
+  AtomicLong accepted;
+  long startNanos;
+
+  // the constructor
+  PuzzleGenerator(int width, int height, int mines, long seed, int workers, int capacity) {
+    this.width = width;
+    this.height = height;
+    this.mines = mines;
+    this.seed = seed;
+    this.workers = workers;
+    this.ready = new ArrayBlockingQueue<>(capacity);
+    this.pool = null;
+    this.nextCandidate = new AtomicLong(0);
+    this.candidatesTried = new AtomicLong(0);
+    this.accepted = new AtomicLong(0);
+  }
+
+  // starts the workers on daemon threads, so they never keep the program
+  // running
+  // EFFECT: Starts the pool
+  void start() {
+    startNanos = System.nanoTime();
+    pool = Executors.newFixedThreadPool(workers, task -> {
+      Thread thread = new Thread(task, "puzzle-generator");
+      thread.setDaemon(true);
+      return thread;
+    });
+    for (int i = 0; i < workers; i++) {
+      pool.execute(this::work);
+    }
+  }
+
+  // tries candidates until interrupted, each worker with its own solver
+  // EFFECT: Puts accepted puzzles on the queue, waiting while it is full
+  void work() {
+    Solver solver = new Solver();
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        NoGuessPuzzle puzzle = tryCandidate(seed + nextCandidate.getAndIncrement(), solver);
+        if (puzzle != null) {
+          ready.put(puzzle);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // checks the board dealt from the given seed, returning it as a puzzle if
+  // it needs no guesses and null otherwise
+  // EFFECT: Counts the candidate, and the acceptance
+  NoGuessPuzzle tryCandidate(long candidateSeed, Solver solver) {
+    NoGuessPuzzle puzzle = new NoGuessPuzzle(width, height, mines, candidateSeed,
+        (height / 2) * width + width / 2);
+    candidatesTried.incrementAndGet();
+    if (puzzle.solvable(solver)) {
+      accepted.incrementAndGet();
+      return puzzle;
+    }
+    return null;
+  }
+
+  // takes a ready puzzle, or returns null at once if none is ready
+  // EFFECT: Removes the puzzle from the queue
+  NoGuessPuzzle poll() {
+    return ready.poll();
+  }
+
+  // takes a ready puzzle, waiting for one if needed
+  // EFFECT: Removes the puzzle from the queue
+  NoGuessPuzzle take() {
+    try {
+      return ready.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
+
+  // does this generator deal boards of the given size?
+  boolean deals(int width, int height, int mines) {
+    return this.width == width && this.height == height && this.mines == mines;
+  }
+
+  // computes how many no-guess boards were found per second since start
+  double boardsPerSecond() {
+    return accepted.get() / Math.max((System.nanoTime() - startNanos) / 1e9, 1e-9);
+  }
+
+  // computes the fraction of candidates that needed no guesses
+  double acceptRate() {
+    return accepted.get() / (double) Math.max(candidatesTried.get(), 1);
+  }
+
+  // stops the workers
+  // EFFECT: Interrupts and shuts down the pool
+  void stop() {
+    if (pool != null) {
+      pool.shutdownNow();
+    }
+  }
+}
+
+// represents one PuzzleGenerator per difficulty preset, sharing the
+// machine's cores between them
+class NoGuessDealer implements IWorldConstants {
+  ArrayList<PuzzleGenerator> generators;
+
+  // the constructor starts a generator for each preset
+  NoGuessDealer(long seed) {
+    int workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 3);
+    this.generators = new ArrayList<>();
+    this.generators.add(new PuzzleGenerator(EASY_WIDTH, EASY_HEIGHT, EASY_MINES, seed,
+        workers, PUZZLE_QUEUE));
+    this.generators.add(new PuzzleGenerator(MEDIUM_WIDTH, MEDIUM_HEIGHT, MEDIUM_MINES, seed,
+        workers, PUZZLE_QUEUE));
+    this.generators.add(new PuzzleGenerator(HARD_WIDTH, HARD_HEIGHT, HARD_MINES, seed,
+        workers, PUZZLE_QUEUE));
+    for (PuzzleGenerator generator : generators) {
+      generator.start();
+    }
+  }
+
+  // takes a ready puzzle of the given size, or returns null if there is
+  // none yet or the size is not a preset
+  // EFFECT: Removes the puzzle from its generator's queue
+  NoGuessPuzzle poll(int width, int height, int mines) {
+    for (PuzzleGenerator generator : generators) {
+      if (generator.deals(width, height, mines)) {
+        return generator.poll();
+      }
+    }
+    return null;
+  }
+
+  // describes each preset's throughput on a line
+  String report() {
+    String[] names = {"Easy", "Medium", "Hard"};
+    StringBuilder out = new StringBuilder();
+    for (int i = 0; i < generators.size(); i++) {
+      PuzzleGenerator generator = generators.get(i);
+      out.append(String.format("%s no-guess (%d workers): %d boards, %.1f%% of candidates, "
+          + "%.1f boards/s%n", names[i], generator.workers, generator.accepted.get(),
+          generator.acceptRate() * 100, generator.boardsPerSecond()));
+    }
+    return out.toString();
+  }
+
+  // stops every generator
+  // EFFECT: Stops the workers
+  void stop() {
+    for (PuzzleGenerator generator : generators) {
+      generator.stop();
+    }
+  }
+}
+
+// represents one player connected to a BoardServer, with the bytes read
+// from it that do not yet form a whole event and the bytes waiting to be
+// written to it
+class ClientConnection implements IWorldConstants {
+  SocketChannel channel;
+  SelectionKey key;
+  ByteBuffer in;
+  ByteBuffer out;
+
+  // the constructor
+  ClientConnection(SocketChannel channel) {
+    this.channel = channel;
+    this.key = null;
+    this.in = ByteBuffer.allocate(SERVER_BUFFER);
+    this.out = ByteBuffer.allocate(SERVER_BUFFER);
+  }
+
+  // appends a message to the bytes waiting to be written
+  // EFFECT: Copies the message into out, growing it if needed
+  void queue(ByteBuffer message) {
+    if (out.remaining() < message.remaining()) {
+      ByteBuffer bigger = ByteBuffer.allocate(
+          Math.max(out.capacity() * 2, out.position() + message.remaining()));
+      out.flip();
+      bigger.put(out);
+      out = bigger;
+    }
+    out.put(message.duplicate());
+  }
+
+  // writes as much of the waiting bytes as the socket takes without blocking
+  // EFFECT: Sends bytes, and asks the selector for a write event while any
+  // are left over
+  void flush() throws IOException {
+    out.flip();
+    channel.write(out);
+    out.compact();
+    if (key.isValid()) {
+      if (out.position() > 0) {
+        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+      } else {
+        key.interestOps(SelectionKey.OP_READ);
+      }
+    }
+  }
+}
+
+// represents a server that shares one board between many players over
+// non-blocking loopback sockets. A single thread runs the selector loop and
+// is the only one that touches the board: it applies every event it reads,
+// then sends each player only the cells that changed, one int per cell
+// (index << 4 | view), instead of the whole board. Players send the same
+// event ints a GameRecorder logs, or MESSAGE_SYNC to be told once every
+// earlier event of theirs has been applied and broadcast. Messages to
+// players start with a count of cells, or with MESSAGE_SYNC or MESSAGE_RESET.
+// When a game ends, the server deals a new one and sends MESSAGE_RESET
+class BoardServer implements IWorldConstants {
+  int width;
+  int height;
+  int mines;
+  long seed;
+  ABoard board;
+  HeadlessGame game;
+  Selector selector;
+  ServerSocketChannel server;
+  ArrayList<ClientConnection> clients;
+  Thread loop;
+  int gamesDealt;
+  long eventsApplied;
+  long messagesSent;
+  long cellsSent;
+
+  // the constructor opens the listening socket on a free loopback port and
+  // deals the first game
+  BoardServer(int width, int height, int mines, long seed) {
+    this.width = width;
+    this.height = height;
+    this.mines = mines;
+    this.seed = seed;
+    this.clients = new ArrayList<>();
+    this.gamesDealt = 0;
+    this.eventsApplied = 0;
+    this.messagesSent = 0;
+    this.cellsSent = 0;
+    deal();
+    try {
+      this.selector = Selector.open();
+      this.server = ServerSocketChannel.open();
+      this.server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      this.server.configureBlocking(false);
+      this.server.register(selector, SelectionKey.OP_ACCEPT);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // starts a new game on a fresh board whose first click is safe
+  // EFFECT: Replaces the board and the game listener
+  void deal() {
+    game = new HeadlessGame();
+    RandomService rng = new RandomService(seed + gamesDealt);
+    if (width * height >= FLAT_BOARD_THRESHOLD) {
+      board = new FlatBoard(width, height, mines, game, 1, 0, 0, rng, true);
+    } else {
+      board = new Board(width, height, mines, game, 1, 0, 0, rng, true);
+    }
+    board.changedCells = new CellSet(width * height);
+    gamesDealt++;
+  }
+
+  // returns the port players connect to
+  int port() {
+    return server.socket().getLocalPort();
+  }
+
+  // starts the event loop on its own thread
+  // EFFECT: Starts the loop thread
+  void start() {
+    loop = new Thread(this::serve, "board-server");
+    loop.start();
+  }
+
+  // runs the event loop until the loop thread is interrupted
+  // EFFECT: Accepts players, applies their events and sends them changes
+  void serve() {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        selector.select();
+        step();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // handles every ready socket once, then sends out what changed
+  // EFFECT: Accepts, reads and writes the ready sockets
+  void step() throws IOException {
+    Iterator<SelectionKey> ready = selector.selectedKeys().iterator();
+    while (ready.hasNext()) {
+      SelectionKey key = ready.next();
+      ready.remove();
+      if (!key.isValid()) {
+        continue;
+      }
+      if (key.isAcceptable()) {
+        accept();
+      } else {
+        ClientConnection client = (ClientConnection) key.attachment();
+        if (key.isReadable()) {
+          read(client);
+        }
+        if (key.isValid() && key.isWritable()) {
+          client.flush();
+        }
+      }
+    }
+    broadcast();
+  }
+
+  // accepts a waiting player and sends them every cell that is not hidden
+  // EFFECT: Registers the player and queues their first message
+  void accept() throws IOException {
+    SocketChannel channel = server.accept();
+    if (channel == null) {
+      return;
+    }
+    channel.configureBlocking(false);
+    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    ClientConnection client = new ClientConnection(channel);
+    client.key = channel.register(selector, SelectionKey.OP_READ, client);
+    clients.add(client);
+
+    int visible = 0;
+    for (int i = 0; i < width * height; i++) {
+      if (board.viewAt(i) != VIEW_HIDDEN) {
+        visible++;
+      }
+    }
+    ByteBuffer snapshot = ByteBuffer.allocate(4 + visible * 4);
+    snapshot.putInt(visible);
+    for (int i = 0; i < width * height; i++) {
+      int view = board.viewAt(i);
+      if (view != VIEW_HIDDEN) {
+        snapshot.putInt(i << 4 | view);
+      }
+    }
+    snapshot.flip();
+    send(client, snapshot, visible);
+  }
+
+  // reads the player's events and applies every whole one in order
+  // EFFECT: Changes the board, or drops the player once they hang up
+  void read(ClientConnection client) throws IOException {
+    if (client.channel.read(client.in) < 0) {
+      drop(client);
+      return;
+    }
+    client.in.flip();
+    while (client.in.remaining() >= 4) {
+      int event = client.in.getInt();
+      if (event == MESSAGE_SYNC) {
+        broadcast();
+        send(client, control(MESSAGE_SYNC), 0);
+      } else {
+        apply(event >>> 2, event & 3);
+      }
+    }
+    client.in.compact();
+  }
+
+  // applies one event to the board, dealing a new game once this one ends
+  // EFFECT: Changes the board and counts the event
+  void apply(int index, int code) {
+    if (index < 0 || index >= width * height) {
+      return;
+    }
+    board.apply(index, code);
+    eventsApplied++;
+    if (game.ended) {
+      broadcast();
+      deal();
+      for (int i = clients.size() - 1; i >= 0; i--) {
+        send(clients.get(i), control(MESSAGE_RESET), 0);
+      }
+    }
+  }
+
+  // sends every player the cells that changed since the last broadcast
+  // EFFECT: Queues one message per player and empties the changed set
+  void broadcast() {
+    CellSet changed = board.changedCells;
+    if (changed.isEmpty()) {
+      return;
+    }
+    ByteBuffer delta = ByteBuffer.allocate(4 + changed.size * 4);
+    delta.putInt(changed.size);
+    for (int i = 0; i < changed.size; i++) {
+      int index = changed.items[i];
+      delta.putInt(index << 4 | board.viewAt(index));
+    }
+    delta.flip();
+    int cells = changed.size;
+    changed.clear();
+    for (int i = clients.size() - 1; i >= 0; i--) {
+      send(clients.get(i), delta, cells);
+    }
+  }
+
+  // builds a message made of just the given header
+  ByteBuffer control(int header) {
+    ByteBuffer message = ByteBuffer.allocate(4);
+    message.putInt(header);
+    message.flip();
+    return message;
+  }
+
+  // queues a message for a player and writes what the socket takes
+  // EFFECT: Sends bytes to the player, or drops them if the socket failed
+  void send(ClientConnection client, ByteBuffer message, int cells) {
+    client.queue(message);
+    messagesSent++;
+    cellsSent += cells;
+    try {
+      client.flush();
+    } catch (IOException e) {
+      drop(client);
+    }
+  }
+
+  // forgets a player who hung up
+  // EFFECT: Closes their socket and removes them from clients
+  void drop(ClientConnection client) {
+    clients.remove(client);
+    client.key.cancel();
+    try {
+      client.channel.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // stops the event loop and closes every socket
+  // EFFECT: Ends the loop thread and closes the server
+  void stop() {
+    if (loop != null) {
+      loop.interrupt();
+      selector.wakeup();
+      try {
+        loop.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    try {
+      for (ClientConnection client : clients) {
+        client.channel.close();
+      }
+      server.close();
+      selector.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
+
+// represents a player's blocking loopback connection to a BoardServer, with
+// the player's own copy of how every cell looks
+class BoardClient implements IWorldConstants {
+  SocketChannel channel;
+  int[] view;
+  ByteBuffer header;
+  int messagesReceived;
+  int cellsReceived;
+  int resets;
+
+  // the constructor connects and reads the first message, which shows every
+  // cell that is already open or flagged
+  BoardClient(int port, int cells) {
+    try {
+      this.channel = SocketChannel.open(
+          new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+      this.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    this.view = new int[cells];
+    Arrays.fill(this.view, VIEW_HIDDEN);
+    this.header = ByteBuffer.allocate(4);
+    this.messagesReceived = 0;
+    this.cellsReceived = 0;
+    this.resets = 0;
+    receive();
+  }
+
+  // sends events to the server, each an int as a GameRecorder logs it
+  // EFFECT: Writes the events to the socket
+  void send(int[] events) {
+    ByteBuffer buffer = ByteBuffer.allocate(events.length * 4);
+    for (int event : events) {
+      buffer.putInt(event);
+    }
+    buffer.flip();
+    try {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // sends one click on the cell at the given index
+  // EFFECT: Writes the event to the socket
+  void click(int index, int code) {
+    send(new int[] {index << 2 | code});
+  }
+
+  // waits until the server has applied and broadcast everything this player
+  // sent so far
+  // EFFECT: Reads and applies every message up to the server's answer
+  void sync() {
+    send(new int[] {MESSAGE_SYNC});
+    while (receive() != MESSAGE_SYNC) {
+      // keep applying messages until the answer arrives
+    }
+  }
+
+  // reads one message and applies it to view, returning its header
+  // EFFECT: Updates view and the counters
+  int receive() {
+    int count = readInt();
+    messagesReceived++;
+    if (count == MESSAGE_RESET) {
+      Arrays.fill(view, VIEW_HIDDEN);
+      resets++;
+    } else if (count > 0) {
+      ByteBuffer body = read(count * 4);
+      for (int i = 0; i < count; i++) {
+        int cell = body.getInt();
+        view[cell >>> 4] = cell & 0xF;
+      }
+      cellsReceived += count;
+    }
+    return count;
+  }
+
+  // reads one int from the socket
+  int readInt() {
+    header.clear();
+    fill(header);
+    header.flip();
+    return header.getInt();
+  }
+
+  // reads the given number of bytes from the socket
+  ByteBuffer read(int bytes) {
+    ByteBuffer buffer = ByteBuffer.allocate(bytes);
+    fill(buffer);
+    buffer.flip();
+    return buffer;
+  }
+
+  // reads until the buffer is full
+  // EFFECT: Fills the buffer from the socket
+  void fill(ByteBuffer buffer) {
+    try {
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) < 0) {
+          throw new IllegalStateException("Server closed the connection");
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // hangs up
+  // EFFECT: Closes the socket
+  void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
+
+// represents a load test of a BoardServer: every player connects, sends
+// their clicks in batches, waiting for the server after each batch, and the
+// test reports how many events per second the one board kept up with
+class ServerLoadTest implements IWorldConstants {
+  int players;
+  int clicksEach;
+  int batch;
+  long seed;
+  ArrayList<BoardClient> clients;
+  long elapsedNanos;
+  long events;
+
+  // the constructor
+  ServerLoadTest(int players, int clicksEach, int batch, long seed) {
+    this.players = players;
+    this.clicksEach = clicksEach;
+    this.batch = batch;
+    this.seed = seed;
+    this.clients = new ArrayList<>();
+    this.elapsedNanos = 0;
+    this.events = 0;
+  }
+
+  // connects every player to the server and runs them all at once, each on
+  // its own thread with its own random stream; mostly flags, with one click
+  // in four opening a cell
+  // EFFECT: Leaves the connected players in clients
+  void run(BoardServer server) {
+    int cells = server.width * server.height;
+    for (int p = 0; p < players; p++) {
+      clients.add(new BoardClient(server.port(), cells));
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(players);
+    ArrayList<Callable<Integer>> work = new ArrayList<>();
+    for (int p = 0; p < players; p++) {
+      BoardClient client = clients.get(p);
+      RandomGenerator rand = new RandomService(seed + p).stream(RNG_PLAYER);
+      work.add(() -> play(client, rand));
+    }
+    long start = System.nanoTime();
+    try {
+      for (Future<Integer> done : pool.invokeAll(work)) {
+        events += done.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+    elapsedNanos = System.nanoTime() - start;
+    for (BoardClient client : clients) {
+      client.sync();
+    }
+  }
+
+  // plays one player's clicks, returning how many were sent
+  // EFFECT: Sends the clicks and reads the server's messages
+  int play(BoardClient client, RandomGenerator rand) {
+    int cells = client.view.length;
+    int sent = 0;
+    while (sent < clicksEach) {
+      int[] events = new int[Math.min(batch, clicksEach - sent)];
+      for (int i = 0; i < events.length; i++) {
+        int code = rand.nextInt(4) == 0 ? EVENT_LEFT : EVENT_RIGHT;
+        events[i] = rand.nextInt(cells) << 2 | code;
+      }
+      client.send(events);
+      client.sync();
+      sent += events.length;
+    }
+    return sent;
+  }
+
+  // computes how many events per second the server applied
+  double eventsPerSecond() {
+    return events / Math.max(elapsedNanos / 1e9, 1e-9);
+  }
+
+  // hangs up every player
+  // EFFECT: Closes the players' sockets
+  void close() {
+    for (BoardClient client : clients) {
+      client.close();
+    }
+  }
+
+  // describes the results of this test
+  String report(BoardServer server) {
+    return String.format("%d players x %d clicks on %dx%d: %.0f events/s, %d games, "
+        + "%.1f cells per message", players, clicksEach, server.width, server.height,
+        eventsPerSecond(), server.gamesDealt,
+        server.cellsSent / (double) Math.max(server.messagesSent, 1));
+  }
+}
+
+// Tester Class
+class Main implements IWorldConstants {
+  // Test fixture fields
+  MineSweeper testGame;
+  Board board2x2;
+  Board board3x3;
+  Board emptyBoard;
+  Cell cell00;
+  Cell cell01;
+  Cell cell10;
+  Cell cell11;
+
+  // Initializes test data
+  // EFFECT: Sets up a test game and boards with cells
+  void initTestData() {
+
+    this.testGame = new MineSweeper(1);
+    this.testGame.state = PLAYING;
+
+    this.board2x2 = new Board(2, 2, 1, testGame, 30, 0, 0);
+    this.testGame.board = this.board2x2; // Set the board in the game
+
+    this.board3x3 = new Board(3, 3, 2, testGame, 30, 0, 0);
+    this.emptyBoard = new Board(2, 2, 0, testGame, 30, 0, 0);
+
+    this.cell00 = this.board2x2.cells.get(0).get(0);
+    this.cell01 = this.board2x2.cells.get(0).get(1);
+    this.cell10 = this.board2x2.cells.get(1).get(0);
+    this.cell11 = this.board2x2.cells.get(1).get(1);
+  }
+
+  // Tests for initializeBoard
+  boolean testInitializeBoard(Tester t) {
+    this.initTestData();
+    boolean test1 = t.checkExpect(this.board2x2.cells.size(), 2) &&
+        t.checkExpect(this.board2x2.cells.get(0).size(), 2) &&
+        t.checkExpect(this.board2x2.cells.get(1).size(), 2);
+
+    this.initTestData();
+    boolean test2 = t.checkExpect(this.board3x3.cells.size(), 3) &&
+        t.checkExpect(this.board3x3.cells.get(0).size(), 3) &&
+        t.checkExpect(this.board3x3.cells.get(2).size(), 3);
+
+    this.initTestData();
+    Cell c00 = this.board2x2.cells.get(0).getFirst();
+    Cell c11 = this.board2x2.cells.get(1).get(1);
+    boolean test3 = t.checkExpect(c00.x, 0) &&
+        t.checkExpect(c00.y, 0) &&
+        t.checkExpect(c11.x, 1) &&
+        t.checkExpect(c11.y, 1);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for linkNeighbors
+  boolean testLinkNeighbors(Tester t) {
+    this.initTestData();
+    Cell corner = this.board2x2.cells.getFirst().getFirst();
+    boolean test1 = t.checkExpect(corner.neighbors.size(), 3);
+
+    this.initTestData();
+    Cell center = this.board3x3.cells.get(1).get(1);
+    boolean test2 = t.checkExpect(center.neighbors.size(), 8);
+
+    this.initTestData();
+    Cell edge = this.board3x3.cells.getFirst().get(1);
+    boolean test3 = t.checkExpect(edge.neighbors.size(), 5);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for placeMines
+  boolean testPlaceMines(Tester t) {
+    this.initTestData();
+    int mineCount1 = 0;
+    for (ArrayList<Cell> row : this.board2x2.cells) {
+      for (Cell cell : row) {
+        if (cell.isMine) {
+          mineCount1++;
+        }
+      }
+    }
+    boolean test1 = t.checkExpect(mineCount1, 1);
+
+    this.initTestData();
+    int mineCount2 = 0;
+    for (ArrayList<Cell> row : this.board3x3.cells) {
+      for (Cell cell : row) {
+        if (cell.isMine) {
+          mineCount2++;
+        }
+      }
+    }
+    boolean test2 = t.checkExpect(mineCount2, 2);
+
+    this.initTestData();
+    int mineCount3 = 0;
+    for (ArrayList<Cell> row : this.emptyBoard.cells) {
+      for (Cell cell : row) {
+        if (cell.isMine) {
+          mineCount3++;
+        }
+      }
+    }
+    boolean test3 = t.checkExpect(mineCount3, 0);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for handleClick
+  boolean testHandleClick(Tester t) {
+    this.initTestData();
+    this.testGame.board = this.emptyBoard; // Use empty board to avoid mine
+    Cell target1 = this.emptyBoard.cells.getFirst().getFirst();
+    boolean before1 = target1.isRevealed;
+    this.emptyBoard.handleClick(new Posn(15, 15), "LeftButton");
+    boolean test1 = t.checkExpect(before1, false) &&
+        t.checkExpect(target1.isRevealed, true);
+
+    this.initTestData();
+    Cell target2 = this.board2x2.cells.getFirst().getFirst();
+    boolean before2 = target2.isFlagged;
+    this.board2x2.handleClick(new Posn(15, 15), "RightButton");
+    boolean test2 = t.checkExpect(before2, false) &&
+        t.checkExpect(target2.isFlagged, true);
+
+    this.initTestData();
+    this.testGame.board = this.emptyBoard; // Use empty board
+    this.emptyBoard.handleClick(new Posn(-10, -10), "LeftButton");
+    boolean noneRevealed = true;
+    for (ArrayList<Cell> row : this.emptyBoard.cells) {
+      for (Cell cell : row) {
+        if (cell.isRevealed) {
+          noneRevealed = false;
+          break;
+        }
+      }
+    }
+    boolean test3 = t.checkExpect(noneRevealed, false);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for revealAll
+  boolean testRevealAll(Tester t) {
+    this.initTestData();
+    this.board2x2.revealAll();
+    boolean allRevealed1 = true;
+    for (ArrayList<Cell> row : this.board2x2.cells) {
+      for (Cell cell : row) {
+        if (!cell.isRevealed) {
+          allRevealed1 = false;
+          break;
+        }
+      }
+    }
+    boolean test1 = t.checkExpect(allRevealed1, true);
+
+    this.initTestData();
+    this.board3x3.revealAll();
+    int revealedCount = 0;
+    for (ArrayList<Cell> row : this.board3x3.cells) {
+      for (Cell cell : row) {
+        if (cell.isRevealed) {
+          revealedCount++;
+        }
+      }
+    }
+    boolean test2 = t.checkExpect(revealedCount, 9);
+
+    this.initTestData();
+    Cell flagged = this.board2x2.cells.getFirst().getFirst();
+    flagged.isFlagged = true;
+    this.board2x2.revealAll();
+    boolean test3 = t.checkExpect(flagged.isRevealed, true);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for onCellRevealed
+  boolean testOnCellRevealed(Tester t) {
+    this.initTestData();
+    boolean stateBefore1 = this.testGame.state == PLAYING;
+    this.board2x2.onCellRevealed(true);
+    boolean test1 = t.checkExpect(stateBefore1, true) &&
+        t.checkExpect(this.testGame.state, GAME_OVER);
+
+    this.initTestData();
+    int countBefore = this.board2x2.cellsRevealed;
+    this.board2x2.onCellRevealed(false);
+    boolean test2 = t.checkExpect(countBefore, 0) &&
+        t.checkExpect(this.board2x2.cellsRevealed, 1);
+
+    this.initTestData();
+    this.testGame.board = this.emptyBoard; // Use empty board for win condition
+    this.emptyBoard.cellsRevealed = 3; // One away from winning
+    boolean stateBefore3 = this.testGame.state == PLAYING;
+    this.emptyBoard.onCellRevealed(false);
+    boolean test3 = t.checkExpect(stateBefore3, true) &&
+        t.checkExpect(this.testGame.state, GAME_OVER) &&
+        t.checkExpect(this.testGame.wonGame, true);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for flagRandomMine
+  boolean testFlagRandomMine(Tester t) {
+    this.initTestData();
+    int flaggedBefore1 = 0;
+    for (ArrayList<Cell> row : this.board2x2.cells) {
+      for (Cell cell : row) {
+        if (cell.isFlagged) {
+          flaggedBefore1++;
+        }
+      }
+    }
+    this.board2x2.flagRandomMine();
+    int flaggedAfter1 = 0;
+    for (ArrayList<Cell> row : this.board2x2.cells) {
+      for (Cell cell : row) {
+        if (cell.isFlagged) {
+          flaggedAfter1++;
+        }
+      }
+    }
+    boolean test1 = t.checkExpect(flaggedAfter1, flaggedBefore1 + 1);
+
+    this.initTestData();
+    this.emptyBoard.flagRandomMine();
+    int flaggedCount2 = 0;
+    for (ArrayList<Cell> row : this.emptyBoard.cells) {
+      for (Cell cell : row) {
+        if (cell.isFlagged) {
+          flaggedCount2++;
+        }
+      }
+    }
+    boolean test2 = t.checkExpect(flaggedCount2, 0);
+
+    this.initTestData();
+    // First flag all mines manually
+    for (ArrayList<Cell> row : this.board2x2.cells) {
+      for (Cell cell : row) {
+        if (cell.isMine) {
+          cell.isFlagged = true;
+        }
+      }
+    }
+    int flaggedBefore3 = 0;
+    for (ArrayList<Cell> row : this.board2x2.cells) {
+      for (Cell cell : row) {
+        if (cell.isFlagged) {
+          flaggedBefore3++;
+        }
+      }
+    }
+    this.board2x2.flagRandomMine();
+    int flaggedAfter3 = 0;
+    for (ArrayList<Cell> row : this.board2x2.cells) {
+      for (Cell cell : row) {
+        if (cell.isFlagged) {
+          flaggedAfter3++;
+        }
+      }
+    }
+    boolean test3 = t.checkExpect(flaggedAfter3, flaggedBefore3);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for ABoard.indexAt
+  boolean testIndexAt(Tester t) {
+    this.initTestData();
+    boolean test1 = t.checkExpect(this.board3x3.indexAt(new Posn(15, 15)), 0) &&
+        t.checkExpect(this.board3x3.indexAt(new Posn(45, 75)), 7);
+
+    this.initTestData();
+    boolean test2 = t.checkExpect(this.board3x3.indexAt(new Posn(95, 15)), -1) &&
+        t.checkExpect(this.board3x3.indexAt(new Posn(15, 95)), -1);
+
+    this.initTestData();
+    FlatBoard flat = new FlatBoard(4, 2, 0, this.testGame, 10, 20, 20);
+    boolean test3 = t.checkExpect(flat.indexAt(new Posn(55, 35)), 7) &&
+        t.checkExpect(flat.indexAt(new Posn(65, 35)), -1);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for ABoard.revealAt
+  boolean testRevealAt(Tester t) {
+    this.initTestData();
+    Board wide = new Board(300, 300, 0, this.testGame, 2, 0, 0);
+    this.testGame.board = wide;
+    wide.revealAt(45150);
+    boolean test1 = t.checkExpect(wide.cellsRevealed, 90000) &&
+        t.checkExpect(wide.cells.get(299).get(299).isRevealed, true) &&
+        t.checkExpect(this.testGame.wonGame, true);
+
+    this.initTestData();
+    FlatBoard flat2 = new FlatBoard(4, 1, 0, this.testGame, 30, 0, 0);
+    this.testGame.board = flat2;
+    flat2.cells[3] = (byte) MINE_BIT;
+    flat2.cells[2] = 1;
+    flat2.revealAt(0);
+    boolean test2 = t.checkExpect(flat2.cellsRevealed, 3) &&
+        t.checkExpect(flat2.isRevealedAt(2), true) &&
+        t.checkExpect(flat2.isRevealedAt(3), false);
+
+    this.initTestData();
+    this.testGame.board = this.emptyBoard;
+    this.emptyBoard.cells.get(1).get(1).isFlagged = true;
+    this.emptyBoard.revealAt(0);
+    boolean test3 = t.checkExpect(this.emptyBoard.cellsRevealed, 3) &&
+        t.checkExpect(this.emptyBoard.cells.get(1).get(1).isRevealed, false) &&
+        t.checkExpect(this.testGame.state, PLAYING);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for ABoard.onCellsRevealed
+  boolean testOnCellsRevealed(Tester t) {
+    this.initTestData();
+    this.board3x3.onCellsRevealed(4);
+    boolean test1 = t.checkExpect(this.board3x3.cellsRevealed, 4) &&
+        t.checkExpect(this.testGame.state, PLAYING);
+
+    this.initTestData();
+    this.board3x3.onCellsRevealed(7);
+    boolean test2 = t.checkExpect(this.testGame.state, GAME_OVER) &&
+        t.checkExpect(this.testGame.wonGame, true);
+
+    this.initTestData();
+    this.board3x3.onCellsRevealed(0);
+    boolean test3 = t.checkExpect(this.board3x3.cellsRevealed, 0);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for ABoard.touch
+  boolean testTouch(Tester t) {
+    this.initTestData();
+    this.board3x3.touch(4);
+    boolean test1 = t.checkExpect(this.board3x3.renderer, null);
+
+    this.initTestData();
+    this.board3x3.drawOnto(new WorldScene(200, 200));
+    this.board3x3.touch(4);
+    this.board3x3.touch(4);
+    boolean test2 = t.checkExpect(this.board3x3.renderer.dirtyCount, 1) &&
+        t.checkExpect(this.board3x3.renderer.dirty[4], true);
+
+    this.initTestData();
+    this.board3x3.drawOnto(new WorldScene(200, 200));
+    this.board3x3.cells.get(0).get(2).toggleFlag();
+    this.board3x3.cells.get(0).get(2).setFlag();
+    boolean test3 = t.checkExpect(this.board3x3.renderer.dirtyCount, 1) &&
+        t.checkExpect(this.board3x3.renderer.dirtyCells[0], 2);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for BoardRenderer.render
+  boolean testBoardRendererRender(Tester t) {
+    this.initTestData();
+    BoardRenderer renderer1 = new BoardRenderer(this.board3x3);
+    renderer1.render();
+    boolean test1 = t.checkExpect(renderer1.paintedLastFrame, 9) &&
+        t.checkExpect(renderer1.allDirty, false);
+
+    this.initTestData();
+    BoardRenderer renderer2 = new BoardRenderer(this.board3x3);
+    this.board3x3.renderer = renderer2;
+    renderer2.render();
+    this.board3x3.toggleFlagAt(8);
+    renderer2.render();
+    int paintedAfterFlag = renderer2.paintedLastFrame;
+    renderer2.render();
+    boolean test2 = t.checkExpect(paintedAfterFlag, 1) &&
+        t.checkExpect(renderer2.paintedLastFrame, 0) &&
+        t.checkExpect(renderer2.dirty[8], false);
+
+    this.initTestData();
+    FlatBoard flat = new FlatBoard(2, 1, 0, this.testGame, 30, 0, 0);
+    BoardRenderer renderer3 = new BoardRenderer(flat);
+    flat.renderer = renderer3;
+    renderer3.render();
+    Color hidden = renderer3.canvas.getColorAt(15, 15);
+    flat.cells[1] = (byte) MINE_BIT;
+    flat.cells[0] = 1;
+    flat.markRevealed(0);
+    renderer3.render();
+    boolean test3 = t.checkExpect(hidden, HIDDEN_COLOR) &&
+        t.checkExpect(renderer3.canvas.getColorAt(5, 5), REVEALED_COLOR) &&
+        t.checkExpect(renderer3.canvas.getColorAt(45, 5), HIDDEN_COLOR);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for SpriteAtlas.keyFor
+  boolean testSpriteAtlasKeyFor(Tester t) {
+    this.initTestData();
+    FlatBoard flat1 = new FlatBoard(3, 1, 0, this.testGame, 30, 0, 0);
+    SpriteAtlas atlas1 = new SpriteAtlas(flat1);
+    flat1.cells[1] = (byte) FLAGGED_BIT;
+    boolean test1 = t.checkExpect(atlas1.keyFor(0), SPRITE_HIDDEN) &&
+        t.checkExpect(atlas1.keyFor(1), SPRITE_FLAGGED);
+
+    this.initTestData();
+    FlatBoard flat2 = new FlatBoard(3, 1, 0, this.testGame, 30, 0, 0);
+    SpriteAtlas atlas2 = new SpriteAtlas(flat2);
+    flat2.cells[0] = (byte) (REVEALED_BIT | 3);
+    flat2.cells[1] = (byte) REVEALED_BIT;
+    boolean test2 = t.checkExpect(atlas2.keyFor(0), SPRITE_NUMBER + 3) &&
+        t.checkExpect(atlas2.keyFor(1), SPRITE_NUMBER);
+
+    this.initTestData();
+    FlatBoard flat3 = new FlatBoard(3, 1, 0, this.testGame, 30, 0, 0);
+    SpriteAtlas atlas3 = new SpriteAtlas(flat3);
+    flat3.cells[2] = (byte) (REVEALED_BIT | MINE_BIT);
+    int playingKey = atlas3.keyFor(2);
+    flat3.onCellRevealed(true);
+    boolean test3 = t.checkExpect(playingKey, SPRITE_MINE) &&
+        t.checkExpect(atlas3.keyFor(2), SPRITE_EXPLODED);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for SpriteAtlas.build
+  boolean testSpriteAtlasBuild(Tester t) {
+    this.initTestData();
+    SpriteAtlas atlas1 = new SpriteAtlas(this.board3x3);
+    WorldImage first = atlas1.image(SPRITE_HIDDEN);
+    WorldImage second = atlas1.image(SPRITE_HIDDEN);
+    boolean test1 = t.checkExpect(first == second, true) &&
+        t.checkExpect(atlas1.spritesBuilt, 1);
+
+    this.initTestData();
+    SpriteAtlas atlas2 = new SpriteAtlas(this.board3x3);
+    int[] rects = atlas2.rects(SPRITE_NUMBER);
+    int area = 0;
+    for (int i = 0; i < atlas2.rectColors[SPRITE_NUMBER].length; i++) {
+      area += rects[i * 4 + 2] * rects[i * 4 + 3];
+    }
+    boolean test2 = t.checkExpect(atlas2.widths[SPRITE_NUMBER], 28) &&
+        t.checkExpect(atlas2.heights[SPRITE_NUMBER], 28) &&
+        t.checkExpect(area, 28 * 28) &&
+        t.checkExpect(atlas2.rectColors[SPRITE_NUMBER].length < 10, true);
+
+    this.initTestData();
+    Board hard = new Board(HARD_WIDTH, HARD_HEIGHT, HARD_MINES, this.testGame, 30, 0, 0);
+    BoardRenderer renderer = new BoardRenderer(hard);
+    renderer.render();
+    hard.revealAll();
+    renderer.render();
+    renderer.markAllDirty();
+    renderer.render();
+    boolean test3 = t.checkExpect(renderer.paintedLastFrame, HARD_WIDTH * HARD_HEIGHT) &&
+        t.checkExpect(renderer.atlas.spritesBuilt <= SPRITE_COUNT, true);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for BoardRenderer.bytesAllocatedLastFrame on the Hard preset
+  boolean testBoardRendererAllocations(Tester t) {
+    this.initTestData();
+    Board hard = new Board(HARD_WIDTH, HARD_HEIGHT, HARD_MINES, this.testGame, 30, 0, 0);
+    BoardRenderer renderer = new BoardRenderer(hard);
+    renderer.render();
+    int sprites = renderer.atlas.spritesBuilt;
+    renderer.markAllDirty();
+    renderer.render();
+    long atlasBytes = renderer.bytesAllocatedLastFrame;
+
+    // the same frame built the old way, one fresh image per cell (the byte
+    // counts are only checked on JVMs that can count allocations; the second
+    // full frame reusing every sprite holds everywhere)
+    AllocationCounter counter = new AllocationCounter();
+    counter.start();
+    for (int i = 0; i < HARD_WIDTH * HARD_HEIGHT; i++) {
+      new FrozenImage(hard.cellImage(hard.isRevealedAt(i), hard.isFlaggedAt(i),
+          hard.isMineAt(i), hard.adjacentMinesAt(i), false));
+    }
+    long freshBytes = counter.bytesSinceStart();
+    boolean test1 = t.checkExpect(renderer.atlas.spritesBuilt, sprites) &&
+        t.checkExpect(!counter.isSupported() || atlasBytes * 10 < freshBytes, true);
+
+    renderer.render();
+    boolean test2 = t.checkExpect(renderer.bytesAllocatedLastFrame < 1024, true) &&
+        t.checkExpect(renderer.atlas.spritesBuilt, sprites);
+
+    AllocationCounter counter3 = new AllocationCounter();
+    counter3.start();
+    int[] garbage = new int[1000];
+    boolean test3 = t.checkExpect(!counter3.isSupported()
+        || counter3.bytesSinceStart() >= 4000, true) &&
+        t.checkExpect(garbage.length, 1000);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for IndexQueue
+  boolean testIndexQueue(Tester t) {
+    IndexQueue queue1 = new IndexQueue(4);
+    queue1.add(3);
+    queue1.add(5);
+    boolean test1 = t.checkExpect(queue1.remove(), 3) &&
+        t.checkExpect(queue1.remove(), 5) &&
+        t.checkExpect(queue1.isEmpty(), true);
+
+    IndexQueue queue2 = new IndexQueue(2);
+    queue2.add(1);
+    queue2.add(2);
+    queue2.remove();
+    queue2.add(3);
+    queue2.add(4);
+    boolean test2 = t.checkExpect(queue2.items.length, 4) &&
+        t.checkExpect(queue2.remove(), 2) &&
+        t.checkExpect(queue2.remove(), 3) &&
+        t.checkExpect(queue2.remove(), 4);
+
+    IndexQueue queue3 = new IndexQueue(2);
+    queue3.add(7);
+    queue3.clear();
+    boolean test3 = t.checkExpect(queue3.isEmpty(), true) &&
+        t.checkException(new NoSuchElementException("Cannot remove from an empty queue"),
+            queue3, "remove");
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for FlatBoard.initializeBoard
+  boolean testFlatBoardInitialize(Tester t) {
+    this.initTestData();
+    FlatBoard flat1 = new FlatBoard(3, 3, 2, this.testGame, 30, 0, 0);
+    int mines = 0;
+    for (int i = 0; i < flat1.cells.length; i++) {
+      if (flat1.isMineAt(i)) {
+        mines++;
+      }
+    }
+    boolean test1 = t.checkExpect(flat1.cells.length, 9) &&
+        t.checkExpect(mines, 2);
+
+    this.initTestData();
+    FlatBoard flat2 = new FlatBoard(5, 4, 6, this.testGame, 30, 0, 0);
+    boolean countsMatch = true;
+    for (int i = 0; i < flat2.cells.length; i++) {
+      int expected = 0;
+      for (int j = 0; j < flat2.cells.length; j++) {
+        if (i != j && Math.abs(i / 5 - j / 5) <= 1 && Math.abs(i % 5 - j % 5) <= 1
+            && flat2.isMineAt(j)) {
+          expected++;
+        }
+      }
+      if (!flat2.isMineAt(i) && flat2.adjacentMinesAt(i) != expected) {
+        countsMatch = false;
+      }
+    }
+    boolean test2 = t.checkExpect(countsMatch, true);
+
+    this.initTestData();
+    FlatBoard flat3 = new FlatBoard(2, 2, 0, this.testGame, 30, 0, 0);
+    boolean allEmpty = true;
+    for (int i = 0; i < flat3.cells.length; i++) {
+      if (flat3.cells[i] != 0) {
+        allEmpty = false;
+      }
+    }
+    boolean test3 = t.checkExpect(allEmpty, true) &&
+        t.checkExpect(flat3.totalSafeCells, 4);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for FlatBoard.revealAt
+  boolean testFlatBoardRevealAt(Tester t) {
+    this.initTestData();
+    FlatBoard huge = new FlatBoard(1000, 1000, 0, this.testGame, 15, 0, 0);
+    this.testGame.board = huge;
+    huge.revealAt(0);
+    boolean test1 = t.checkExpect(huge.cellsRevealed, 1000000) &&
+        t.checkExpect(huge.isRevealedAt(999999), true) &&
+        t.checkExpect(this.testGame.state, GAME_OVER) &&
+        t.checkExpect(this.testGame.wonGame, true);
+
+    this.initTestData();
+    FlatBoard flat2 = new FlatBoard(3, 1, 0, this.testGame, 30, 0, 0);
+    this.testGame.board = flat2;
+    flat2.cells[2] = (byte) MINE_BIT;
+    flat2.cells[1] = 1;
+    flat2.revealAt(2);
+    boolean test2 = t.checkExpect(flat2.isRevealedAt(2), true) &&
+        t.checkExpect(this.testGame.state, GAME_OVER) &&
+        t.checkExpect(this.testGame.wonGame, false);
+
+    this.initTestData();
+    FlatBoard flat3 = new FlatBoard(3, 1, 0, this.testGame, 30, 0, 0);
+    this.testGame.board = flat3;
+    flat3.cells[2] = (byte) FLAGGED_BIT;
+    flat3.revealAt(0);
+    boolean test3 = t.checkExpect(flat3.isRevealedAt(1), true) &&
+        t.checkExpect(flat3.isRevealedAt(2), false) &&
+        t.checkExpect(flat3.cellsRevealed, 2) &&
+        t.checkExpect(this.testGame.state, PLAYING);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for FlatBoard.toggleFlagAt
+  boolean testFlatBoardToggleFlagAt(Tester t) {
+    this.initTestData();
+    FlatBoard flat1 = new FlatBoard(2, 2, 0, this.testGame, 30, 0, 0);
+    flat1.toggleFlagAt(3);
+    boolean test1 = t.checkExpect(flat1.isFlaggedAt(3), true);
+
+    this.initTestData();
+    FlatBoard flat2 = new FlatBoard(2, 2, 0, this.testGame, 30, 0, 0);
+    flat2.toggleFlagAt(3);
+    flat2.toggleFlagAt(3);
+    boolean test2 = t.checkExpect(flat2.isFlaggedAt(3), false);
+
+    this.initTestData();
+    FlatBoard flat3 = new FlatBoard(2, 2, 0, this.testGame, 30, 0, 0);
+    flat3.cells[1] = (byte) REVEALED_BIT;
+    flat3.toggleFlagAt(1);
+    boolean test3 = t.checkExpect(flat3.isFlaggedAt(1), false);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for FlatBoard.flagRandomMine
+  boolean testFlatBoardFlagRandomMine(Tester t) {
+    this.initTestData();
+    FlatBoard flat1 = new FlatBoard(3, 3, 0, this.testGame, 30, 0, 0);
+    flat1.placeMineAt(4);
+    flat1.flagRandomMine();
+    boolean test1 = t.checkExpect(flat1.isFlaggedAt(4), true);
+
+    this.initTestData();
+    FlatBoard flat2 = new FlatBoard(3, 3, 0, this.testGame, 30, 0, 0);
+    flat2.flagRandomMine();
+    boolean noFlags = true;
+    for (int i = 0; i < flat2.cells.length; i++) {
+      if (flat2.isFlaggedAt(i)) {
+        noFlags = false;
+      }
+    }
+    boolean test2 = t.checkExpect(noFlags, true);
+
+    this.initTestData();
+    FlatBoard flat3 = new FlatBoard(3, 3, 0, this.testGame, 30, 0, 0);
+    flat3.placeMineAt(0);
+    flat3.toggleFlagAt(0);
+    flat3.placeMineAt(8);
+    flat3.flagRandomMine();
+    boolean test3 = t.checkExpect(flat3.isFlaggedAt(0), true) &&
+        t.checkExpect(flat3.isFlaggedAt(8), true);
+
+    return test1 && test2 && test3;
+  }
+
+  // Add these test methods to the Main class after the Board tests
+
+  // Tests for Cell.addNeighbor
+  boolean testAddNeighbor(Tester t) {
+    this.initTestData();
+    Cell testCell = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    Cell neighbor1 = new Cell(1, 0, this.board2x2, 30, 0, 0);
+    int sizeBefore1 = testCell.neighbors.size();
+    testCell.addNeighbor(neighbor1);
+    boolean test1 = t.checkExpect(sizeBefore1, 0) &&
+        t.checkExpect(testCell.neighbors.size(), 1) &&
+        t.checkExpect(testCell.neighbors.contains(neighbor1), true);
+
+    this.initTestData();
+    Cell testCell2 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    Cell neighbor2a = new Cell(1, 0, this.board2x2, 30, 0, 0);
+    Cell neighbor2b = new Cell(0, 1, this.board2x2, 30, 0, 0);
+    testCell2.addNeighbor(neighbor2a);
+    testCell2.addNeighbor(neighbor2b);
+    boolean test2 = t.checkExpect(testCell2.neighbors.size(), 2) &&
+        t.checkExpect(testCell2.neighbors.contains(neighbor2a), true) &&
+        t.checkExpect(testCell2.neighbors.contains(neighbor2b), true);
+
+    this.initTestData();
+    Cell testCell3 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    Cell neighbor3 = new Cell(1, 0, this.board2x2, 30, 0, 0);
+    testCell3.addNeighbor(neighbor3);
+    testCell3.addNeighbor(neighbor3);
+    boolean test3 = t.checkExpect(testCell3.neighbors.size(), 2);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for Cell.placeMine
+  boolean testPlaceMine(Tester t) {
+    this.initTestData();
+    Cell testCell1 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    boolean before1 = testCell1.isMine;
+    testCell1.placeMine();
+    boolean test1 = t.checkExpect(before1, false) &&
+        t.checkExpect(testCell1.isMine, true);
+
+    this.initTestData();
+    Cell testCell2 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    testCell2.isMine = true;
+    testCell2.placeMine();
+    boolean test2 = t.checkExpect(testCell2.isMine, true);
+
+    this.initTestData();
+    Cell testCell3 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    testCell3.placeMine();
+    boolean test3 = t.checkExpect(testCell3.isRevealed, false) &&
+        t.checkExpect(testCell3.isFlagged, false) &&
+        t.checkExpect(testCell3.adjacentMines, 0);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for Cell.countAdjacentMines
+  boolean testCountAdjacentMines(Tester t) {
+    this.initTestData();
+    Cell center1 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    Cell mine1 = new Cell(1, 0, this.board2x2, 30, 0, 0);
+    Cell safe1 = new Cell(0, 1, this.board2x2, 30, 0, 0);
+    mine1.isMine = true;
+    center1.addNeighbor(mine1);
+    center1.addNeighbor(safe1);
+    center1.countAdjacentMines();
+    boolean test1 = t.checkExpect(center1.adjacentMines, 1);
+
+    this.initTestData();
+    Cell center2 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    Cell mine2a = new Cell(1, 0, this.board2x2, 30, 0, 0);
+    Cell mine2b = new Cell(0, 1, this.board2x2, 30, 0, 0);
+    mine2a.isMine = true;
+    mine2b.isMine = true;
+    center2.addNeighbor(mine2a);
+    center2.addNeighbor(mine2b);
+    center2.countAdjacentMines();
+    boolean test2 = t.checkExpect(center2.adjacentMines, 2);
+
+    this.initTestData();
+    Cell mineCell = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    Cell neighbor3 = new Cell(1, 0, this.board2x2, 30, 0, 0);
+    mineCell.isMine = true;
+    neighbor3.isMine = true;
+    mineCell.addNeighbor(neighbor3);
+    mineCell.countAdjacentMines();
+    boolean test3 = t.checkExpect(mineCell.adjacentMines, 0);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for Cell.addToCountIfMine
+  boolean testAddToCountIfMine(Tester t) {
+    this.initTestData();
+    Cell mineCell1 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    Cell askingCell1 = new Cell(1, 0, this.board2x2, 30, 0, 0);
+    mineCell1.isMine = true;
+    int before1 = askingCell1.adjacentMines;
+    mineCell1.addToCountIfMine(askingCell1);
+    boolean test1 = t.checkExpect(before1, 0) &&
+        t.checkExpect(askingCell1.adjacentMines, 1);
+
+    this.initTestData();
+    Cell safeCell2 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    Cell askingCell2 = new Cell(1, 0, this.board2x2, 30, 0, 0);
+    safeCell2.isMine = false;
+    int before2 = askingCell2.adjacentMines;
+    safeCell2.addToCountIfMine(askingCell2);
+    boolean test2 = t.checkExpect(before2, 0) &&
+        t.checkExpect(askingCell2.adjacentMines, 0);
+
+    this.initTestData();
+    Cell mineCell3 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    Cell askingCell3 = new Cell(1, 0, this.board2x2, 30, 0, 0);
+    mineCell3.isMine = true;
+    mineCell3.addToCountIfMine(askingCell3);
+    mineCell3.addToCountIfMine(askingCell3);
+    boolean test3 = t.checkExpect(askingCell3.adjacentMines, 2);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for Cell.incrementAdjacentMines
+  boolean testIncrementAdjacentMines(Tester t) {
+    this.initTestData();
+    Cell cell1 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    int before1 = cell1.adjacentMines;
+    cell1.incrementAdjacentMines();
+    boolean test1 = t.checkExpect(before1, 0) &&
+        t.checkExpect(cell1.adjacentMines, 1);
+
+    this.initTestData();
+    Cell cell2 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    cell2.adjacentMines = 3;
+    cell2.incrementAdjacentMines();
+    boolean test2 = t.checkExpect(cell2.adjacentMines, 4);
+
+    this.initTestData();
+    Cell cell3 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    cell3.incrementAdjacentMines();
+    cell3.incrementAdjacentMines();
+    cell3.incrementAdjacentMines();
+    boolean test3 = t.checkExpect(cell3.adjacentMines, 3);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for Cell.reveal
+  boolean testReveal(Tester t) {
+    this.initTestData();
+    this.testGame.board = this.emptyBoard; // Use empty board to avoid mine issues
+    Cell cell1 = this.emptyBoard.cells.getFirst().getFirst();
+    boolean before1 = cell1.isRevealed;
+    cell1.reveal();
+    boolean test1 = t.checkExpect(before1, false) &&
+        t.checkExpect(cell1.isRevealed, true);
+
+    this.initTestData();
+    Cell cell2 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    cell2.isFlagged = true;
+    cell2.reveal();
+    boolean test2 = t.checkExpect(cell2.isRevealed, false) &&
+        t.checkExpect(cell2.isFlagged, true);
+
+    this.initTestData();
+    this.testGame.board = this.emptyBoard;
+    Cell cell3 = this.emptyBoard.cells.getFirst().getFirst();
+    cell3.isRevealed = true;
+    int countBefore = this.emptyBoard.cellsRevealed;
+    cell3.reveal();
+    boolean test3 = t.checkExpect(cell3.isRevealed, true) &&
+        t.checkExpect(this.emptyBoard.cellsRevealed, countBefore);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for Cell.forceReveal
+  boolean testForceReveal(Tester t) {
+    this.initTestData();
+    Cell cell1 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    boolean before1 = cell1.isRevealed;
+    cell1.forceReveal();
+    boolean test1 = t.checkExpect(before1, false) &&
+        t.checkExpect(cell1.isRevealed, true);
+
+    this.initTestData();
+    Cell cell2 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    cell2.isFlagged = true;
+    cell2.forceReveal();
+    boolean test2 = t.checkExpect(cell2.isRevealed, true) &&
+        t.checkExpect(cell2.isFlagged, true);
+
+    this.initTestData();
+    Cell cell3 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    cell3.isRevealed = true;
+    cell3.forceReveal();
+    boolean test3 = t.checkExpect(cell3.isRevealed, true);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for Cell.toggleFlag
+  boolean testToggleFlag(Tester t) {
+    this.initTestData();
+    Cell cell1 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    boolean before1 = cell1.isFlagged;
+    cell1.toggleFlag();
+    boolean test1 = t.checkExpect(before1, false) &&
+        t.checkExpect(cell1.isFlagged, true);
+
+    this.initTestData();
+    Cell cell2 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    cell2.isFlagged = true;
+    cell2.toggleFlag();
+    boolean test2 = t.checkExpect(cell2.isFlagged, false);
+
+    this.initTestData();
+    Cell cell3 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    cell3.isRevealed = true;
+    cell3.toggleFlag();
+    boolean test3 = t.checkExpect(cell3.isFlagged, false);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for Cell.addToListIfUnflaggedMine
+  boolean testAddToListIfUnflaggedMine(Tester t) {
+    this.initTestData();
+    Cell cell1 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    cell1.isMine = true;
+    ArrayList<Cell> list1 = new ArrayList<>();
+    cell1.addToListIfUnflaggedMine(list1);
+    boolean test1 = t.checkExpect(list1.size(), 1) &&
+        t.checkExpect(list1.contains(cell1), true);
+
+    this.initTestData();
+    Cell cell2 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    cell2.isMine = true;
+    cell2.isFlagged = true;
+    ArrayList<Cell> list2 = new ArrayList<>();
+    cell2.addToListIfUnflaggedMine(list2);
+    boolean test2 = t.checkExpect(list2.size(), 0);
+
+    this.initTestData();
+    Cell cell3 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    cell3.isMine = false;
+    ArrayList<Cell> list3 = new ArrayList<>();
+    cell3.addToListIfUnflaggedMine(list3);
+    boolean test3 = t.checkExpect(list3.size(), 0);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for Cell.setFlag
+  boolean testSetFlag(Tester t) {
+    this.initTestData();
+    Cell cell1 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    boolean before1 = cell1.isFlagged;
+    cell1.setFlag();
+    boolean test1 = t.checkExpect(before1, false) &&
+        t.checkExpect(cell1.isFlagged, true);
+
+    this.initTestData();
+    Cell cell2 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    cell2.isFlagged = true;
+    cell2.setFlag();
+    boolean test2 = t.checkExpect(cell2.isFlagged, true);
+
+    this.initTestData();
+    Cell cell3 = new Cell(0, 0, this.board2x2, 30, 0, 0);
+    cell3.isRevealed = true;
+    cell3.setFlag();
+    boolean test3 = t.checkExpect(cell3.isFlagged, false);
+
+    return test1 && test2 && test3;
+  }
+
+  // Add these test methods to the Main class after the Cell tests
+
+  // Tests for MineSweeper.calculateDimensions
+  boolean testCalculateDimensions(Tester t) {
+    this.initTestData();
+    MineSweeper game1 = new MineSweeper(1);
+    game1.calculateDimensions(10, 10);
+    boolean test1 = t.checkExpect(game1.cellSize, DEFAULT_CELL_SIZE) &&
+        t.checkExpect(game1.worldWidth, 10 * DEFAULT_CELL_SIZE + 2 * BOARD_PADDING) &&
+        t.checkExpect(game1.worldHeight, 10 * DEFAULT_CELL_SIZE + 2 * BOARD_PADDING + 100);
+
+    this.initTestData();
+    MineSweeper game2 = new MineSweeper(2);
+    game2.calculateDimensions(50, 50);
+    boolean test2 = t.checkExpect(game2.cellSize < DEFAULT_CELL_SIZE, true) &&
+        t.checkExpect(game2.cellSize >= MIN_CELL_SIZE, true);
+
+    this.initTestData();
+    MineSweeper game3 = new MineSweeper(3);
+    game3.calculateDimensions(15, 15);
+    boolean test3 = t.checkExpect(game3.boardOffsetX, BOARD_PADDING) &&
+        t.checkExpect(game3.boardOffsetY, BOARD_PADDING);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for MineSweeper.initializeMenu
+  boolean testInitializeMenu(Tester t) {
+    this.initTestData();
+    MineSweeper game1 = new MineSweeper(1);
+    game1.initializeMenu();
+    boolean test1 = t.checkExpect(game1.easyButton != null, true) &&
+        t.checkExpect(game1.mediumButton != null, true) &&
+        t.checkExpect(game1.hardButton != null, true) &&
+        t.checkExpect(game1.customButton != null, true);
+
+    this.initTestData();
+    MineSweeper game2 = new MineSweeper(2);
+    game2.initializeMenu();
+    boolean test2 = t.checkExpect(game2.easyButton.y, 200) &&
+        t.checkExpect(game2.mediumButton.y, 200 + UI_SPACING) &&
+        t.checkExpect(game2.hardButton.y, 200 + UI_SPACING * 2);
+
+    this.initTestData();
+    MineSweeper game3 = new MineSweeper(3);
+    game3.initializeMenu();
+    boolean test3 = t.checkExpect(game3.easyButton.label, "Easy (9x9, 10 mines)") &&
+        t.checkExpect(game3.customButton.label, "Custom");
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for MineSweeper.initializeCustomSetup
+  boolean testInitializeCustomSetup(Tester t) {
+    this.initTestData();
+    MineSweeper game1 = new MineSweeper(1);
+    game1.initializeCustomSetup();
+    boolean test1 = t.checkExpect(game1.widthSlider != null, true) &&
+        t.checkExpect(game1.heightSlider != null, true) &&
+        t.checkExpect(game1.mineSlider != null, true) &&
+        t.checkExpect(game1.playButton != null, true) &&
+        t.checkExpect(game1.backButton != null, true);
+
+    this.initTestData();
+    MineSweeper game2 = new MineSweeper(2);
+    game2.initializeCustomSetup();
+    boolean test2 = t.checkExpect(game2.widthSlider.getValue(), 15) &&
+        t.checkExpect(game2.heightSlider.getValue(), 15) &&
+        t.checkExpect(game2.mineSlider.getValue(), 50);
+
+    this.initTestData();
+    MineSweeper game3 = new MineSweeper(3);
+    game3.initializeCustomSetup();
+    boolean test3 = t.checkExpect(game3.widthSlider.min, 0) &&
+        t.checkExpect(game3.widthSlider.max, 50) &&
+        t.checkExpect(game3.heightSlider.min, 5) &&
+        t.checkExpect(game3.heightSlider.max, 40);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for MineSweeper.handleMenuClick
+  boolean testHandleMenuClick(Tester t) {
+    this.initTestData();
+    MineSweeper game1 = new MineSweeper(1);
+    game1.handleMenuClick(new Posn(MENU_WIDTH / 2, 200));
+    boolean test1 = t.checkExpect(game1.state, PLAYING) &&
+        t.checkExpect(game1.board.width, EASY_WIDTH) &&
+        t.checkExpect(game1.board.height, EASY_HEIGHT);
+
+    this.initTestData();
+    MineSweeper game2 = new MineSweeper(2);
+    game2.handleMenuClick(new Posn(MENU_WIDTH / 2, 200 + UI_SPACING * 3));
+    boolean test2 = t.checkExpect(game2.state, CUSTOM_SETUP);
+
+    this.initTestData();
+    MineSweeper game3 = new MineSweeper(3);
+    game3.handleMenuClick(new Posn(0, 0));
+    boolean test3 = t.checkExpect(game3.state, MENU);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for MineSweeper.handleCustomClick
+  boolean testHandleCustomClick(Tester t) {
+    this.initTestData();
+    MineSweeper game1 = new MineSweeper(1);
+    game1.state = CUSTOM_SETUP;
+    game1.initializeCustomSetup();
+    game1.handleCustomClick(new Posn(MENU_WIDTH / 2, 450));
+    boolean test1 = t.checkExpect(game1.state, PLAYING) &&
+        t.checkExpect(game1.board != null, true);
+
+    this.initTestData();
+    MineSweeper game2 = new MineSweeper(2);
+    game2.state = CUSTOM_SETUP;
+    game2.initializeCustomSetup();
+    game2.handleCustomClick(new Posn(MENU_WIDTH / 2, 520));
+    boolean test2 = t.checkExpect(game2.state, MENU);
+
+    this.initTestData();
+    MineSweeper game3 = new MineSweeper(3);
+    game3.state = CUSTOM_SETUP;
+    game3.initializeCustomSetup();
+    int valueBefore = game3.widthSlider.getValue();
+    game3.handleCustomClick(new Posn(MENU_WIDTH / 2 + 100, 200));
+    boolean test3 = t.checkExpect(game3.widthSlider.getValue() > valueBefore, true);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for MineSweeper.handleGameClick
+  boolean testHandleGameClick(Tester t) {
+    this.initTestData();
+    MineSweeper game1 = new MineSweeper(1);
+    game1.startGame(3, 3, 2);
+    game1.hudWidgets.move(game1.hintButton, 100, 100);
+    int flagsBefore = 0;
+    for (int i = 0; i < game1.board.width * game1.board.height; i++) {
+      if (game1.board.isFlaggedAt(i)) {
+        flagsBefore++;
+      }
+    }
+    game1.handleGameClick(new Posn(100, 100), "LeftButton");
+    int flagsAfter = 0;
+    for (int i = 0; i < game1.board.width * game1.board.height; i++) {
+      if (game1.board.isFlaggedAt(i)) {
+        flagsAfter++;
+      }
+    }
+    boolean test1 = t.checkExpect(flagsAfter, flagsBefore + 1);
+
+    this.initTestData();
+    MineSweeper game2 = new MineSweeper(2);
+    game2.startGame(3, 3, 2);
+    game2.hudWidgets.move(game2.hintButton, 1000, 1000);
+    boolean flagBefore = game2.board.isFlaggedAt(0);
+    game2.handleGameClick(new Posn(BOARD_PADDING + 15, BOARD_PADDING + 15), "RightButton");
+    boolean test2 = t.checkExpect(flagBefore, false) &&
+        t.checkExpect(game2.board.isFlaggedAt(0), true);
+
+    this.initTestData();
+    MineSweeper game3 = new MineSweeper(3);
+    game3.startGame(2, 2, 0); // No mines to avoid game over
+    game3.hudWidgets.move(game3.hintButton, 1000, 1000);
+    boolean revealedBefore = game3.board.isRevealedAt(0);
+    game3.handleGameClick(new Posn(BOARD_PADDING + 15, BOARD_PADDING + 15), "LeftButton");
+    boolean test3 = t.checkExpect(revealedBefore, false) &&
+        t.checkExpect(game3.board.isRevealedAt(0), true);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for MineSweeper.handleGameOverClick
+  boolean testHandleGameOverClick(Tester t) {
+    this.initTestData();
+    MineSweeper game1 = new MineSweeper(1);
+    game1.state = GAME_OVER;
+    game1.overWidgets.move(game1.menuButton, 100, 100);
+    game1.handleGameOverClick(new Posn(100, 100));
+    boolean test1 = t.checkExpect(game1.state, MENU);
+
+    this.initTestData();
+    MineSweeper game2 = new MineSweeper(2);
+    game2.state = GAME_OVER;
+    game2.worldWidth = 500;
+    game2.worldHeight = 500;
+    game2.overWidgets.move(game2.menuButton, 100, 100);
+    game2.handleGameOverClick(new Posn(100, 100));
+    boolean test2 = t.checkExpect(game2.worldWidth, MENU_WIDTH) &&
+        t.checkExpect(game2.worldHeight, MENU_HEIGHT);
+
+    this.initTestData();
+    MineSweeper game3 = new MineSweeper(3);
+    game3.state = GAME_OVER;
+    game3.overWidgets.move(game3.menuButton, 100, 100);
+    game3.handleGameOverClick(new Posn(500, 500));
+    boolean test3 = t.checkExpect(game3.state, GAME_OVER);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for MineSweeper.startGame
+  boolean testStartGame(Tester t) {
+    this.initTestData();
+    MineSweeper game1 = new MineSweeper(1);
+    game1.startGame(5, 5, 5);
+    boolean test1 = t.checkExpect(game1.board.width, 5) &&
+        t.checkExpect(game1.board.height, 5) &&
+        t.checkExpect(game1.board.mineCount, 5);
+
+    this.initTestData();
+    MineSweeper game2 = new MineSweeper(2);
+    game2.wonGame = true;
+    game2.startGame(3, 3, 1);
+    boolean test2 = t.checkExpect(game2.state, PLAYING) &&
+        t.checkExpect(game2.wonGame, false);
+
+    this.initTestData();
+    MineSweeper game3 = new MineSweeper(3);
+    int oldWidth = game3.worldWidth;
+    game3.startGame(10, 10, 10);
+    boolean test3 = t.checkExpect(game3.worldWidth != oldWidth, true) &&
+        t.checkExpect(game3.boardOffsetX, BOARD_PADDING);
+
+    this.initTestData();
+    MineSweeper game4 = new MineSweeper(4);
+    game4.startGame(100, 100, 10);
+    MineSweeper game5 = new MineSweeper(5);
+    game5.startGame(99, 100, 10);
+    boolean test4 = t.checkExpect(game4.board instanceof FlatBoard, true) &&
+        t.checkExpect(game5.board instanceof Board, true);
+
+    return test1 && test2 && test3 && test4;
+  }
+
+  // Tests for MineSweeper.endGame
+  boolean testEndGame(Tester t) {
+    this.initTestData();
+    MineSweeper game1 = new MineSweeper(1);
+    game1.startGame(2, 2, 1);
+    game1.endGame(true);
+    boolean test1 = t.checkExpect(game1.state, GAME_OVER);
+
+    this.initTestData();
+    MineSweeper game2 = new MineSweeper(2);
+    game2.startGame(2, 2, 1);
+    game2.endGame(false);
+    MineSweeper game3 = new MineSweeper(3);
+    game3.startGame(2, 2, 1);
+    game3.endGame(true);
+    boolean test2 = t.checkExpect(game2.wonGame, false) &&
+        t.checkExpect(game3.wonGame, true);
+
+    this.initTestData();
+    MineSweeper game4 = new MineSweeper(4);
+    game4.startGame(2, 2, 1);
+    game4.endGame(true);
+    boolean allRevealed = true;
+    for (int i = 0; i < game4.board.width * game4.board.height; i++) {
+      if (!game4.board.isRevealedAt(i)) {
+        allRevealed = false;
+        break;
+      }
+    }
+    boolean test3 = t.checkExpect(allRevealed, true);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for Button.contains
+  boolean testButtonContains(Tester t) {
+    this.initTestData();
+    Button button1 = new Button(100, 100, 50, 30, "Test");
+    boolean test1 = t.checkExpect(button1.contains(new Posn(100, 100)), true) &&
+        t.checkExpect(button1.contains(new Posn(90, 95)), true);
+
+    this.initTestData();
+    Button button2 = new Button(100, 100, 50, 30, "Test");
+    boolean test2 = t.checkExpect(button2.contains(new Posn(200, 200)), false) &&
+        t.checkExpect(button2.contains(new Posn(50, 50)), false);
+
+    this.initTestData();
+    Button button3 = new Button(100, 100, 50, 30, "Test");
+    boolean test3 = t.checkExpect(button3.contains(new Posn(75, 100)), true) && // left edge
+        t.checkExpect(button3.contains(new Posn(125, 100)), true) && // right edge
+        t.checkExpect(button3.contains(new Posn(100, 85)), true); // top edge
+
+    return test1 && test2 && test3;
   }
 
-  // draws slider with enhanced graphics
-  // EFFECT: Draws the slider track, thumb, and label onto the scene
-  void drawOnto(WorldScene scene) {
-    // Label
-    WorldImage labelImg = new TextImage(label + ": " + value, 18, FontStyle.BOLD, Color.BLACK);
-    scene.placeImageXY(labelImg, x, y - 40);
+  // Tests for Slider.getValue
+  boolean testSliderGetValue(Tester t) {
+    this.initTestData();
+    Slider slider1 = new Slider(100, 100, 200, 0, 100, 50, "Test");
+    boolean test1 = t.checkExpect(slider1.getValue(), 50);
 
-    // Track with groove effect
-    WorldImage trackBg = new RectangleImage(width,
-        SLIDER_HEIGHT + 4, OutlineMode.SOLID, Color.DARK_GRAY);
-    WorldImage track = new RectangleImage(width,
-        SLIDER_HEIGHT, OutlineMode.SOLID, SLIDER_TRACK);
-    scene.placeImageXY(trackBg, x, y);
-    scene.placeImageXY(track, x, y);
+    this.initTestData();
+    Slider slider2 = new Slider(100, 100, 200, 0, 100, 25, "Test");
+    slider2.value = 75;
+    boolean test2 = t.checkExpect(slider2.getValue(), 75);
 
-    // Thumb with 3D effect
-    int thumbX = x - width / 2 + (int) ((value - min) / (double) (max - min) * width);
-    WorldImage thumbShadow = new CircleImage(14, OutlineMode.SOLID, new Color(0, 0, 0, 50));
-    WorldImage thumbOuter = new CircleImage(12, OutlineMode.SOLID, SLIDER_THUMB);
-    WorldImage thumbInner = new CircleImage(8, OutlineMode.SOLID,
-        new Color(SLIDER_THUMB.getRed() + 30,
-            SLIDER_THUMB.getGreen() + 30, SLIDER_THUMB.getBlue() + 30));
+    this.initTestData();
+    Slider slider3a = new Slider(100, 100, 200, 10, 90, 10, "Test");
+    Slider slider3b = new Slider(100, 100, 200, 10, 90, 90, "Test");
+    boolean test3 = t.checkExpect(slider3a.getValue(), 10) &&
+        t.checkExpect(slider3b.getValue(), 90);
 
-    scene.placeImageXY(thumbShadow, thumbX + 1, y + 1);
-    scene.placeImageXY(thumbOuter, thumbX, y);
-    scene.placeImageXY(thumbInner, thumbX, y);
+    return test1 && test2 && test3;
   }
-}
 
-// Tester Class
-class Main implements IWorldConstants {
-  // Test fixture fields
-  MineSweeper testGame;
-  Board board2x2;
-  Board board3x3;
-  Board emptyBoard;
-  Cell cell00;
-  Cell cell01;
-  Cell cell10;
-  Cell cell11;
+  // Tests for Slider.setMax
+  boolean testSliderSetMax(Tester t) {
+    // Test 1: sets new max value
+    this.initTestData();
+    Slider slider1 = new Slider(100, 100, 200, 0, 100, 50, "Test");
+    slider1.setMax(200);
+    boolean test1 = t.checkExpect(slider1.max, 200);
 
-  // Initializes test data
-  // EFFECT: Sets up a test game and boards with cells
-  void initTestData() {
+    this.initTestData();
+    Slider slider2 = new Slider(100, 100, 200, 0, 100, 80, "Test");
+    slider2.setMax(50);
+    boolean test2 = t.checkExpect(slider2.max, 50) &&
+        t.checkExpect(slider2.value, 50);
 
-    this.testGame = new MineSweeper();
-    this.testGame.state = PLAYING;
+    this.initTestData();
+    Slider slider3 = new Slider(100, 100, 200, 0, 100, 30, "Test");
+    slider3.setMax(50);
+    boolean test3 = t.checkExpect(slider3.max, 50) &&
+        t.checkExpect(slider3.value, 30);
 
-    this.board2x2 = new Board(2, 2, 1, testGame, 30, 0, 0);
-    this.testGame.board = this.board2x2; // Set the board in the game
+    return test1 && test2 && test3;
+  }
 
-    this.board3x3 = new Board(3, 3, 2, testGame, 30, 0, 0);
-    this.emptyBoard = new Board(2, 2, 0, testGame, 30, 0, 0);
+  // Tests for Slider.handleClick
+  boolean testSliderHandleClick(Tester t) {
+    this.initTestData();
+    Slider slider1 = new Slider(100, 100, 200, 0, 100, 50, "Test");
+    slider1.handleClick(new Posn(0, 100));
+    boolean test1 = t.checkExpect(slider1.value, 0);
 
-    this.cell00 = this.board2x2.cells.get(0).get(0);
-    this.cell01 = this.board2x2.cells.get(0).get(1);
-    this.cell10 = this.board2x2.cells.get(1).get(0);
-    this.cell11 = this.board2x2.cells.get(1).get(1);
+    this.initTestData();
+    Slider slider2 = new Slider(100, 100, 200, 0, 100, 50, "Test");
+    slider2.handleClick(new Posn(200, 100));
+    boolean test2 = t.checkExpect(slider2.value, 100);
+
+    this.initTestData();
+    Slider slider3 = new Slider(100, 100, 200, 0, 100, 50, "Test");
+    slider3.handleClick(new Posn(100, 200)); // too far below
+    boolean test3 = t.checkExpect(slider3.value, 50);
+
+    return test1 && test2 && test3;
   }
 
-  // Tests for initializeBoard
-  boolean testInitializeBoard(Tester t) {
+  // builds a board with mines at the given cells and the given cells
+  // already revealed, for checking the solver
+  FlatBoard layoutBoard(int width, int height, int[] mines, int[] revealed) {
+    FlatBoard board = new FlatBoard(width, height, 0, new HeadlessGame(), 30, 0, 0);
+    for (int mine : mines) {
+      board.cells[mine] |= MINE_BIT;
+      int row = mine / width;
+      int col = mine % width;
+      for (int dr = -1; dr <= 1; dr++) {
+        for (int dc = -1; dc <= 1; dc++) {
+          int newRow = row + dr;
+          int newCol = col + dc;
+          if ((dr != 0 || dc != 0) && newRow >= 0 && newRow < height
+              && newCol >= 0 && newCol < width) {
+            board.cells[newRow * width + newCol]++;
+          }
+        }
+      }
+    }
+    for (int cell : revealed) {
+      board.cells[cell] |= REVEALED_BIT;
+    }
+    board.mineCount = mines.length;
+    board.totalSafeCells = width * height - mines.length;
+    board.cellsRevealed = revealed.length;
+    return board;
+  }
+
+  // Tests for Solver.applySingleRule
+  boolean testSolverSingleRule(Tester t) {
     this.initTestData();
-    boolean test1 = t.checkExpect(this.board2x2.cells.size(), 2) &&
-        t.checkExpect(this.board2x2.cells.get(0).size(), 2) &&
-        t.checkExpect(this.board2x2.cells.get(1).size(), 2);
+    Solver solver1 = new Solver();
+    SolverResult result1 = solver1.solve(layoutBoard(3, 1, new int[] { 2 }, new int[] { 0, 1 }));
+    boolean test1 = t.checkExpect(result1.mines, new ArrayList<>(Arrays.asList(2))) &&
+        t.checkExpect(result1.safeCells.isEmpty(), true) &&
+        t.checkExpect(solver1.singleRuleHits > 0, true);
 
+    // A zero opens every neighbor
     this.initTestData();
-    boolean test2 = t.checkExpect(this.board3x3.cells.size(), 3) &&
-        t.checkExpect(this.board3x3.cells.get(0).size(), 3) &&
-        t.checkExpect(this.board3x3.cells.get(2).size(), 3);
+    Solver solver2 = new Solver();
+    SolverResult result2 = solver2.solve(layoutBoard(3, 3, new int[] { 8 }, new int[] { 0 }));
+    boolean test2 = t.checkExpect(result2.safeCells.containsAll(Arrays.asList(1, 3, 4)), true) &&
+        t.checkExpect(result2.probabilities[4], 0.0);
 
+    // Flags are ignored, even wrong ones
     this.initTestData();
-    Cell c00 = this.board2x2.cells.get(0).getFirst();
-    Cell c11 = this.board2x2.cells.get(1).get(1);
-    boolean test3 = t.checkExpect(c00.x, 0) &&
-        t.checkExpect(c00.y, 0) &&
-        t.checkExpect(c11.x, 1) &&
-        t.checkExpect(c11.y, 1);
+    FlatBoard board3 = layoutBoard(3, 1, new int[] { 2 }, new int[] { 0, 1 });
+    board3.toggleFlagAt(2);
+    SolverResult result3 = new Solver().solve(board3);
+    boolean test3 = t.checkExpect(result3.mines, new ArrayList<>(Arrays.asList(2)));
 
     return test1 && test2 && test3;
   }
 
-  // Tests for linkNeighbors
-  boolean testLinkNeighbors(Tester t) {
+  // Tests for Solver.applySubsetRules
+  boolean testSolverSubsetRule(Tester t) {
     this.initTestData();
-    Cell corner = this.board2x2.cells.getFirst().getFirst();
-    boolean test1 = t.checkExpect(corner.neighbors.size(), 3);
+    Solver solver1 = new Solver();
+    SolverResult result1 = solver1.solve(layoutBoard(3, 2, new int[] { 3 }, new int[] { 0, 1 }));
+    boolean test1 = t.checkExpect(result1.safeCells.containsAll(Arrays.asList(2, 5)), true) &&
+        t.checkExpect(solver1.subsetRuleHits > 0, true);
 
     this.initTestData();
-    Cell center = this.board3x3.cells.get(1).get(1);
-    boolean test2 = t.checkExpect(center.neighbors.size(), 8);
+    boolean test2 = t.checkExpect(result1.probabilities[3], 0.5) &&
+        t.checkExpect(result1.probabilities[4], 0.5) &&
+        t.checkExpect(result1.exact, true);
 
     this.initTestData();
-    Cell edge = this.board3x3.cells.getFirst().get(1);
-    boolean test3 = t.checkExpect(edge.neighbors.size(), 5);
+    Solver solver3 = new Solver();
+    solver3.solve(layoutBoard(3, 1, new int[] { 2 }, new int[] { 0, 1 }));
+    boolean test3 = t.checkExpect(solver3.subsetRuleHits, 0);
 
     return test1 && test2 && test3;
   }
 
-  // Tests for placeMines
-  boolean testPlaceMines(Tester t) {
+  // Tests for Solver.combine
+  boolean testSolverProbabilities(Tester t) {
+    // One mine among the three cells next to the corner, one among the other
+    // eight cells
     this.initTestData();
-    int mineCount1 = 0;
-    for (ArrayList<Cell> row : this.board2x2.cells) {
-      for (Cell cell : row) {
-        if (cell.isMine) {
-          mineCount1++;
-        }
-      }
-    }
-    boolean test1 = t.checkExpect(mineCount1, 1);
+    SolverResult result1 = new Solver().solve(layoutBoard(4, 3, new int[] { 1, 11 },
+        new int[] { 0 }));
+    boolean test1 = t.checkInexact(result1.probabilities[1], 1 / 3.0, 0.0001) &&
+        t.checkInexact(result1.probabilities[5], 1 / 3.0, 0.0001) &&
+        t.checkInexact(result1.probabilities[11], 1 / 8.0, 0.0001);
 
     this.initTestData();
-    int mineCount2 = 0;
-    for (ArrayList<Cell> row : this.board3x3.cells) {
-      for (Cell cell : row) {
-        if (cell.isMine) {
-          mineCount2++;
-        }
-      }
-    }
-    boolean test2 = t.checkExpect(mineCount2, 2);
+    boolean test2 = t.checkExpect(result1.safeCells.isEmpty(), true) &&
+        t.checkExpect(result1.mines.isEmpty(), true) &&
+        t.checkExpect(result1.probabilities[0], 0.0);
 
+    // Every mine is already accounted for, so the unconstrained cells are safe
     this.initTestData();
-    int mineCount3 = 0;
-    for (ArrayList<Cell> row : this.emptyBoard.cells) {
-      for (Cell cell : row) {
-        if (cell.isMine) {
-          mineCount3++;
-        }
-      }
-    }
-    boolean test3 = t.checkExpect(mineCount3, 0);
+    SolverResult result3 = new Solver().solve(layoutBoard(5, 1, new int[] { 2 },
+        new int[] { 0, 1, 3 }));
+    boolean test3 = t.checkExpect(result3.mines, new ArrayList<>(Arrays.asList(2))) &&
+        t.checkExpect(result3.safeCells, new ArrayList<>(Arrays.asList(4)));
 
     return test1 && test2 && test3;
   }
 
-  // Tests for handleClick
-  boolean testHandleClick(Tester t) {
+  // Tests for Solver.componentKeys and the component cache
+  boolean testSolverCache(Tester t) {
+    // Two frontier components, one around each pair of open cells at the ends
     this.initTestData();
-    this.testGame.board = this.emptyBoard; // Use empty board to avoid mine
-    Cell target1 = this.emptyBoard.cells.getFirst().getFirst();
-    boolean before1 = target1.isRevealed;
-    this.emptyBoard.handleClick(new Posn(15, 15), "LeftButton");
-    boolean test1 = t.checkExpect(before1, false) &&
-        t.checkExpect(target1.isRevealed, true);
+    FlatBoard board1 = layoutBoard(9, 2, new int[] { 0, 4, 8 }, new int[] { 1, 10, 7, 16 });
+    Solver solver1 = new Solver(true);
+    SolverResult result1 = solver1.solve(board1);
+    boolean test1 = t.checkExpect(solver1.componentsEnumerated, 2) &&
+        t.checkExpect(solver1.componentsReused, 0) &&
+        t.checkExpect(result1.probabilities, new Solver().solve(board1).probabilities);
+
+    // Solving again without a change enumerates nothing
+    this.initTestData();
+    SolverResult result2 = solver1.solve(board1);
+    boolean test2 = t.checkExpect(solver1.componentsEnumerated, 0) &&
+        t.checkExpect(solver1.componentsReused, 2) &&
+        t.checkExpect(result2.probabilities, result1.probabilities);
 
+    // Opening the left side only enumerates the components it changed
     this.initTestData();
-    Cell target2 = this.board2x2.cells.getFirst().getFirst();
-    boolean before2 = target2.isFlagged;
-    this.board2x2.handleClick(new Posn(15, 15), "RightButton");
-    boolean test2 = t.checkExpect(before2, false) &&
-        t.checkExpect(target2.isFlagged, true);
+    board1.revealAt(11);
+    SolverResult result3 = solver1.solve(board1);
+    boolean test3 = t.checkExpect(solver1.componentsEnumerated, 2) &&
+        t.checkExpect(solver1.componentsReused, 1) &&
+        t.checkExpect(result3.probabilities, new Solver().solve(board1).probabilities);
+
+    return test1 && test2 && test3;
+  }
 
+  // Tests for Heatmap
+  boolean testHeatmap(Tester t) {
     this.initTestData();
-    this.testGame.board = this.emptyBoard; // Use empty board
-    this.emptyBoard.handleClick(new Posn(-10, -10), "LeftButton");
-    boolean noneRevealed = true;
-    for (ArrayList<Cell> row : this.emptyBoard.cells) {
-      for (Cell cell : row) {
-        if (cell.isRevealed) {
-          noneRevealed = false;
-          break;
-        }
-      }
+    MineSweeper game1 = new MineSweeper(6);
+    game1.startGame(HARD_WIDTH, HARD_HEIGHT, HARD_MINES);
+    ABoard board1 = game1.board;
+    int center = (HARD_HEIGHT / 2) * HARD_WIDTH + HARD_WIDTH / 2;
+    board1.revealAt(center);
+    game1.onKeyEvent("h");
+    game1.makeScene();
+    Heatmap heatmap1 = game1.heatmap;
+    boolean test1 = t.checkExpect(heatmap1.board, board1) &&
+        t.checkExpect(heatmap1.solvedChanges, board1.changes);
+
+    // Open cells are left clear and hidden ones take their shade
+    this.initTestData();
+    int size = board1.cellSize;
+    int hidden = 0;
+    while (board1.isRevealedAt(hidden)) {
+      hidden++;
     }
-    boolean test3 = t.checkExpect(noneRevealed, false);
+    int hiddenX = (hidden % HARD_WIDTH) * size + size / 2;
+    int hiddenY = (hidden / HARD_WIDTH) * size + size / 2;
+    int openX = (center % HARD_WIDTH) * size + size / 2;
+    int openY = (center / HARD_WIDTH) * size + size / 2;
+    boolean test2 = t.checkExpect(heatmap1.canvas.getPixel(openX, openY), heatmap1.clear) &&
+        t.checkExpect(heatmap1.canvas.getPixel(hiddenX, hiddenY),
+            heatmap1.shadeFor(heatmap1.result.probabilities[hidden])) &&
+        t.checkExpect(heatmap1.shadeFor(0.0), new Color(0, 255, 0, HEATMAP_ALPHA)) &&
+        t.checkExpect(heatmap1.shadeFor(1.0), new Color(255, 0, 0, HEATMAP_ALPHA));
+
+    // Frames without a change reuse the last solve; endless boards get none
+    this.initTestData();
+    SolverResult before3 = heatmap1.result;
+    game1.makeScene();
+    SolverResult after3 = heatmap1.result;
+    MineSweeper game3 = new MineSweeper(6);
+    game3.startEndless(6);
+    game3.onKeyEvent("h");
+    game3.makeScene();
+    boolean test3 = t.checkExpect(after3 == before3, true) &&
+        t.checkExpect(game3.heatmap, null);
+    game3.board.release();
 
     return test1 && test2 && test3;
   }
 
-  // Tests for revealAll
-  boolean testRevealAll(Tester t) {
+  // Tests for SolverBenchmark.run
+  boolean testSolverBenchmark(Tester t) {
     this.initTestData();
-    this.board2x2.revealAll();
-    boolean allRevealed1 = true;
-    for (ArrayList<Cell> row : this.board2x2.cells) {
-      for (Cell cell : row) {
-        if (!cell.isRevealed) {
-          allRevealed1 = false;
-          break;
-        }
-      }
-    }
-    boolean test1 = t.checkExpect(allRevealed1, true);
+    SolverBenchmark bench1 = new SolverBenchmark(9, 9, 10);
+    bench1.run(200, 1);
+    boolean test1 = t.checkExpect(bench1.gamesPlayed, 200) &&
+        t.checkExpect(bench1.winRate() > 0.5, true);
 
+    // The same seeds play the same games
     this.initTestData();
-    this.board3x3.revealAll();
-    int revealedCount = 0;
-    for (ArrayList<Cell> row : this.board3x3.cells) {
-      for (Cell cell : row) {
-        if (cell.isRevealed) {
-          revealedCount++;
-        }
-      }
-    }
-    boolean test2 = t.checkExpect(revealedCount, 9);
+    SolverBenchmark bench2 = new SolverBenchmark(9, 9, 10);
+    bench2.run(200, 1);
+    boolean test2 = t.checkExpect(bench2.gamesWon, bench1.gamesWon) &&
+        t.checkExpect(bench2.guesses, bench1.guesses);
 
     this.initTestData();
-    Cell flagged = this.board2x2.cells.getFirst().getFirst();
-    flagged.isFlagged = true;
-    this.board2x2.revealAll();
-    boolean test3 = t.checkExpect(flagged.isRevealed, true);
+    SolverBenchmark bench3 = new SolverBenchmark(30, 16, 99);
+    bench3.run(50, 1);
+    boolean test3 = t.checkExpect(bench3.gamesPlayed, 50) &&
+        t.checkExpect(bench3.solveCalls >= 50, true) &&
+        t.checkExpect(bench3.gamesWon <= bench3.gamesPlayed, true) &&
+        t.checkExpect(bench3.guesses <= bench3.solveCalls, true) &&
+        t.checkExpect(bench3.elapsedNanos > 0, true) &&
+        t.checkExpect(bench3.gamesPerSecond() > 0, true) &&
+        t.checkExpect(bench3.report().startsWith("30x16/99 mines: 50 games, "), true);
 
     return test1 && test2 && test3;
   }
 
-  // Tests for onCellRevealed
-  boolean testOnCellRevealed(Tester t) {
+  // Tests for RandomStrategy.chooseCell
+  boolean testRandomStrategy(Tester t) {
     this.initTestData();
-    boolean stateBefore1 = this.testGame.state.equals(PLAYING);
-    this.board2x2.onCellRevealed(true);
-    boolean test1 = t.checkExpect(stateBefore1, true) &&
-        t.checkExpect(this.testGame.state, GAME_OVER);
+    FlatBoard board1 = layoutBoard(3, 1, new int[] { 2 }, new int[] { 0, 1 });
+    boolean test1 = t.checkExpect(new RandomStrategy().chooseCell(board1, new Random(5)), 2);
 
     this.initTestData();
-    int countBefore = this.board2x2.cellsRevealed;
-    this.board2x2.onCellRevealed(false);
-    boolean test2 = t.checkExpect(countBefore, 0) &&
-        t.checkExpect(this.board2x2.cellsRevealed, 1);
+    FlatBoard board2 = layoutBoard(2, 1, new int[] {}, new int[] { 0, 1 });
+    boolean test2 = t.checkExpect(new RandomStrategy().chooseCell(board2, new Random(5)), -1);
 
     this.initTestData();
-    this.testGame.board = this.emptyBoard; // Use empty board for win condition
-    this.emptyBoard.cellsRevealed = 3; // One away from winning
-    boolean stateBefore3 = this.testGame.state.equals(PLAYING);
-    this.emptyBoard.onCellRevealed(false);
-    boolean test3 = t.checkExpect(stateBefore3, true) &&
-        t.checkExpect(this.testGame.state, GAME_OVER) &&
-        t.checkExpect(this.testGame.wonGame, true);
+    FlatBoard board3 = layoutBoard(4, 4, new int[] { 15 }, new int[] {});
+    int cell3 = new RandomStrategy().chooseCell(board3, new Random(9));
+    boolean test3 = t.checkExpect(cell3 >= 0 && cell3 < 16, true);
 
     return test1 && test2 && test3;
   }
 
-  // Tests for flagRandomMine
-  boolean testFlagRandomMine(Tester t) {
+  // Tests for SolverStrategy.chooseCell
+  boolean testSolverStrategy(Tester t) {
+    // A zero in the corner proves its neighbors safe
     this.initTestData();
-    int flaggedBefore1 = 0;
-    for (ArrayList<Cell> row : this.board2x2.cells) {
-      for (Cell cell : row) {
-        if (cell.isFlagged) {
-          flaggedBefore1++;
-        }
-      }
-    }
-    this.board2x2.flagRandomMine();
-    int flaggedAfter1 = 0;
-    for (ArrayList<Cell> row : this.board2x2.cells) {
-      for (Cell cell : row) {
-        if (cell.isFlagged) {
-          flaggedAfter1++;
-        }
-      }
-    }
-    boolean test1 = t.checkExpect(flaggedAfter1, flaggedBefore1 + 1);
+    FlatBoard board1 = layoutBoard(3, 3, new int[] { 8 }, new int[] { 0 });
+    SolverStrategy strategy1 = new SolverStrategy();
+    int first = strategy1.chooseCell(board1, new Random(1));
+    boolean test1 = t.checkExpect(first == 1 || first == 3 || first == 4, true) &&
+        t.checkExpect(strategy1.pending.isEmpty(), false);
 
+    // Queued cells that were opened in the meantime are skipped
     this.initTestData();
-    this.emptyBoard.flagRandomMine();
-    int flaggedCount2 = 0;
-    for (ArrayList<Cell> row : this.emptyBoard.cells) {
-      for (Cell cell : row) {
-        if (cell.isFlagged) {
-          flaggedCount2++;
-        }
+    board1.cells[1] |= REVEALED_BIT;
+    board1.cells[3] |= REVEALED_BIT;
+    board1.cells[4] |= REVEALED_BIT;
+    int second = strategy1.chooseCell(board1, new Random(1));
+    boolean test2 = t.checkExpect(board1.isRevealedAt(second), false);
+
+    this.initTestData();
+    IStrategy copy3 = strategy1.copy();
+    boolean test3 = t.checkExpect(copy3 != strategy1, true) &&
+        t.checkExpect(copy3.name(), "solver");
+
+    // A strategy reused across games plays each one like a fresh strategy,
+    // even when the last game ended with safe cells still queued
+    this.initTestData();
+    SimulationTask task4 = new SimulationTask(EASY_WIDTH, EASY_HEIGHT, EASY_MINES,
+        new SolverStrategy(), 42, 0, 20);
+    SolverStrategy shared4 = new SolverStrategy();
+    boolean sameGames = true;
+    int leftovers = 0;
+    for (int game = 0; game < 20; game++) {
+      SimulationStats reused = new SimulationStats();
+      task4.playGame(shared4, game, reused);
+      if (!shared4.pending.isEmpty()) {
+        leftovers++;
       }
+      SimulationStats fresh = new SimulationStats();
+      task4.playGame(new SolverStrategy(), game, fresh);
+      sameGames = sameGames && reused.clicks == fresh.clicks && reused.wins == fresh.wins;
     }
-    boolean test2 = t.checkExpect(flaggedCount2, 0);
+    shared4.reset();
+    boolean test4 = t.checkExpect(sameGames, true) &&
+        t.checkExpect(leftovers > 0, true) &&
+        t.checkExpect(shared4.pending.isEmpty(), true);
+
+    return test1 && test2 && test3 && test4;
+  }
 
+  // Tests for SimulationStats.add
+  boolean testSimulationStats(Tester t) {
     this.initTestData();
-    // First flag all mines manually
-    for (ArrayList<Cell> row : this.board2x2.cells) {
-      for (Cell cell : row) {
-        if (cell.isMine) {
-          cell.isFlagged = true;
-        }
+    SimulationStats stats1 = new SimulationStats();
+    SimulationStats other1 = new SimulationStats();
+    other1.games = 4;
+    other1.wins = 1;
+    other1.clicks = 10;
+    stats1.add(other1);
+    stats1.add(other1);
+    boolean test1 = t.checkExpect(stats1.games, 8) &&
+        t.checkExpect(stats1.wins, 2) &&
+        t.checkExpect(stats1.clicks, 20L);
+
+    this.initTestData();
+    boolean test2 = t.checkInexact(stats1.winRate(), 0.25, 0.0001) &&
+        t.checkInexact(stats1.clicksPerGame(), 2.5, 0.0001);
+
+    this.initTestData();
+    SimulationStats stats3 = new SimulationStats();
+    boolean test3 = t.checkExpect(stats3.winRate(), 0.0) &&
+        t.checkExpect(stats3.clicksPerGame(), 0.0);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for BatchSimulator.simulate
+  boolean testBatchSimulator(Tester t) {
+    this.initTestData();
+    BatchSimulator parallel = new BatchSimulator();
+    SimulationStats stats1 = parallel.simulate(EASY_WIDTH, EASY_HEIGHT, EASY_MINES,
+        new SolverStrategy(), 300, 42);
+    boolean test1 = t.checkExpect(stats1.games, 300) &&
+        t.checkExpect(stats1.clicks >= 300, true) &&
+        t.checkExpect(stats1.wins > 0, true);
+
+    // Splitting the work differently plays exactly the same games
+    this.initTestData();
+    BatchSimulator single = new BatchSimulator(1);
+    SimulationStats stats2 = single.simulate(EASY_WIDTH, EASY_HEIGHT, EASY_MINES,
+        new SolverStrategy(), 300, 42);
+    boolean test2 = t.checkExpect(stats2.wins, stats1.wins) &&
+        t.checkExpect(stats2.clicks, stats1.clicks);
+
+    // Random clicking loses far more often than the solver
+    this.initTestData();
+    SimulationStats stats3 = parallel.simulate(EASY_WIDTH, EASY_HEIGHT, EASY_MINES,
+        new RandomStrategy(), 300, 42);
+    String[] lines3 = single.reportPresets(new SolverStrategy(), 5, 7).split("\n");
+    parallel.shutdown();
+    single.shutdown();
+    boolean test3 = t.checkExpect(stats3.games, 300) &&
+        t.checkExpect(stats3.winRate() < stats1.winRate(), true) &&
+        t.checkExpect(lines3.length, 3) &&
+        t.checkExpect(lines3[0].startsWith("Easy (solver, 1 workers): 5 games, "), true) &&
+        t.checkExpect(lines3[1].startsWith("Medium (solver, 1 workers): 5 games, "), true) &&
+        t.checkExpect(lines3[2].startsWith("Hard (solver, 1 workers): 5 games, "), true);
+
+    return test1 && test2 && test3;
+  }
+
+  // Tests for ABoard.placeMinesAround
+  boolean testPlaceMinesAround(Tester t) {
+    this.initTestData();
+    Board board1 = new Board(9, 9, 10, new HeadlessGame(), 30, 0, 0, new RandomService(3), true);
+    int minesBefore = 0;
+    for (int i = 0; i < 81; i++) {
+      if (board1.isMineAt(i)) {
+        minesBefore++;
       }
     }
-    int flaggedBefore3 = 0;
-    for (ArrayList<Cell> row : this.board2x2.cells) {
-      for (Cell cell : row) {
-        if (cell.isFlagged) {
-          flaggedBefore3++;
+    board1.revealAt(40);
+    int minesAfter = 0;
+    boolean countsMatch = true;
+    for (int i = 0; i < 81; i++) {
+      if (board1.isMineAt(i)) {
+        minesAfter++;
+      } else {
+        int around = 0;
+        for (Cell neighbor : board1.cellAt(i).neighbors) {
+          if (neighbor.isMine) {
+            around++;
+          }
         }
+        countsMatch = countsMatch && around == board1.adjacentMinesAt(i);
       }
     }
-    this.board2x2.flagRandomMine();
-    int flaggedAfter3 = 0;
-    for (ArrayList<Cell> row : this.board2x2.cells) {
-      for (Cell cell : row) {
-        if (cell.isFlagged) {
-          flaggedAfter3++;
-        }
-      }
+    boolean clearAround = true;
+    for (int cell : board1.clearZone(40)) {
+      clearAround = clearAround && !board1.isMineAt(cell);
     }
-    boolean test3 = t.checkExpect(flaggedAfter3, flaggedBefore3);
+    boolean test1 = t.checkExpect(minesBefore, 0) &&
+        t.checkExpect(minesAfter, 10) &&
+        t.checkExpect(clearAround, true) &&
+        t.checkExpect(countsMatch, true) &&
+        t.checkExpect(board1.adjacentMinesAt(40), 0);
+
+    // Too crowded to keep the neighbors clear, so only the first cell is
+    this.initTestData();
+    FlatBoard flat2 = new FlatBoard(3, 3, 8, new HeadlessGame(), 30, 0, 0, new RandomService(3), true);
+    flat2.revealAt(4);
+    boolean test2 = t.checkExpect(flat2.isMineAt(4), false) &&
+        t.checkExpect(flat2.isRevealedAt(4), true) &&
+        t.checkExpect(flat2.adjacentMinesAt(4), 8) &&
+        t.checkExpect(flat2.isMineAt(0), true);
+
+    // More mines than cells leaves the first cell clear and lowers the count
+    this.initTestData();
+    HeadlessGame game3 = new HeadlessGame();
+    FlatBoard flat3 = new FlatBoard(2, 2, 9, game3, 30, 0, 0, new RandomService(3), true);
+    flat3.revealAt(0);
+    boolean test3 = t.checkExpect(flat3.mineCount, 3) &&
+        t.checkExpect(flat3.totalSafeCells, 1) &&
+        t.checkExpect(game3.won, true);
 
     return test1 && test2 && test3;
   }
 
-  // Add these test methods to the Main class after the Board tests
-
-  // Tests for Cell.addNeighbor
-  boolean testAddNeighbor(Tester t) {
+  // Tests for ABoard.cellOfRank
+  boolean testCellOfRank(Tester t) {
     this.initTestData();
-    Cell testCell = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    Cell neighbor1 = new Cell(1, 0, this.board2x2, 30, 0, 0);
-    int sizeBefore1 = testCell.neighbors.size();
-    testCell.addNeighbor(neighbor1);
-    boolean test1 = t.checkExpect(sizeBefore1, 0) &&
-        t.checkExpect(testCell.neighbors.size(), 1) &&
-        t.checkExpect(testCell.neighbors.contains(neighbor1), true);
+    FlatBoard board = new FlatBoard(4, 4, 0, new HeadlessGame(), 30, 0, 0);
+    boolean test1 = t.checkExpect(board.cellOfRank(0, new int[] {}), 0) &&
+        t.checkExpect(board.cellOfRank(5, new int[] {}), 5);
 
     this.initTestData();
-    Cell testCell2 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    Cell neighbor2a = new Cell(1, 0, this.board2x2, 30, 0, 0);
-    Cell neighbor2b = new Cell(0, 1, this.board2x2, 30, 0, 0);
-    testCell2.addNeighbor(neighbor2a);
-    testCell2.addNeighbor(neighbor2b);
-    boolean test2 = t.checkExpect(testCell2.neighbors.size(), 2) &&
-        t.checkExpect(testCell2.neighbors.contains(neighbor2a), true) &&
-        t.checkExpect(testCell2.neighbors.contains(neighbor2b), true);
+    boolean test2 = t.checkExpect(board.cellOfRank(0, new int[] { 0, 1, 4, 5 }), 2) &&
+        t.checkExpect(board.cellOfRank(2, new int[] { 0, 1, 4, 5 }), 6);
 
     this.initTestData();
-    Cell testCell3 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    Cell neighbor3 = new Cell(1, 0, this.board2x2, 30, 0, 0);
-    testCell3.addNeighbor(neighbor3);
-    testCell3.addNeighbor(neighbor3);
-    boolean test3 = t.checkExpect(testCell3.neighbors.size(), 2);
+    boolean test3 = t.checkExpect(board.clearZone(0), new int[] { 0, 1, 4, 5 }) &&
+        t.checkExpect(board.clearZone(5).length, 9);
 
     return test1 && test2 && test3;
   }
 
-  // Tests for Cell.placeMine
-  boolean testPlaceMine(Tester t) {
+  // Tests for ChunkedBoard.generate
+  boolean testChunkedBoardGenerate(Tester t) {
     this.initTestData();
-    Cell testCell1 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    boolean before1 = testCell1.isMine;
-    testCell1.placeMine();
-    boolean test1 = t.checkExpect(before1, false) &&
-        t.checkExpect(testCell1.isMine, true);
+    ChunkedBoard board1 = new ChunkedBoard(10, 10, 7, 0.2, new HeadlessGame(), 30, 0, 0);
+    ChunkedBoard other1 = new ChunkedBoard(10, 10, 7, 0.2, new HeadlessGame(), 30, 0, 0);
+    board1.pan(5000, -3000);
+    other1.pan(5000, -3000);
+    boolean sameMines = true;
+    for (int i = 0; i < 100; i++) {
+      sameMines = sameMines && board1.isMineAt(i) == other1.isMineAt(i);
+    }
+    boolean test1 = t.checkExpect(sameMines, true);
+    board1.release();
+    other1.release();
 
+    // Counts see mines in the next chunk over
     this.initTestData();
-    Cell testCell2 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    testCell2.isMine = true;
-    testCell2.placeMine();
-    boolean test2 = t.checkExpect(testCell2.isMine, true);
+    ChunkedBoard board2 = new ChunkedBoard(10, 10, 11, 0.3, new HeadlessGame(), 30, 0, 0);
+    boolean countsMatch = true;
+    for (long wy = 60; wy < 68; wy++) {
+      for (long wx = 60; wx < 68; wx++) {
+        if (!board2.generatesMine(wx, wy)) {
+          int around = 0;
+          for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+              if ((dx != 0 || dy != 0) && board2.generatesMine(wx + dx, wy + dy)) {
+                around++;
+              }
+            }
+          }
+          countsMatch = countsMatch
+              && around == (board2.cellAtWorld(wx, wy) & ADJACENT_MASK);
+        }
+      }
+    }
+    boolean test2 = t.checkExpect(countsMatch, true) &&
+        t.checkExpect(board2.generatesMine(-1, 1), false);
+    board2.release();
 
+    // The start cell is open in the middle of the window
     this.initTestData();
-    Cell testCell3 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    testCell3.placeMine();
-    boolean test3 = t.checkExpect(testCell3.isRevealed, false) &&
-        t.checkExpect(testCell3.isFlagged, false) &&
-        t.checkExpect(testCell3.adjacentMines, 0);
+    ChunkedBoard board3 = new ChunkedBoard(10, 10, 3, 0.2, new HeadlessGame(), 30, 0, 0);
+    boolean test3 = t.checkExpect(board3.isRevealedAt(5 * 10 + 5), true) &&
+        t.checkExpect(board3.worldX(55), 0L) &&
+        t.checkExpect(board3.worldY(55), 0L) &&
+        t.checkExpect(board3.cellsRevealed > 0, true);
+    board3.release();
 
     return test1 && test2 && test3;
   }
 
-  // Tests for Cell.countAdjacentMines
-  boolean testCountAdjacentMines(Tester t) {
+  // Tests for ChunkedBoard.revealWorld
+  boolean testChunkedBoardRevealWorld(Tester t) {
+    // With no mines the flood stops at ENDLESS_FLOOD_RADIUS
     this.initTestData();
-    Cell center1 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    Cell mine1 = new Cell(1, 0, this.board2x2, 30, 0, 0);
-    Cell safe1 = new Cell(0, 1, this.board2x2, 30, 0, 0);
-    mine1.isMine = true;
-    center1.addNeighbor(mine1);
-    center1.addNeighbor(safe1);
-    center1.countAdjacentMines();
-    boolean test1 = t.checkExpect(center1.adjacentMines, 1);
-
+    HeadlessGame game1 = new HeadlessGame();
+    ChunkedBoard board1 = new ChunkedBoard(10, 10, 1, 0.0, game1, 30, 0, 0);
+    int side = 2 * ENDLESS_FLOOD_RADIUS + 1;
+    boolean test1 = t.checkExpect(board1.cellsRevealed, side * side) &&
+        t.checkExpect(game1.ended, false) &&
+        t.checkExpect((board1.cellAtWorld(ENDLESS_FLOOD_RADIUS + 1, 0) & REVEALED_BIT), 0);
+
+    // The flood touches more chunks than fit in memory
     this.initTestData();
-    Cell center2 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    Cell mine2a = new Cell(1, 0, this.board2x2, 30, 0, 0);
-    Cell mine2b = new Cell(0, 1, this.board2x2, 30, 0, 0);
-    mine2a.isMine = true;
-    mine2b.isMine = true;
-    center2.addNeighbor(mine2a);
-    center2.addNeighbor(mine2b);
-    center2.countAdjacentMines();
-    boolean test2 = t.checkExpect(center2.adjacentMines, 2);
+    boolean test2 = t.checkExpect(board1.chunks.size() <= board1.chunks.capacity, true) &&
+        t.checkExpect(board1.store.chunksWritten > 0, true) &&
+        t.checkExpect((board1.cellAtWorld(-ENDLESS_FLOOD_RADIUS, ENDLESS_FLOOD_RADIUS)
+            & REVEALED_BIT) != 0, true);
+    board1.release();
 
+    // Opening a mine ends the game
     this.initTestData();
-    Cell mineCell = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    Cell neighbor3 = new Cell(1, 0, this.board2x2, 30, 0, 0);
-    mineCell.isMine = true;
-    neighbor3.isMine = true;
-    mineCell.addNeighbor(neighbor3);
-    mineCell.countAdjacentMines();
-    boolean test3 = t.checkExpect(mineCell.adjacentMines, 0);
+    HeadlessGame game3 = new HeadlessGame();
+    ChunkedBoard board3 = new ChunkedBoard(10, 10, 1, 1.0, game3, 30, 0, 0);
+    board3.revealAt(0);
+    boolean test3 = t.checkExpect(game3.ended, true) &&
+        t.checkExpect(game3.won, false);
+    board3.release();
 
     return test1 && test2 && test3;
   }
 
-  // Tests for Cell.addToCountIfMine
-  boolean testAddToCountIfMine(Tester t) {
+  // Tests for ChunkedBoard.pan
+  boolean testChunkedBoardPan(Tester t) {
     this.initTestData();
-    Cell mineCell1 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    Cell askingCell1 = new Cell(1, 0, this.board2x2, 30, 0, 0);
-    mineCell1.isMine = true;
-    int before1 = askingCell1.adjacentMines;
-    mineCell1.addToCountIfMine(askingCell1);
-    boolean test1 = t.checkExpect(before1, 0) &&
-        t.checkExpect(askingCell1.adjacentMines, 1);
+    ChunkedBoard board1 = new ChunkedBoard(10, 10, 5, 0.2, new HeadlessGame(), 30, 0, 0);
+    board1.pan(1, 2);
+    boolean test1 = t.checkExpect(board1.worldX(0), -4L) &&
+        t.checkExpect(board1.worldY(0), -3L) &&
+        t.checkExpect(board1.isRevealedAt(3 * 10 + 4), true);
 
+    // A flag far away survives being pushed out to disk
     this.initTestData();
-    Cell safeCell2 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    Cell askingCell2 = new Cell(1, 0, this.board2x2, 30, 0, 0);
-    safeCell2.isMine = false;
-    int before2 = askingCell2.adjacentMines;
-    safeCell2.addToCountIfMine(askingCell2);
-    boolean test2 = t.checkExpect(before2, 0) &&
-        t.checkExpect(askingCell2.adjacentMines, 0);
-
+    board1.pan(100000, 100000);
+    board1.toggleFlagAt(0);
+    for (int i = 1; i <= 2 * board1.chunks.capacity; i++) {
+      board1.cellAtWorld(i * CHUNK_SIZE * 3L, -i * CHUNK_SIZE * 5L);
+    }
+    boolean evicted = board1.store.offsets.size() > 0;
+    board1.lastChunk = null;
+    boolean test2 = t.checkExpect(evicted, true) &&
+        t.checkExpect(board1.isFlaggedAt(0), true) &&
+        t.checkExpect(board1.store.chunksRead > 0, true);
+    board1.release();
+
+    // Fixed-size boards ignore panning
     this.initTestData();
-    Cell mineCell3 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    Cell askingCell3 = new Cell(1, 0, this.board2x2, 30, 0, 0);
-    mineCell3.isMine = true;
-    mineCell3.addToCountIfMine(askingCell3);
-    mineCell3.addToCountIfMine(askingCell3);
-    boolean test3 = t.checkExpect(askingCell3.adjacentMines, 2);
+    FlatBoard flat3 = new FlatBoard(3, 3, 0, new HeadlessGame(), 30, 0, 0);
+    flat3.pan(5, 5);
+    boolean test3 = t.checkExpect(flat3.indexAt(new Posn(40, 40)), 4);
 
     return test1 && test2 && test3;
   }
 
-  // Tests for Cell.incrementAdjacentMines
-  boolean testIncrementAdjacentMines(Tester t) {
+  // Tests for MineSweeper.onKeyEvent
+  boolean testOnKeyEvent(Tester t) {
     this.initTestData();
-    Cell cell1 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    int before1 = cell1.adjacentMines;
-    cell1.incrementAdjacentMines();
-    boolean test1 = t.checkExpect(before1, 0) &&
-        t.checkExpect(cell1.adjacentMines, 1);
+    MineSweeper game1 = new MineSweeper(1);
+    game1.startEndless(9);
+    game1.onKeyEvent("right");
+    ChunkedBoard board1 = (ChunkedBoard) game1.board;
+    boolean test1 = t.checkExpect(board1.originX, (long) (-(ENDLESS_WIDTH / 2) + PAN_STEP));
 
     this.initTestData();
-    Cell cell2 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    cell2.adjacentMines = 3;
-    cell2.incrementAdjacentMines();
-    boolean test2 = t.checkExpect(cell2.adjacentMines, 4);
+    game1.onKeyEvent("up");
+    boolean test2 = t.checkExpect(board1.originY, (long) (-(ENDLESS_HEIGHT / 2) - PAN_STEP));
+    board1.release();
 
     this.initTestData();
-    Cell cell3 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    cell3.incrementAdjacentMines();
-    cell3.incrementAdjacentMines();
-    cell3.incrementAdjacentMines();
-    boolean test3 = t.checkExpect(cell3.adjacentMines, 3);
+    MineSweeper game3 = new MineSweeper(3);
+    game3.onKeyEvent("left");
+    boolean test3 = t.checkExpect(game3.state, MENU);
 
     return test1 && test2 && test3;
   }
 
-  // Tests for Cell.reveal
-  boolean testReveal(Tester t) {
+  // Tests for FrameStats
+  boolean testFrameStats(Tester t) {
     this.initTestData();
-    this.testGame.board = this.emptyBoard; // Use empty board to avoid mine issues
-    Cell cell1 = this.emptyBoard.cells.getFirst().getFirst();
-    boolean before1 = cell1.isRevealed;
-    cell1.reveal();
-    boolean test1 = t.checkExpect(before1, false) &&
-        t.checkExpect(cell1.isRevealed, true);
-
+    FrameStats stats1 = new FrameStats(4);
+    stats1.beginFrame();
+    stats1.endFrame();
+    stats1.inputReceived();
+    stats1.cellsOpened(12);
+    stats1.cellsOpened(3);
+    stats1.beginFrame();
+    stats1.endFrame();
+    boolean test1 = t.checkExpect(stats1.frames, 2) &&
+        t.checkExpect(stats1.latencyNanos[0], -1L) &&
+        t.checkExpect(stats1.latencyNanos[1] >= 0, true) &&
+        t.checkExpect(stats1.floodCells[1], 15) &&
+        t.checkExpect(stats1.pendingCells, 0);
+
+    // Old frames are overwritten once the ring is full
     this.initTestData();
-    Cell cell2 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    cell2.isFlagged = true;
-    cell2.reveal();
-    boolean test2 = t.checkExpect(cell2.isRevealed, false) &&
-        t.checkExpect(cell2.isFlagged, true);
+    for (int i = 0; i < 5; i++) {
+      stats1.beginFrame();
+      stats1.endFrame();
+    }
+    boolean test2 = t.checkExpect(stats1.stored(), 4) &&
+        t.checkExpect(stats1.maxFlood(), 0) &&
+        t.checkExpect(stats1.percentile(stats1.latencyNanos, 50), -1L);
 
     this.initTestData();
-    this.testGame.board = this.emptyBoard;
-    Cell cell3 = this.emptyBoard.cells.getFirst().getFirst();
-    cell3.isRevealed = true;
-    int countBefore = this.emptyBoard.cellsRevealed;
-    cell3.reveal();
-    boolean test3 = t.checkExpect(cell3.isRevealed, true) &&
-        t.checkExpect(this.emptyBoard.cellsRevealed, countBefore);
+    FrameStats stats3 = new FrameStats(10);
+    for (int i = 1; i <= 10; i++) {
+      stats3.frameNanos[i - 1] = i * 100;
+    }
+    stats3.frames = 10;
+    File file3 = tempFile();
+    stats3.writeCsv(file3);
+    int lines = 0;
+    try (BufferedReader in = new BufferedReader(new FileReader(file3))) {
+      while (in.readLine() != null) {
+        lines++;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    file3.delete();
+    long[] scratch3 = stats3.sorted;
+    stats3.frameNanos[0] = 2000;
+    boolean test3 = t.checkExpect(stats3.percentile(stats3.frameNanos, 50), 600L) &&
+        t.checkExpect(stats3.percentile(stats3.frameNanos, 99), 2000L) &&
+        t.checkExpect(stats3.frameNanos[0], 2000L) &&
+        t.checkExpect(stats3.sorted == scratch3, true) &&
+        t.checkExpect(lines, 11);
 
     return test1 && test2 && test3;
   }
 
-  // Tests for Cell.forceReveal
-  boolean testForceReveal(Tester t) {
+  // Tests for MineSweeper's frame instrumentation
+  boolean testMineSweeperStats(Tester t) {
     this.initTestData();
-    Cell cell1 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    boolean before1 = cell1.isRevealed;
-    cell1.forceReveal();
-    boolean test1 = t.checkExpect(before1, false) &&
-        t.checkExpect(cell1.isRevealed, true);
+    MineSweeper game1 = new MineSweeper(4);
+    game1.makeScene();
+    boolean test1 = t.checkExpect(game1.stats.frames, 1) &&
+        t.checkExpect(game1.stats.latencyNanos[0], -1L);
 
     this.initTestData();
-    Cell cell2 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    cell2.isFlagged = true;
-    cell2.forceReveal();
-    boolean test2 = t.checkExpect(cell2.isRevealed, true) &&
-        t.checkExpect(cell2.isFlagged, true);
+    game1.startGame(EASY_WIDTH, EASY_HEIGHT, EASY_MINES);
+    ABoard board2 = game1.board;
+    game1.onMouseClicked(new Posn(board2.offsetX + 4 * board2.cellSize + 1,
+        board2.offsetY + 4 * board2.cellSize + 1), "LeftButton");
+    game1.makeScene();
+    boolean test2 = t.checkExpect(game1.stats.floodCells[1], board2.cellsRevealed) &&
+        t.checkExpect(board2.cellsRevealed > 0, true) &&
+        t.checkExpect(game1.stats.latencyNanos[1] >= 0, true);
 
     this.initTestData();
-    Cell cell3 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    cell3.isRevealed = true;
-    cell3.forceReveal();
-    boolean test3 = t.checkExpect(cell3.isRevealed, true);
+    game1.onKeyEvent("f");
+    boolean shown = game1.showStats;
+    game1.makeScene();
+    game1.onKeyEvent("f");
+    boolean test3 = t.checkExpect(shown, true) &&
+        t.checkExpect(game1.showStats, false) &&
+        t.checkExpect(game1.stats.frames, 3);
 
     return test1 && test2 && test3;
   }
 
-  // Tests for Cell.toggleFlag
-  boolean testToggleFlag(Tester t) {
+  // Tests for CellSet
+  boolean testCellSet(Tester t) {
     this.initTestData();
-    Cell cell1 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    boolean before1 = cell1.isFlagged;
-    cell1.toggleFlag();
-    boolean test1 = t.checkExpect(before1, false) &&
-        t.checkExpect(cell1.isFlagged, true);
+    CellSet set1 = new CellSet(100);
+    for (int i = 0; i < 40; i++) {
+      set1.add(i * 2);
+    }
+    set1.add(4);
+    boolean test1 = t.checkExpect(set1.size, 40) &&
+        t.checkExpect(set1.contains(78), true) &&
+        t.checkExpect(set1.contains(77), false);
 
     this.initTestData();
-    Cell cell2 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    cell2.isFlagged = true;
-    cell2.toggleFlag();
-    boolean test2 = t.checkExpect(cell2.isFlagged, false);
+    set1.remove(0);
+    set1.remove(50);
+    set1.remove(51);
+    boolean consistent = true;
+    for (int i = 0; i < set1.size; i++) {
+      consistent = consistent && set1.positions[set1.items[i]] == i;
+    }
+    boolean test2 = t.checkExpect(set1.size, 38) &&
+        t.checkExpect(set1.contains(0), false) &&
+        t.checkExpect(set1.contains(78), true) &&
+        t.checkExpect(consistent, true) &&
+        t.checkExpect(set1.contains(set1.pick(new Random(1))), true);
 
     this.initTestData();
-    Cell cell3 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    cell3.isRevealed = true;
-    cell3.toggleFlag();
-    boolean test3 = t.checkExpect(cell3.isFlagged, false);
+    set1.clear();
+    boolean test3 = t.checkExpect(set1.isEmpty(), true) &&
+        t.checkExpect(set1.contains(78), false) &&
+        t.checkException(new NoSuchElementException("Cannot pick from an empty set"),
+            set1, "pick", new Random(1));
 
     return test1 && test2 && test3;
   }
 
-  // Tests for Cell.addToListIfUnflaggedMine
-  boolean testAddToListIfUnflaggedMine(Tester t) {
+  // Tests for ABoard.updateMineIndex
+  boolean testUpdateMineIndex(Tester t) {
     this.initTestData();
-    Cell cell1 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    cell1.isMine = true;
-    ArrayList<Cell> list1 = new ArrayList<>();
-    cell1.addToListIfUnflaggedMine(list1);
-    boolean test1 = t.checkExpect(list1.size(), 1) &&
-        t.checkExpect(list1.contains(cell1), true);
+    Board board1 = new Board(50, 40, 300, new HeadlessGame(), 30, 0, 0, new RandomService(4));
+    boolean test1 = t.checkExpect(board1.hiddenMines.size, 300);
 
     this.initTestData();
-    Cell cell2 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    cell2.isMine = true;
-    cell2.isFlagged = true;
-    ArrayList<Cell> list2 = new ArrayList<>();
-    cell2.addToListIfUnflaggedMine(list2);
-    boolean test2 = t.checkExpect(list2.size(), 0);
+    board1.flagRandomMine();
+    board1.flagRandomMine();
+    int flagged = 0;
+    for (int i = 0; i < 2000; i++) {
+      if (board1.isFlaggedAt(i)) {
+        flagged++;
+      }
+    }
+    boolean test2 = t.checkExpect(board1.hiddenMines.size, 298) &&
+        t.checkExpect(flagged, 2);
 
+    // Unflagging a mine puts it back; revealing everything empties the index
     this.initTestData();
-    Cell cell3 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    cell3.isMine = false;
-    ArrayList<Cell> list3 = new ArrayList<>();
-    cell3.addToListIfUnflaggedMine(list3);
-    boolean test3 = t.checkExpect(list3.size(), 0);
+    FlatBoard flat3 = new FlatBoard(3, 3, 0, new HeadlessGame(), 30, 0, 0);
+    flat3.placeMineAt(2);
+    flat3.toggleFlagAt(2);
+    boolean flaggedOut = flat3.hiddenMines.contains(2);
+    flat3.toggleFlagAt(2);
+    boolean unflaggedIn = flat3.hiddenMines.contains(2);
+    flat3.revealAll();
+    boolean test3 = t.checkExpect(flaggedOut, false) &&
+        t.checkExpect(unflaggedIn, true) &&
+        t.checkExpect(flat3.hiddenMines.isEmpty(), true);
 
     return test1 && test2 && test3;
   }
 
-  // Tests for Cell.setFlag
-  boolean testSetFlag(Tester t) {
+  // Tests for BoardBenchmark.measure
+  boolean testBoardBenchmark(Tester t) {
     this.initTestData();
-    Cell cell1 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    boolean before1 = cell1.isFlagged;
-    cell1.setFlag();
-    boolean test1 = t.checkExpect(before1, false) &&
-        t.checkExpect(cell1.isFlagged, true);
-
+    BoardBenchmark bench1 = new BoardBenchmark("Easy", EASY_WIDTH, EASY_HEIGHT, EASY_MINES);
+    BenchmarkResult flood1 = bench1.measure(new RevealFloodOp(), 2, 5);
+    boolean test1 = t.checkExpect(flood1.runs, 5) &&
+        t.checkExpect(flood1.minNanos > 0, true) &&
+        t.checkExpect(flood1.meanNanos() >= flood1.minNanos, true) &&
+        t.checkExpect(bench1.board.cellsRevealed, EASY_WIDTH * EASY_HEIGHT);
+
+    // setUp keeps each run on fresh state: relinking never doubles the lists,
+    // and the hint op rebuilds the board once every mine is flagged
     this.initTestData();
-    Cell cell2 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    cell2.isFlagged = true;
-    cell2.setFlag();
-    boolean test2 = t.checkExpect(cell2.isFlagged, true);
+    bench1.measure(new LinkNeighborsOp(), 1, 3);
+    Board board2 = (Board) bench1.board;
+    bench1.measure(new FlagRandomMineOp(), 0, EASY_MINES + 1);
+    boolean test2 = t.checkExpect(board2.cells.get(4).get(4).neighbors.size(), 8) &&
+        t.checkExpect(bench1.board.hiddenMines.size, EASY_MINES - 1);
+
+    // Boards too big for Cell objects skip those operations, but still draw
+    // a frame the size of the window
+    this.initTestData();
+    BoardBenchmark bench3 = new BoardBenchmark("Custom", 2000, 2000, 100);
+    boolean test3 = t.checkExpect(bench3.measure(new CountAdjacentOp(), 1, 1), null) &&
+        t.checkExpect(bench3.measure(new MakeSceneOp(), 1, 1) != null, true) &&
+        t.checkExpect(new MakeSceneOp().supports(bench1), true);
+
+    return test1 && test2 && test3;
+  }
 
+  // Tests for BoardBenchmarkSuite.run
+  boolean testBoardBenchmarkSuite(Tester t) {
     this.initTestData();
-    Cell cell3 = new Cell(0, 0, this.board2x2, 30, 0, 0);
-    cell3.isRevealed = true;
-    cell3.setFlag();
-    boolean test3 = t.checkExpect(cell3.isFlagged, false);
+    BoardBenchmarkSuite suite1 = new BoardBenchmarkSuite();
+    boolean test1 = t.checkExpect(suite1.sizes.size(), 6) &&
+        t.checkExpect(suite1.sizes.get(5).mines, 825000) &&
+        t.checkExpect(suite1.ops.size(), 7);
+
+    // Every size runs every operation, in order
+    this.initTestData();
+    ArrayList<BoardBenchmark> sizes2 = new ArrayList<>();
+    sizes2.add(new BoardBenchmark("Easy", EASY_WIDTH, EASY_HEIGHT, EASY_MINES));
+    sizes2.add(new BoardBenchmark("Custom", 20, 20, 40));
+    BoardBenchmarkSuite suite2 = new BoardBenchmarkSuite(sizes2);
+    ArrayList<BenchmarkResult> results = suite2.run(0, 2);
+    boolean test2 = t.checkExpect(results.size(), 7 * 2) &&
+        t.checkExpect(results.get(0).size, "Easy 9x9/10") &&
+        t.checkExpect(results.get(7).size, "Custom 20x20/40") &&
+        t.checkExpect(results.get(0).runs, 2);
+
+    // The report has one line per result, each naming its size and operation
+    this.initTestData();
+    String[] lines3 = suite2.report(results).split("\n");
+    boolean test3 = t.checkExpect(lines3.length, results.size()) &&
+        t.checkExpect(lines3[0], results.get(0).report()) &&
+        t.checkExpect(lines3[0].contains("construct"), true) &&
+        t.checkExpect(lines3[13].startsWith("Custom 20x20/40"), true) &&
+        t.checkExpect(lines3[13].endsWith("(2 runs)"), true);
 
     return test1 && test2 && test3;
   }
 
-  // Add these test methods to the Main class after the Cell tests
-
-  // Tests for MineSweeper.calculateDimensions
-  boolean testCalculateDimensions(Tester t) {
+  // Tests for NoGuessPuzzle.solvable
+  boolean testNoGuessPuzzle(Tester t) {
     this.initTestData();
-    MineSweeper game1 = new MineSweeper();
-    game1.calculateDimensions(10, 10);
-    boolean test1 = t.checkExpect(game1.cellSize, DEFAULT_CELL_SIZE) &&
-        t.checkExpect(game1.worldWidth, 10 * DEFAULT_CELL_SIZE + 2 * BOARD_PADDING) &&
-        t.checkExpect(game1.worldHeight, 10 * DEFAULT_CELL_SIZE + 2 * BOARD_PADDING + 100);
+    PuzzleGenerator gen1 = new PuzzleGenerator(EASY_WIDTH, EASY_HEIGHT, EASY_MINES, 5, 1, 2);
+    Solver solver1 = new Solver();
+    long seed1 = 5;
+    NoGuessPuzzle good = gen1.tryCandidate(seed1, solver1);
+    while (good == null) {
+      seed1++;
+      good = gen1.tryCandidate(seed1, solver1);
+    }
+    boolean test1 = t.checkExpect(good.solvable(new Solver()), true) &&
+        t.checkExpect(good.firstClick, 40) &&
+        t.checkExpect(gen1.accepted.get(), 1L);
 
+    // Boards that need a guess are turned down
     this.initTestData();
-    MineSweeper game2 = new MineSweeper();
-    game2.calculateDimensions(50, 50);
-    boolean test2 = t.checkExpect(game2.cellSize < DEFAULT_CELL_SIZE, true) &&
-        t.checkExpect(game2.cellSize >= MIN_CELL_SIZE, true);
+    long seed2 = 5;
+    while (gen1.tryCandidate(seed2, solver1) != null) {
+      seed2++;
+    }
+    NoGuessPuzzle bad = new NoGuessPuzzle(EASY_WIDTH, EASY_HEIGHT, EASY_MINES, seed2, 40);
+    boolean test2 = t.checkExpect(bad.solvable(solver1), false) &&
+        t.checkExpect(gen1.acceptRate() < 1, true);
 
+    // The puzzle's board keeps its first click safe
     this.initTestData();
-    MineSweeper game3 = new MineSweeper();
-    game3.calculateDimensions(15, 15);
-    boolean test3 = t.checkExpect(game3.boardOffsetX, BOARD_PADDING) &&
-        t.checkExpect(game3.boardOffsetY, BOARD_PADDING);
+    ABoard board3 = good.newBoard(new HeadlessGame(), 30, 0, 0);
+    board3.revealAt(good.firstClick);
+    boolean test3 = t.checkExpect(board3.isMineAt(40), false) &&
+        t.checkExpect(board3.adjacentMinesAt(40), 0) &&
+        t.checkExpect(board3.mineCount, EASY_MINES);
 
     return test1 && test2 && test3;
   }
 
-  // Tests for MineSweeper.initializeMenu
-  boolean testInitializeMenu(Tester t) {
+  // Tests for PuzzleGenerator and NoGuessDealer
+  boolean testPuzzleGenerator(Tester t) {
     this.initTestData();
-    MineSweeper game1 = new MineSweeper();
-    game1.initializeMenu();
-    boolean test1 = t.checkExpect(game1.easyButton != null, true) &&
-        t.checkExpect(game1.mediumButton != null, true) &&
-        t.checkExpect(game1.hardButton != null, true) &&
-        t.checkExpect(game1.customButton != null, true);
+    PuzzleGenerator gen1 = new PuzzleGenerator(EASY_WIDTH, EASY_HEIGHT, EASY_MINES, 9, 2, 2);
+    gen1.start();
+    boolean allSolvable = true;
+    for (int i = 0; i < 4; i++) {
+      allSolvable = allSolvable && gen1.take().solvable(new Solver());
+    }
+    boolean test1 = t.checkExpect(allSolvable, true) &&
+        t.checkExpect(gen1.accepted.get() >= 4, true) &&
+        t.checkExpect(gen1.ready.size() <= 2, true);
+    gen1.stop();
 
+    // Each preset streams boards, and the report gives their throughput
     this.initTestData();
-    MineSweeper game2 = new MineSweeper();
-    game2.initializeMenu();
-    boolean test2 = t.checkExpect(game2.easyButton.y, 200) &&
-        t.checkExpect(game2.mediumButton.y, 200 + UI_SPACING) &&
-        t.checkExpect(game2.hardButton.y, 200 + UI_SPACING * 2);
+    NoGuessDealer dealer2 = new NoGuessDealer(2);
+    boolean eachPreset = true;
+    for (PuzzleGenerator generator : dealer2.generators) {
+      eachPreset = eachPreset && generator.take() != null;
+    }
+    boolean test2 = t.checkExpect(eachPreset, true) &&
+        t.checkExpect(dealer2.poll(20, 20, 50), null) &&
+        t.checkExpect(dealer2.report().contains("Hard no-guess"), true);
+    dealer2.stop();
 
+    // In no-guess mode a new game starts from a ready board, already opened
     this.initTestData();
-    MineSweeper game3 = new MineSweeper();
-    game3.initializeMenu();
-    boolean test3 = t.checkExpect(game3.easyButton.label, "Easy (9x9, 10 mines)") &&
-        t.checkExpect(game3.customButton.label, "Custom");
+    MineSweeper game3 = new MineSweeper(3);
+    game3.toggleNoGuess();
+    PuzzleGenerator easy3 = game3.dealer.generators.get(0);
+    NoGuessPuzzle puzzle3 = easy3.take();
+    easy3.ready.offer(puzzle3);
+    while (easy3.ready.peek() != puzzle3) {
+      easy3.ready.offer(easy3.poll());
+    }
+    game3.startGame(EASY_WIDTH, EASY_HEIGHT, EASY_MINES);
+    boolean opened = game3.board.isRevealedAt(puzzle3.firstClick);
+    game3.toggleNoGuess();
+    boolean test3 = t.checkExpect(opened, true) &&
+        t.checkExpect(game3.recorder.eventCount, 1) &&
+        t.checkExpect(game3.dealer, null) &&
+        t.checkExpect(game3.noGuessButton.label, "No-guess: Off");
 
     return test1 && test2 && test3;
   }
 
-  // Tests for MineSweeper.initializeCustomSetup
-  boolean testInitializeCustomSetup(Tester t) {
+  // Tests for BoardServer and BoardClient
+  boolean testBoardServer(Tester t) {
     this.initTestData();
-    MineSweeper game1 = new MineSweeper();
-    game1.initializeCustomSetup();
-    boolean test1 = t.checkExpect(game1.widthSlider != null, true) &&
-        t.checkExpect(game1.heightSlider != null, true) &&
-        t.checkExpect(game1.mineSlider != null, true) &&
-        t.checkExpect(game1.playButton != null, true) &&
-        t.checkExpect(game1.backButton != null, true);
-
+    BoardServer server1 = new BoardServer(9, 9, 10, 1);
+    server1.start();
+    BoardClient client1 = new BoardClient(server1.port(), 81);
+    boolean allHidden = true;
+    for (int view : client1.view) {
+      allHidden = allHidden && view == VIEW_HIDDEN;
+    }
+    client1.click(40, EVENT_LEFT);
+    client1.sync();
+    boolean test1 = t.checkExpect(allHidden, true) &&
+        t.checkExpect(client1.view[40] <= 8, true) &&
+        t.checkExpect(client1.cellsReceived, server1.board.cellsRevealed) &&
+        t.checkExpect(server1.eventsApplied, 1L);
+
+    // A late player starts from the same picture, and flags reach everyone
     this.initTestData();
-    MineSweeper game2 = new MineSweeper();
-    game2.initializeCustomSetup();
-    boolean test2 = t.checkExpect(game2.widthSlider.getValue(), 15) &&
-        t.checkExpect(game2.heightSlider.getValue(), 15) &&
-        t.checkExpect(game2.mineSlider.getValue(), 50);
+    BoardClient client2 = new BoardClient(server1.port(), 81);
+    boolean sameStart = Arrays.equals(client2.view, client1.view);
+    int hidden = 0;
+    while (client1.view[hidden] != VIEW_HIDDEN) {
+      hidden++;
+    }
+    client2.click(hidden, EVENT_RIGHT);
+    client2.sync();
+    client1.sync();
+    boolean test2 = t.checkExpect(sameStart, true) &&
+        t.checkExpect(client1.view[hidden], VIEW_FLAGGED) &&
+        t.checkExpect(client2.view[hidden], VIEW_FLAGGED);
+    client1.close();
+    client2.close();
+    server1.stop();
+
+    // Many players clicking at once all end up seeing the same board
+    this.initTestData();
+    BoardServer server3 = new BoardServer(HARD_WIDTH, HARD_HEIGHT, HARD_MINES, 3);
+    server3.start();
+    ServerLoadTest load3 = new ServerLoadTest(4, 500, 25, 3);
+    load3.run(server3);
+    boolean sameViews = true;
+    for (BoardClient client : load3.clients) {
+      sameViews = sameViews && Arrays.equals(client.view, load3.clients.get(0).view);
+    }
+    boolean test3 = t.checkExpect(load3.events, 2000L) &&
+        t.checkExpect(server3.eventsApplied, 2000L) &&
+        t.checkExpect(sameViews, true) &&
+        t.checkExpect(load3.clients.get(0).resets, server3.gamesDealt - 1) &&
+        t.checkExpect(load3.report(server3).startsWith("4 players x 500 clicks on 30x16: "),
+            true);
+    load3.close();
+    server3.stop();
+
+    return test1 && test2 && test3;
+  }
 
+  // Tests for ABoard.chordAt
+  boolean testChordAt(Tester t) {
     this.initTestData();
-    MineSweeper game3 = new MineSweeper();
-    game3.initializeCustomSetup();
-    boolean test3 = t.checkExpect(game3.widthSlider.min, 0) &&
-        t.checkExpect(game3.widthSlider.max, 50) &&
-        t.checkExpect(game3.heightSlider.min, 5) &&
-        t.checkExpect(game3.heightSlider.max, 40);
+    FlatBoard flat1 = layoutBoard(4, 4, new int[] {0}, new int[] {5});
+    flat1.toggleFlagAt(0);
+    flat1.handleClick(new Posn(45, 45), "MiddleButton");
+    HeadlessGame game1 = (HeadlessGame) flat1.game;
+    boolean test1 = t.checkExpect(flat1.cellsRevealed, 15) &&
+        t.checkExpect(game1.ended, true) &&
+        t.checkExpect(game1.won, true);
+
+    // A flag on the wrong cell sets off the mine it missed
+    this.initTestData();
+    FlatBoard flat2 = layoutBoard(4, 4, new int[] {0}, new int[] {5});
+    flat2.toggleFlagAt(1);
+    flat2.chordAt(5);
+    HeadlessGame game2 = (HeadlessGame) flat2.game;
+    boolean test2 = t.checkExpect(flat2.exploded, true) &&
+        t.checkExpect(game2.won, false) &&
+        t.checkExpect(flat2.isRevealedAt(1), false);
+
+    // Without enough flags, or on a hidden cell, nothing opens
+    this.initTestData();
+    FlatBoard flat3 = layoutBoard(4, 4, new int[] {0, 15}, new int[] {5});
+    flat3.chordAt(5);
+    flat3.toggleFlagAt(0);
+    flat3.chordAt(10);
+    Board board3 = new Board(3, 3, 0, new HeadlessGame(), 30, 0, 0);
+    board3.placeMineAt(8);
+    board3.revealAt(4);
+    board3.toggleFlagAt(8);
+    board3.chordAt(4);
+    boolean test3 = t.checkExpect(flat3.cellsRevealed, 1) &&
+        t.checkExpect(flat3.isRevealedAt(10), false) &&
+        t.checkExpect(board3.cellsRevealed, 8);
 
     return test1 && test2 && test3;
   }
 
-  // Tests for MineSweeper.handleMenuClick
-  boolean testHandleMenuClick(Tester t) {
+  // Tests for ABoard.viewAt
+  boolean testViewAt(Tester t) {
     this.initTestData();
-    MineSweeper game1 = new MineSweeper();
-    game1.handleMenuClick(new Posn(MENU_WIDTH / 2, 200));
-    boolean test1 = t.checkExpect(game1.state, PLAYING) &&
-        t.checkExpect(game1.board.width, EASY_WIDTH) &&
-        t.checkExpect(game1.board.height, EASY_HEIGHT);
+    FlatBoard flat1 = new FlatBoard(3, 3, 0, new HeadlessGame(), 30, 0, 0);
+    flat1.placeMineAt(0);
+    boolean test1 = t.checkExpect(flat1.viewAt(4), VIEW_HIDDEN) &&
+        t.checkExpect(flat1.viewAt(0), VIEW_HIDDEN);
 
     this.initTestData();
-    MineSweeper game2 = new MineSweeper();
-    game2.handleMenuClick(new Posn(MENU_WIDTH / 2, 200 + UI_SPACING * 3));
-    boolean test2 = t.checkExpect(game2.state, CUSTOM_SETUP);
+    flat1.toggleFlagAt(8);
+    flat1.revealAt(4);
+    boolean test2 = t.checkExpect(flat1.viewAt(8), VIEW_FLAGGED) &&
+        t.checkExpect(flat1.viewAt(4), 1);
 
     this.initTestData();
-    MineSweeper game3 = new MineSweeper();
-    game3.handleMenuClick(new Posn(0, 0));
-    boolean test3 = t.checkExpect(game3.state, MENU);
+    flat1.changedCells = new CellSet(9);
+    flat1.revealAt(0);
+    boolean test3 = t.checkExpect(flat1.viewAt(0), VIEW_MINE) &&
+        t.checkExpect(flat1.changedCells.contains(0), true);
 
     return test1 && test2 && test3;
   }
 
-  // Tests for MineSweeper.handleCustomClick
-  boolean testHandleCustomClick(Tester t) {
+  // Tests for Camera
+  boolean testCamera(Tester t) {
     this.initTestData();
-    MineSweeper game1 = new MineSweeper();
-    game1.state = CUSTOM_SETUP;
-    game1.initializeCustomSetup();
-    game1.handleCustomClick(new Posn(MENU_WIDTH / 2, 450));
-    boolean test1 = t.checkExpect(game1.state, PLAYING) &&
-        t.checkExpect(game1.board != null, true);
+    Camera camera1 = new Camera(100, 50, 30, 300, 150);
+    boolean test1 = t.checkExpect(camera1.cols, 10) &&
+        t.checkExpect(camera1.rows, 5) &&
+        t.checkExpect(camera1.width(), 300) &&
+        t.checkExpect(camera1.indexAt(31, 61), 2 * 100 + 1);
 
+    // Panning stops at the edges of the board
     this.initTestData();
-    MineSweeper game2 = new MineSweeper();
-    game2.state = CUSTOM_SETUP;
-    game2.initializeCustomSetup();
-    game2.handleCustomClick(new Posn(MENU_WIDTH / 2, 520));
-    boolean test2 = t.checkExpect(game2.state, MENU);
+    camera1.pan(95, -3);
+    boolean test2 = t.checkExpect(camera1.col, 90) &&
+        t.checkExpect(camera1.row, 0) &&
+        t.checkExpect(camera1.indexAt(0, 0), 90) &&
+        t.checkExpect(camera1.indexAt(300, 0), -1) &&
+        t.checkExpect(camera1.shows(95), true) &&
+        t.checkExpect(camera1.shows(0), false);
+
+    // Zooming keeps the cell under the anchor in place, within the size limits
+    this.initTestData();
+    Camera camera2 = new Camera(100, 50, 30, 300, 150);
+    camera2.pan(20, 20);
+    boolean zoomed = camera2.zoom(15, 150, 75);
+    boolean test3 = t.checkExpect(zoomed, true) &&
+        t.checkExpect(camera2.cols, 20) &&
+        t.checkExpect(camera2.rows, 10) &&
+        t.checkExpect(camera2.indexAt(150, 75), 22 * 100 + 25) &&
+        t.checkExpect(camera2.zoom(MIN_CELL_SIZE - 5, 0, 0), false) &&
+        t.checkExpect(camera2.zoom(1000, 0, 0), true) &&
+        t.checkExpect(camera2.cellSize, MAX_CELL_SIZE);
+
+    return test1 && test2 && test3;
+  }
 
+  // Tests for drawing and clicking a board bigger than the window
+  boolean testMineSweeperCamera(Tester t) {
     this.initTestData();
-    MineSweeper game3 = new MineSweeper();
-    game3.state = CUSTOM_SETUP;
-    game3.initializeCustomSetup();
-    int valueBefore = game3.widthSlider.getValue();
-    game3.handleCustomClick(new Posn(MENU_WIDTH / 2 + 100, 200));
-    boolean test3 = t.checkExpect(game3.widthSlider.getValue() > valueBefore, true);
+    MineSweeper game1 = new MineSweeper(3);
+    game1.startGame(500, 500, 100);
+    ABoard board1 = game1.board;
+    int cols = MAX_BOARD_WIDTH / MIN_CELL_SIZE;
+    int rows = MAX_BOARD_HEIGHT / MIN_CELL_SIZE;
+    game1.makeScene();
+    boolean test1 = t.checkExpect(game1.worldWidth, cols * MIN_CELL_SIZE + 2 * BOARD_PADDING) &&
+        t.checkExpect(board1.camera.cols, cols) &&
+        t.checkExpect(board1.camera.rows, rows) &&
+        t.checkExpect(board1.renderer.paintedLastFrame, cols * rows);
+
+    // Clicks land on the cell under the camera, not the top-left corner
+    this.initTestData();
+    game1.onKeyEvent("right");
+    game1.onMouseClicked(new Posn(board1.offsetX + MIN_CELL_SIZE + 1,
+        board1.offsetY + MIN_CELL_SIZE + 1), "RightButton");
+    boolean test2 = t.checkExpect(board1.camera.col, PAN_STEP) &&
+        t.checkExpect(board1.isFlaggedAt(500 + PAN_STEP + 1), true) &&
+        t.checkExpect(board1.isFlaggedAt(500 + 1), false);
+
+    // Zooming in shows fewer, bigger cells and draws only those
+    this.initTestData();
+    game1.onKeyEvent("+");
+    game1.makeScene();
+    int size = MIN_CELL_SIZE + ZOOM_STEP;
+    boolean test3 = t.checkExpect(board1.cellSize, size) &&
+        t.checkExpect(board1.renderer.paintedLastFrame,
+            (MAX_BOARD_WIDTH / size) * (rows * MIN_CELL_SIZE / size));
 
     return test1 && test2 && test3;
   }
 
-  // Tests for MineSweeper.handleGameClick
-  boolean testHandleGameClick(Tester t) {
+  // copies the look of every cell of the given board, for comparing boards
+  int[] looksOf(ABoard board) {
+    int[] looks = new int[board.width * board.height];
+    for (int i = 0; i < looks.length; i++) {
+      looks[i] = board.lookAt(i);
+    }
+    return looks;
+  }
+
+  // Tests for UndoJournal
+  boolean testUndoJournal(Tester t) {
     this.initTestData();
-    MineSweeper game1 = new MineSweeper();
-    game1.startGame(3, 3, 2);
-    game1.hintButton = new Button(100, 100, 100, 30, "Hint");
-    int flagsBefore = 0;
-    for (ArrayList<Cell> row : game1.board.cells) {
-      for (Cell cell : row) {
-        if (cell.isFlagged) {
-          flagsBefore++;
-        }
-      }
+    FlatBoard flat1 = new FlatBoard(9, 9, 10, new HeadlessGame(), 30, 0, 0,
+        new RandomService(4), true);
+    flat1.journal = new UndoJournal(flat1);
+    int[] start = looksOf(flat1);
+    flat1.handleClick(new Posn(4 * 30 + 1, 4 * 30 + 1), "LeftButton");
+    int opened = flat1.cellsRevealed;
+    int[] afterOpen = looksOf(flat1);
+    int hidden = 0;
+    while (flat1.isRevealedAt(hidden)) {
+      hidden++;
     }
-    game1.handleGameClick(new Posn(100, 100), "LeftButton");
-    int flagsAfter = 0;
-    for (ArrayList<Cell> row : game1.board.cells) {
-      for (Cell cell : row) {
-        if (cell.isFlagged) {
-          flagsAfter++;
-        }
-      }
+    flat1.handleClick(new Posn((hidden % 9) * 30 + 1, (hidden / 9) * 30 + 1), "RightButton");
+    int[] afterFlag = looksOf(flat1);
+    boolean undidFlag = flat1.journal.undo();
+    boolean test1 = t.checkExpect(undidFlag, true) &&
+        t.checkExpect(looksOf(flat1), afterOpen) &&
+        t.checkExpect(flat1.journal.undo(), true) &&
+        t.checkExpect(looksOf(flat1), start) &&
+        t.checkExpect(flat1.cellsRevealed, 0) &&
+        t.checkExpect(flat1.journal.undo(), false);
+
+    // Redo walks forward again, and a new move drops the undone ones
+    this.initTestData();
+    flat1.journal.redo();
+    flat1.journal.redo();
+    boolean redone = t.checkExpect(looksOf(flat1), afterFlag) &&
+        t.checkExpect(flat1.cellsRevealed, opened) &&
+        t.checkExpect(flat1.journal.redo(), false);
+    flat1.journal.undo();
+    flat1.journal.undo();
+    flat1.handleClick(new Posn(1, 1), "RightButton");
+    flat1.journal.close();
+    boolean test2 = redone &&
+        t.checkExpect(flat1.journal.current, 1) &&
+        t.checkExpect(flat1.journal.last, 1) &&
+        t.checkExpect(flat1.journal.redo(), false) &&
+        t.checkExpect(flat1.isFlaggedAt(0), true);
+
+    // Long games take checkpoints, so a jump never visits much more than a
+    // board's worth of cells
+    this.initTestData();
+    Board board3 = new Board(30, 16, 99, new HeadlessGame(), 30, 0, 0,
+        new RandomService(4), true);
+    board3.journal = new UndoJournal(board3);
+    for (int i = 0; i < 1000; i++) {
+      board3.handleClick(new Posn(1, 1), "RightButton");
     }
-    boolean test1 = t.checkExpect(flagsAfter, flagsBefore + 1);
+    board3.journal.jumpTo(0);
+    int visitedTo0 = board3.journal.cellsVisited;
+    boolean flagAt0 = board3.isFlaggedAt(0);
+    board3.journal.jumpTo(999);
+    boolean test3 = t.checkExpect(board3.journal.checkpointMoves,
+        new ArrayList<>(Arrays.asList(0, 480, 960))) &&
+        t.checkExpect(visitedTo0, 480) &&
+        t.checkExpect(flagAt0, false) &&
+        t.checkExpect(board3.journal.cellsVisited, 480 + 39) &&
+        t.checkExpect(board3.isFlaggedAt(0), true);
+
+    return test1 && test2 && test3;
+  }
 
+  // Tests for MineSweeper.undo and MineSweeper.redo
+  boolean testMineSweeperUndo(Tester t) {
     this.initTestData();
-    MineSweeper game2 = new MineSweeper();
-    game2.startGame(3, 3, 2);
-    game2.hintButton = new Button(1000, 1000, 100, 30, "Hint");
-    Cell targetCell = game2.board.cells.getFirst().getFirst();
-    boolean flagBefore = targetCell.isFlagged;
-    game2.handleGameClick(new Posn(BOARD_PADDING + 15, BOARD_PADDING + 15), "RightButton");
-    boolean test2 = t.checkExpect(flagBefore, false) &&
-        t.checkExpect(targetCell.isFlagged, true);
+    MineSweeper game1 = new MineSweeper(5);
+    game1.startGame(EASY_WIDTH, EASY_HEIGHT, EASY_MINES);
+    ABoard board1 = game1.board;
+    int size = board1.cellSize;
+    game1.onMouseClicked(new Posn(board1.offsetX + 4 * size + 1, board1.offsetY + 4 * size + 1),
+        "LeftButton");
+    int mine = 0;
+    while (!board1.isMineAt(mine)) {
+      mine++;
+    }
+    game1.onMouseClicked(new Posn(board1.offsetX + (mine % EASY_WIDTH) * size + 1,
+        board1.offsetY + (mine / EASY_WIDTH) * size + 1), "LeftButton");
+    boolean test1 = t.checkExpect(game1.state, GAME_OVER) &&
+        t.checkExpect(game1.recorder.eventCount, 2);
 
+    // Undoing the losing click reopens the game and drops it from the save
     this.initTestData();
-    MineSweeper game3 = new MineSweeper();
-    game3.startGame(2, 2, 0); // No mines to avoid game over
-    game3.hintButton = new Button(1000, 1000, 100, 30, "Hint");
-    Cell cell = game3.board.cells.getFirst().getFirst();
-    boolean revealedBefore = cell.isRevealed;
-    game3.handleGameClick(new Posn(BOARD_PADDING + 15, BOARD_PADDING + 15), "LeftButton");
-    boolean test3 = t.checkExpect(revealedBefore, false) &&
-        t.checkExpect(cell.isRevealed, true);
+    game1.onKeyEvent("z");
+    boolean test2 = t.checkExpect(game1.state, PLAYING) &&
+        t.checkExpect(board1.exploded, false) &&
+        t.checkExpect(board1.isRevealedAt(mine), false) &&
+        t.checkExpect(board1.hiddenMines.contains(mine), true) &&
+        t.checkExpect(game1.recorder.eventCount, 1);
+
+    // Redoing it loses the game again
+    this.initTestData();
+    game1.onKeyEvent("y");
+    boolean test3 = t.checkExpect(game1.state, GAME_OVER) &&
+        t.checkExpect(game1.wonGame, false) &&
+        t.checkExpect(board1.isRevealedAt(mine), true) &&
+        t.checkExpect(game1.recorder.eventCount, 2);
 
     return test1 && test2 && test3;
   }
 
-  // Tests for MineSweeper.handleGameOverClick
-  boolean testHandleGameOverClick(Tester t) {
-    this.initTestData();
-    MineSweeper game1 = new MineSweeper();
-    game1.state = GAME_OVER;
-    game1.menuButton = new Button(100, 100, 200, 50, "Back to Menu");
-    game1.handleGameOverClick(new Posn(100, 100));
-    boolean test1 = t.checkExpect(game1.state, MENU);
+  // counts the mines next to a cell by looking at each neighbor, for checking
+  // the faster counts
+  int neighborMines(ABoard board, int index) {
+    int row = index / board.width;
+    int col = index % board.width;
+    int count = 0;
+    for (int dr = -1; dr <= 1; dr++) {
+      for (int dc = -1; dc <= 1; dc++) {
+        int newRow = row + dr;
+        int newCol = col + dc;
+        if ((dr != 0 || dc != 0) && newRow >= 0 && newRow < board.height
+            && newCol >= 0 && newCol < board.width
+            && board.isMineAt(newRow * board.width + newCol)) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
 
+  // Tests for MineBitboard
+  boolean testMineBitboard(Tester t) {
+    // Counts carry across the 64-column word edges and stop at the board's
     this.initTestData();
-    MineSweeper game2 = new MineSweeper();
-    game2.state = GAME_OVER;
-    game2.worldWidth = 500;
-    game2.worldHeight = 500;
-    game2.menuButton = new Button(100, 100, 200, 50, "Back to Menu");
-    game2.handleGameOverClick(new Posn(100, 100));
-    boolean test2 = t.checkExpect(game2.worldWidth, MENU_WIDTH) &&
-        t.checkExpect(game2.worldHeight, MENU_HEIGHT);
+    MineBitboard mines1 = new MineBitboard(130, 3);
+    mines1.set(63);
+    mines1.set(130 + 64);
+    mines1.set(129);
+    byte[] counts1 = mines1.counts();
+    boolean test1 = t.checkExpect(mines1.count(), 3) &&
+        t.checkExpect(mines1.isSet(130 + 64), true) &&
+        t.checkExpect(mines1.isSet(64), false) &&
+        t.checkExpect(counts1[64], (byte) 2) &&
+        t.checkExpect(counts1[130 + 63], (byte) 2) &&
+        t.checkExpect(counts1[63], (byte) 0) &&
+        t.checkExpect(counts1[128], (byte) 1) &&
+        t.checkExpect(counts1[130], (byte) 0) &&
+        t.checkExpect(counts1[2 * 130 + 65], (byte) 1);
+
+    // A cell surrounded by mines counts all eight
+    this.initTestData();
+    MineBitboard mines2 = new MineBitboard(3, 3);
+    for (int i = 0; i < 9; i++) {
+      if (i != 4) {
+        mines2.set(i);
+      }
+    }
+    boolean test2 = t.checkExpect(mines2.counts()[4], (byte) 8) &&
+        t.checkExpect(mines2.counts()[0], (byte) 0);
 
+    // Both board layouts get the same counts as looking at each neighbor
     this.initTestData();
-    MineSweeper game3 = new MineSweeper();
-    game3.state = GAME_OVER;
-    game3.menuButton = new Button(100, 100, 200, 50, "Back to Menu");
-    game3.handleGameOverClick(new Posn(500, 500));
-    boolean test3 = t.checkExpect(game3.state, GAME_OVER);
+    FlatBoard flat3 = new FlatBoard(150, 90, 3000, new HeadlessGame(), 30, 0, 0,
+        new RandomService(3), false);
+    Board board3 = new Board(70, 9, 200, new HeadlessGame(), 30, 0, 0,
+        new RandomService(3), false);
+    boolean matches = true;
+    for (int i = 0; i < 150 * 90; i++) {
+      if (!flat3.isMineAt(i) && flat3.adjacentMinesAt(i) != neighborMines(flat3, i)) {
+        matches = false;
+      }
+    }
+    for (int i = 0; i < 70 * 9; i++) {
+      if (!board3.isMineAt(i) && board3.adjacentMinesAt(i) != neighborMines(board3, i)) {
+        matches = false;
+      }
+    }
+    boolean test3 = t.checkExpect(matches, true) &&
+        t.checkExpect(flat3.hiddenMines.size, 3000) &&
+        t.checkExpect(board3.hiddenMines.size, 200);
 
     return test1 && test2 && test3;
   }
 
-  // Tests for MineSweeper.startGame
-  boolean testStartGame(Tester t) {
+  // Tests for RandomService
+  boolean testRandomService(Tester t) {
     this.initTestData();
-    MineSweeper game1 = new MineSweeper();
-    game1.startGame(5, 5, 5);
-    boolean test1 = t.checkExpect(game1.board.width, 5) &&
-        t.checkExpect(game1.board.height, 5) &&
-        t.checkExpect(game1.board.mineCount, 5);
+    RandomService rng1 = new RandomService(5);
+    RandomService rng2 = new RandomService(5);
+    long board1 = rng1.stream(RNG_BOARD).nextLong();
+    boolean test1 = t.checkExpect(rng2.stream(RNG_BOARD).nextLong(), board1) &&
+        t.checkExpect(new RandomService(6).stream(RNG_BOARD).nextLong() == board1, false);
 
+    // Drawing hints does not shift where the mines go
     this.initTestData();
-    MineSweeper game2 = new MineSweeper();
-    game2.wonGame = true;
-    game2.startGame(3, 3, 1);
-    boolean test2 = t.checkExpect(game2.state, PLAYING) &&
-        t.checkExpect(game2.wonGame, false);
+    Board hinted = new Board(9, 9, 10, new HeadlessGame(), 30, 0, 0, new RandomService(8), true);
+    Board plain = new Board(9, 9, 10, new HeadlessGame(), 30, 0, 0, new RandomService(8), true);
+    hinted.hintRand.nextInt(81);
+    hinted.hintRand.nextInt(81);
+    hinted.revealAt(40);
+    plain.revealAt(40);
+    boolean sameMines = true;
+    for (int i = 0; i < 81; i++) {
+      sameMines = sameMines && hinted.isMineAt(i) == plain.isMineAt(i);
+    }
+    boolean test2 = t.checkExpect(sameMines, true);
 
+    // Sessions built from the same seed deal the same games
     this.initTestData();
-    MineSweeper game3 = new MineSweeper();
-    int oldWidth = game3.worldWidth;
-    game3.startGame(10, 10, 10);
-    boolean test3 = t.checkExpect(game3.worldWidth != oldWidth, true) &&
-        t.checkExpect(game3.boardOffsetX, BOARD_PADDING);
+    MineSweeper game1 = new MineSweeper(11);
+    MineSweeper game2 = new MineSweeper(11);
+    game1.startGame(EASY_WIDTH, EASY_HEIGHT, EASY_MINES);
+    game2.startGame(EASY_WIDTH, EASY_HEIGHT, EASY_MINES);
+    game1.board.revealAt(0);
+    game2.board.revealAt(0);
+    int differing = 0;
+    for (int i = 0; i < EASY_WIDTH * EASY_HEIGHT; i++) {
+      if (game1.board.isMineAt(i) != game2.board.isMineAt(i)) {
+        differing++;
+      }
+    }
+    boolean test3 = t.checkExpect(differing, 0);
 
     return test1 && test2 && test3;
   }
 
-  // Tests for MineSweeper.endGame
-  boolean testEndGame(Tester t) {
+  // Tests for GameRecorder.record
+  boolean testGameRecorder(Tester t) {
     this.initTestData();
-    MineSweeper game1 = new MineSweeper();
-    game1.startGame(2, 2, 1);
-    game1.endGame(true);
-    boolean test1 = t.checkExpect(game1.state, GAME_OVER);
-
+    File file1 = tempFile();
+    Board board1 = new Board(9, 9, 10, new HeadlessGame(), 30, 0, 0, new RandomService(21), true);
+    GameRecorder recorder1 = new GameRecorder(file1, board1, 21);
+    board1.recorder = recorder1;
+    boolean before1 = recorder1.buffer.getInt(28) == 0;
+    board1.handleClick(new Posn(130, 130), "LeftButton");
+    board1.handleClick(new Posn(10, 10), "RightButton");
+    boolean test1 = t.checkExpect(before1, true) &&
+        t.checkExpect(recorder1.eventCount, 2) &&
+        t.checkExpect(recorder1.buffer.getInt(24), 2) &&
+        t.checkExpect(recorder1.buffer.getInt(recorder1.eventsStart), (40 << 2) | EVENT_LEFT) &&
+        t.checkExpect(recorder1.buffer.getInt(recorder1.eventsStart + 4), EVENT_RIGHT);
+
+    // The mines are written once the first click places them
     this.initTestData();
-    MineSweeper game2 = new MineSweeper();
-    game2.startGame(2, 2, 1);
-    game2.endGame(false);
-    MineSweeper game3 = new MineSweeper();
-    game3.startGame(2, 2, 1);
-    game3.endGame(true);
-    boolean test2 = t.checkExpect(game2.wonGame, false) &&
-        t.checkExpect(game3.wonGame, true);
+    int savedMines = 0;
+    for (int i = 0; i < 81; i++) {
+      if ((recorder1.buffer.getInt(REPLAY_HEADER + (i / 32) * 4) & (1 << (i % 32))) != 0) {
+        savedMines++;
+        savedMines += board1.isMineAt(i) ? 0 : 1000;
+      }
+    }
+    boolean test2 = t.checkExpect(recorder1.buffer.getInt(28), 1) &&
+        t.checkExpect(savedMines, 10);
 
+    // The log grows past its first mapping
     this.initTestData();
-    MineSweeper game4 = new MineSweeper();
-    game4.startGame(2, 2, 1);
-    game4.endGame(true);
-    boolean allRevealed = true;
-    for (ArrayList<Cell> row : game4.board.cells) {
-      for (Cell cell : row) {
-        if (!cell.isRevealed) {
-          allRevealed = false;
-          break;
-        }
-      }
+    for (int i = 0; i < 3000; i++) {
+      recorder1.record(i % 81, EVENT_RIGHT);
     }
-    boolean test3 = t.checkExpect(allRevealed, true);
+    File saved3 = tempFile();
+    recorder1.saveTo(saved3);
+    recorder1.close();
+    boolean test3 = t.checkExpect(recorder1.eventCount, 3002) &&
+        t.checkExpect(saved3.length(), (long) recorder1.usedBytes()) &&
+        t.checkExpect(new GameReplay(saved3).events.length, 3002);
 
     return test1 && test2 && test3;
   }
 
-  // Tests for Button.contains
-  boolean testButtonContains(Tester t) {
+  // Tests for GameReplay.replay
+  boolean testGameReplay(Tester t) {
     this.initTestData();
-    Button button1 = new Button(100, 100, 50, 30, "Test");
-    boolean test1 = t.checkExpect(button1.contains(new Posn(100, 100)), true) &&
-        t.checkExpect(button1.contains(new Posn(90, 95)), true);
+    File file1 = tempFile();
+    MineSweeper game1 = new MineSweeper(1);
+    game1.startGame(EASY_WIDTH, EASY_HEIGHT, EASY_MINES);
+    game1.board.handleClick(new Posn(BOARD_PADDING + 130, BOARD_PADDING + 130), "LeftButton");
+    game1.board.handleClick(new Posn(BOARD_PADDING + 5, BOARD_PADDING + 5), "RightButton");
+    game1.hudWidgets.move(game1.hintButton, 1000, 1000);
+    game1.handleGameClick(new Posn(1000, 1000), "LeftButton");
+    game1.saveGame(file1.getPath());
+    GameReplay replay1 = new GameReplay(file1);
+    ABoard full1 = replay1.replay(Integer.MAX_VALUE, new HeadlessGame());
+    boolean same = true;
+    for (int i = 0; i < 81; i++) {
+      same = same && full1.isMineAt(i) == game1.board.isMineAt(i)
+          && full1.isRevealedAt(i) == game1.board.isRevealedAt(i)
+          && full1.isFlaggedAt(i) == game1.board.isFlaggedAt(i);
+    }
+    boolean test1 = t.checkExpect(replay1.events.length, 3) &&
+        t.checkExpect(same, true);
 
+    // Earlier frames
     this.initTestData();
-    Button button2 = new Button(100, 100, 50, 30, "Test");
-    boolean test2 = t.checkExpect(button2.contains(new Posn(200, 200)), false) &&
-        t.checkExpect(button2.contains(new Posn(50, 50)), false);
-
+    ABoard first2 = replay1.replay(1, new HeadlessGame());
+    ABoard none2 = replay1.replay(0, new HeadlessGame());
+    boolean test2 = t.checkExpect(first2.isRevealedAt(40), true) &&
+        t.checkExpect(first2.isFlaggedAt(0), false) &&
+        t.checkExpect(none2.cellsRevealed, 0) &&
+        t.checkExpect(none2.minesPlaced, false);
+
+    // Loading keeps recording on top of the replayed events
     this.initTestData();
-    Button button3 = new Button(100, 100, 50, 30, "Test");
-    boolean test3 = t.checkExpect(button3.contains(new Posn(75, 100)), true) && // left edge
-        t.checkExpect(button3.contains(new Posn(125, 100)), true) && // right edge
-        t.checkExpect(button3.contains(new Posn(100, 85)), true); // top edge
+    MineSweeper game3 = new MineSweeper(3);
+    game3.loadGame(file1.getPath(), 2);
+    File empty3 = tempFile();
+    boolean test3 = t.checkExpect(game3.state, PLAYING) &&
+        t.checkExpect(game3.board.isFlaggedAt(0),
+            replay1.replay(2, new HeadlessGame()).isFlaggedAt(0)) &&
+        t.checkExpect(game3.recorder.eventCount, 2) &&
+        t.checkException(new IllegalArgumentException("Not a saved Minesweeper game: "
+            + empty3), this, "readReplay", empty3);
 
     return test1 && test2 && test3;
   }
 
-  // Tests for Slider.getValue
-  boolean testSliderGetValue(Tester t) {
+  // makes a temporary file that is deleted on exit
+  File tempFile() {
+    try {
+      File file = File.createTempFile("minesweeper-test", ".bin");
+      file.deleteOnExit();
+      return file;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // reads a replay, for checking the exceptions it throws
+  GameReplay readReplay(File file) {
+    return new GameReplay(file);
+  }
+
+  // Tests for MineSweeper.enter and the state table
+  boolean testGameStates(Tester t) {
     this.initTestData();
-    Slider slider1 = new Slider(100, 100, 200, 0, 100, 50, "Test");
-    boolean test1 = t.checkExpect(slider1.getValue(), 50);
+    MineSweeper game1 = new MineSweeper(1);
+    boolean test1 = t.checkExpect(game1.states.length, STATE_COUNT) &&
+        t.checkExpect(game1.states[MENU] instanceof MenuState, true) &&
+        t.checkExpect(game1.states[GAME_OVER] instanceof GameOverState, true);
 
+    // Clicks go to the handler of the current state
     this.initTestData();
-    Slider slider2 = new Slider(100, 100, 200, 0, 100, 25, "Test");
-    slider2.value = 75;
-    boolean test2 = t.checkExpect(slider2.getValue(), 75);
+    MineSweeper game2 = new MineSweeper(2);
+    game2.enter(CUSTOM_SETUP);
+    game2.initializeCustomSetup();
+    game2.onMouseClicked(new Posn(game2.backButton.x, game2.backButton.y), "LeftButton");
+    boolean test2 = t.checkExpect(game2.state, MENU);
 
+    // Keys go to the current state too: only a game in progress pans
     this.initTestData();
-    Slider slider3a = new Slider(100, 100, 200, 10, 90, 10, "Test");
-    Slider slider3b = new Slider(100, 100, 200, 10, 90, 90, "Test");
-    boolean test3 = t.checkExpect(slider3a.getValue(), 10) &&
-        t.checkExpect(slider3b.getValue(), 90);
+    MineSweeper game3 = new MineSweeper(3);
+    game3.startEndless(3);
+    ChunkedBoard board3 = (ChunkedBoard) game3.board;
+    game3.enter(GAME_OVER);
+    game3.onKeyEvent("down");
+    long stillY = board3.originY;
+    game3.enter(PLAYING);
+    game3.onKeyEvent("down");
+    boolean test3 = t.checkExpect(stillY, (long) -(ENDLESS_HEIGHT / 2)) &&
+        t.checkExpect(board3.originY, stillY + PAN_STEP);
+    board3.release();
 
     return test1 && test2 && test3;
   }
 
-  // Tests for Slider.setMax
-  boolean testSliderSetMax(Tester t) {
-    // Test 1: sets new max value
+  // Tests for WidgetLayer.widgetAt
+  boolean testWidgetLayerWidgetAt(Tester t) {
     this.initTestData();
-    Slider slider1 = new Slider(100, 100, 200, 0, 100, 50, "Test");
-    slider1.setMax(200);
-    boolean test1 = t.checkExpect(slider1.max, 200);
-
+    WidgetLayer layer1 = new WidgetLayer(MENU_WIDTH, MENU_HEIGHT);
+    Button wide1 = new Button(300, 300, 400, 40, "Wide");
+    Button small1 = new Button(300, 300, 40, 40, "Small");
+    layer1.add(wide1);
+    layer1.add(small1);
+    boolean test1 = t.checkExpect(layer1.widgetAt(new Posn(300, 300)), small1) &&
+        t.checkExpect(layer1.widgetAt(new Posn(140, 300)), wide1) &&
+        t.checkExpect(layer1.widgetAt(new Posn(300, 400)), null);
+
+    // Widgets partly off the grid are still found
     this.initTestData();
-    Slider slider2 = new Slider(100, 100, 200, 0, 100, 80, "Test");
-    slider2.setMax(50);
-    boolean test2 = t.checkExpect(slider2.max, 50) &&
-        t.checkExpect(slider2.value, 50);
+    Button edge2 = new Button(MENU_WIDTH + 40, -10, 200, 100, "Edge");
+    layer1.add(edge2);
+    boolean test2 = t.checkExpect(layer1.widgetAt(new Posn(MENU_WIDTH + 100, -30)), edge2) &&
+        t.checkExpect(layer1.widgetAt(new Posn(MENU_WIDTH - 50, 20)), edge2);
 
+    // Moving re-indexes
     this.initTestData();
-    Slider slider3 = new Slider(100, 100, 200, 0, 100, 30, "Test");
-    slider3.setMax(50);
-    boolean test3 = t.checkExpect(slider3.max, 50) &&
-        t.checkExpect(slider3.value, 30);
+    layer1.move(small1, 900, 700);
+    boolean test3 = t.checkExpect(layer1.widgetAt(new Posn(300, 300)), wide1) &&
+        t.checkExpect(layer1.widgetAt(new Posn(910, 690)), small1) &&
+        t.checkExpect(layer1.buckets.get(layer1.row(700) * layer1.columns
+            + layer1.column(900)).contains(small1), true);
 
     return test1 && test2 && test3;
   }
 
-  // Tests for Slider.handleClick
-  boolean testSliderHandleClick(Tester t) {
+  // Tests for WidgetLayer.press, moveMouse and release
+  boolean testWidgetLayerDrag(Tester t) {
     this.initTestData();
-    Slider slider1 = new Slider(100, 100, 200, 0, 100, 50, "Test");
-    slider1.handleClick(new Posn(0, 100));
-    boolean test1 = t.checkExpect(slider1.value, 0);
+    WidgetLayer layer1 = new WidgetLayer(MENU_WIDTH, MENU_HEIGHT);
+    Slider slider1 = new Slider(400, 200, 200, 0, 100, 50, "Test");
+    Button button1 = new Button(400, 400, 100, 40, "Go");
+    layer1.add(slider1);
+    layer1.add(button1);
+    layer1.press(new Posn(350, 200));
+    int pressed = slider1.value;
+    layer1.moveMouse(new Posn(450, 600));
+    int dragged = slider1.value;
+    layer1.release(new Posn(2000, 900));
+    boolean test1 = t.checkExpect(pressed, 25) &&
+        t.checkExpect(dragged, 75) &&
+        t.checkExpect(slider1.value, 100) &&
+        t.checkExpect(layer1.captured, null);
 
     this.initTestData();
-    Slider slider2 = new Slider(100, 100, 200, 0, 100, 50, "Test");
-    slider2.handleClick(new Posn(200, 100));
-    boolean test2 = t.checkExpect(slider2.value, 100);
-
+    layer1.moveMouse(new Posn(400, 400));
+    boolean over2 = button1.hovered;
+    layer1.moveMouse(new Posn(10, 10));
+    boolean test2 = t.checkExpect(over2, true) &&
+        t.checkExpect(button1.hovered, false) &&
+        t.checkExpect(layer1.hovered, null);
+
+    // The game routes mouse events to the current screen's layer
     this.initTestData();
-    Slider slider3 = new Slider(100, 100, 200, 0, 100, 50, "Test");
-    slider3.handleClick(new Posn(100, 200)); // too far below
-    boolean test3 = t.checkExpect(slider3.value, 50);
+    MineSweeper game3 = new MineSweeper(3);
+    game3.enter(CUSTOM_SETUP);
+    game3.initializeCustomSetup();
+    game3.onMousePressed(new Posn(MENU_WIDTH / 2, 200));
+    game3.onMouseReleased(new Posn(0, 500));
+    game3.onMouseMoved(new Posn(MENU_WIDTH / 2, 450));
+    boolean test3 = t.checkExpect(game3.widthSlider.value, 0) &&
+        t.checkExpect(game3.playButton.hovered, true);
 
     return test1 && test2 && test3;
   }